@@ -25,9 +25,14 @@ class ExecHelper {
     public static String doExec(String command, List<String> env, File dir) {
         StringBuffer output = new StringBuffer()
         Process process = command.execute(env, dir)
-        process.consumeProcessOutputStream(output)
-        process.consumeProcessErrorStream(output)
-        process.waitFor()
+        process.waitForProcessOutput(output, output)
+        return output.toString()
+    }
+
+    public static String doExec(List<String> command, File dir) {
+        StringBuffer output = new StringBuffer()
+        Process process = new ProcessBuilder(command).directory(dir).start()
+        process.waitForProcessOutput(output, output)
         return output.toString()
     }
 
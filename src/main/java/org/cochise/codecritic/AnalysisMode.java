@@ -0,0 +1,47 @@
+/*
+ * Copyright to the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.cochise.codecritic;
+
+/**
+ * The scope of analysis used to produce a report.
+ *
+ * @author Dennis Reedy
+ */
+public enum AnalysisMode {
+    /**
+     * Whole files that have changed in the branch are analyzed and reported on
+     */
+    FULL("full"),
+    /**
+     * Only violations on lines that have changed in the branch are reported on
+     */
+    CHANGED_LINES("changed-lines"),
+    /**
+     * Only violations that are not also found in the merge base version of a file are reported on
+     */
+    NEW_VIOLATIONS("new-violations");
+
+    private final String label;
+
+    AnalysisMode(String label) {
+        this.label = label;
+    }
+
+    @Override
+    public String toString() {
+        return label;
+    }
+}
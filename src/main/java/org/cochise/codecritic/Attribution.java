@@ -0,0 +1,61 @@
+/*
+ * Copyright to the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.cochise.codecritic;
+
+/**
+ * The change that last touched the line a violation begins on.
+ *
+ * @author Dennis Reedy
+ */
+class Attribution {
+    private final String file;
+    private final int line;
+    private final String revision;
+    private final String developer;
+    private final ChangeSet changeSet;
+
+    Attribution(String file, int line, String revision, String developer, ChangeSet changeSet) {
+        this.file = file;
+        this.line = line;
+        this.revision = revision;
+        this.developer = developer;
+        this.changeSet = changeSet;
+    }
+
+    String getFile() {
+        return file;
+    }
+
+    int getLine() {
+        return line;
+    }
+
+    String getRevision() {
+        return revision;
+    }
+
+    String getDeveloper() {
+        return developer;
+    }
+
+    /**
+     * @return the change set of the branch the line was last touched in, or null if it was last
+     * touched before the branch
+     */
+    ChangeSet getChangeSet() {
+        return changeSet;
+    }
+}
@@ -0,0 +1,147 @@
+/*
+ * Copyright to the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.cochise.codecritic;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Loads classes from an auxiliary classpath for PMD's type resolution. Directories on the classpath
+ * are searched first, since they change between runs, and jars through a {@link ClassIndex} that is
+ * only loaded, or built, once a class is first looked up. Classes of the JDK are loaded by the parent.
+ *
+ * @author Dennis Reedy
+ */
+class AuxClassLoader extends ClassLoader {
+    private final List<File> directories = new ArrayList<File>();
+    private final List<File> jars = new ArrayList<File>();
+    private final File cacheDirectory;
+    private final ProgressListener listener;
+    private ClassIndex index;
+    private boolean indexUnavailable;
+
+    AuxClassLoader(String classpath, File cacheDirectory, ProgressListener listener) {
+        super(ClassLoader.getSystemClassLoader().getParent());
+        this.cacheDirectory = cacheDirectory;
+        this.listener = listener;
+        for(String element : classpath.split(File.pathSeparator)) {
+            File file = new File(element.trim());
+            if(file.isDirectory())
+                directories.add(file);
+            else if(file.isFile())
+                jars.add(file);
+        }
+    }
+
+    @Override
+    protected Class<?> findClass(String name) throws ClassNotFoundException {
+        byte[] bytes = read(name.replace('.', '/')+".class");
+        if(bytes==null)
+            throw new ClassNotFoundException(name);
+        return defineClass(name, bytes, 0, bytes.length);
+    }
+
+    @Override
+    public InputStream getResourceAsStream(String name) {
+        InputStream in = super.getResourceAsStream(name);
+        if(in!=null)
+            return in;
+        byte[] bytes = read(name);
+        return bytes==null?null:new ByteArrayInputStream(bytes);
+    }
+
+    /**
+     * Get a key for the state of a classpath, that changes when an entry of the classpath, or a file in
+     * a directory of the classpath, is added, removed or modified
+     *
+     * @param classpath the classpath
+     *
+     * @return the key for the state of the classpath
+     */
+    static String stateKey(String classpath) {
+        final StringBuilder builder = new StringBuilder();
+        for(String element : classpath.split(File.pathSeparator)) {
+            File file = new File(element.trim());
+            builder.append(file.getPath()).append('=');
+            if(file.isDirectory()) {
+                final long[] state = new long[3];
+                try {
+                    Files.walkFileTree(file.toPath(), new SimpleFileVisitor<Path>() {
+                        @Override
+                        public FileVisitResult visitFile(Path path, BasicFileAttributes attributes) {
+                            state[0]++;
+                            state[1] = Math.max(state[1], attributes.lastModifiedTime().toMillis());
+                            state[2] += attributes.size();
+                            return FileVisitResult.CONTINUE;
+                        }
+                    });
+                } catch (IOException e) {
+                    state[0] = -1;
+                }
+                builder.append(state[0]).append(',').append(state[1]).append(',').append(state[2]);
+            } else {
+                builder.append(file.lastModified()).append(',').append(file.length());
+            }
+            builder.append(';');
+        }
+        return Digest.sha1(builder.toString());
+    }
+
+    int getClasspathSize() {
+        return directories.size()+jars.size();
+    }
+
+    private byte[] read(String resource) {
+        try {
+            for(File directory : directories) {
+                File file = new File(directory, resource);
+                if(file.isFile())
+                    return Files.readAllBytes(file.toPath());
+            }
+            ClassIndex classIndex = index();
+            return classIndex==null?null:classIndex.read(resource);
+        } catch (IOException e) {
+            debug("Unable to read "+resource+", "+e.getMessage());
+            return null;
+        }
+    }
+
+    private synchronized ClassIndex index() {
+        if(index==null && !indexUnavailable && !jars.isEmpty()) {
+            try {
+                index = ClassIndex.load(jars, cacheDirectory, listener);
+            } catch (IOException e) {
+                indexUnavailable = true;
+                debug("Unable to index the auxiliary classpath, "+e.getMessage());
+            }
+        }
+        return index;
+    }
+
+    private void debug(String message) {
+        if(listener!=null)
+            listener.debug(message);
+    }
+}
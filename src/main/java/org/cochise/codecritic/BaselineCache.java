@@ -0,0 +1,119 @@
+/*
+ * Copyright to the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.cochise.codecritic;
+
+import net.sourceforge.pmd.PMD;
+import net.sourceforge.pmd.Rule;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.*;
+
+/**
+ * Caches the violations found in the base versions of source files. Entries are keyed by the digest
+ * of the content and of the rules it was analyzed with, so the results stay valid for as long as the
+ * merge base leaves a file unchanged, and a change to the rules results in new entries.
+ *
+ * @author Dennis Reedy
+ */
+class BaselineCache {
+    private static final int FORMAT = 1;
+    private final File directory;
+    private final String rulesDigest;
+    private final ProgressListener listener;
+
+    BaselineCache(File directory, Collection<Rule> rules, ProgressListener listener) {
+        this.directory = new File(directory, "baseline");
+        this.listener = listener;
+        List<String> descriptions = new ArrayList<String>();
+        for(Rule rule : rules) {
+            descriptions.add(rule.getRuleSetName()+"."+rule.getName()+":"+rule.getClass().getName()+":"+
+                             rule.getPriority()+":"+new TreeMap<Object, Object>(rule.getProperties()));
+        }
+        Collections.sort(descriptions);
+        this.rulesDigest = Digest.sha1(PMD.VERSION+":"+FORMAT+":"+descriptions);
+    }
+
+    /**
+     * Get the cached violations of content
+     *
+     * @param sourceFile the source file the content is a version of
+     * @param contentDigest the digest of the content
+     *
+     * @return the violations, or null if the content has not been cached
+     */
+    List<ViolationFingerprint> get(SourceFile sourceFile, String contentDigest) {
+        File cached = file(contentDigest);
+        if(!cached.exists())
+            return null;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(cached)))) {
+            if(in.readInt()!=FORMAT)
+                throw new IOException("Unknown format");
+            int count = in.readInt();
+            List<ViolationFingerprint> violations = new ArrayList<ViolationFingerprint>(count);
+            for(int i=0; i<count; i++) {
+                String rule = in.readUTF();
+                int line = in.readInt();
+                int priority = in.readInt();
+                String message = in.readUTF();
+                String text = in.readUTF();
+                violations.add(new ViolationFingerprint(rule, sourceFile.getFile(), line, priority, message, text));
+            }
+            return violations;
+        } catch (IOException e) {
+            debug("Unable to read cached base violations of "+sourceFile+", "+e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Cache the violations of content
+     *
+     * @param contentDigest the digest of the content
+     * @param violations the violations found in the content
+     */
+    void put(String contentDigest, List<ViolationFingerprint> violations) {
+        try {
+            if(!directory.exists() && !directory.mkdirs())
+                throw new IOException("Unable to create "+directory.getPath());
+            File temp = File.createTempFile("baseline", ".tmp", directory);
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp)))) {
+                out.writeInt(FORMAT);
+                out.writeInt(violations.size());
+                for(ViolationFingerprint violation : violations) {
+                    out.writeUTF(violation.getRule());
+                    out.writeInt(violation.getLine());
+                    out.writeInt(violation.getPriority());
+                    out.writeUTF(violation.getMessage());
+                    out.writeUTF(violation.getText());
+                }
+            }
+            Files.move(temp.toPath(), file(contentDigest).toPath(), StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            debug("Unable to cache base violations, "+e.getMessage());
+        }
+    }
+
+    private File file(String contentDigest) {
+        return new File(directory, Digest.sha1(rulesDigest+":"+contentDigest)+".violations");
+    }
+
+    private void debug(String message) {
+        if(listener!=null)
+            listener.debug(message);
+    }
+}
@@ -0,0 +1,220 @@
+/*
+ * Copyright to the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.cochise.codecritic;
+
+import net.sourceforge.pmd.Report;
+import net.sourceforge.pmd.RuleContext;
+import org.cochise.codecritic.support.scm.SCM;
+
+import java.io.File;
+import java.util.*;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Analyzes the merge base versions of the Java source files the log discovers on its own thread,
+ * alongside the analysis of the branch versions. Versions are read from the SCM in batches, and a
+ * version that has been analyzed before is taken from the {@link BaselineCache}.
+ *
+ * @author Dennis Reedy
+ */
+class BaselineStage implements SourceListener {
+    private static final SourceFile END = new SourceFile("");
+    private static final int BATCH_SIZE = 64;
+    private final SCM scm;
+    private final ProgressListener listener;
+    private final BlockingQueue<SourceFile> queue = new LinkedBlockingQueue<SourceFile>();
+    private final Map<SourceFile, List<ViolationFingerprint>> violations = new HashMap<SourceFile, List<ViolationFingerprint>>();
+    private final Map<SourceFile, String> digests = new HashMap<SourceFile, String>();
+    private Thread thread;
+    private volatile boolean stopped;
+    private volatile Exception failure;
+    private int analyzed;
+    private int cached;
+
+    BaselineStage(SCM scm, ProgressListener listener) {
+        this.scm = scm;
+        this.listener = listener;
+    }
+
+    /**
+     * Receive the source files the log discovers. Must be called before the log is started, source
+     * files are queued until the stage is started.
+     */
+    void listen() {
+        scm.registerSourceListener(this);
+    }
+
+    /**
+     * Start analyzing the base versions of discovered source files
+     *
+     * @param mergeBase the revision to read the base versions from
+     * @param analyzer the analyzer to use, only used by this stage and closed when the stage completes
+     * @param budget the limits for the analysis of each file
+     * @param cache the cache of base violations
+     */
+    void start(final String mergeBase, final FileAnalyzer analyzer, final FileBudget budget, final BaselineCache cache) {
+        thread = new Thread(new Runnable() {
+            public void run() {
+                try {
+                    process(mergeBase, analyzer, budget, cache);
+                } catch (CodeCriticException | RuntimeException e) {
+                    failure = e;
+                } finally {
+                    analyzer.close();
+                }
+            }
+        }, "code-critic-baseline");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Indicate that all source files have been discovered
+     */
+    void finish() {
+        queue.add(END);
+    }
+
+    /**
+     * Wait for the base versions of all discovered source files to be analyzed
+     *
+     * @return the violations of the base version of each source file. Source files that do not exist
+     * at the merge base have no violations, source files whose base version could not be analyzed are
+     * omitted.
+     *
+     * @throws CodeCriticException if the base versions cannot be read
+     */
+    Map<SourceFile, List<ViolationFingerprint>> await() throws CodeCriticException {
+        try {
+            thread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CodeCriticException("Interrupted while waiting for the base analysis", e);
+        }
+        if(failure instanceof CodeCriticException)
+            throw (CodeCriticException)failure;
+        if(failure!=null)
+            throw new CodeCriticException("Unable to analyze the base", failure);
+        return violations;
+    }
+
+    /**
+     * Abandon the analysis if it has not completed, and stop queuing discovered source files
+     */
+    void stop() {
+        stopped = true;
+        queue.clear();
+        if(thread!=null)
+            thread.interrupt();
+    }
+
+    /**
+     * Get the digest of the base version of a source file, only valid once the stage has completed
+     *
+     * @param sourceFile the source file
+     *
+     * @return the SHA-1 digest of the base version, or null if the source file does not exist at the merge base
+     */
+    String getDigest(SourceFile sourceFile) {
+        return digests.get(sourceFile);
+    }
+
+    int getAnalyzed() {
+        return analyzed;
+    }
+
+    int getCached() {
+        return cached;
+    }
+
+    public void discovered(SourceFile sourceFile) {
+        if(!stopped)
+            queue.add(sourceFile);
+    }
+
+    private void process(String mergeBase, FileAnalyzer analyzer, FileBudget budget, BaselineCache cache) throws CodeCriticException {
+        List<SourceFile> batch = new ArrayList<SourceFile>();
+        boolean done = false;
+        while(!done) {
+            try {
+                batch.add(queue.take());
+            } catch (InterruptedException e) {
+                return;
+            }
+            queue.drainTo(batch, BATCH_SIZE-1);
+            done = batch.remove(END);
+            Map<SourceFile, String> contents = scm.readSources(mergeBase, batch);
+            for(SourceFile sourceFile : batch) {
+                if(!analyze(sourceFile, contents.get(sourceFile), analyzer, budget, cache))
+                    return;
+            }
+            batch.clear();
+        }
+    }
+
+    /*
+     * Record the violations of the base version of a source file, returning false if interrupted
+     */
+    private boolean analyze(SourceFile sourceFile, String content, FileAnalyzer analyzer, FileBudget budget, BaselineCache cache)
+        throws CodeCriticException {
+        if(content==null) {
+            violations.put(sourceFile, Collections.<ViolationFingerprint>emptyList());
+            return true;
+        }
+        String digest = Digest.sha1(content);
+        digests.put(sourceFile, digest);
+        List<ViolationFingerprint> found = cache.get(sourceFile, digest);
+        if(found!=null) {
+            cached++;
+            violations.put(sourceFile, found);
+            return true;
+        }
+        String exceeded = budget.checkSize(content.length());
+        if(exceeded!=null) {
+            debug("Not analyzing the base version of "+sourceFile+", "+exceeded);
+            return true;
+        }
+        RuleContext ctx = new RuleContext();
+        Report report = new Report();
+        ctx.setReport(report);
+        ctx.setSourceCodeFilename(sourceFile.getFile());
+        ctx.setSourceCodeFile(new File(sourceFile.getFile()));
+        try {
+            analyzed++;
+            analyzer.analyze(sourceFile, content, ctx);
+        } catch (TimeoutException e) {
+            debug("Not analyzing the base version of "+sourceFile+", "+analyzer.getTimeoutReason());
+            return true;
+        } catch (ExecutionException | RuntimeException e) {
+            debug("Error processing the base version of "+sourceFile+": "+e.getMessage());
+            return true;
+        } catch (InterruptedException e) {
+            return false;
+        }
+        found = ViolationFingerprint.of(report, sourceFile.getFile(), content);
+        violations.put(sourceFile, found);
+        cache.put(digest, found);
+        return true;
+    }
+
+    private void debug(String message) {
+        if(listener!=null)
+            listener.debug(message);
+    }
+}
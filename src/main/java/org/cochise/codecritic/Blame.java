@@ -0,0 +1,69 @@
+/*
+ * Copyright to the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.cochise.codecritic;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * The revision that last changed each line of a source file, and the author of each revision.
+ *
+ * @author Dennis Reedy
+ */
+public class Blame {
+    private final TreeMap<Integer, Object[]> ranges = new TreeMap<Integer, Object[]>();
+    private final Map<String, String> authors = new HashMap<String, String>();
+
+    /**
+     * Add a range of lines last changed by a revision
+     *
+     * @param revision the revision
+     * @param line the first line of the range
+     * @param count the number of lines in the range
+     */
+    public void add(String revision, int line, int count) {
+        ranges.put(line, new Object[]{revision, line+count-1});
+    }
+
+    /**
+     * Set the author of a revision
+     *
+     * @param revision the revision
+     * @param author the author
+     */
+    public void setAuthor(String revision, String author) {
+        authors.put(revision, author);
+    }
+
+    /**
+     * Get the revision that last changed a line
+     *
+     * @param line the line
+     *
+     * @return the revision, or null if the line is not known
+     */
+    public String getRevision(int line) {
+        Map.Entry<Integer, Object[]> range = ranges.floorEntry(line);
+        if(range==null || (Integer)range.getValue()[1]<line)
+            return null;
+        return (String)range.getValue()[0];
+    }
+
+    public String getAuthor(String revision) {
+        return authors.get(revision);
+    }
+}
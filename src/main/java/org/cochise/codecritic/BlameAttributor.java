@@ -0,0 +1,126 @@
+/*
+ * Copyright to the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.cochise.codecritic;
+
+import net.sourceforge.pmd.IRuleViolation;
+import net.sourceforge.pmd.Report;
+import org.cochise.codecritic.support.scm.SCM;
+
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * Attributes violations to the change that last touched the line they begin on. Each source file
+ * with violations is blamed once, with the files blamed in parallel, and the blamed revisions are
+ * joined to the change sets found by the log.
+ *
+ * @author Dennis Reedy
+ */
+class BlameAttributor {
+    /* Short enough to match Mercurial's short change set ids */
+    private static final int ID_LENGTH = 12;
+    private final SCM scm;
+    private final ProgressListener listener;
+
+    BlameAttributor(SCM scm, ProgressListener listener) {
+        this.scm = scm;
+        this.listener = listener;
+    }
+
+    /**
+     * Attribute the violations of the source files
+     *
+     * @param violations the violations of the source files
+     *
+     * @return an attribution for each line that has a violation and could be blamed
+     *
+     * @throws CodeCriticException if interrupted or the violations cannot be read
+     */
+    List<Attribution> attribute(ViolationSink violations) throws CodeCriticException {
+        Map<String, ChangeSet> changeSets = new HashMap<String, ChangeSet>();
+        for(ChangeSet changeSet : scm.getChangeSets())
+            changeSets.put(id(changeSet.getChangeSet()), changeSet);
+        ExecutorService executor = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors(),
+                                                                new ThreadFactory() {
+                                                                    public Thread newThread(Runnable runnable) {
+                                                                        Thread thread = new Thread(runnable, "code-critic-blame");
+                                                                        thread.setDaemon(true);
+                                                                        return thread;
+                                                                    }
+                                                                });
+        Map<SourceFile, Future<Blame>> blames = new LinkedHashMap<SourceFile, Future<Blame>>();
+        try {
+            for(final SourceFile sourceFile : violations.getSourceFiles()) {
+                blames.put(sourceFile, executor.submit(new Callable<Blame>() {
+                    public Blame call() throws CodeCriticException {
+                        return scm.blame(sourceFile);
+                    }
+                }));
+            }
+            List<Attribution> attributions = new ArrayList<Attribution>();
+            try (ViolationSink.Reader reader = violations.reader()) {
+                while(reader.next()) {
+                    Future<Blame> future = blames.get(reader.getSourceFile());
+                    if(future==null)
+                        continue;
+                    Blame blame;
+                    try {
+                        blame = future.get();
+                    } catch (ExecutionException e) {
+                        debug("Unable to blame "+reader.getSourceFile()+", "+e.getCause().getMessage());
+                        continue;
+                    }
+                    if(blame==null)
+                        continue;
+                    attribute(reader.getReport(), blame, changeSets, attributions);
+                }
+            }
+            return attributions;
+        } catch (IOException e) {
+            throw new CodeCriticException("Unable to read violations", e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CodeCriticException("Interrupted while attributing violations", e);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private void attribute(Report report, Blame blame, Map<String, ChangeSet> changeSets, List<Attribution> attributions) {
+        Set<String> attributed = new HashSet<String>();
+        for(Iterator<IRuleViolation> iter = report.iterator(); iter.hasNext();) {
+            IRuleViolation violation = iter.next();
+            String revision = blame.getRevision(violation.getBeginLine());
+            if(revision==null || !attributed.add(violation.getFilename()+":"+violation.getBeginLine()))
+                continue;
+            attributions.add(new Attribution(violation.getFilename(),
+                                             violation.getBeginLine(),
+                                             revision,
+                                             blame.getAuthor(revision),
+                                             changeSets.get(id(revision))));
+        }
+    }
+
+    private String id(String revision) {
+        return revision.length()>ID_LENGTH?revision.substring(0, ID_LENGTH):revision;
+    }
+
+    private void debug(String message) {
+        if(listener!=null)
+            listener.debug(message);
+    }
+}
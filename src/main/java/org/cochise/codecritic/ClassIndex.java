@@ -0,0 +1,326 @@
+/*
+ * Copyright to the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.cochise.codecritic;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * An index of the classes in a set of jars, mapping each class file to the jar and offset of its
+ * entry, so a class can be read without opening the jar as a zip file or scanning its entries. The
+ * index is built once for a set of jars, keyed by their paths, sizes and modification times, and
+ * written to the cache directory as a sorted table that is memory mapped and searched in place.
+ *
+ * <p>Where a class is in more than one jar, the first jar on the classpath wins. Jars in the ZIP64
+ * format are not indexed.</p>
+ *
+ * @author Dennis Reedy
+ */
+class ClassIndex {
+    private static final int MAGIC = 0x43434349;
+    private static final int FORMAT = 1;
+    /* name offset, name length, jar, method, local header offset, compressed size, size */
+    private static final int RECORD = 4+2+2+2+8+4+4;
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+    private final List<File> jars = new ArrayList<File>();
+    private final MappedByteBuffer index;
+    private final int count;
+    private final int records;
+    private final int strings;
+    private final Map<Integer, ByteBuffer> mappedJars = new HashMap<Integer, ByteBuffer>();
+
+    private ClassIndex(File file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            index = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        if(index.getInt()!=MAGIC || index.getInt()!=FORMAT)
+            throw new IOException("Unknown format");
+        int jarCount = index.getInt();
+        for(int i=0; i<jarCount; i++)
+            jars.add(new File(readString(index)));
+        count = index.getInt();
+        int stringsSize = index.getInt();
+        records = index.position();
+        strings = records+count*RECORD;
+        if(strings+stringsSize!=index.capacity())
+            throw new IOException("Truncated index");
+    }
+
+    /**
+     * Load the index of a set of jars from the cache directory, building it if it has not been built
+     *
+     * @param jars the jars, in classpath order
+     * @param cacheDirectory the cache directory
+     * @param listener the listener for progress, may be null
+     *
+     * @return the index
+     *
+     * @throws IOException if the index cannot be built
+     */
+    static ClassIndex load(List<File> jars, File cacheDirectory, ProgressListener listener) throws IOException {
+        StringBuilder key = new StringBuilder();
+        for(File jar : jars)
+            key.append(jar.getAbsolutePath()).append(':').append(jar.length()).append(':').append(jar.lastModified()).append('\n');
+        File directory = new File(cacheDirectory, "classindex");
+        File file = new File(directory, Digest.sha1(FORMAT+":"+key)+".idx");
+        long start = System.currentTimeMillis();
+        if(file.exists()) {
+            try {
+                ClassIndex index = new ClassIndex(file);
+                debug(listener, "Loaded class index of "+index.count+" classes from "+file.getPath()+" in "+
+                                (System.currentTimeMillis()-start)+" ms");
+                return index;
+            } catch (IOException e) {
+                debug(listener, "Unable to load class index "+file.getPath()+", "+e.getMessage());
+            }
+        }
+        build(jars, directory, file, listener);
+        ClassIndex index = new ClassIndex(file);
+        debug(listener, "Built class index of "+index.count+" classes in "+jars.size()+" jars in "+
+                        (System.currentTimeMillis()-start)+" ms");
+        return index;
+    }
+
+    /**
+     * Read a class file
+     *
+     * @param resource the resource name of the class file, for example java/lang/Object.class
+     *
+     * @return the content of the class file, or null if it is not in the index
+     *
+     * @throws IOException if the jar cannot be read
+     */
+    byte[] read(String resource) throws IOException {
+        int record = find(resource.getBytes(UTF8));
+        if(record<0)
+            return null;
+        ByteBuffer entry = index.duplicate();
+        entry.position(record+6);
+        int jar = entry.getShort();
+        int method = entry.getShort();
+        long offset = entry.getLong();
+        int compressedSize = entry.getInt();
+        int size = entry.getInt();
+        ByteBuffer buffer = jar(jar);
+        if(offset+30>buffer.limit())
+            throw new IOException("Invalid entry "+resource+" in "+jars.get(jar));
+        int position = (int)offset;
+        int data = position+30+(buffer.getShort(position+26)&0xffff)+(buffer.getShort(position+28)&0xffff);
+        byte[] compressed = new byte[compressedSize];
+        ByteBuffer content = buffer.duplicate();
+        content.position(data);
+        content.get(compressed);
+        if(method==0)
+            return compressed;
+        Inflater inflater = new Inflater(true);
+        try {
+            inflater.setInput(compressed);
+            byte[] bytes = new byte[size];
+            int read = 0;
+            while(read<size && !inflater.finished()) {
+                int n = inflater.inflate(bytes, read, size-read);
+                if(n==0 && (inflater.needsInput() || inflater.needsDictionary()))
+                    break;
+                read += n;
+            }
+            if(read!=size)
+                throw new IOException("Truncated entry "+resource+" in "+jars.get(jar));
+            return bytes;
+        } catch (DataFormatException e) {
+            throw new IOException("Invalid entry "+resource+" in "+jars.get(jar), e);
+        } finally {
+            inflater.end();
+        }
+    }
+
+    int size() {
+        return count;
+    }
+
+    /*
+     * Binary search the sorted records for a name, returning the position of its record or -1
+     */
+    private int find(byte[] name) {
+        int low = 0;
+        int high = count-1;
+        while(low<=high) {
+            int mid = (low+high)>>>1;
+            int record = records+mid*RECORD;
+            int c = compare(index.getInt(record), index.getShort(record+4)&0xffff, name);
+            if(c<0)
+                low = mid+1;
+            else if(c>0)
+                high = mid-1;
+            else
+                return record;
+        }
+        return -1;
+    }
+
+    private int compare(int nameOffset, int nameLength, byte[] name) {
+        int position = strings+nameOffset;
+        int length = Math.min(nameLength, name.length);
+        for(int i=0; i<length; i++) {
+            int c = (index.get(position+i)&0xff)-(name[i]&0xff);
+            if(c!=0)
+                return c;
+        }
+        return nameLength-name.length;
+    }
+
+    private synchronized ByteBuffer jar(int jar) throws IOException {
+        ByteBuffer buffer = mappedJars.get(jar);
+        if(buffer==null) {
+            buffer = map(jars.get(jar));
+            mappedJars.put(jar, buffer);
+        }
+        return buffer;
+    }
+
+    private static ByteBuffer map(File jar) throws IOException {
+        try (FileChannel channel = FileChannel.open(jar.toPath(), StandardOpenOption.READ)) {
+            if(channel.size()>Integer.MAX_VALUE)
+                throw new IOException("Too large");
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()).order(ByteOrder.LITTLE_ENDIAN);
+        }
+    }
+
+    private static void build(List<File> jars, File directory, File file, ProgressListener listener) throws IOException {
+        Map<String, long[]> entries = new HashMap<String, long[]>();
+        for(int jar=0; jar<jars.size(); jar++) {
+            try {
+                readCentralDirectory(jars.get(jar), jar, entries);
+            } catch (IOException e) {
+                debug(listener, "Not indexing "+jars.get(jar)+", "+e.getMessage());
+            }
+        }
+        List<byte[]> names = new ArrayList<byte[]>();
+        for(String name : entries.keySet())
+            names.add(name.getBytes(UTF8));
+        Collections.sort(names, new Comparator<byte[]>() {
+            public int compare(byte[] b1, byte[] b2) {
+                int length = Math.min(b1.length, b2.length);
+                for(int i=0; i<length; i++) {
+                    int c = (b1[i]&0xff)-(b2[i]&0xff);
+                    if(c!=0)
+                        return c;
+                }
+                return b1.length-b2.length;
+            }
+        });
+        if(!directory.exists() && !directory.mkdirs())
+            throw new IOException("Unable to create "+directory.getPath());
+        File temp = File.createTempFile("classindex", ".tmp", directory);
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(FORMAT);
+            out.writeInt(jars.size());
+            for(File jar : jars)
+                writeString(out, jar.getAbsolutePath());
+            int stringsSize = 0;
+            for(byte[] name : names)
+                stringsSize += name.length;
+            out.writeInt(names.size());
+            out.writeInt(stringsSize);
+            int nameOffset = 0;
+            for(byte[] name : names) {
+                long[] entry = entries.get(new String(name, UTF8));
+                out.writeInt(nameOffset);
+                out.writeShort(name.length);
+                out.writeShort((int)entry[0]);
+                out.writeShort((int)entry[1]);
+                out.writeLong(entry[2]);
+                out.writeInt((int)entry[3]);
+                out.writeInt((int)entry[4]);
+                nameOffset += name.length;
+            }
+            for(byte[] name : names)
+                out.write(name);
+        }
+        Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    /*
+     * Add the class file entries of a jar that are not already indexed, as jar, method, local header
+     * offset, compressed size and size
+     */
+    private static void readCentralDirectory(File jar, int jarIndex, Map<String, long[]> entries) throws IOException {
+        if(jarIndex>Short.MAX_VALUE)
+            throw new IOException("Too many jars");
+        ByteBuffer buffer = map(jar);
+        /* The end of central directory record is the last 22 bytes, followed by a comment of up to 64k */
+        int end = -1;
+        for(int position = buffer.limit()-22; position>=Math.max(0, buffer.limit()-22-0xffff); position--) {
+            if(buffer.getInt(position)==0x06054b50) {
+                end = position;
+                break;
+            }
+        }
+        if(end<0)
+            throw new IOException("Not a jar");
+        long directoryOffset = buffer.getInt(end+16)&0xffffffffL;
+        int entryCount = buffer.getShort(end+10)&0xffff;
+        if(directoryOffset==0xffffffffL || entryCount==0xffff)
+            throw new IOException("ZIP64 format");
+        int position = (int)directoryOffset;
+        for(int i=0; i<entryCount; i++) {
+            if(buffer.getInt(position)!=0x02014b50)
+                throw new IOException("Invalid central directory");
+            int method = buffer.getShort(position+10)&0xffff;
+            long compressedSize = buffer.getInt(position+20)&0xffffffffL;
+            long size = buffer.getInt(position+24)&0xffffffffL;
+            int nameLength = buffer.getShort(position+28)&0xffff;
+            int extraLength = buffer.getShort(position+30)&0xffff;
+            int commentLength = buffer.getShort(position+32)&0xffff;
+            long offset = buffer.getInt(position+42)&0xffffffffL;
+            byte[] name = new byte[nameLength];
+            ByteBuffer entry = buffer.duplicate();
+            entry.position(position+46);
+            entry.get(name);
+            String resource = new String(name, UTF8);
+            if(resource.endsWith(".class") && (method==0 || method==8) && !entries.containsKey(resource))
+                entries.put(resource, new long[]{jarIndex, method, offset, compressedSize, size});
+            position += 46+nameLength+extraLength+commentLength;
+        }
+    }
+
+    private static void writeString(DataOutputStream out, String s) throws IOException {
+        byte[] bytes = s.getBytes(UTF8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(ByteBuffer buffer) {
+        byte[] bytes = new byte[buffer.getInt()];
+        buffer.get(bytes);
+        return new String(bytes, UTF8);
+    }
+
+    private static void debug(ProgressListener listener, String message) {
+        if(listener!=null)
+            listener.debug(message);
+    }
+}
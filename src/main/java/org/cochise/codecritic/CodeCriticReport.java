@@ -15,31 +15,23 @@
  */
 package org.cochise.codecritic;
 
+import net.sourceforge.pmd.IRuleViolation;
 import net.sourceforge.pmd.PMD;
 import net.sourceforge.pmd.Report;
 import net.sourceforge.pmd.renderers.XMLRenderer;
 import net.sourceforge.pmd.util.StringUtil;
-import org.w3c.dom.Document;
-import org.xml.sax.SAXException;
 
-import javax.xml.parsers.DocumentBuilder;
-import javax.xml.parsers.DocumentBuilderFactory;
-import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.transform.Templates;
 import javax.xml.transform.Transformer;
 import javax.xml.transform.TransformerConfigurationException;
 import javax.xml.transform.TransformerException;
 import javax.xml.transform.TransformerFactory;
-import javax.xml.transform.dom.DOMSource;
 import javax.xml.transform.stream.StreamResult;
 import javax.xml.transform.stream.StreamSource;
 import java.io.*;
 import java.nio.file.Files;
 import java.text.SimpleDateFormat;
-import java.util.ArrayList;
-import java.util.Collections;
-import java.util.Date;
-import java.util.List;
-import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.*;
 
 /**
  * A custom report that includes mercurial changeset links and PMD report.
@@ -48,129 +40,327 @@ import java.util.concurrent.atomic.AtomicBoolean;
  */
 @SuppressWarnings({"PMD.LocalVariableCouldBeFinal", "PMD.MethodArgumentCouldBeFinal"})
 public class CodeCriticReport extends XMLRenderer {
+    private static final String XSLT_FILE_NAME = "code-critic-nicerhtml.xsl";
+    /* The compiled stylesheets, by the override they were compiled from, null for the classpath */
+    private static final Map<File, CompiledStylesheet> stylesheets = new HashMap<File, CompiledStylesheet>();
     private Transformer transformer;
-    private final AtomicBoolean renderedChangeSets = new AtomicBoolean(false);
-    private final AtomicBoolean renderedJavaSources = new AtomicBoolean(false);
-    private final AtomicBoolean renderedOtherSources = new AtomicBoolean(false);
     private Writer outputWriter;
-    private static String branch;
-    private static final List<ChangeSet> changeSets = new ArrayList<ChangeSet>();
-    private static final List<SourceFile> javaSources = new ArrayList<SourceFile>();
-    private static final List<SourceFile> otherSources = new ArrayList<SourceFile>();
-    private static String rulesUsed = "?";
-    private static String repository = "?";
-    private static String totalFiles = "?";
-    private static String totalJavaFiles = "?";
-    private static String minimumPriority = "5";
-    private static File outputDirectory;
+    private File xmlFile;
+    private boolean xslt;
+    private File pages;
+    private File diffBundle;
+    private File baseDirectory;
+    private HtmlReport html;
+    private final List<String[]> skippedFiles = new ArrayList<String[]>();
+    private final List<Duplication> duplications = new ArrayList<Duplication>();
+    private final List<CommitTrend> trends = new ArrayList<CommitTrend>();
+    private final List<Attribution> attributions = new ArrayList<Attribution>();
+    private final ViolationSummary summary = new ViolationSummary();
+    private final List<ReportWriter> writers = new ArrayList<ReportWriter>();
+    private ReportContext context;
 
-    static void setOutputDirectory(File outputDirectory) {
-        CodeCriticReport.outputDirectory = outputDirectory;
+    /**
+     * Set the configuration of the report, must be set before the report is started
+     *
+     * @param context the configuration of the report
+     */
+    void setContext(ReportContext context) {
+        this.context = context;
     }
 
-    static void setRulesUsed(String rulesUsed) {
-        CodeCriticReport.rulesUsed = rulesUsed;
+    /**
+     * Add a file that was not analyzed to the report
+     *
+     * @param fileName the name of the file
+     * @param reason why the file was not analyzed
+     */
+    void addSkippedFile(String fileName, String reason) {
+        synchronized(skippedFiles) {
+            skippedFiles.add(new String[]{fileName, reason});
+        }
     }
 
-    static void setRepository(String repository) {
-        CodeCriticReport.repository = repository;
+    /**
+     * Add duplicated blocks of code to the report
+     *
+     * @param found the duplicated blocks
+     */
+    void addDuplications(List<Duplication> found) {
+        synchronized(duplications) {
+            duplications.addAll(found);
+        }
     }
 
-    static void setTotalFiles(String totalFiles) {
-        CodeCriticReport.totalFiles = totalFiles;
+    /**
+     * Add the violations each change set introduced and fixed to the report
+     *
+     * @param commitTrends the trend of each change set, oldest first
+     */
+    void addTrends(List<CommitTrend> commitTrends) {
+        synchronized(trends) {
+            trends.addAll(commitTrends);
+        }
     }
 
-    static void setTotalJavaFiles(String totalJavaFiles) {
-        CodeCriticReport.totalJavaFiles = totalJavaFiles;
+    /**
+     * Add the changes that last touched the lines violations begin on to the report
+     *
+     * @param found the attribution of each line with a violation
+     */
+    void addAttributions(List<Attribution> found) {
+        synchronized(attributions) {
+            attributions.addAll(found);
+        }
     }
 
-    static void setMinimumPriority(String minimumPriority) {
-        CodeCriticReport.minimumPriority = minimumPriority;
+    /**
+     * Render the report through the XSLT stylesheet rather than writing the HTML directly. The
+     * stylesheet is also used if it is overridden in the base directory of the project.
+     *
+     * @param xslt true to render the report through the stylesheet
+     */
+    void setXslt(boolean xslt) {
+        this.xslt = xslt;
     }
 
-    public static void setBranch(String b) {
-        branch = b;
+    /**
+     * Set the base directory of the analyzed project, a stylesheet in this directory overrides the one on
+     * the classpath. If not set, the current directory is used.
+     *
+     * @param baseDirectory the base directory of the analyzed project
+     */
+    void setBaseDirectory(File baseDirectory) {
+        this.baseDirectory = baseDirectory;
     }
 
-    static void setChangeSetList(List<ChangeSet> changeSet) {
-        if(changeSet!=null)
-            changeSets.addAll(changeSet);
+    /**
+     * Write the report as an index page, with the violations of each package on a page of its own and
+     * the larger tables paged through from a data file. Pages are not written if the report is rendered
+     * through the XSLT stylesheet.
+     *
+     * @param index the index page of the report, the other pages are written to a directory beside it
+     */
+    void setPages(File index) {
+        this.pages = index;
     }
-    
-    static void setJavaSources(List<SourceFile> sourceFiles) {
-        if(sourceFiles!=null)
-            javaSources.addAll(sourceFiles);
+
+    /**
+     * Write the diffs of the change sets to a single bundle, with a viewer page beside it, rather than
+     * to a file for each change set
+     *
+     * @param bundle the bundle file, in a directory of the directory the report is written to
+     */
+    void setDiffBundle(File bundle) {
+        this.diffBundle = bundle;
     }
 
-    static void setOtherSources(List<SourceFile> sourceFiles) {
-        if(sourceFiles!=null)
-            otherSources.addAll(sourceFiles);
+    /**
+     * Write the report in another format as well, such as JSON or SARIF
+     *
+     * @param writer the writer of the report in the other format
+     */
+    void addWriter(ReportWriter writer) {
+        writers.add(writer);
     }
 
     @Override
     public void renderFileReport(Report report) throws IOException {
-        renderChangeSets();
-        renderJavaSourceFiles();
-        renderOtherSourceFiles();
+        for(ReportWriter writer : writers)
+            writer.add(report);
+        if(html!=null) {
+            html.add(report);
+            return;
+        }
+        for(Iterator<IRuleViolation> iterator = report.iterator(); iterator.hasNext();)
+            summary.add(iterator.next());
         super.renderFileReport(report);
     }
 
-    private  void renderChangeSets() throws IOException {
-        synchronized(this){
-            if(!renderedChangeSets.get()) {
-                try {
-                    Writer writer = getWriter();
-                    StringBuffer buf = new StringBuffer();
-                    for(ChangeSet changeSet : changeSets) {
-                        if(changeSet.getDiff()!=null) {
-                            File diffDir = new File(outputDirectory, "diffs");
-                            if(!diffDir.exists())
-                                diffDir.mkdirs();
-                            File diff = new File(diffDir, changeSet.getChangeSet()+".html");
-                            Files.write(diff.toPath(), changeSet.getDiff().getBytes());
-                            changeSet.setLink(diff.toURI().toURL().toString());
-                        }
-                        buf.append("<changeset number=\"").append(changeSet.getNumber());
-                        buf.append("\" link=\"").append(changeSet.getLink());
-                        buf.append("\" changeset=\"").append(changeSet.getChangeSet());
-                        buf.append("\" developer=\"").append(changeSet.getDeveloper());
-                        if(changeSet.getEmail()!=null)
-                            buf.append("\" email=\"").append(changeSet.getEmail());
-                        buf.append("\" when=\"").append(changeSet.getDate());
-                        buf.append("\" message=\"");
-                        StringUtil.appendXmlEscaped(buf, changeSet.getMessage());
-                        buf.append("\"/>").append(PMD.EOL);
-                    }
-                    writer.write(buf.toString());
-                } finally {
-                    renderedChangeSets.set(true);
-                }
+    private void renderChangeSets() throws IOException {
+        Writer writer = getWriter();
+        StringBuffer buf = new StringBuffer();
+        writeDiffs();
+        for(ChangeSet changeSet : context.getChangeSets()) {
+            buf.append("<changeset number=\"").append(changeSet.getNumber());
+            buf.append("\" link=\"").append(changeSet.getLink());
+            buf.append("\" changeset=\"").append(changeSet.getChangeSet());
+            buf.append("\" developer=\"").append(changeSet.getDeveloper());
+            if(changeSet.getEmail()!=null)
+                buf.append("\" email=\"").append(changeSet.getEmail());
+            buf.append("\" when=\"").append(changeSet.getDate());
+            buf.append("\" message=\"");
+            StringUtil.appendXmlEscaped(buf, changeSet.getMessage());
+            buf.append("\"/>").append(PMD.EOL);
+        }
+        writer.write(buf.toString());
+    }
+
+    /*
+     * Write the diff of each change set to a file, or all of them to a bundle, linking the change set to it
+     */
+    private void writeDiffs() throws IOException {
+        if(diffBundle!=null) {
+            new DiffBundle(diffBundle).write(context.getChangeSets());
+            return;
+        }
+        for(ChangeSet changeSet : context.getChangeSets()) {
+            if(changeSet.getDiff()!=null) {
+                File diffDir = new File(context.getOutputDirectory(), "diffs");
+                if(!diffDir.exists())
+                    diffDir.mkdirs();
+                File diff = new File(diffDir, changeSet.getChangeSet()+".html");
+                Files.write(diff.toPath(), changeSet.getDiff().getBytes());
+                changeSet.setLink(diff.toURI().toURL().toString());
             }
         }
     }
 
-    private void renderJavaSourceFiles() throws IOException {
-        synchronized(this){
-            if(!renderedJavaSources.get()) {
-                try {
-                    renderSourceFiles("java-sourcefile", javaSources);
-                } finally {
-                    renderedJavaSources.set(true);
-                }
+    private void renderSkippedFiles() throws IOException {
+        StringBuffer buf = new StringBuffer();
+        synchronized(skippedFiles) {
+            for(String[] skipped : skippedFiles) {
+                buf.append("<skipped-sourcefile name=\"");
+                StringUtil.appendXmlEscaped(buf, skipped[0]);
+                buf.append("\" reason=\"");
+                StringUtil.appendXmlEscaped(buf, skipped[1]);
+                buf.append("\"/>").append(PMD.EOL);
             }
         }
+        getWriter().write(buf.toString());
     }
 
-    private void renderOtherSourceFiles() throws IOException {
-        synchronized(this){
-            if(!renderedOtherSources.get()) {
-                try {
-                    renderSourceFiles("other-sourcefile", otherSources);
-                } finally {
-                    renderedOtherSources.set(true);
+    private void renderDuplications() throws IOException {
+        StringBuffer buf = new StringBuffer();
+        synchronized(duplications) {
+            for(Duplication duplication : duplications) {
+                Duplication.Occurrence occurrence = duplication.getOccurrence();
+                buf.append("<duplication tokens=\"").append(duplication.getTokens());
+                buf.append("\" lines=\"").append(occurrence.getEndLine()-occurrence.getBeginLine()+1).append("\">");
+                buf.append(PMD.EOL);
+                renderOccurrence(buf, occurrence);
+                for(Duplication.Occurrence other : duplication.getOthers())
+                    renderOccurrence(buf, other);
+                buf.append("</duplication>").append(PMD.EOL);
+            }
+        }
+        getWriter().write(buf.toString());
+    }
+
+    private void renderOccurrence(StringBuffer buf, Duplication.Occurrence occurrence) {
+        buf.append("    <occurrence file=\"");
+        StringUtil.appendXmlEscaped(buf, occurrence.getFile());
+        buf.append("\" beginline=\"").append(occurrence.getBeginLine());
+        buf.append("\" endline=\"").append(occurrence.getEndLine());
+        buf.append("\" base=\"").append(occurrence.isBase()).append("\"/>").append(PMD.EOL);
+    }
+
+    private void renderTrends() throws IOException {
+        StringBuffer buf = new StringBuffer();
+        synchronized(trends) {
+            for(CommitTrend trend : trends) {
+                ChangeSet changeSet = trend.getChangeSet();
+                buf.append("<commit-trend number=\"").append(changeSet.getNumber());
+                buf.append("\" link=\"").append(changeSet.getLink());
+                buf.append("\" changeset=\"").append(changeSet.getChangeSet());
+                buf.append("\" developer=\"");
+                StringUtil.appendXmlEscaped(buf, changeSet.getDeveloper());
+                buf.append("\" when=\"");
+                StringUtil.appendXmlEscaped(buf, changeSet.getDate());
+                buf.append("\" introduced=\"").append(trend.getIntroduced().size());
+                buf.append("\" fixed=\"").append(trend.getFixed().size()).append("\">").append(PMD.EOL);
+                for(ViolationFingerprint violation : trend.getIntroduced())
+                    renderTrendViolation(buf, "introduced", violation);
+                for(ViolationFingerprint violation : trend.getFixed())
+                    renderTrendViolation(buf, "fixed", violation);
+                buf.append("</commit-trend>").append(PMD.EOL);
+            }
+        }
+        getWriter().write(buf.toString());
+    }
+
+    private void renderTrendViolation(StringBuffer buf, String tag, ViolationFingerprint violation) {
+        buf.append("    <").append(tag).append(" file=\"");
+        StringUtil.appendXmlEscaped(buf, violation.getFile());
+        buf.append("\" line=\"").append(violation.getLine());
+        buf.append("\" rule=\"").append(violation.getRule());
+        buf.append("\" priority=\"").append(violation.getPriority()).append("\">");
+        StringUtil.appendXmlEscaped(buf, violation.getMessage());
+        buf.append("</").append(tag).append(">").append(PMD.EOL);
+    }
+
+    private void renderAttributions() throws IOException {
+        StringBuffer buf = new StringBuffer();
+        synchronized(attributions) {
+            for(Attribution attribution : attributions) {
+                buf.append("<attribution file=\"");
+                StringUtil.appendXmlEscaped(buf, attribution.getFile());
+                buf.append("\" line=\"").append(attribution.getLine());
+                buf.append("\" changeset=\"").append(attribution.getRevision());
+                if(attribution.getDeveloper()!=null) {
+                    buf.append("\" developer=\"");
+                    StringUtil.appendXmlEscaped(buf, attribution.getDeveloper());
+                }
+                ChangeSet changeSet = attribution.getChangeSet();
+                if(changeSet!=null) {
+                    buf.append("\" number=\"").append(changeSet.getNumber());
+                    buf.append("\" link=\"").append(changeSet.getLink());
                 }
+                buf.append("\"/>").append(PMD.EOL);
             }
         }
+        getWriter().write(buf.toString());
+    }
+
+    /*
+     * Write the counts of the report, so the stylesheet does not have to count the elements of the report
+     */
+    private void renderSummary() throws IOException {
+        StringBuffer buf = new StringBuffer();
+        int introduced = 0;
+        int fixed = 0;
+        synchronized(trends) {
+            for(CommitTrend trend : trends) {
+                introduced += trend.getIntroduced().size();
+                fixed += trend.getFixed().size();
+            }
+        }
+        buf.append("<summary files=\"").append(summary.getFiles());
+        buf.append("\" violations=\"").append(summary.getViolations());
+        synchronized(skippedFiles) {
+            buf.append("\" skipped=\"").append(skippedFiles.size());
+        }
+        synchronized(duplications) {
+            buf.append("\" duplications=\"").append(duplications.size());
+        }
+        buf.append("\" introduced=\"").append(introduced);
+        buf.append("\" fixed=\"").append(fixed).append("\">").append(PMD.EOL);
+        for(int priority=1; priority<=ViolationSummary.PRIORITIES; priority++) {
+            buf.append("    <priority-count priority=\"").append(priority);
+            buf.append("\" violations=\"").append(summary.getViolations(priority)).append("\"/>").append(PMD.EOL);
+        }
+        for(ViolationSummary.Count rule : summary.getRuleCounts()) {
+            buf.append("    <rule-count name=\"");
+            StringUtil.appendXmlEscaped(buf, rule.name);
+            buf.append("\" ruleset=\"");
+            StringUtil.appendXmlEscaped(buf, rule.ruleSet==null?"":rule.ruleSet);
+            buf.append("\" priority=\"").append(rule.priority);
+            buf.append("\" violations=\"").append(rule.total).append("\"/>").append(PMD.EOL);
+        }
+        for(ViolationSummary.Count file : summary.getFileCounts())
+            renderCount(buf, "file-count", file);
+        for(ViolationSummary.Count pkg : summary.getPackageCounts())
+            renderCount(buf, "package-count", pkg);
+        buf.append("</summary>").append(PMD.EOL);
+        getWriter().write(buf.toString());
+    }
+
+    private void renderCount(StringBuffer buf, String tag, ViolationSummary.Count count) {
+        buf.append("    <").append(tag).append(" name=\"");
+        StringUtil.appendXmlEscaped(buf, count.name);
+        buf.append("\" violations=\"").append(count.total);
+        for(int priority=1; priority<=ViolationSummary.PRIORITIES; priority++)
+            buf.append("\" p").append(priority).append("=\"").append(count.priorities[priority]);
+        buf.append("\"/>").append(PMD.EOL);
     }
 
     private void renderSourceFiles(String tag, List<SourceFile> sources) throws IOException {
@@ -190,25 +380,39 @@ public class CodeCriticReport extends XMLRenderer {
         writer.write(buf.toString());
     }
 
+    /**
+     * The XML report is written to a file as it is rendered, rather than held in memory, and transformed
+     * from that file once it is complete, so the memory used does not grow with the size of the XML.
+     */
     @Override
     public void start() throws IOException {
+        if(context==null)
+            throw new IOException("The report has no context");
+        synchronized(attributions) {
+            for(ReportWriter writer : writers)
+                writer.start(context, attributions);
+        }
+        if(!xslt && getStylesheetOverride()==null) {
+            this.outputWriter = getWriter();
+            writeDiffs();
+            synchronized(attributions) {
+                html = new HtmlReport(context.getOutputDirectory(), attributions, pages!=null);
+            }
+            return;
+        }
+        try {
+            this.transformer = getTemplates().newTransformer();
+        } catch (TransformerConfigurationException e) {
+            throw new IOException("Unable to prepare the XSLT transformer", e);
+        }
         // We keep the initial writer to put the final html output
         this.outputWriter = getWriter();
         // We use a new one to store the XML...
-        Writer writer = new StringWriter();
+        File outputDirectory = context.getOutputDirectory();
+        xmlFile = outputDirectory==null?File.createTempFile("code-critic", ".xml"):
+                                        File.createTempFile("code-critic", ".xml", outputDirectory);
+        Writer writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(xmlFile), this.encoding));
         setWriter(writer);
-        InputStream xslt;
-        String xsltFileName = "code-critic-nicerhtml.xsl";
-        File file = new File(xsltFileName);
-        if (file.exists() && file.canRead()) {
-            xslt = new FileInputStream(file);
-        } else {
-            xslt = this.getClass().getClassLoader().getResourceAsStream(xsltFileName);
-        }
-        if (xslt == null) {
-            throw new FileNotFoundException("Can't file XSLT sheet :" + xsltFileName);
-        }
-        this.prepareTransformer(xslt);
         // Now we build the XML file
         //Writer writer = getWriter();
         StringBuffer buf = new StringBuffer();
@@ -218,70 +422,164 @@ public class CodeCriticReport extends XMLRenderer {
         createBranchAttr(buf);
         createRulesUsedAttr(buf);
         createMinimumPriorityAttr(buf);
+        createAnalysisModeAttr(buf);
         createRepository(buf);
         createTotalFiles(buf);
         createTotalJavaFiles(buf);
         buf.append('>').append(PMD.EOL);
         writer.write(buf.toString());
+        /* Written up front, so that a report without violations still lists the changes */
+        renderChangeSets();
+        renderSourceFiles("java-sourcefile", context.getJavaSources());
+        renderSourceFiles("other-sourcefile", context.getOtherSources());
     }
 
     /**
-     * Prepare the transformer, doing the proper "building"...
+     * Get the compiled stylesheet. Compiled stylesheets are shared by all reports, keyed by the override
+     * they were compiled from, and an override is compiled again only if it has changed since. The XSLT
+     * processor can be chosen with the javax.xml.transform.TransformerFactory system property.
      *
-     * @param xslt, the xslt provided as an InputStream
+     * @return the compiled stylesheet
+     *
+     * @throws IOException if the stylesheet cannot be found or compiled
      */
-    private void prepareTransformer(InputStream xslt) {
-        if (xslt != null) {
-            try {
-                //Get a TransformerFactory object
-                TransformerFactory factory = TransformerFactory.newInstance();
-                StreamSource src = new StreamSource(xslt);
-                //Get an XSL Transformer object
-                this.transformer = factory.newTransformer(src);
-            } catch (TransformerConfigurationException e) {
-                e.printStackTrace();
+    private Templates getTemplates() throws IOException {
+        File override = getStylesheetOverride();
+        long modified = override==null?0:override.lastModified();
+        synchronized(stylesheets) {
+            CompiledStylesheet compiled = stylesheets.get(override);
+            if(compiled==null || compiled.modified!=modified) {
+                compiled = new CompiledStylesheet(compile(override), modified);
+                stylesheets.put(override, compiled);
             }
+            return compiled.templates;
+        }
+    }
+
+    private static Templates compile(File override) throws IOException {
+        InputStream xslt;
+        if (override!=null) {
+            xslt = new FileInputStream(override);
+        } else {
+            xslt = CodeCriticReport.class.getClassLoader().getResourceAsStream(XSLT_FILE_NAME);
+        }
+        if (xslt == null) {
+            throw new FileNotFoundException("Can't file XSLT sheet :" + XSLT_FILE_NAME);
+        }
+        try (InputStream in = xslt) {
+            return TransformerFactory.newInstance().newTemplates(new StreamSource(in));
+        } catch (TransformerConfigurationException e) {
+            throw new IOException("Unable to compile "+XSLT_FILE_NAME, e);
         }
     }
 
     @Override
     public void end() throws IOException {
+        synchronized(skippedFiles) {
+            synchronized(duplications) {
+                synchronized(trends) {
+                    for(ReportWriter writer : writers)
+                        writer.end(skippedFiles, duplications, trends);
+                }
+            }
+        }
+        if(html!=null) {
+            try {
+                synchronized(skippedFiles) {
+                    synchronized(duplications) {
+                        synchronized(trends) {
+                            if(pages!=null) {
+                                String name = pages.getName();
+                                File directory = new File(pages.getParentFile(),
+                                                          name.substring(0, name.length()-".html".length())+"-files");
+                                html.writePages(outputWriter, directory, name, getAttributes(), context.getChangeSets(),
+                                                context.getJavaSources(), context.getOtherSources(), skippedFiles,
+                                                duplications, trends);
+                            } else {
+                                html.write(outputWriter, getAttributes(), context.getChangeSets(), context.getJavaSources(),
+                                           context.getOtherSources(), skippedFiles, duplications, trends);
+                            }
+                        }
+                    }
+                }
+            } finally {
+                discard();
+            }
+            return;
+        }
         // First we finish the XML report
+        renderSkippedFiles();
+        renderDuplications();
+        renderTrends();
+        renderAttributions();
+        renderSummary();
         super.end();
         // Now we transform it using XSLT
-        Writer writer = super.getWriter();
-        if (writer instanceof StringWriter) {
-            StringWriter w = (StringWriter) writer;
-            StringBuffer buffer = w.getBuffer();
-            InputStream xml = new ByteArrayInputStream(buffer.toString().getBytes(this.encoding));
-            Document doc = this.getDocument(xml);
-            this.transform(doc);
-        } else {
-            // Should not happen !
-            new IOException("Wrong writer").printStackTrace();
+        try {
+            getWriter().close();
+            this.transform(xmlFile);
+        } finally {
+            discard();
         }
+    }
 
+    /**
+     * Delete the XML report, if a report was started but is not going to be completed
+     */
+    void discard() {
+        for(ReportWriter writer : writers)
+            writer.discard();
+        if(html!=null) {
+            html.discard();
+            html = null;
+        }
+        if(xmlFile==null)
+            return;
+        try {
+            getWriter().close();
+        } catch (IOException e) {
+            // The XML is being discarded
+        }
+        setWriter(outputWriter);
+        if(!xmlFile.delete() && xmlFile.exists())
+            xmlFile.deleteOnExit();
+        xmlFile = null;
     }
 
-    private void transform(Document doc) {
-        DOMSource source = new DOMSource(doc);
-        this.setWriter(new StringWriter());
+    private void transform(File xml) throws IOException {
+        StreamSource source = new StreamSource(xml);
         StreamResult result = new StreamResult(this.outputWriter);
         try {
             transformer.transform(source, result);
         } catch (TransformerException e) {
-            e.printStackTrace();
+            throw new IOException("Unable to transform "+xml.getPath(), e);
         }
     }
 
-    private Document getDocument(InputStream xml) {
-        try {
-            DocumentBuilder parser = DocumentBuilderFactory.newInstance().newDocumentBuilder();
-            return parser.parse(xml);
-        } catch (ParserConfigurationException | SAXException | IOException e) {
-            e.printStackTrace();
-        }
-        return null;
+    private File getStylesheetOverride() {
+        File file = new File(baseDirectory, XSLT_FILE_NAME).getAbsoluteFile();
+        return file.exists() && file.canRead()?file:null;
+    }
+
+    /*
+     * The attributes of the report, named as they are in the XML report
+     */
+    private Map<String, String> getAttributes() {
+        Map<String, String> attributes = new HashMap<String, String>();
+        attributes.put("version", PMD.VERSION);
+        attributes.put("timestamp", timestamp());
+        attributes.put("branch", context.getBranch());
+        attributes.put("rulesUsed", context.getRulesUsed());
+        attributes.put("minimumPriority", context.getMinimumPriority());
+        attributes.put("analysisMode", context.getAnalysisMode().toString());
+        attributes.put("repository", context.getRepository());
+        attributes.put("totalFiles", Integer.toString(context.getTotalFiles()));
+        attributes.put("totalJavaFiles", Integer.toString(context.getTotalJavaFiles()));
+        return attributes;
+    }
+
+    private String timestamp() {
+        return new SimpleDateFormat("MM-dd-yyyy HH:mm:ss").format(new Date());
     }
 
     private void createVersionAttr(StringBuffer buffer) {
@@ -289,30 +587,44 @@ public class CodeCriticReport extends XMLRenderer {
     }
 
     private void createTimestampAttr(StringBuffer buffer) {
-        buffer.append(" timestamp=\"").append(new SimpleDateFormat("MM-dd-yyyy HH:mm:ss").format(new Date())).append('"');
+        buffer.append(" timestamp=\"").append(timestamp()).append('"');
     }
 
     private void createBranchAttr(StringBuffer buffer) {
-        buffer.append(" branch=\"").append(branch).append('"');
+        buffer.append(" branch=\"").append(context.getBranch()).append('"');
     }
 
     private void createRulesUsedAttr(StringBuffer buffer) {
-        buffer.append(" rulesUsed=\"").append(rulesUsed).append('"');
+        buffer.append(" rulesUsed=\"").append(context.getRulesUsed()).append('"');
     }
 
     private void createMinimumPriorityAttr(StringBuffer buffer) {
-        buffer.append(" minimumPriority=\"").append(minimumPriority).append('"');
+        buffer.append(" minimumPriority=\"").append(context.getMinimumPriority()).append('"');
+    }
+
+    private void createAnalysisModeAttr(StringBuffer buffer) {
+        buffer.append(" analysisMode=\"").append(context.getAnalysisMode()).append('"');
     }
 
     private void createRepository(StringBuffer buffer) {
-        buffer.append(" repository=\"").append(repository).append('"');
+        buffer.append(" repository=\"").append(context.getRepository()).append('"');
     }
 
     private void createTotalFiles(StringBuffer buffer) {
-        buffer.append(" totalFiles=\"").append(totalFiles).append('"');
+        buffer.append(" totalFiles=\"").append(context.getTotalFiles()).append('"');
     }
 
     private void createTotalJavaFiles(StringBuffer buffer) {
-        buffer.append(" totalJavaFiles=\"").append(totalJavaFiles).append('"');
+        buffer.append(" totalJavaFiles=\"").append(context.getTotalJavaFiles()).append('"');
+    }
+
+    private static class CompiledStylesheet {
+        final Templates templates;
+        final long modified;
+
+        CompiledStylesheet(Templates templates, long modified) {
+            this.templates = templates;
+            this.modified = modified;
+        }
     }
 }
@@ -0,0 +1,54 @@
+/*
+ * Copyright to the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.cochise.codecritic;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The violations a change set introduced and fixed in the Java source files it touched.
+ *
+ * @author Dennis Reedy
+ */
+class CommitTrend {
+    private final ChangeSet changeSet;
+    private final List<ViolationFingerprint> introduced = new ArrayList<ViolationFingerprint>();
+    private final List<ViolationFingerprint> fixed = new ArrayList<ViolationFingerprint>();
+
+    CommitTrend(ChangeSet changeSet) {
+        this.changeSet = changeSet;
+    }
+
+    void addIntroduced(List<ViolationFingerprint> violations) {
+        introduced.addAll(violations);
+    }
+
+    void addFixed(List<ViolationFingerprint> violations) {
+        fixed.addAll(violations);
+    }
+
+    ChangeSet getChangeSet() {
+        return changeSet;
+    }
+
+    List<ViolationFingerprint> getIntroduced() {
+        return introduced;
+    }
+
+    List<ViolationFingerprint> getFixed() {
+        return fixed;
+    }
+}
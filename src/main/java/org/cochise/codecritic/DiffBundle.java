@@ -0,0 +1,140 @@
+/*
+ * Copyright to the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.cochise.codecritic;
+
+import java.io.*;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Writes the diffs of the change sets of a report to a single bundle, rather than to a file for each
+ * change set. Each diff is compressed on its own and appended to the bundle, and a viewer page beside
+ * the bundle holds the offset and length of each diff, fetching only the diff being viewed with an HTTP
+ * range request. Change sets are linked to the viewer page.
+ *
+ * @author Dennis Reedy
+ */
+class DiffBundle {
+    /*
+     * Fetches the diff named by the fragment of the page's URL. A server that ignores the range sends the
+     * whole bundle, which the diff is then taken from.
+     */
+    private static final String SCRIPT =
+        "function show() {\n"+
+        "    var target = document.getElementById(\"diff\");\n"+
+        "    var changeSet = decodeURIComponent(location.hash.substring(1));\n"+
+        "    var entry = index.hasOwnProperty(changeSet) ? index[changeSet] : null;\n"+
+        "    if (!entry) {\n"+
+        "        target.textContent = \"There is no diff for \" + changeSet;\n"+
+        "        return;\n"+
+        "    }\n"+
+        "    var end = entry[0] + entry[1];\n"+
+        "    fetch(bundle, {headers: {\"Range\": \"bytes=\" + entry[0] + \"-\" + (end - 1)}}).then(function (response) {\n"+
+        "        if (!response.ok)\n"+
+        "            throw new Error(response.status + \" \" + response.statusText);\n"+
+        "        return response.arrayBuffer().then(function (buffer) {\n"+
+        "            return response.status === 206 ? buffer : buffer.slice(entry[0], end);\n"+
+        "        });\n"+
+        "    }).then(function (buffer) {\n"+
+        "        var diff = new Blob([buffer]).stream().pipeThrough(new DecompressionStream(\"gzip\"));\n"+
+        "        return new Response(diff).text();\n"+
+        "    }).then(function (html) {\n"+
+        "        target.innerHTML = html;\n"+
+        "    }).catch(function (e) {\n"+
+        "        target.textContent = \"Unable to load the diff of \" + changeSet + \", the report must be opened from a web server: \" + e;\n"+
+        "    });\n"+
+        "}\n"+
+        "window.onload = show;\n"+
+        "window.onhashchange = show;\n";
+    private final File bundle;
+    private final File viewer;
+
+    /**
+     * Create a bundle
+     *
+     * @param bundle the bundle file, the viewer page is written beside it with the same name and an html
+     * extension
+     */
+    DiffBundle(File bundle) {
+        this.bundle = bundle;
+        String name = bundle.getName();
+        int extension = name.lastIndexOf('.');
+        this.viewer = new File(bundle.getParentFile(), (extension>0?name.substring(0, extension):name)+".html");
+    }
+
+    /**
+     * Write the diffs of the change sets that have one, and link the change sets to them. Links are
+     * relative to the directory above the bundle's directory, which is where the report is written.
+     *
+     * @param changeSets the change sets
+     *
+     * @throws IOException if the bundle or viewer page cannot be written
+     */
+    void write(List<ChangeSet> changeSets) throws IOException {
+        File directory = bundle.getParentFile();
+        if(!directory.exists() && !directory.mkdirs())
+            throw new IOException("Unable to create "+directory.getPath());
+        /* The offset and length of the diff of each change set */
+        Map<String, long[]> index = new LinkedHashMap<String, long[]>();
+        long offset = 0;
+        try (OutputStream out = new BufferedOutputStream(new FileOutputStream(bundle))) {
+            ByteArrayOutputStream member = new ByteArrayOutputStream();
+            for(ChangeSet changeSet : changeSets) {
+                if(changeSet.getDiff()==null || index.containsKey(changeSet.getChangeSet()))
+                    continue;
+                member.reset();
+                try (GZIPOutputStream gzip = new GZIPOutputStream(member)) {
+                    gzip.write(changeSet.getDiff().getBytes("UTF-8"));
+                }
+                member.writeTo(out);
+                index.put(changeSet.getChangeSet(), new long[]{offset, member.size()});
+                offset += member.size();
+            }
+        }
+        writeViewer(index);
+        String link = directory.getName()+"/"+uri(viewer.getName())+"#";
+        for(ChangeSet changeSet : changeSets) {
+            if(index.containsKey(changeSet.getChangeSet()))
+                changeSet.setLink(link+changeSet.getChangeSet());
+        }
+    }
+
+    private void writeViewer(Map<String, long[]> index) throws IOException {
+        try (JsonWriter json = new JsonWriter(new BufferedWriter(new OutputStreamWriter(new FileOutputStream(viewer), "UTF-8")))) {
+            json.raw("<html>\n<head>\n<title>Code Critic Diff</title>\n<script type=\"text/javascript\">\n");
+            json.raw("var bundle = ").value(uri(bundle.getName())).raw(";\n");
+            /* The offset and length of the diff of each change set in the bundle */
+            json.raw("var index = ").beginObject();
+            for(Map.Entry<String, long[]> entry : index.entrySet())
+                json.name(entry.getKey()).beginArray().value(entry.getValue()[0]).value(entry.getValue()[1]).endArray();
+            json.endObject().raw(";\n");
+            json.raw(SCRIPT);
+            json.raw("</script>\n</head>\n<body>\n<div id=\"diff\"></div>\n</body>\n</html>\n");
+        }
+    }
+
+    private String uri(String name) throws IOException {
+        try {
+            return new URI(null, null, name, null).getRawPath();
+        } catch (URISyntaxException e) {
+            throw new IOException("Unable to link to "+name, e);
+        }
+    }
+}
@@ -0,0 +1,91 @@
+/*
+ * Copyright to the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.cochise.codecritic;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A block of code in a branch source file that is duplicated elsewhere, either in the base the
+ * branch is compared with, or in the branch's own changed source files.
+ *
+ * @author Dennis Reedy
+ */
+class Duplication {
+    private final int tokens;
+    private final Occurrence occurrence;
+    private final List<Occurrence> others = new ArrayList<Occurrence>();
+
+    Duplication(int tokens, Occurrence occurrence) {
+        this.tokens = tokens;
+        this.occurrence = occurrence;
+    }
+
+    int getTokens() {
+        return tokens;
+    }
+
+    /**
+     * @return the occurrence of the block in the branch source file
+     */
+    Occurrence getOccurrence() {
+        return occurrence;
+    }
+
+    /**
+     * @return where else the block occurs
+     */
+    List<Occurrence> getOthers() {
+        return others;
+    }
+
+    void addOther(Occurrence other) {
+        others.add(other);
+    }
+
+    static class Occurrence {
+        private final String file;
+        private final int beginLine;
+        private final int endLine;
+        private final boolean base;
+
+        Occurrence(String file, int beginLine, int endLine, boolean base) {
+            this.file = file;
+            this.beginLine = beginLine;
+            this.endLine = endLine;
+            this.base = base;
+        }
+
+        String getFile() {
+            return file;
+        }
+
+        int getBeginLine() {
+            return beginLine;
+        }
+
+        int getEndLine() {
+            return endLine;
+        }
+
+        /**
+         * @return true if the occurrence is in the base, false if it is in a branch source file
+         */
+        boolean isBase() {
+            return base;
+        }
+    }
+}
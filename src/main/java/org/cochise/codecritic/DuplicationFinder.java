@@ -0,0 +1,212 @@
+/*
+ * Copyright to the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.cochise.codecritic;
+
+import org.cochise.codecritic.support.scm.SCM;
+
+import java.io.IOException;
+import java.util.*;
+
+/**
+ * Finds blocks of code in the Java source files changed in a branch that are duplicated in the base
+ * the branch is compared with, or in the changed source files themselves. Only the changed source
+ * files, and the base sources that share a fingerprint with them, are tokenized.
+ *
+ * @author Dennis Reedy
+ */
+class DuplicationFinder {
+    private final DuplicationIndex index;
+    private final int minimumTokens;
+
+    DuplicationFinder(DuplicationIndex index, int minimumTokens) {
+        this.index = index;
+        this.minimumTokens = minimumTokens;
+    }
+
+    /**
+     * Find duplicated blocks
+     *
+     * @param sourceFiles the Java source files changed in the branch
+     * @param contents the content of the changed source files
+     * @param scm the SCM to read base sources from
+     * @param changedLinesOnly if true, only blocks that overlap changed lines are returned
+     *
+     * @return the duplicated blocks
+     *
+     * @throws CodeCriticException if base sources cannot be read
+     * @throws IOException if a source file cannot be read
+     */
+    List<Duplication> find(List<SourceFile> sourceFiles, SourceContents contents, SCM scm, boolean changedLinesOnly)
+        throws CodeCriticException, IOException {
+        int runLength = index.runLength();
+        List<SourceTokens> branchTokens = new ArrayList<SourceTokens>();
+        List<long[]> branchHashes = new ArrayList<long[]>();
+        Map<Long, List<int[]>> branchFingerprints = new HashMap<Long, List<int[]>>();
+        for(int f=0; f<sourceFiles.size(); f++) {
+            SourceTokens tokens = SourceTokens.tokenize(contents.get(sourceFiles.get(f)));
+            long[] hashes = tokens.hashes(runLength);
+            branchTokens.add(tokens);
+            branchHashes.add(hashes);
+            for(int position : SourceTokens.winnow(hashes, index.window())) {
+                List<int[]> list = branchFingerprints.get(hashes[position]);
+                if(list==null) {
+                    list = new ArrayList<int[]>(1);
+                    branchFingerprints.put(hashes[position], list);
+                }
+                list.add(new int[]{f, position});
+            }
+        }
+
+        /* Base sources that share a fingerprint with a changed source, other than the changed sources */
+        Map<String, String> candidates = new HashMap<String, String>();
+        Set<String> changed = new HashSet<String>();
+        for(int f=0; f<sourceFiles.size(); f++) {
+            for(long hash : branchHashes.get(f)) {
+                for(DuplicationIndex.Location location : index.lookup(hash)) {
+                    if(candidates.containsKey(location.path) || changed.contains(location.path))
+                        continue;
+                    if(isChanged(location.path, sourceFiles))
+                        changed.add(location.path);
+                    else
+                        candidates.put(location.path, index.getId(location.path));
+                }
+            }
+        }
+        Map<String, SourceTokens> baseTokens = new HashMap<String, SourceTokens>();
+        if(!candidates.isEmpty()) {
+            for(Map.Entry<String, String> e : scm.readBaseSources(candidates).entrySet())
+                baseTokens.put(e.getKey(), SourceTokens.tokenize(e.getValue()));
+        }
+
+        List<Duplication> duplications = new ArrayList<Duplication>();
+        for(int f=0; f<sourceFiles.size(); f++) {
+            SourceFile sourceFile = sourceFiles.get(f);
+            SourceTokens tokens = branchTokens.get(f);
+            long[] hashes = branchHashes.get(f);
+            Map<String, Duplication> blocks = new LinkedHashMap<String, Duplication>();
+            Map<Object, List<int[]>> found = new HashMap<Object, List<int[]>>();
+            for(int i=0; i<hashes.length; i++) {
+                for(DuplicationIndex.Location location : index.lookup(hashes[i])) {
+                    SourceTokens other = baseTokens.get(location.path);
+                    if(other==null)
+                        continue;
+                    int[] match = extend(tokens, i, other, location.position, false, found, location.path);
+                    if(match!=null)
+                        add(blocks, sourceFile, tokens, match,
+                            new Duplication.Occurrence(location.path,
+                                                       other.getLine(match[2]),
+                                                       other.getLine(match[2]+match[1]-match[0]-1),
+                                                       true));
+                }
+                List<int[]> branchLocations = branchFingerprints.get(hashes[i]);
+                if(branchLocations==null)
+                    continue;
+                for(int[] location : branchLocations) {
+                    /* Each pair of changed sources is compared once, and a source with itself */
+                    if(location[0]<f || (location[0]==f && location[1]>=i))
+                        continue;
+                    SourceTokens other = branchTokens.get(location[0]);
+                    int[] match = extend(tokens, i, other, location[1], location[0]==f, found, location[0]);
+                    if(match!=null)
+                        add(blocks, sourceFile, tokens, match,
+                            new Duplication.Occurrence(sourceFiles.get(location[0]).getFile(),
+                                                       other.getLine(match[2]),
+                                                       other.getLine(match[2]+match[1]-match[0]-1),
+                                                       false));
+                }
+            }
+            for(Duplication duplication : blocks.values()) {
+                Duplication.Occurrence occurrence = duplication.getOccurrence();
+                LineRanges changedLines = sourceFile.getChangedLines();
+                if(changedLinesOnly && changedLines!=null &&
+                   !changedLines.overlaps(occurrence.getBeginLine(), occurrence.getEndLine()))
+                    continue;
+                duplications.add(duplication);
+            }
+        }
+        return duplications;
+    }
+
+    /*
+     * Extend a run of tokens found in another source into the longest matching block. Returns the
+     * start and end of the block in the source, and its start in the other source, or null if the
+     * run is part of a block already found, does not match, or is shorter than the minimum.
+     */
+    private int[] extend(SourceTokens tokens, int i, SourceTokens other, int j, boolean self,
+                         Map<Object, List<int[]>> found, Object key) {
+        List<int[]> blocks = found.get(key);
+        if(blocks==null) {
+            blocks = new ArrayList<int[]>();
+            found.put(key, blocks);
+        }
+        for(int[] block : blocks) {
+            if(block[0]-block[2]==i-j && i>=block[0] && i<block[1])
+                return null;
+        }
+        int run = index.runLength();
+        for(int k=0; k<run; k++) {
+            if(!tokens.same(i+k, other, j+k))
+                return null;
+        }
+        int start = i;
+        int otherStart = j;
+        while(start>0 && otherStart>0 && tokens.same(start-1, other, otherStart-1)) {
+            start--;
+            otherStart--;
+        }
+        int end = i+run;
+        int otherEnd = j+run;
+        while(end<tokens.size() && otherEnd<other.size() && tokens.same(end, other, otherEnd) &&
+              (!self || otherEnd<start)) {
+            end++;
+            otherEnd++;
+        }
+        if(self && otherEnd>start)
+            return null;
+        blocks.add(new int[]{start, end, otherStart});
+        if(end-start<minimumTokens)
+            return null;
+        return new int[]{start, end, otherStart};
+    }
+
+    private void add(Map<String, Duplication> blocks, SourceFile sourceFile, SourceTokens tokens, int[] match,
+                     Duplication.Occurrence other) {
+        String key = match[0]+":"+match[1];
+        Duplication duplication = blocks.get(key);
+        if(duplication==null) {
+            duplication = new Duplication(match[1]-match[0],
+                                          new Duplication.Occurrence(sourceFile.getFile(),
+                                                                     tokens.getLine(match[0]),
+                                                                     tokens.getLine(match[1]-1),
+                                                                     false));
+            blocks.put(key, duplication);
+        }
+        duplication.addOther(other);
+    }
+
+    /*
+     * Whether a base source is one of the changed sources, which are compared in their changed form
+     */
+    private boolean isChanged(String path, List<SourceFile> sourceFiles) {
+        String relative = path.replace('\\', '/');
+        for(SourceFile sourceFile : sourceFiles) {
+            String file = sourceFile.getFile().replace('\\', '/');
+            if(file.equals(relative) || file.endsWith("/"+relative))
+                return true;
+        }
+        return false;
+    }
+}
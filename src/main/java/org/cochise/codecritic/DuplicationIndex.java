@@ -0,0 +1,233 @@
+/*
+ * Copyright to the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.cochise.codecritic;
+
+import org.cochise.codecritic.support.scm.SCM;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.*;
+
+/**
+ * A persisted index of the fingerprints of the Java sources of the base a branch is compared with.
+ * Each source is keyed by its path and the SCM's identifier of its content, so when the base moves
+ * only the sources that changed are read and fingerprinted again.
+ *
+ * @author Dennis Reedy
+ */
+class DuplicationIndex {
+    private static final int FORMAT = 1;
+    private static final int BATCH_SIZE = 100;
+    private final File file;
+    private final int minimumTokens;
+    private final Map<String, Entry> entries = new HashMap<String, Entry>();
+    private final Map<Long, List<Location>> locations = new HashMap<Long, List<Location>>();
+    private final ProgressListener listener;
+
+    /**
+     * Create a DuplicationIndex, loading it if it has been saved
+     *
+     * @param file the file the index is saved to
+     * @param minimumTokens the minimum number of tokens in a duplicated block
+     * @param listener the listener to send progress messages to, may be null
+     */
+    DuplicationIndex(File file, int minimumTokens, ProgressListener listener) {
+        this.file = file;
+        this.minimumTokens = minimumTokens;
+        this.listener = listener;
+        if(file.exists()) {
+            try {
+                load();
+            } catch (IOException e) {
+                entries.clear();
+                debug("Unable to load "+file.getPath()+", "+e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * The number of tokens hashed together; runs of tokens of the minimum length always contain a
+     * fingerprint when the window is {@link #window()}
+     */
+    int runLength() {
+        return Math.max(minimumTokens/2, 1);
+    }
+
+    int window() {
+        return minimumTokens-runLength()+1;
+    }
+
+    /**
+     * Bring the index up to date with the base of the branch
+     *
+     * @param scm the SCM to obtain base sources from
+     *
+     * @return false if the SCM cannot determine the base, otherwise true
+     *
+     * @throws CodeCriticException if base sources cannot be read
+     */
+    boolean update(SCM scm) throws CodeCriticException {
+        Map<String, String> base = scm.getBaseJavaSources();
+        if(base==null)
+            return false;
+        int removed = 0;
+        for(Iterator<Map.Entry<String, Entry>> iter = entries.entrySet().iterator(); iter.hasNext();) {
+            Map.Entry<String, Entry> e = iter.next();
+            if(!e.getValue().id.equals(base.get(e.getKey()))) {
+                iter.remove();
+                removed++;
+            }
+        }
+        Map<String, String> batch = new HashMap<String, String>();
+        int added = 0;
+        for(Map.Entry<String, String> e : base.entrySet()) {
+            if(entries.containsKey(e.getKey()))
+                continue;
+            batch.put(e.getKey(), e.getValue());
+            if(batch.size()==BATCH_SIZE) {
+                added += add(scm, batch);
+                batch.clear();
+            }
+        }
+        added += add(scm, batch);
+        debug(String.format("Duplication index has %d base sources, %d added, %d removed",
+                            entries.size(), added, removed));
+        locations.clear();
+        for(Entry entry : entries.values()) {
+            for(int i=0; i<entry.fingerprints.length; i++) {
+                List<Location> list = locations.get(entry.fingerprints[i]);
+                if(list==null) {
+                    list = new ArrayList<Location>(1);
+                    locations.put(entry.fingerprints[i], list);
+                }
+                list.add(new Location(entry.path, entry.positions[i]));
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Get the locations in base sources of a run of tokens
+     *
+     * @param hash the hash of the run of tokens
+     *
+     * @return the locations, empty if the run was not fingerprinted in any base source
+     */
+    List<Location> lookup(long hash) {
+        List<Location> list = locations.get(hash);
+        return list==null?Collections.<Location>emptyList():list;
+    }
+
+    String getId(String path) {
+        Entry entry = entries.get(path);
+        return entry==null?null:entry.id;
+    }
+
+    private int add(SCM scm, Map<String, String> batch) throws CodeCriticException {
+        if(batch.isEmpty())
+            return 0;
+        Map<String, String> contents = scm.readBaseSources(batch);
+        for(Map.Entry<String, String> e : contents.entrySet()) {
+            SourceTokens tokens = SourceTokens.tokenize(e.getValue());
+            long[] hashes = tokens.hashes(runLength());
+            int[] selected = SourceTokens.winnow(hashes, window());
+            Entry entry = new Entry(e.getKey(), batch.get(e.getKey()), selected.length);
+            for(int i=0; i<selected.length; i++) {
+                entry.fingerprints[i] = hashes[selected[i]];
+                entry.positions[i] = selected[i];
+            }
+            entries.put(entry.path, entry);
+        }
+        return contents.size();
+    }
+
+    /**
+     * Save the index
+     *
+     * @throws IOException if the index cannot be written
+     */
+    void save() throws IOException {
+        File directory = file.getParentFile();
+        if(!directory.exists() && !directory.mkdirs())
+            throw new IOException("Unable to create "+directory.getPath());
+        File temp = File.createTempFile("index", ".tmp", directory);
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp)))) {
+            out.writeInt(FORMAT);
+            out.writeInt(minimumTokens);
+            out.writeInt(entries.size());
+            for(Entry entry : entries.values()) {
+                out.writeUTF(entry.path);
+                out.writeUTF(entry.id);
+                out.writeInt(entry.fingerprints.length);
+                for(int i=0; i<entry.fingerprints.length; i++) {
+                    out.writeLong(entry.fingerprints[i]);
+                    out.writeInt(entry.positions[i]);
+                }
+            }
+        }
+        Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    private void load() throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            /* An index built for a different minimum is not usable, and is rebuilt */
+            if(in.readInt()!=FORMAT || in.readInt()!=minimumTokens)
+                return;
+            int count = in.readInt();
+            for(int i=0; i<count; i++) {
+                Entry entry = new Entry(in.readUTF(), in.readUTF(), in.readInt());
+                for(int j=0; j<entry.fingerprints.length; j++) {
+                    entry.fingerprints[j] = in.readLong();
+                    entry.positions[j] = in.readInt();
+                }
+                entries.put(entry.path, entry);
+            }
+        }
+    }
+
+    private void debug(String message) {
+        if(listener!=null)
+            listener.debug(message);
+    }
+
+    private static class Entry {
+        final String path;
+        final String id;
+        final long[] fingerprints;
+        final int[] positions;
+
+        Entry(String path, String id, int size) {
+            this.path = path;
+            this.id = id;
+            this.fingerprints = new long[size];
+            this.positions = new int[size];
+        }
+    }
+
+    /**
+     * The position of a fingerprinted run of tokens in a base source
+     */
+    static class Location {
+        final String path;
+        final int position;
+
+        Location(String path, int position) {
+            this.path = path;
+            this.position = position;
+        }
+    }
+}
@@ -0,0 +1,137 @@
+/*
+ * Copyright to the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.cochise.codecritic;
+
+import net.sourceforge.pmd.*;
+
+import java.io.StringReader;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Analyzes the content of source files with the rule sets that apply to them, within the limits of
+ * a {@link FileBudget}.
+ *
+ * @author Dennis Reedy
+ */
+class FileAnalyzer {
+    private static final int QUEUED = 0;
+    private static final int RUNNING = 1;
+    private static final int DONE = 2;
+    private static final int ABANDONED = 3;
+    private static final AtomicInteger abandoned = new AtomicInteger();
+    private final RuleSetFilter ruleSetFilter;
+    private final FileBudget budget;
+    private final ClassLoader auxClassLoader;
+    private ExecutorService executor;
+
+    FileAnalyzer(RuleSetFilter ruleSetFilter, FileBudget budget) {
+        this(ruleSetFilter, budget, null);
+    }
+
+    /**
+     * Create an analyzer
+     *
+     * @param ruleSetFilter selects the rule sets to apply to each file
+     * @param budget the limits for the analysis of each file
+     * @param auxClassLoader the class loader type resolution loads referenced classes with, or null
+     * to use the class loader of PMD
+     */
+    FileAnalyzer(RuleSetFilter ruleSetFilter, FileBudget budget, ClassLoader auxClassLoader) {
+        this.ruleSetFilter = ruleSetFilter;
+        this.budget = budget;
+        this.auxClassLoader = auxClassLoader;
+        this.executor = budget.createExecutor();
+    }
+
+    /**
+     * Analyze the content of a source file, adding violations to the report of the context
+     *
+     * @param sourceFile the source file
+     * @param content the content to analyze, the current content or the content as of a revision
+     * @param ctx the context to analyze with, a new context for each analysis since an abandoned
+     * analysis may still be using a previous one
+     *
+     * @return false if no rules apply to the content
+     *
+     * @throws TimeoutException if the analysis did not complete within the time limit
+     * @throws ExecutionException if the analysis failed
+     * @throws InterruptedException if interrupted while waiting for the analysis
+     * @throws CodeCriticException if the rules cannot be reloaded after an analysis is abandoned
+     */
+    boolean analyze(SourceFile sourceFile, final String content, final RuleContext ctx)
+        throws TimeoutException, ExecutionException, InterruptedException, CodeCriticException {
+        final RuleSets ruleSets = ruleSetFilter.select(sourceFile, content);
+        if(ruleSets.getAllRules().isEmpty())
+            return false;
+        final AtomicInteger state = new AtomicInteger(QUEUED);
+        Future<Void> analysis = executor.submit(new Callable<Void>() {
+            public Void call() throws PMDException {
+                if(!state.compareAndSet(QUEUED, RUNNING))
+                    return null;
+                try {
+                    ruleSets.start(ctx);
+                    PMD pmd = new PMD();
+                    if(auxClassLoader!=null)
+                        pmd.setClassLoader(auxClassLoader);
+                    pmd.processFile(new StringReader(content), ruleSets, ctx, SourceType.JAVA_17);
+                    return null;
+                } finally {
+                    if(!state.compareAndSet(RUNNING, DONE))
+                        abandoned.decrementAndGet();
+                }
+            }
+        });
+        try {
+            budget.await(analysis);
+        } catch (TimeoutException e) {
+            /* PMD does not respond to interruption, abandon the analysis and the rules it is using */
+            analysis.cancel(true);
+            if(state.compareAndSet(RUNNING, ABANDONED))
+                abandoned.incrementAndGet();
+            else
+                state.compareAndSet(QUEUED, ABANDONED);
+            executor.shutdownNow();
+            executor = budget.createExecutor();
+            ruleSetFilter.reload();
+            throw e;
+        } catch (ExecutionException e) {
+            ruleSets.end(ctx);
+            throw e;
+        }
+        ruleSets.end(ctx);
+        return true;
+    }
+
+    String getTimeoutReason() {
+        return "analysis did not complete in "+budget.getFileTimeout()+" seconds";
+    }
+
+    /**
+     * @return the number of abandoned analyses, in this process, whose threads are still running
+     */
+    static int getAbandoned() {
+        return abandoned.get();
+    }
+
+    ClassLoader getAuxClassLoader() {
+        return auxClassLoader;
+    }
+
+    void close() {
+        executor.shutdownNow();
+    }
+}
@@ -0,0 +1,90 @@
+/*
+ * Copyright to the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.cochise.codecritic;
+
+import java.util.concurrent.*;
+
+/**
+ * The limits placed on the analysis of a single file, so that a pathological file (generated, very
+ * large, or deeply nested) cannot stall a run. Files larger than the maximum size are not analyzed,
+ * and an analysis that does not complete in time is abandoned.
+ *
+ * @author Dennis Reedy
+ */
+class FileBudget {
+    private final long maxFileSize;
+    private final long fileTimeout;
+
+    /**
+     * Create a FileBudget
+     *
+     * @param maxFileSize the maximum size of a file to analyze in bytes, 0 for no limit
+     * @param fileTimeout the maximum time to analyze a file in seconds, 0 for no limit
+     */
+    FileBudget(long maxFileSize, long fileTimeout) {
+        this.maxFileSize = maxFileSize;
+        this.fileTimeout = fileTimeout;
+    }
+
+    long getFileTimeout() {
+        return fileTimeout;
+    }
+
+    /**
+     * Check whether content of a size exceeds the maximum file size
+     *
+     * @param size the size of the content
+     *
+     * @return the reason the content should not be analyzed, or null if it should be
+     */
+    String checkSize(long size) {
+        if(maxFileSize>0 && size>maxFileSize)
+            return "file size of "+size+" bytes exceeds the limit of "+maxFileSize+" bytes";
+        return null;
+    }
+
+    /**
+     * Create the executor that files are analyzed with. Its thread does not keep the JVM from
+     * exiting, since an abandoned analysis may never complete.
+     *
+     * @return a single threaded executor
+     */
+    ExecutorService createExecutor() {
+        return Executors.newSingleThreadExecutor(new ThreadFactory() {
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "code-critic-analysis");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    /**
+     * Wait for the analysis of a file to complete
+     *
+     * @param analysis the analysis of the file
+     *
+     * @throws TimeoutException if the analysis does not complete within the time limit
+     * @throws ExecutionException if the analysis failed
+     * @throws InterruptedException if interrupted while waiting
+     */
+    void await(Future<?> analysis) throws TimeoutException, ExecutionException, InterruptedException {
+        if(fileTimeout>0)
+            analysis.get(fileTimeout, TimeUnit.SECONDS);
+        else
+            analysis.get();
+    }
+}
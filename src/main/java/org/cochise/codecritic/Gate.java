@@ -0,0 +1,148 @@
+/*
+ * Copyright to the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.cochise.codecritic;
+
+import net.sourceforge.pmd.IRuleViolation;
+import net.sourceforge.pmd.Report;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.util.*;
+
+/**
+ * Decides whether a branch passes a merge gate: the branch fails once the number of violations at or
+ * above the gate priority reaches the threshold. Files are ordered so that a failing branch is likely
+ * to fail early; files that failed the previous gate run for the repository first, then larger files.
+ *
+ * @author Dennis Reedy
+ */
+class Gate {
+    private final int priority;
+    private final int threshold;
+    private final File history;
+    private final Set<String> failedFiles = new LinkedHashSet<String>();
+    private final Set<String> previouslyFailed = new LinkedHashSet<String>();
+    private final Set<String> analyzedFiles = new HashSet<String>();
+    private int violations;
+    private int analyzed;
+
+    /**
+     * Create a Gate
+     *
+     * @param priority violations of this priority or higher (a lower number) count against the gate
+     * @param threshold the number of violations that fails the gate
+     * @param cacheDirectory the directory the files that failed the gate are kept in between runs
+     * @param repository the repository being gated
+     */
+    Gate(int priority, int threshold, File cacheDirectory, String repository) {
+        this.priority = priority;
+        this.threshold = Math.max(threshold, 1);
+        this.history = new File(new File(cacheDirectory, "gate"), String.valueOf(Digest.sha1(repository)));
+        if(history.exists()) {
+            try {
+                previouslyFailed.addAll(Files.readAllLines(history.toPath(), Charset.forName("UTF-8")));
+            } catch (IOException e) {
+                /* Only used for ordering, analyze in the default order */
+            }
+        }
+    }
+
+    int getPriority() {
+        return priority;
+    }
+
+    int getThreshold() {
+        return threshold;
+    }
+
+    int getViolations() {
+        return violations;
+    }
+
+    int getAnalyzed() {
+        return analyzed;
+    }
+
+    boolean failed() {
+        return violations>=threshold;
+    }
+
+    /**
+     * Order source files by the likelihood of the file failing the gate
+     *
+     * @param sourceFiles the source files to order
+     * @param contents the content of the source files
+     *
+     * @return a new list of the source files, ordered
+     *
+     * @throws IOException if the size of a source file cannot be determined
+     */
+    List<SourceFile> order(List<SourceFile> sourceFiles, SourceContents contents) throws IOException {
+        final Map<SourceFile, Long> sizes = new HashMap<SourceFile, Long>();
+        for(SourceFile sourceFile : sourceFiles)
+            sizes.put(sourceFile, contents.size(sourceFile));
+        List<SourceFile> ordered = new ArrayList<SourceFile>(sourceFiles);
+        Collections.sort(ordered, new Comparator<SourceFile>() {
+            public int compare(SourceFile s1, SourceFile s2) {
+                boolean f1 = previouslyFailed.contains(s1.getFile());
+                boolean f2 = previouslyFailed.contains(s2.getFile());
+                if(f1!=f2)
+                    return f1?-1:1;
+                return sizes.get(s2).compareTo(sizes.get(s1));
+            }
+        });
+        return ordered;
+    }
+
+    /**
+     * Count the violations of an analyzed file against the gate
+     *
+     * @param sourceFile the analyzed source file
+     * @param fileReport the violations found in the file
+     */
+    void record(SourceFile sourceFile, Report fileReport) {
+        analyzed++;
+        analyzedFiles.add(sourceFile.getFile());
+        for(Iterator<IRuleViolation> iter = fileReport.iterator(); iter.hasNext();) {
+            IRuleViolation violation = iter.next();
+            if(violation.getRule().getPriority()<=priority) {
+                violations++;
+                failedFiles.add(sourceFile.getFile());
+            }
+        }
+    }
+
+    /**
+     * Keep the files that failed the gate, so they are analyzed first the next time. Files that failed
+     * a previous run and were not analyzed in this run, because the gate failed first or the branch does
+     * not change them, are kept as well.
+     *
+     * @throws IOException if the files cannot be written
+     */
+    void save() throws IOException {
+        File directory = history.getParentFile();
+        if(!directory.exists() && !directory.mkdirs())
+            throw new IOException("Unable to create "+directory.getPath());
+        Set<String> failing = new LinkedHashSet<String>(failedFiles);
+        for(String file : previouslyFailed) {
+            if(!analyzedFiles.contains(file))
+                failing.add(file);
+        }
+        Files.write(history.toPath(), failing, Charset.forName("UTF-8"));
+    }
+}
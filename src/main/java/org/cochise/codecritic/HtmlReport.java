@@ -0,0 +1,817 @@
+/*
+ * Copyright to the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.cochise.codecritic;
+
+import net.sourceforge.pmd.IRuleViolation;
+import net.sourceforge.pmd.Report;
+
+import java.io.*;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.*;
+
+/**
+ * Writes the HTML report directly, with the same sections as code-critic-nicerhtml.xsl, rather than
+ * building XML and transforming it. The section of each file is written to a temporary file as its
+ * report is rendered, and only the counts the summary, rule list and file list need are kept, so the
+ * memory used does not grow with the number of violations. The report is written either as a single
+ * page, or as an index page with a page for the violations of each package.
+ *
+ * @author Dennis Reedy
+ */
+class HtmlReport {
+    private static final String STYLE =
+        "    .bannercell {\n        border: 0px;\n        padding: 0px;\n    }\n"+
+        "    body {\n        margin-left: 10px;\n        margin-right: 10px;\n"+
+        "        font:normal 80% arial,helvetica,sanserif;\n        background-color:#FFFFFF;\n        color:#000000;\n    }\n"+
+        "    .a td {\n        background: #efefef;\n    }\n"+
+        "    .b td {\n        background: #fff;\n    }\n"+
+        "    th, td {\n        text-align: left;\n        vertical-align: top;\n    }\n"+
+        "    th {\n        font-weight:bold;\n        background: #ccc;\n        color: black;\n    }\n"+
+        "    table, th, td {\n        font-size:100%;\n        border: none\n        width:100%\n    }\n"+
+        "    table.log tr td, tr th {\n    }\n\n"+
+        "    h2 {\n        font-weight:bold;\n        font-size:140%;\n        margin-bottom: 5;\n    }\n"+
+        "    h3 {\n        font-size:100%;\n        font-weight:bold;\n        background: #525D76;\n        color: white;\n"+
+        "        text-decoration: none;\n        padding: 5px;\n        margin-right: 2px;\n        margin-left: 2px;\n"+
+        "        margin-bottom: 0px;\n    }\n"+
+        "    a.white:link {color: #FF9999;}\n    a.white:visited {color: #FF9999;}\n    a.white:hover {color: #FF9999;}\n\n"+
+        "    .p1 { background:#FF9999; }\n    .p2 { background:#FFCC66; }\n    .p3 { background:#FFFF99; }\n"+
+        "    .p4 { background:#99FF99; }\n    .p5 { background:#a6caf0; }\n";
+    private static final String SCRIPT =
+        "    function openTable(tableid) {\n        which = document.getElementById(tableid);\n"+
+        "        if (which.style.display == \"\") {\n            which.style.display = \"none\";\n        }\n"+
+        "        else {\n            which.style.display = \"\";\n            which.style.width = \"100%\";\n        }\n    }\n";
+    private static final String HR = "<hr size=\"1\" width=\"100%\" align=\"left\"/>\n";
+    private static final String BACK_TO_TOP = "<a href=\"#top\">Back to top</a>\n";
+    private static final String DATA_FILE_NAME = "data.js";
+    private static final String SCRIPT_FILE_NAME = "code-critic-pages.js";
+    private static final String PACKAGE_PAGE = "package-";
+    private final File sectionsFile;
+    private final OutputStream sections;
+    /* Where the section of each file is in the sections file, in the order the files were added */
+    private final Map<ViolationSummary.Count, FileSection> fileSections = new LinkedHashMap<ViolationSummary.Count, FileSection>();
+    private long sectionsLength;
+    private final ViolationSummary summary = new ViolationSummary();
+    private final Map<String, List<Attribution>> attributions = new HashMap<String, List<Attribution>>();
+    private final boolean attributed;
+    private final boolean paged;
+    private ViolationSummary.Count file;
+
+    /**
+     * Create a report
+     *
+     * @param directory the directory to write the file sections to while the report is rendered, or null
+     * for the default temporary directory
+     * @param attributions the changes that last touched the lines violations begin on
+     * @param paged whether the report is written as pages, with the file sections on package pages
+     *
+     * @throws IOException if the file sections cannot be written
+     */
+    HtmlReport(File directory, List<Attribution> attributions, boolean paged) throws IOException {
+        this.paged = paged;
+        for(Attribution attribution : attributions) {
+            String key = attribution.getFile()+":"+attribution.getLine();
+            List<Attribution> attributed = this.attributions.get(key);
+            if(attributed==null) {
+                attributed = new ArrayList<Attribution>();
+                this.attributions.put(key, attributed);
+            }
+            attributed.add(attribution);
+        }
+        attributed = !attributions.isEmpty();
+        sectionsFile = directory==null?File.createTempFile("code-critic", ".html"):
+                                       File.createTempFile("code-critic", ".html", directory);
+        sections = new BufferedOutputStream(new FileOutputStream(sectionsFile));
+    }
+
+    /**
+     * Add the violations of a report. A file section is started whenever the file of a violation
+     * differs from the file of the violation before it.
+     *
+     * @param report the report
+     *
+     * @throws IOException if the file section cannot be written
+     */
+    void add(Report report) throws IOException {
+        StringBuilder buf = new StringBuilder();
+        for(Iterator<IRuleViolation> iterator = report.iterator(); iterator.hasNext();) {
+            IRuleViolation violation = iterator.next();
+            ViolationSummary.Count counted = summary.add(violation);
+            if(counted!=file) {
+                endFile(buf);
+                file = counted;
+                fileSections.put(file, new FileSection(violation.getPackageName(), sectionsLength));
+                startFile(buf, file.name);
+            }
+            int priority = violation.getRule().getPriority();
+            renderViolation(buf, violation, priority, file.total);
+            writeSections(buf);
+        }
+    }
+
+    /**
+     * Write the report, once the reports of all files have been added
+     *
+     * @param writer where to write the report
+     * @param attributes the attributes of the report, as they are named in the XML report
+     * @param changeSets the change sets of the branch
+     * @param javaSources the Java source files changed by the branch
+     * @param otherSources the other files changed by the branch
+     * @param skippedFiles the files that were not analyzed, and why
+     * @param duplications duplicated code
+     * @param trends the violations each change set introduced and fixed
+     *
+     * @throws IOException if the report cannot be written
+     */
+    void write(Writer writer,
+               Map<String, String> attributes,
+               List<ChangeSet> changeSets,
+               List<SourceFile> javaSources,
+               List<SourceFile> otherSources,
+               List<String[]> skippedFiles,
+               List<Duplication> duplications,
+               List<CommitTrend> trends) throws IOException {
+        StringBuilder buf = new StringBuilder();
+        endFile(buf);
+        sections.close();
+        renderHeader(buf, attributes, "Code Critic Report for Branch "+escape(attributes.get("branch")), SCRIPT);
+        buf.append("CodeCritic has produced the following reports:<br/>\n<ul>\n<li>Summary</li>\n");
+        contents(buf, "ChangeSets", "ChangeSet listing");
+        contents(buf, "Java_Sources", "Java source files and associated ChangeSets");
+        contents(buf, "Other_Sources", "Other source files and associated ChangeSets");
+        contents(buf, "Skipped_Sources", "Java source files not analyzed");
+        contents(buf, "Duplicated_Code", "Duplicated code");
+        contents(buf, "Violation_Trend", "Violation trend by ChangeSet");
+        contents(buf, "PMD_Rules_Violated", "PMD Rules Violated");
+        contents(buf, "File_Violations", "File Violations");
+        buf.append("</ul>\n<br/>\n").append(HR);
+        renderSummary(buf, attributes, skippedFiles, duplications, trends);
+        buf.append(HR);
+        writer.write(buf.toString());
+        renderChangeSets(writer, changeSets);
+        writer.write(HR);
+        renderSourceFiles(writer, "Java_Sources", "Java Files Modified", "java-sourcefiles", javaSources);
+        writer.write(HR);
+        renderSourceFiles(writer, "Other_Sources", "Other Files Modified", "other-sourcefiles", otherSources);
+        writer.write(HR);
+        renderSkippedFiles(writer, skippedFiles);
+        writer.write(HR);
+        renderDuplications(writer, duplications);
+        writer.write(HR);
+        renderTrends(writer, trends);
+        writer.write(HR);
+        buf.setLength(0);
+        renderRules(buf);
+        buf.append(HR);
+        renderFiles(buf);
+        buf.append(HR);
+        writer.write(buf.toString());
+        try (Reader reader = new InputStreamReader(new FileInputStream(sectionsFile), "UTF-8")) {
+            char[] chars = new char[8192];
+            int read;
+            while((read = reader.read(chars))!=-1)
+                writer.write(chars, 0, read);
+        }
+        writer.write(HR+"</body>\n</html>\n");
+    }
+
+    /**
+     * Write the report as a set of pages, once the reports of all files have been added. The index page
+     * has the summary and the rules violated. The rows of the other tables are written to a data file,
+     * which a script pages through, building only the rows being viewed. The sections of the files in a
+     * package are written to a page for the package, so only the violations of the package being viewed
+     * are loaded.
+     *
+     * @param writer where to write the index page
+     * @param directory the directory to write the data file, script and package pages to
+     * @param index the name of the index page
+     * @param attributes the attributes of the report, as they are named in the XML report
+     * @param changeSets the change sets of the branch
+     * @param javaSources the Java source files changed by the branch
+     * @param otherSources the other files changed by the branch
+     * @param skippedFiles the files that were not analyzed, and why
+     * @param duplications duplicated code
+     * @param trends the violations each change set introduced and fixed
+     *
+     * @throws IOException if the report cannot be written
+     */
+    void writePages(Writer writer,
+                    File directory,
+                    String index,
+                    Map<String, String> attributes,
+                    List<ChangeSet> changeSets,
+                    List<SourceFile> javaSources,
+                    List<SourceFile> otherSources,
+                    List<String[]> skippedFiles,
+                    List<Duplication> duplications,
+                    List<CommitTrend> trends) throws IOException {
+        StringBuilder buf = new StringBuilder();
+        endFile(buf);
+        sections.close();
+        if(!directory.exists() && !directory.mkdirs())
+            throw new IOException("Unable to create "+directory.getPath());
+        File[] previous = directory.listFiles();
+        if(previous!=null) {
+            /* The pages of an earlier report of the branch */
+            for(File page : previous) {
+                if(page.getName().startsWith(PACKAGE_PAGE) && !page.delete())
+                    throw new IOException("Unable to delete "+page.getPath());
+            }
+        }
+        List<ViolationSummary.Count> packages = summary.getPackageCounts();
+        Map<String, Integer> pages = new HashMap<String, Integer>();
+        for(ViolationSummary.Count pkg : packages)
+            pages.put(pkg.name, pages.size()+1);
+        writePackagePages(directory, index, attributes, pages);
+        writeData(new File(directory, DATA_FILE_NAME), pages, changeSets, javaSources, otherSources, skippedFiles,
+                  duplications, trends);
+        copyScript(new File(directory, SCRIPT_FILE_NAME));
+
+        String path = uri(directory.getName())+"/";
+        renderHeader(buf, attributes, "Code Critic Report for Branch "+escape(attributes.get("branch")), SCRIPT);
+        buf.append("CodeCritic has produced the following reports:<br/>\n<ul>\n<li>Summary</li>\n");
+        contents(buf, "ChangeSets", "ChangeSet listing");
+        contents(buf, "Java_Sources", "Java source files and associated ChangeSets");
+        contents(buf, "Other_Sources", "Other source files and associated ChangeSets");
+        contents(buf, "Skipped_Sources", "Java source files not analyzed");
+        contents(buf, "Duplicated_Code", "Duplicated code");
+        contents(buf, "Violation_Trend", "Violation trend by ChangeSet");
+        contents(buf, "PMD_Rules_Violated", "PMD Rules Violated");
+        contents(buf, "Package_Violations", "Package Violations");
+        contents(buf, "File_Violations", "File Violations");
+        buf.append("</ul>\n<br/>\n").append(HR);
+        renderSummary(buf, attributes, skippedFiles, duplications, trends);
+        buf.append(HR);
+        pagedSection(buf, "ChangeSets", "ChangeSets", "changesets");
+        buf.append(HR);
+        pagedSection(buf, "Java_Sources", "Java Files Modified", "java-sourcefiles");
+        buf.append(HR);
+        pagedSection(buf, "Other_Sources", "Other Files Modified", "other-sourcefiles");
+        buf.append(HR);
+        pagedSection(buf, "Skipped_Sources", "Java Files Not Analyzed", "skipped-sourcefiles");
+        buf.append(HR);
+        pagedSection(buf, "Duplicated_Code", "Duplicated Code", "duplications");
+        buf.append(HR);
+        pagedSection(buf, "Violation_Trend", "Violation Trend", "trend");
+        buf.append(HR);
+        renderRules(buf);
+        buf.append(HR);
+        pagedSection(buf, "Package_Violations", "Package Violations", "packagelist");
+        buf.append(HR);
+        pagedSection(buf, "File_Violations", "File Violations", "filelist");
+        buf.append(HR);
+        buf.append("<script type=\"text/javascript\" src=\"").append(escape(path+DATA_FILE_NAME)).append("\"></script>\n");
+        buf.append("<script type=\"text/javascript\" src=\"").append(escape(path+SCRIPT_FILE_NAME)).append("\"></script>\n");
+        /* The path is a URI path, so it has no quotes or backslashes to escape */
+        buf.append("<script type=\"text/javascript\">\nrenderPages(codeCriticData, \"").append(path).append("\");\n</script>\n");
+        buf.append("</body>\n</html>\n");
+        writer.write(buf.toString());
+    }
+
+    /*
+     * Write a page for each package, with the sections of the files in the package copied from the
+     * sections file
+     */
+    private void writePackagePages(File directory, String index, Map<String, String> attributes,
+                                   Map<String, Integer> pages) throws IOException {
+        Map<String, List<FileSection>> byPackage = new LinkedHashMap<String, List<FileSection>>();
+        for(FileSection section : fileSections.values()) {
+            List<FileSection> inPackage = byPackage.get(section.pkg);
+            if(inPackage==null) {
+                inPackage = new ArrayList<FileSection>();
+                byPackage.put(section.pkg, inPackage);
+            }
+            inPackage.add(section);
+        }
+        try (RandomAccessFile in = new RandomAccessFile(sectionsFile, "r")) {
+            FileChannel channel = in.getChannel();
+            for(Map.Entry<String, List<FileSection>> entry : byPackage.entrySet()) {
+                StringBuilder buf = new StringBuilder();
+                renderHeader(buf, attributes, "Code Critic Report for Branch "+escape(attributes.get("branch"))+
+                                              "\n<br/>\nPackage "+escape(packageName(entry.getKey())), SCRIPT);
+                buf.append("<a href=\"../").append(escape(uri(index))).append("\">Back to the report</a>\n").append(HR);
+                File page = new File(directory, PACKAGE_PAGE+pages.get(entry.getKey())+".html");
+                try (FileOutputStream out = new FileOutputStream(page)) {
+                    out.write(buf.toString().getBytes("UTF-8"));
+                    for(FileSection section : entry.getValue()) {
+                        long position = section.start;
+                        while(position<section.end)
+                            position += channel.transferTo(position, section.end-position, out.getChannel());
+                    }
+                    out.write((HR+"</body>\n</html>\n").getBytes("UTF-8"));
+                }
+            }
+        }
+    }
+
+    /*
+     * Write the rows of the paged tables as a script that declares them, so the index page can load them
+     * from the file system, where browsers do not allow pages to request files
+     */
+    private void writeData(File file,
+                           Map<String, Integer> pages,
+                           List<ChangeSet> changeSets,
+                           List<SourceFile> javaSources,
+                           List<SourceFile> otherSources,
+                           List<String[]> skippedFiles,
+                           List<Duplication> duplications,
+                           List<CommitTrend> trends) throws IOException {
+        try (JsonWriter json = new JsonWriter(new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file), "UTF-8")))) {
+            json.raw("var codeCriticData = ").beginObject();
+            /* [number, changeset, message, developer, email, when, link] */
+            json.name("changeSets").beginArray();
+            for(ChangeSet changeSet : changeSets) {
+                json.beginArray().value(changeSet.getNumber()).value(changeSet.getChangeSet()).value(changeSet.getMessage());
+                json.value(changeSet.getDeveloper()).value(changeSet.getEmail()).value(changeSet.getDate());
+                json.value(changeSet.getLink()).endArray();
+            }
+            json.endArray();
+            writeSources(json.name("javaSources"), javaSources);
+            writeSources(json.name("otherSources"), otherSources);
+            /* [file, reason] */
+            json.name("skippedFiles").beginArray();
+            for(String[] skipped : skippedFiles)
+                json.beginArray().value(skipped[0]).value(skipped[1]).endArray();
+            json.endArray();
+            /* [file, begin line, end line, tokens, [[file, begin line, end line, in base], ...]] */
+            json.name("duplications").beginArray();
+            for(Duplication duplication : duplications) {
+                Duplication.Occurrence occurrence = duplication.getOccurrence();
+                json.beginArray().value(occurrence.getFile()).value(occurrence.getBeginLine()).value(occurrence.getEndLine());
+                json.value(duplication.getTokens()).beginArray();
+                for(Duplication.Occurrence other : duplication.getOthers()) {
+                    json.beginArray().value(other.getFile()).value(other.getBeginLine()).value(other.getEndLine());
+                    json.value(other.isBase()).endArray();
+                }
+                json.endArray().endArray();
+            }
+            json.endArray();
+            /* [number, link, developer, when, introduced, fixed, [[sign, priority, rule, file, line, message], ...]] */
+            json.name("trends").beginArray();
+            for(CommitTrend trend : trends) {
+                ChangeSet changeSet = trend.getChangeSet();
+                json.beginArray().value(changeSet.getNumber()).value(changeSet.getLink()).value(changeSet.getDeveloper());
+                json.value(changeSet.getDate()).value(trend.getIntroduced().size()).value(trend.getFixed().size());
+                json.beginArray();
+                for(ViolationFingerprint violation : trend.getIntroduced())
+                    writeTrendViolation(json, "+", violation);
+                for(ViolationFingerprint violation : trend.getFixed())
+                    writeTrendViolation(json, "-", violation);
+                json.endArray().endArray();
+            }
+            json.endArray();
+            /* [name, page, violations, priority 1, ... priority 5] */
+            json.name("packages").beginArray();
+            for(ViolationSummary.Count pkg : summary.getPackageCounts()) {
+                json.beginArray().value(packageName(pkg.name)).value(pages.get(pkg.name)).value(pkg.total);
+                for(int priority=1; priority<=ViolationSummary.PRIORITIES; priority++)
+                    json.value(pkg.priorities[priority]);
+                json.endArray();
+            }
+            json.endArray();
+            /* [name, page, anchor, violations, priority 1, ... priority 5] */
+            json.name("files").beginArray();
+            for(ViolationSummary.Count counted : summary.getFileCounts()) {
+                json.beginArray().value(counted.name).value(pages.get(fileSections.get(counted).pkg));
+                json.value(anchor(counted.name)).value(counted.total);
+                for(int priority=1; priority<=ViolationSummary.PRIORITIES; priority++)
+                    json.value(counted.priorities[priority]);
+                json.endArray();
+            }
+            json.endArray();
+            json.endObject().raw(";\n");
+        }
+    }
+
+    private void writeTrendViolation(JsonWriter json, String sign, ViolationFingerprint violation) throws IOException {
+        json.beginArray().value(sign).value(violation.getPriority()).value(violation.getRule()).value(violation.getFile());
+        json.value(violation.getLine()).value(violation.getMessage()).endArray();
+    }
+
+    /* [file, [[number, changeset, link], ...]] */
+    private void writeSources(JsonWriter json, List<SourceFile> sources) throws IOException {
+        json.beginArray();
+        for(SourceFile sourceFile : sources) {
+            json.beginArray().value(sourceFile.getFile()).beginArray();
+            Collections.sort(sourceFile.getChangeSets());
+            for(ChangeSet changeSet : sourceFile.getChangeSets())
+                json.beginArray().value(changeSet.getNumber()).value(changeSet.getChangeSet()).value(changeSet.getLink()).endArray();
+            json.endArray().endArray();
+        }
+        json.endArray();
+    }
+
+    private void copyScript(File file) throws IOException {
+        try (InputStream in = HtmlReport.class.getClassLoader().getResourceAsStream(SCRIPT_FILE_NAME)) {
+            if(in==null)
+                throw new FileNotFoundException("Can't find "+SCRIPT_FILE_NAME);
+            Files.copy(in, file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    private void pagedSection(StringBuilder buf, String anchor, String title, String id) {
+        buf.append("<a name=\"").append(anchor).append("\"></a>\n");
+        buf.append("<h3>").append(title).append(" <a href=\"#\" onclick=\"openTable('").append(id);
+        buf.append("'); return false;\" class=\"white\"> #</a></h3>\n");
+        buf.append("<div id=\"").append(id).append("\"></div>\n").append(BACK_TO_TOP);
+    }
+
+    private String packageName(String name) {
+        return name==null || name.length()==0?"(default package)":name;
+    }
+
+    /*
+     * A file name as a relative URI path
+     */
+    private String uri(String name) throws IOException {
+        try {
+            return new URI(null, null, name, null).getRawPath();
+        } catch (URISyntaxException e) {
+            throw new IOException("Unable to link to "+name, e);
+        }
+    }
+
+    private void endFile(StringBuilder buf) throws IOException {
+        if(file==null)
+            return;
+        endSection(buf);
+        writeSections(buf);
+        fileSections.get(file).end = sectionsLength;
+        file = null;
+    }
+
+    private void writeSections(StringBuilder buf) throws IOException {
+        byte[] bytes = buf.toString().getBytes("UTF-8");
+        sections.write(bytes);
+        sectionsLength += bytes.length;
+        buf.setLength(0);
+    }
+
+    /**
+     * Delete the file sections
+     */
+    void discard() {
+        try {
+            sections.close();
+        } catch (IOException e) {
+            // The sections are being discarded
+        }
+        if(!sectionsFile.delete() && sectionsFile.exists())
+            sectionsFile.deleteOnExit();
+    }
+
+    private void renderChangeSets(Writer writer, List<ChangeSet> changeSets) throws IOException {
+        StringBuilder buf = new StringBuilder();
+        startSection(buf, "ChangeSets", "ChangeSets", "changesets",
+                     "<th>ChangeSet</th>", "<th style=\"width:40%\">Message</th>", "<th>Developer</th>",
+                     "<th>When</th>", "<th>ChangeSet Link</th>");
+        int position = 0;
+        for(ChangeSet changeSet : changeSets) {
+            String developer = escape(changeSet.getDeveloper());
+            if(changeSet.getEmail()!=null)
+                developer = "<a href=\"mailto:"+escape(changeSet.getEmail())+"\">"+developer+"</a>";
+            row(buf, ++position, Integer.toString(changeSet.getNumber()), escape(changeSet.getMessage()), developer,
+                escape(changeSet.getDate()), link(changeSet.getLink(), escape(changeSet.getChangeSet())));
+            writer.write(buf.toString());
+            buf.setLength(0);
+        }
+        endSection(buf);
+        writer.write(buf.toString());
+    }
+
+    private void renderSourceFiles(Writer writer, String anchor, String title, String id, List<SourceFile> sources) throws IOException {
+        StringBuilder buf = new StringBuilder();
+        startSection(buf, anchor, title, id, "<th>Source File</th>", "<th>ChangeSet Links</th>");
+        int position = 0;
+        for(SourceFile sourceFile : sources) {
+            StringBuilder links = new StringBuilder();
+            Collections.sort(sourceFile.getChangeSets());
+            for(ChangeSet changeSet : sourceFile.getChangeSets()) {
+                if(links.length()>0)
+                    links.append("\n");
+                links.append(link(changeSet.getLink(), changeSet.getNumber()+":"+escape(changeSet.getChangeSet())));
+            }
+            row(buf, ++position, escape(sourceFile.getFile()), links.toString());
+            writer.write(buf.toString());
+            buf.setLength(0);
+        }
+        endSection(buf);
+        writer.write(buf.toString());
+    }
+
+    private void renderSkippedFiles(Writer writer, List<String[]> skippedFiles) throws IOException {
+        StringBuilder buf = new StringBuilder();
+        startSection(buf, "Skipped_Sources", "Java Files Not Analyzed", "skipped-sourcefiles",
+                     "<th>Source File</th>", "<th>Reason</th>");
+        int position = 0;
+        for(String[] skipped : skippedFiles)
+            row(buf, ++position, escape(skipped[0]), escape(skipped[1]));
+        endSection(buf);
+        writer.write(buf.toString());
+    }
+
+    private void renderDuplications(Writer writer, List<Duplication> duplications) throws IOException {
+        StringBuilder buf = new StringBuilder();
+        startSection(buf, "Duplicated_Code", "Duplicated Code", "duplications",
+                     "<th>Source File</th>", "<th>Lines</th>", "<th>Tokens</th>", "<th>Duplicated In</th>");
+        int position = 0;
+        for(Duplication duplication : duplications) {
+            Duplication.Occurrence occurrence = duplication.getOccurrence();
+            StringBuilder others = new StringBuilder();
+            for(Duplication.Occurrence other : duplication.getOthers()) {
+                others.append(escape(other.getFile())).append(" (").append(other.getBeginLine()).append(" - ");
+                others.append(other.getEndLine()).append(")").append(other.isBase()?" in base":"").append("<br/>\n");
+            }
+            row(buf, ++position, escape(occurrence.getFile()), occurrence.getBeginLine()+" - "+occurrence.getEndLine(),
+                Integer.toString(duplication.getTokens()), others.toString());
+            writer.write(buf.toString());
+            buf.setLength(0);
+        }
+        endSection(buf);
+        writer.write(buf.toString());
+    }
+
+    private void renderTrends(Writer writer, List<CommitTrend> trends) throws IOException {
+        StringBuilder buf = new StringBuilder();
+        startSection(buf, "Violation_Trend", "Violation Trend", "trend",
+                     "<th>ChangeSet</th>", "<th>Developer</th>", "<th>When</th>", "<th>Introduced</th>",
+                     "<th>Fixed</th>", "<th style=\"width:50%\">Violations</th>");
+        int position = 0;
+        for(CommitTrend trend : trends) {
+            ChangeSet changeSet = trend.getChangeSet();
+            StringBuilder violations = new StringBuilder();
+            for(ViolationFingerprint violation : trend.getIntroduced())
+                renderTrendViolation(violations, "+ ", violation);
+            for(ViolationFingerprint violation : trend.getFixed())
+                renderTrendViolation(violations, "- ", violation);
+            row(buf, ++position, link(changeSet.getLink(), Integer.toString(changeSet.getNumber())),
+                escape(changeSet.getDeveloper()), escape(changeSet.getDate()),
+                Integer.toString(trend.getIntroduced().size()), Integer.toString(trend.getFixed().size()),
+                violations.toString());
+            writer.write(buf.toString());
+            buf.setLength(0);
+        }
+        endSection(buf);
+        writer.write(buf.toString());
+    }
+
+    private void renderTrendViolation(StringBuilder buf, String sign, ViolationFingerprint violation) {
+        buf.append("<div class=\"p").append(violation.getPriority()).append("\">").append(sign);
+        buf.append(escape(violation.getRule())).append(": ").append(escape(violation.getFile()));
+        buf.append(" (").append(violation.getLine()).append(") ").append(escape(violation.getMessage())).append("</div>\n");
+    }
+
+    private void startSection(StringBuilder buf, String anchor, String title, String id, String... headings) {
+        buf.append("<a name=\"").append(anchor).append("\"></a>\n");
+        buf.append("<h3>").append(title).append(" <a href=\"#\" onclick=\"openTable('").append(id);
+        buf.append("'); return false;\" class=\"white\"> #</a></h3>\n");
+        buf.append("<table border=\"0\" cellpadding=\"5\" cellspacing=\"2\" width=\"100%\" id=\"").append(id).append("\">\n<tr>\n");
+        for(String heading : headings)
+            buf.append(heading).append("\n");
+        buf.append("</tr>\n");
+    }
+
+    private void endSection(StringBuilder buf) {
+        buf.append("</table>\n").append(BACK_TO_TOP);
+    }
+
+    /*
+     * Rows alternate in style by their position, starting at 1
+     */
+    private void row(StringBuilder buf, int position, String... cells) {
+        buf.append("<tr class=\"").append(position%2==1?"a":"b").append("\">\n");
+        for(String cell : cells)
+            buf.append("<td>").append(cell).append("</td>\n");
+        buf.append("</tr>\n");
+    }
+
+    private String link(String href, String text) {
+        return "<a href=\""+escape(href)+"\">"+text+"</a>";
+    }
+
+    private void contents(StringBuilder buf, String anchor, String title) {
+        buf.append("<li><a href=\"#").append(anchor).append("\">").append(title).append("</a></li>\n");
+    }
+
+    private void renderHeader(StringBuilder buf, Map<String, String> attributes, String title, String script) {
+        buf.append("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n");
+        buf.append("<!DOCTYPE html PUBLIC \"-//W3C//DTD XHTML 1.0 Transitional//EN\" ");
+        buf.append("\"http://www.w3.org/TR/xhtml1/DTD/xhtml1-transitional.dtd\">\n");
+        buf.append("<html>\n<head>\n<title>Code Critic Report</title>\n");
+        buf.append("<style type=\"text/css\">\n").append(STYLE).append("</style>\n");
+        buf.append("<script type=\"text/javascript\">\n").append(script).append("</script>\n");
+        buf.append("</head>\n<body>\n<a name=\"top\"></a>\n");
+        buf.append("<table border=\"0\" cellpadding=\"0\" cellspacing=\"0\" width=\"100%\">\n<tr>\n");
+        buf.append("<td class=\"bannercell\" rowspan=\"2\"></td>\n<td class=\"text-align:right\">\n");
+        buf.append("<h2 align=\"center\">").append(title);
+        buf.append("\n<br/>\nGenerated on ").append(escape(attributes.get("timestamp"))).append("</h2>\n");
+        buf.append("</td>\n</tr>\n</table>\n<hr size=\"1\"/>\n");
+    }
+
+    private void renderSummary(StringBuilder buf, Map<String, String> attributes, List<String[]> skippedFiles,
+                               List<Duplication> duplications, List<CommitTrend> trends) {
+        int introduced = 0;
+        int fixed = 0;
+        for(CommitTrend trend : trends) {
+            introduced += trend.getIntroduced().size();
+            fixed += trend.getFixed().size();
+        }
+        String repository = escape(attributes.get("repository"));
+        String minimumPriority = escape(attributes.get("minimumPriority"));
+        buf.append("<h3>Report Summary</h3>\n<table border=\"0\" width=\"100%\">\n");
+        buf.append("<tr>\n<th>Item</th>\n<th>Info</th>\n</tr>\n");
+        /* The stylesheet alternates the rows of the summary by the position of the report, which is always 1 */
+        buf.append("<tr class=\"a\">\n<td style=\"width:15%\">Repository</td>\n<td><a href=\"");
+        buf.append(repository).append("\">").append(repository).append("</a></td>\n</tr>\n");
+        summaryRow(buf, false, "Branch", escape(attributes.get("branch")));
+        summaryRow(buf, true, "Rules Used", escape(attributes.get("rulesUsed")));
+        buf.append("<tr>\n<td>Minimum Priority</td>\n<div class=\"p").append(minimumPriority).append("\">\n");
+        buf.append("<td>").append(minimumPriority).append("</td>\n</div>\n</tr>\n");
+        summaryRow(buf, true, "Analysis Mode", escape(attributes.get("analysisMode")));
+        summaryRow(buf, false, "Total number of modified files", escape(attributes.get("totalFiles")));
+        summaryRow(buf, true, "Total number of Java files", escape(attributes.get("totalJavaFiles")));
+        summaryRow(buf, false, "Java files not analyzed", Integer.toString(skippedFiles.size()));
+        summaryRow(buf, true, "Duplicated blocks of code", Integer.toString(duplications.size()));
+        summaryRow(buf, false, "Violations introduced and fixed by ChangeSets", introduced+" introduced, "+fixed+" fixed");
+        buf.append("</table>\n<br/>\n");
+        buf.append("<h3>Rules Violation Summary</h3>\n");
+        buf.append("<table class=\"log\" border=\"0\" cellpadding=\"5\" cellspacing=\"2\" width=\"100%\">\n<tr>\n");
+        buf.append("<th style=\"width:25%\">Files</th>\n<th>Total</th>\n");
+        for(int priority=1; priority<=ViolationSummary.PRIORITIES; priority++)
+            buf.append("<th>\n<div class=\"p").append(priority).append("\">Priority ").append(priority).append("</div>\n</th>\n");
+        buf.append("</tr>\n<tr class=\"a\">\n");
+        buf.append("<td>").append(summary.getFiles()).append("</td>\n<td>").append(summary.getViolations()).append("</td>\n");
+        for(int priority=1; priority<=ViolationSummary.PRIORITIES; priority++)
+            buf.append("<td>").append(summary.getViolations(priority)).append("</td>\n");
+        buf.append("</tr>\n</table>\n<br/>\n");
+    }
+
+    private void summaryRow(StringBuilder buf, boolean alternated, String item, String info) {
+        buf.append(alternated?"<tr class=\"a\">\n":"<tr>\n");
+        buf.append("<td>").append(item).append("</td>\n<td>").append(info).append("</td>\n</tr>\n");
+    }
+
+    private void renderRules(StringBuilder buf) {
+        startSection(buf, "PMD_Rules_Violated", "PMD Rules Violated", "rulelist",
+                     "<th style=\"width:84%\">Rule</th>", "<th style=\"width:8%\">Violations</th>",
+                     "<th style=\"width:8%\">Severity</th>");
+        int position = 0;
+        for(ViolationSummary.Count rule : summary.getRuleCounts()) {
+            row(buf, ++position, "["+escape(rule.ruleSet)+"] "+escape(rule.name), Integer.toString(rule.total),
+                "\n<div class=\"p"+rule.priority+"\"> "+rule.priority+"</div>\n");
+        }
+        endSection(buf);
+    }
+
+    private void renderFiles(StringBuilder buf) {
+        buf.append("<a name=\"File_Violations\"></a>\n");
+        buf.append("<h3>File Violations <a href=\"#\" onclick=\"openTable('filelist'); return false;\" class=\"white\"> #</a></h3>\n");
+        buf.append("<table class=\"log\" border=\"0\" cellpadding=\"5\" cellspacing=\"2\" width=\"100%\" id=\"filelist\">\n<tr>\n");
+        buf.append("<th>File</th>\n");
+        for(int priority=ViolationSummary.PRIORITIES; priority>=1; priority--)
+            buf.append("<th style=\"width:40px\">\n<div class=\"p").append(priority).append("\">").append(priority).append("</div>\n</th>\n");
+        buf.append("</tr>\n");
+        int position = 0;
+        for(ViolationSummary.Count counted : summary.getFileCounts()) {
+            String[] cells = new String[ViolationSummary.PRIORITIES+1];
+            cells[0] = "<a href=\"#f-"+escape(anchor(counted.name))+"\">"+escape(counted.name)+"</a>";
+            for(int priority=ViolationSummary.PRIORITIES; priority>=1; priority--)
+                cells[ViolationSummary.PRIORITIES-priority+1] = Integer.toString(counted.priorities[priority]);
+            row(buf, ++position, cells);
+        }
+        endSection(buf);
+    }
+
+    private void startFile(StringBuilder buf, String name) {
+        buf.append("<a name=\"f-").append(escape(anchor(name))).append("\"></a>\n");
+        buf.append("<h3>File ").append(escape(name)).append("<a href=\"#\" onclick=\"openTable('").append(escape(name));
+        buf.append("'); return false;\" class=\"white\"> #</a></h3>\n");
+        buf.append("<table class=\"log\" border=\"0\" cellpadding=\"5\" cellspacing=\"2\" width=\"100%\" id=\"").append(escape(name)).append("\">\n");
+        buf.append("<tr>\n<th style=\"width:60px;\">Violation</th>\n<th>Error Description</th>\n<th style=\"width:40px;\">Line</th>\n");
+        if(attributed)
+            buf.append("<th>Last Changed By</th>\n");
+        buf.append("</tr>\n");
+    }
+
+    private void renderViolation(StringBuilder buf, IRuleViolation violation, int priority, int position) {
+        buf.append("<tr class=\"").append(position%2==1?"a":"b").append("\">\n");
+        buf.append("<td>\n<div class=\"p").append(priority).append("\">").append(priority).append("</div>\n</td>\n");
+        buf.append("<td>[").append(escape(violation.getRule().getRuleSetName())).append(".");
+        buf.append(escape(violation.getRule().getName())).append("] - ");
+        String url = violation.getRule().getExternalInfoUrl();
+        if(url!=null && url.length()>0)
+            buf.append("<a href=\"").append(escape(url)).append("\">").append(text(violation.getDescription())).append("</a>");
+        else
+            buf.append(text(violation.getDescription()));
+        buf.append("</td>\n<td>").append(violation.getBeginLine()).append(" - ").append(violation.getEndLine()).append("</td>\n");
+        if(attributed) {
+            buf.append("<td>");
+            List<Attribution> found = attributions.get(violation.getFilename()+":"+violation.getBeginLine());
+            if(found!=null) {
+                for(Attribution attribution : found) {
+                    buf.append(escape(attribution.getDeveloper()));
+                    ChangeSet changeSet = attribution.getChangeSet();
+                    if(changeSet!=null) {
+                        buf.append(" (<a href=\"").append(escape(sectionLink(changeSet.getLink()))).append("\">ChangeSet ");
+                        buf.append(changeSet.getNumber()).append("</a>) ");
+                    } else {
+                        String revision = attribution.getRevision();
+                        buf.append(" (").append(escape(revision.length()>12?revision.substring(0, 12):revision));
+                        buf.append(", before the branch) ");
+                    }
+                }
+            }
+            buf.append("</td>\n");
+        }
+        buf.append("</tr>\n");
+    }
+
+    /*
+     * Package pages are written to a directory of the directory the report is written to, so links
+     * relative to the report are made relative to the package pages
+     */
+    private String sectionLink(String href) {
+        if(!paged || href==null || href.indexOf(':')>=0 || href.startsWith("/"))
+            return href;
+        return "../"+href;
+    }
+
+    private String anchor(String name) {
+        return name.replace('\\', '_').replace('/', '_');
+    }
+
+    /*
+     * Escape text for HTML, keeping its line breaks
+     */
+    private String text(String value) {
+        StringBuilder buf = new StringBuilder();
+        for(String line : (value==null?"":value).split("\r\n|\r|\n", -1)) {
+            if(buf.length()>0)
+                buf.append("\n");
+            buf.append(escape(line));
+        }
+        return buf.toString();
+    }
+
+    /**
+     * Escape a value for HTML. Line breaks and tabs are replaced with spaces, as they are when the
+     * value is read from an XML attribute.
+     *
+     * @param value the value, may be null
+     *
+     * @return the escaped value, empty if the value is null
+     */
+    static String escape(String value) {
+        if(value==null)
+            return "";
+        StringBuilder buf = new StringBuilder(value.length());
+        for(int i=0; i<value.length(); i++) {
+            char c = value.charAt(i);
+            switch(c) {
+                case '&': buf.append("&amp;"); break;
+                case '<': buf.append("&lt;"); break;
+                case '>': buf.append("&gt;"); break;
+                case '"': buf.append("&quot;"); break;
+                case '\r':
+                    if(i+1<value.length() && value.charAt(i+1)=='\n')
+                        i++;
+                    buf.append(' ');
+                    break;
+                case '\n':
+                case '\t': buf.append(' '); break;
+                default: buf.append(c);
+            }
+        }
+        return buf.toString();
+    }
+
+    /*
+     * Where the section of a file is in the sections file, and the package of the file
+     */
+    private static class FileSection {
+        final String pkg;
+        final long start;
+        long end;
+
+        FileSection(String pkg, long start) {
+            this.pkg = pkg==null?"":pkg;
+            this.start = start;
+        }
+    }
+}
@@ -0,0 +1,259 @@
+/*
+ * Copyright to the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.cochise.codecritic;
+
+import net.sourceforge.pmd.IRuleViolation;
+import net.sourceforge.pmd.PMD;
+import net.sourceforge.pmd.Report;
+
+import java.io.*;
+import java.text.SimpleDateFormat;
+import java.util.*;
+
+/**
+ * Writes the report as a JSON document, for tools that ingest the results of a review. The document
+ * is written as it is produced, the violations of each file as the file's report is added.
+ *
+ * @author Dennis Reedy
+ */
+class JsonReport implements ReportWriter {
+    private final File file;
+    private JsonWriter json;
+    private final Map<String, List<Attribution>> attributions = new HashMap<String, List<Attribution>>();
+    private String fileName;
+    private int files;
+    private int violations;
+    private final int[] priorities = new int[ViolationSummary.PRIORITIES+1];
+    private boolean completed;
+
+    /**
+     * @param file the file to write the report to
+     */
+    JsonReport(File file) {
+        this.file = file;
+    }
+
+    public void start(ReportContext context, List<Attribution> attributions) throws IOException {
+        for(Attribution attribution : attributions) {
+            String key = attribution.getFile()+":"+attribution.getLine();
+            List<Attribution> attributed = this.attributions.get(key);
+            if(attributed==null) {
+                attributed = new ArrayList<Attribution>();
+                this.attributions.put(key, attributed);
+            }
+            attributed.add(attribution);
+        }
+        json = new JsonWriter(new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file), "UTF-8")));
+        json.beginObject();
+        json.name("version").value(PMD.VERSION);
+        json.name("timestamp").value(new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ssZ").format(new Date()));
+        json.name("branch").value(context.getBranch());
+        json.name("repository").value(context.getRepository());
+        json.name("rulesUsed").value(context.getRulesUsed());
+        json.name("minimumPriority").value(context.getMinimumPriority());
+        json.name("analysisMode").value(context.getAnalysisMode().toString());
+        json.name("totalFiles").value(context.getTotalFiles());
+        json.name("totalJavaFiles").value(context.getTotalJavaFiles());
+        json.name("changeSets").beginArray();
+        for(ChangeSet changeSet : context.getChangeSets()) {
+            json.beginObject();
+            writeChangeSet(changeSet);
+            json.name("developer").value(changeSet.getDeveloper());
+            json.name("email").value(changeSet.getEmail());
+            json.name("when").value(changeSet.getDate());
+            json.name("message").value(changeSet.getMessage());
+            json.endObject();
+        }
+        json.endArray();
+        writeSources("javaSources", context.getJavaSources());
+        writeSources("otherSources", context.getOtherSources());
+        json.name("files").beginArray();
+    }
+
+    public void add(Report report) throws IOException {
+        for(Iterator<IRuleViolation> iterator = report.iterator(); iterator.hasNext();) {
+            IRuleViolation violation = iterator.next();
+            if(!violation.getFilename().equals(fileName)) {
+                endFile();
+                fileName = violation.getFilename();
+                files++;
+                json.beginObject();
+                json.name("name").value(fileName);
+                json.name("violations").beginArray();
+            }
+            int priority = violation.getRule().getPriority();
+            if(priority>0 && priority<=ViolationSummary.PRIORITIES)
+                priorities[priority]++;
+            violations++;
+            json.beginObject();
+            json.name("rule").value(violation.getRule().getName());
+            json.name("ruleSet").value(violation.getRule().getRuleSetName());
+            json.name("priority").value(priority);
+            json.name("package").value(violation.getPackageName());
+            json.name("class").value(violation.getClassName());
+            json.name("method").value(violation.getMethodName());
+            json.name("variable").value(violation.getVariableName());
+            json.name("beginLine").value(violation.getBeginLine());
+            json.name("endLine").value(violation.getEndLine());
+            json.name("beginColumn").value(violation.getBeginColumn());
+            json.name("endColumn").value(violation.getEndColumn());
+            json.name("message").value(violation.getDescription());
+            json.name("externalInfoUrl").value(violation.getRule().getExternalInfoUrl());
+            List<Attribution> found = attributions.get(fileName+":"+violation.getBeginLine());
+            if(found!=null) {
+                json.name("attributions").beginArray();
+                for(Attribution attribution : found) {
+                    json.beginObject();
+                    json.name("revision").value(attribution.getRevision());
+                    json.name("developer").value(attribution.getDeveloper());
+                    ChangeSet changeSet = attribution.getChangeSet();
+                    if(changeSet!=null) {
+                        json.name("number").value(changeSet.getNumber());
+                        json.name("link").value(changeSet.getLink());
+                    }
+                    json.endObject();
+                }
+                json.endArray();
+            }
+            json.endObject();
+        }
+    }
+
+    public void end(List<String[]> skippedFiles, List<Duplication> duplications, List<CommitTrend> trends) throws IOException {
+        endFile();
+        json.endArray();
+        json.name("skippedFiles").beginArray();
+        for(String[] skipped : skippedFiles) {
+            json.beginObject();
+            json.name("name").value(skipped[0]);
+            json.name("reason").value(skipped[1]);
+            json.endObject();
+        }
+        json.endArray();
+        json.name("duplications").beginArray();
+        for(Duplication duplication : duplications) {
+            Duplication.Occurrence occurrence = duplication.getOccurrence();
+            json.beginObject();
+            json.name("tokens").value(duplication.getTokens());
+            json.name("lines").value(occurrence.getEndLine()-occurrence.getBeginLine()+1);
+            json.name("occurrences").beginArray();
+            writeOccurrence(occurrence);
+            for(Duplication.Occurrence other : duplication.getOthers())
+                writeOccurrence(other);
+            json.endArray();
+            json.endObject();
+        }
+        json.endArray();
+        int introduced = 0;
+        int fixed = 0;
+        json.name("trends").beginArray();
+        for(CommitTrend trend : trends) {
+            ChangeSet changeSet = trend.getChangeSet();
+            json.beginObject();
+            writeChangeSet(changeSet);
+            json.name("developer").value(changeSet.getDeveloper());
+            json.name("when").value(changeSet.getDate());
+            writeTrendViolations("introduced", trend.getIntroduced());
+            writeTrendViolations("fixed", trend.getFixed());
+            json.endObject();
+            introduced += trend.getIntroduced().size();
+            fixed += trend.getFixed().size();
+        }
+        json.endArray();
+        json.name("summary").beginObject();
+        json.name("files").value(files);
+        json.name("violations").value(violations);
+        json.name("skipped").value(skippedFiles.size());
+        json.name("duplications").value(duplications.size());
+        json.name("introduced").value(introduced);
+        json.name("fixed").value(fixed);
+        json.name("priorities").beginObject();
+        for(int priority=1; priority<=ViolationSummary.PRIORITIES; priority++)
+            json.name(Integer.toString(priority)).value(priorities[priority]);
+        json.endObject();
+        json.endObject();
+        json.endObject();
+        json.close();
+        completed = true;
+    }
+
+    public void discard() {
+        if(json==null || completed)
+            return;
+        try {
+            json.close();
+        } catch (IOException e) {
+            // The report is being discarded
+        }
+        if(!file.delete() && file.exists())
+            file.deleteOnExit();
+    }
+
+    private void endFile() throws IOException {
+        if(fileName!=null) {
+            json.endArray();
+            json.endObject();
+            fileName = null;
+        }
+    }
+
+    private void writeChangeSet(ChangeSet changeSet) throws IOException {
+        json.name("number").value(changeSet.getNumber());
+        json.name("changeSet").value(changeSet.getChangeSet());
+        json.name("link").value(changeSet.getLink());
+    }
+
+    private void writeSources(String name, List<SourceFile> sources) throws IOException {
+        json.name(name).beginArray();
+        for(SourceFile sourceFile : sources) {
+            json.beginObject();
+            json.name("name").value(sourceFile.getFile());
+            json.name("changeSets").beginArray();
+            Collections.sort(sourceFile.getChangeSets());
+            for(ChangeSet changeSet : sourceFile.getChangeSets()) {
+                json.beginObject();
+                writeChangeSet(changeSet);
+                json.endObject();
+            }
+            json.endArray();
+            json.endObject();
+        }
+        json.endArray();
+    }
+
+    private void writeOccurrence(Duplication.Occurrence occurrence) throws IOException {
+        json.beginObject();
+        json.name("file").value(occurrence.getFile());
+        json.name("beginLine").value(occurrence.getBeginLine());
+        json.name("endLine").value(occurrence.getEndLine());
+        json.name("base").value(occurrence.isBase());
+        json.endObject();
+    }
+
+    private void writeTrendViolations(String name, List<ViolationFingerprint> trendViolations) throws IOException {
+        json.name(name).beginArray();
+        for(ViolationFingerprint violation : trendViolations) {
+            json.beginObject();
+            json.name("file").value(violation.getFile());
+            json.name("line").value(violation.getLine());
+            json.name("rule").value(violation.getRule());
+            json.name("priority").value(violation.getPriority());
+            json.name("message").value(violation.getMessage());
+            json.endObject();
+        }
+        json.endArray();
+    }
+}
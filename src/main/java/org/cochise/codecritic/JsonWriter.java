@@ -0,0 +1,164 @@
+/*
+ * Copyright to the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.cochise.codecritic;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+/**
+ * Writes compact JSON as it is produced, so documents of any size can be written without being held
+ * in memory. Commas between the members of objects and the elements of arrays are added as needed.
+ *
+ * @author Dennis Reedy
+ */
+class JsonWriter implements Closeable {
+    private final Writer out;
+    /* For each object and array that is open, whether a member or element has been written to it */
+    private final Deque<Boolean> written = new ArrayDeque<Boolean>();
+    private boolean named;
+
+    JsonWriter(Writer out) {
+        this.out = out;
+    }
+
+    JsonWriter beginObject() throws IOException {
+        separate();
+        out.write('{');
+        written.push(false);
+        return this;
+    }
+
+    JsonWriter endObject() throws IOException {
+        written.pop();
+        out.write('}');
+        return this;
+    }
+
+    JsonWriter beginArray() throws IOException {
+        separate();
+        out.write('[');
+        written.push(false);
+        return this;
+    }
+
+    JsonWriter endArray() throws IOException {
+        written.pop();
+        out.write(']');
+        return this;
+    }
+
+    /**
+     * Write the name of the next member of an object
+     *
+     * @param name the name of the member
+     *
+     * @return this writer
+     *
+     * @throws IOException if the name cannot be written
+     */
+    JsonWriter name(String name) throws IOException {
+        separate();
+        quote(name);
+        out.write(':');
+        named = true;
+        return this;
+    }
+
+    JsonWriter value(String value) throws IOException {
+        separate();
+        if(value==null)
+            out.write("null");
+        else
+            quote(value);
+        return this;
+    }
+
+    JsonWriter value(long value) throws IOException {
+        separate();
+        out.write(Long.toString(value));
+        return this;
+    }
+
+    JsonWriter value(boolean value) throws IOException {
+        separate();
+        out.write(value?"true":"false");
+        return this;
+    }
+
+    /**
+     * Write text as it is, such as text that declares a script variable holding the document
+     *
+     * @param text the text
+     *
+     * @return this writer
+     *
+     * @throws IOException if the text cannot be written
+     */
+    JsonWriter raw(String text) throws IOException {
+        out.write(text);
+        return this;
+    }
+
+    public void close() throws IOException {
+        out.close();
+    }
+
+    /*
+     * A value following the name of a member is not separated from it, anything else following a
+     * member or element of the enclosing object or array is
+     */
+    private void separate() throws IOException {
+        if(named) {
+            named = false;
+            return;
+        }
+        if(!written.isEmpty()) {
+            if(written.peek())
+                out.write(',');
+            else {
+                written.pop();
+                written.push(true);
+            }
+        }
+    }
+
+    private void quote(String s) throws IOException {
+        StringBuilder buf = new StringBuilder(s.length()+2);
+        buf.append('"');
+        for(int i=0; i<s.length(); i++) {
+            char c = s.charAt(i);
+            switch(c) {
+                case '"': buf.append("\\\""); break;
+                case '\\': buf.append("\\\\"); break;
+                case '\n': buf.append("\\n"); break;
+                case '\r': buf.append("\\r"); break;
+                case '\t': buf.append("\\t"); break;
+                /* Keep the document safe to embed in a script element */
+                case '<': buf.append("\\u003c"); break;
+                default:
+                    if(c<0x20 || c==0x2028 || c==0x2029)
+                        buf.append(String.format("\\u%04x", (int)c));
+                    else
+                        buf.append(c);
+            }
+        }
+        buf.append('"');
+        out.write(buf.toString());
+    }
+}
@@ -0,0 +1,114 @@
+/*
+ * Copyright to the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.cochise.codecritic;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * An interval index of the lines that have changed in a source file. Ranges are
+ * inclusive, merged when they overlap or touch, and searched with a binary search.
+ *
+ * @author Dennis Reedy
+ */
+public class LineRanges {
+    private final List<int[]> pending = new ArrayList<int[]>();
+    private int[] begins = new int[0];
+    private int[] ends = new int[0];
+
+    /**
+     * Add a range of changed lines
+     *
+     * @param begin the first line of the range
+     * @param end the last line of the range
+     */
+    public synchronized void add(int begin, int end) {
+        if(end<begin)
+            throw new IllegalArgumentException("end line "+end+" is before begin line "+begin);
+        pending.add(new int[]{begin, end});
+    }
+
+    public synchronized boolean isEmpty() {
+        compact();
+        return begins.length==0;
+    }
+
+    /**
+     * Determine whether the provided range of lines overlaps any changed line
+     *
+     * @param begin the first line of the range
+     * @param end the last line of the range
+     *
+     * @return true if any line from begin to end (inclusive) has changed
+     */
+    public synchronized boolean overlaps(int begin, int end) {
+        compact();
+        int low = 0;
+        int high = ends.length-1;
+        /* Find the first range that ends on or after begin */
+        while(low<=high) {
+            int mid = (low+high)>>>1;
+            if(ends[mid]<begin)
+                low = mid+1;
+            else
+                high = mid-1;
+        }
+        return low<ends.length && begins[low]<=end;
+    }
+
+    private void compact() {
+        if(pending.isEmpty())
+            return;
+        for(int i=0; i<begins.length; i++) {
+            pending.add(new int[]{begins[i], ends[i]});
+        }
+        Collections.sort(pending, new Comparator<int[]>() {
+            public int compare(int[] r1, int[] r2) {
+                return r1[0]==r2[0]?0:(r1[0]>r2[0]?1:-1);
+            }
+        });
+        int[] b = new int[pending.size()];
+        int[] e = new int[pending.size()];
+        int count = 0;
+        for(int[] range : pending) {
+            if(count>0 && range[0]<=e[count-1]+1) {
+                e[count-1] = Math.max(e[count-1], range[1]);
+            } else {
+                b[count] = range[0];
+                e[count] = range[1];
+                count++;
+            }
+        }
+        begins = Arrays.copyOf(b, count);
+        ends = Arrays.copyOf(e, count);
+        pending.clear();
+    }
+
+    @Override
+    public synchronized String toString() {
+        compact();
+        StringBuilder builder = new StringBuilder();
+        for(int i=0; i<begins.length; i++) {
+            if(builder.length()>0)
+                builder.append(",");
+            builder.append(begins[i]).append("-").append(ends[i]);
+        }
+        return builder.toString();
+    }
+}
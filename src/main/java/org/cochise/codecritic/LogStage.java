@@ -0,0 +1,128 @@
+/*
+ * Copyright to the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.cochise.codecritic;
+
+import org.cochise.codecritic.support.scm.SCM;
+
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * Runs the SCM log on its own thread, passing the Java source files it discovers through a bounded
+ * queue to be analyzed while the log, and the diffs it starts, are still being processed. The log
+ * blocks when analysis falls behind, and analysis blocks until a source file is discovered or the
+ * log has completed.
+ *
+ * @author Dennis Reedy
+ */
+class LogStage implements SourceListener, Iterator<SourceFile> {
+    private static final SourceFile END = new SourceFile("");
+    private final SCM scm;
+    private final BlockingQueue<SourceFile> queue;
+    private Thread thread;
+    private SourceFile next;
+    private volatile Exception failure;
+
+    LogStage(SCM scm, int capacity) {
+        this.scm = scm;
+        this.queue = new ArrayBlockingQueue<SourceFile>(capacity);
+    }
+
+    void start() {
+        scm.registerSourceListener(this);
+        thread = new Thread(new Runnable() {
+            public void run() {
+                try {
+                    scm.runLog();
+                } catch (CodeCriticException | RuntimeException e) {
+                    failure = e;
+                } finally {
+                    put(END);
+                }
+            }
+        }, "code-critic-log");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Wait for the log to complete
+     *
+     * @throws CodeCriticException if the log failed
+     */
+    void await() throws CodeCriticException {
+        try {
+            thread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CodeCriticException("Interrupted while waiting for the log", e);
+        }
+        if(failure instanceof CodeCriticException)
+            throw (CodeCriticException)failure;
+        if(failure!=null)
+            throw new CodeCriticException("Unable to process the log", failure);
+    }
+
+    /**
+     * Abandon the log if it has not completed
+     */
+    void stop() {
+        if(thread!=null)
+            thread.interrupt();
+    }
+
+    public void discovered(SourceFile sourceFile) {
+        put(sourceFile);
+    }
+
+    /**
+     * @return true if another source file has been discovered, blocking until one is or the log completes
+     */
+    public boolean hasNext() {
+        if(next==null) {
+            try {
+                next = queue.take();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                next = END;
+            }
+        }
+        return next!=END;
+    }
+
+    public SourceFile next() {
+        if(!hasNext())
+            throw new NoSuchElementException();
+        SourceFile sourceFile = next;
+        next = null;
+        return sourceFile;
+    }
+
+    public void remove() {
+        throw new UnsupportedOperationException();
+    }
+
+    private void put(SourceFile sourceFile) {
+        try {
+            queue.put(sourceFile);
+        } catch (InterruptedException e) {
+            /* The log has been abandoned */
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,108 @@
+/*
+ * Copyright to the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.cochise.codecritic;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The configuration of a single report: the branch and repository reported on, how it was analyzed,
+ * its change sets and source files, and where it is written. A context is not changed once created,
+ * so reports generated at the same time in one process each have their own.
+ *
+ * @author Dennis Reedy
+ */
+class ReportContext {
+    private final String branch;
+    private final String repository;
+    private final String rulesUsed;
+    private final String minimumPriority;
+    private final AnalysisMode analysisMode;
+    private final File outputDirectory;
+    private final List<ChangeSet> changeSets;
+    private final List<SourceFile> javaSources;
+    private final List<SourceFile> otherSources;
+
+    ReportContext(String branch,
+                  String repository,
+                  String rulesUsed,
+                  String minimumPriority,
+                  AnalysisMode analysisMode,
+                  File outputDirectory,
+                  List<ChangeSet> changeSets,
+                  List<SourceFile> javaSources,
+                  List<SourceFile> otherSources) {
+        this.branch = branch;
+        this.repository = repository==null?"?":repository;
+        this.rulesUsed = rulesUsed==null?"?":rulesUsed;
+        this.minimumPriority = minimumPriority;
+        this.analysisMode = analysisMode==null?AnalysisMode.FULL:analysisMode;
+        this.outputDirectory = outputDirectory;
+        this.changeSets = copy(changeSets);
+        this.javaSources = copy(javaSources);
+        this.otherSources = copy(otherSources);
+    }
+
+    String getBranch() {
+        return branch;
+    }
+
+    String getRepository() {
+        return repository;
+    }
+
+    String getRulesUsed() {
+        return rulesUsed;
+    }
+
+    String getMinimumPriority() {
+        return minimumPriority;
+    }
+
+    AnalysisMode getAnalysisMode() {
+        return analysisMode;
+    }
+
+    File getOutputDirectory() {
+        return outputDirectory;
+    }
+
+    List<ChangeSet> getChangeSets() {
+        return changeSets;
+    }
+
+    List<SourceFile> getJavaSources() {
+        return javaSources;
+    }
+
+    List<SourceFile> getOtherSources() {
+        return otherSources;
+    }
+
+    int getTotalFiles() {
+        return javaSources.size()+otherSources.size();
+    }
+
+    int getTotalJavaFiles() {
+        return javaSources.size();
+    }
+
+    private static <T> List<T> copy(List<T> list) {
+        return list==null?Collections.<T>emptyList():Collections.unmodifiableList(new ArrayList<T>(list));
+    }
+}
@@ -15,39 +15,129 @@
  */
 package org.cochise.codecritic;
 
-import net.sourceforge.pmd.PMD;
+import net.sourceforge.pmd.*;
 import org.cochise.codecritic.support.scm.SCM;
 
-import java.io.File;
-import java.util.ArrayList;
-import java.util.Collections;
-import java.util.List;
+import java.io.*;
+import java.nio.charset.Charset;
+import java.util.*;
+import java.util.concurrent.*;
 
 /**
- * Generates a code critic report.
+ * Generates a code critic report. The SCM log, the rendering of diffs and the analysis of Java source
+ * files run as overlapping stages: source files are analyzed as the log discovers them, while diffs
+ * are rendered, and the results are merged into the report once all stages complete.
  */
 public class ReportGenerator {
+    private static final long DEFAULT_FILE_TIMEOUT = 60;
+    private static final int DEFAULT_GATE_PRIORITY = 2;
+    private static final int DEFAULT_CPD_MINIMUM_TOKENS = 100;
+    private static final int SOURCE_QUEUE_SIZE = 64;
+    private static final int DEFAULT_VIOLATION_BUFFER = 100000;
     private SCM scm;
     private ProgressListener listener;
+    private final SharedAnalysis shared;
 
     public ReportGenerator(SCM scm, ProgressListener listener) {
+        this(scm, listener, null);
+    }
+
+    /**
+     * Create a report generator that shares loaded rules and the reports of analyzed file versions
+     * with other reports
+     *
+     * @param scm the SCM
+     * @param listener the listener for progress, may be null
+     * @param shared the analysis state shared with other reports, may be null
+     */
+    public ReportGenerator(SCM scm, ProgressListener listener, SharedAnalysis shared) {
         if(scm==null)
             throw new IllegalArgumentException("scm should never be null");
         this.scm = scm;
         this.listener = listener;
+        this.shared = shared;
+    }
+
+    /**
+     * Generate a report for each of a number of branches of the SCM's repository in one run. The rules
+     * are loaded once, and a version of a source file changed by more than one branch is analyzed once.
+     * The branches do not have to be checked out. The SCM must be initialized.
+     *
+     * @param branches the branches
+     * @param outputDirectory the directory to write the reports to, each named for its branch
+     * @param options report options, as name=value pairs
+     *
+     * @return each branch mapped to false if it failed the gate, otherwise true
+     *
+     * @throws CodeCriticException if a report cannot be generated
+     */
+    public Map<String, Boolean> generate(List<String> branches, File outputDirectory, String... options) throws CodeCriticException {
+        Map<String, Boolean> results = new LinkedHashMap<String, Boolean>();
+        SharedAnalysis batch = shared==null?new SharedAnalysis():shared;
+        long start = System.currentTimeMillis();
+        int analyzed = batch.getAnalyzed();
+        int reused = batch.getReused();
+        try {
+            for(String branch : branches) {
+                sendMessage(String.format("Reviewing branch %s, %d of %d", branch, results.size()+1, branches.size()), true);
+                ReportGenerator generator = new ReportGenerator(scm.forBranch(branch), listener, batch);
+                results.put(branch, generator.generate(outputDirectory, options));
+            }
+        } finally {
+            if(shared==null)
+                batch.close();
+        }
+        sendMessage(String.format("Reviewed %d branches in %d ms, %d file versions analyzed, %d reports shared between branches",
+                                  branches.size(), System.currentTimeMillis()-start, batch.getAnalyzed()-analyzed,
+                                  batch.getReused()-reused), true);
+        return results;
     }
 
-    public void generate(File outputDirectory, String...options) {
+    /**
+     * Generate the report, or if the gate option is provided, check whether the branch passes the gate.
+     * The SCM must be initialized; its log is run as the first stage of the report.
+     *
+     * @param outputDirectory the directory to write the report to
+     * @param options report options, as name=value pairs
+     *
+     * @return false if the branch failed the gate, otherwise true
+     *
+     * @throws CodeCriticException if the report cannot be generated
+     */
+    public boolean generate(File outputDirectory, String...options) throws CodeCriticException {
         if(outputDirectory==null)
             throw new IllegalArgumentException("report outputDirectory should never be null");
 
         boolean debug = false;
         String rules = null;
         String minimumPriority = null;
+        File cacheDirectory = new File(System.getProperty("user.home"), ".code-critic");
+        AnalysisMode analysisMode = AnalysisMode.FULL;
+        long maxFileSize = 0;
+        long fileTimeout = DEFAULT_FILE_TIMEOUT;
+        boolean gating = false;
+        int gatePriority = DEFAULT_GATE_PRIORITY;
+        int gateThreshold = 1;
+        boolean cpd = false;
+        int cpdMinimumTokens = DEFAULT_CPD_MINIMUM_TOKENS;
+        boolean trend = false;
+        boolean blame = false;
+        boolean xslt = false;
+        boolean pages = false;
+        boolean diffBundle = false;
+        String formats = null;
+        int violationBuffer = DEFAULT_VIOLATION_BUFFER;
+        String auxClasspath = null;
         for(String option : options) {
             if(option.equals("debug")) {
                 debug = true;
             }
+            if(option.equals("changedLines")) {
+                analysisMode = AnalysisMode.CHANGED_LINES;
+            }
+            if(option.equals("newViolations")) {
+                analysisMode = AnalysisMode.NEW_VIOLATIONS;
+            }
             if(option.startsWith("rules")) {
                 String[] parts = option.split("=");
                 rules = parts[1];
@@ -56,6 +146,62 @@ public class ReportGenerator {
                 String[] parts = option.split("=");
                 minimumPriority = parts[1];
             }
+            if(option.startsWith("cacheDir")) {
+                String[] parts = option.split("=");
+                cacheDirectory = new File(parts[1]);
+            }
+            if(option.startsWith("maxFileSize")) {
+                String[] parts = option.split("=");
+                maxFileSize = Long.parseLong(parts[1]);
+            }
+            if(option.startsWith("fileTimeout")) {
+                String[] parts = option.split("=");
+                fileTimeout = Long.parseLong(parts[1]);
+            }
+            if(option.equals("gate")) {
+                gating = true;
+            }
+            if(option.startsWith("gatePriority")) {
+                String[] parts = option.split("=");
+                gatePriority = Integer.parseInt(parts[1]);
+            }
+            if(option.startsWith("gateThreshold")) {
+                String[] parts = option.split("=");
+                gateThreshold = Integer.parseInt(parts[1]);
+            }
+            if(option.equals("cpd")) {
+                cpd = true;
+            }
+            if(option.startsWith("cpdMinimumTokens")) {
+                String[] parts = option.split("=");
+                cpdMinimumTokens = Integer.parseInt(parts[1]);
+            }
+            if(option.equals("trend")) {
+                trend = true;
+            }
+            if(option.equals("blame")) {
+                blame = true;
+            }
+            if(option.equals("xslt")) {
+                xslt = true;
+            }
+            if(option.equals("pages")) {
+                pages = true;
+            }
+            if(option.equals("diffBundle")) {
+                diffBundle = true;
+            }
+            if(option.startsWith("violationBuffer")) {
+                String[] parts = option.split("=");
+                violationBuffer = Integer.parseInt(parts[1]);
+            }
+            if(option.startsWith("formats")) {
+                String[] parts = option.split("=");
+                formats = parts.length>1?parts[1]:null;
+            }
+            if(option.startsWith("auxClasspath")) {
+                auxClasspath = option.substring(option.indexOf('=')+1);
+            }
         }
         if(!outputDirectory.exists()) {
             if(outputDirectory.mkdirs()) {
@@ -63,59 +209,474 @@ public class ReportGenerator {
             }
         }
 
+        if(gating && analysisMode==AnalysisMode.NEW_VIOLATIONS) {
+            sendMessage("New violations cannot be determined by the gate, gating on all violations", true);
+            analysisMode = AnalysisMode.FULL;
+        }
+        /* Source files are analyzed as the log discovers them, and their base versions alongside */
+        BaselineStage baseline = null;
+        if(analysisMode==AnalysisMode.NEW_VIOLATIONS) {
+            baseline = new BaselineStage(scm, listener);
+            baseline.listen();
+        }
+        LogStage log = new LogStage(scm, SOURCE_QUEUE_SIZE);
+        log.start();
+        WhileWeWaitPrintSomePeriods w = null;
+        Thread t = null;
+        FileAnalyzer analyzer = null;
+        SharedAnalysis.Session session = null;
+        ViolationSink violations = null;
+        try {
+            if(analysisMode==AnalysisMode.CHANGED_LINES && !scm.computeChangedLines()) {
+                sendMessage("Unable to determine changed lines, analyzing whole files", true);
+                analysisMode = AnalysisMode.FULL;
+            }
+
+            if(rules==null) {
+                rules = "basic,imports,unusedcode,design,junit,imports,coupling,optimizations,strings,strictexception";
+            }
+            RuleSetFactory ruleSetFactory = new RuleSetFactory();
+            int priority = Rule.LOWEST_PRIORITY;
+            if(minimumPriority!=null)
+                priority = Integer.parseInt(minimumPriority);
+            /* Rules below the gate priority cannot fail the gate, so they are not run */
+            if(gating)
+                priority = Math.min(priority, gatePriority);
+            ruleSetFactory.setMinimumPriority(priority);
+            RuleSetCache ruleSetCache = new RuleSetCache(cacheDirectory, priority, listener);
+            /* Shared rules, analyzers and reports are not used once the rule sets or classes they were made with change */
+            if(shared!=null)
+                session = shared.acquire(rules+"|"+priority+"|"+cacheDirectory.getPath()+"|"+auxClasspath+"|"+
+                                         maxFileSize+"|"+fileTimeout,
+                                         ruleSetCache.contentKey(rules)+"|"+
+                                         (auxClasspath==null?"":AuxClassLoader.stateKey(auxClasspath)));
+            RuleSetFilter ruleSetFilter;
+            if(session!=null && session.getAnalyzer()!=null) {
+                ruleSetFilter = session.getRuleSetFilter();
+            } else {
+                long loadStart = System.currentTimeMillis();
+                ruleSetFilter = new RuleSetFilter(rules, ruleSetFactory, ruleSetCache);
+                sendMessage("Loaded rules in "+(System.currentTimeMillis()-loadStart)+" ms", false);
+                if(debug) {
+                    for(Rule rule : ruleSetFilter.getAllRules()) {
+                        sendMessage("Loaded rule "+rule.getRuleSetName()+"."+rule.getName(), false);
+                    }
+                }
+            }
+            int applied = ruleSetFilter.getApplied();
+            int skipped = ruleSetFilter.getSkipped();
+
+            sendMessage("Running PMD against Java files as they are found with the following rules: "+rules+
+                        ", analysis mode: "+analysisMode, true);
+            w = new WhileWeWaitPrintSomePeriods();
+            t = new Thread(w);
+            t.start();
+            long start = System.currentTimeMillis();
+            FileBudget budget = new FileBudget(maxFileSize, fileTimeout);
+            ClassLoader auxClassLoader = null;
+            if(session!=null && session.getAnalyzer()!=null) {
+                analyzer = session.getAnalyzer();
+                auxClassLoader = analyzer.getAuxClassLoader();
+            } else {
+                if(auxClasspath!=null) {
+                    AuxClassLoader loader = new AuxClassLoader(auxClasspath, cacheDirectory, listener);
+                    sendMessage("Using an auxiliary classpath of "+loader.getClasspathSize()+" entries for type resolution", false);
+                    auxClassLoader = loader;
+                }
+                analyzer = new FileAnalyzer(ruleSetFilter, budget, auxClassLoader);
+                if(session!=null)
+                    session.setAnalyzer(ruleSetFilter, analyzer);
+            }
+            SourceContents contents = new SourceContents(Charset.defaultCharset(), scm);
+            if(baseline!=null) {
+                String mergeBase = scm.getMergeBase();
+                if(mergeBase==null) {
+                    sendMessage("Unable to determine the merge base, reporting all violations", true);
+                    baseline.stop();
+                    baseline = null;
+                    analysisMode = AnalysisMode.FULL;
+                } else {
+                    /* The base is analyzed with its own rules, so it can be analyzed in parallel */
+                    RuleSetFilter baseRules = new RuleSetFilter(rules, ruleSetFactory, ruleSetCache);
+                    baseline.start(mergeBase,
+                                   new FileAnalyzer(baseRules, budget, auxClassLoader),
+                                   budget,
+                                   new BaselineCache(cacheDirectory, baseRules.getAllRules(), listener));
+                }
+            }
+            if(gating) {
+                /* Files are ordered by how likely they are to fail the gate, so the log must complete first */
+                List<SourceFile> discovered = new ArrayList<SourceFile>();
+                while(log.hasNext())
+                    discovered.add(log.next());
+                log.await();
+                /* No report is generated, so the diffs are not needed */
+                scm.discardDiffs();
+                if(discovered.isEmpty()) {
+                    sendMessage("There are no source files to analyze", true);
+                    return true;
+                }
+                contents.prefetch(discovered);
+                Gate gate = new Gate(gatePriority, gateThreshold, cacheDirectory, scm.getRepository());
+                analyze(gate.order(discovered, contents).iterator(), session, analyzer, contents, analysisMode, budget, null, null, gate);
+                sendMessage(String.format("\nAnalysis completed in %d ms, %d rule set applications, %d skipped as not applicable",
+                                          System.currentTimeMillis()-start, ruleSetFilter.getApplied()-applied,
+                                          ruleSetFilter.getSkipped()-skipped), true);
+                try {
+                    gate.save();
+                } catch (IOException e) {
+                    sendMessage("Unable to save gate results, "+e.getMessage(), false);
+                }
+                sendMessage(String.format("Gate %s: %d violations of priority %d or higher, threshold %d, %d of %d files analyzed",
+                                          gate.failed()?"failed":"passed", gate.getViolations(), gate.getPriority(),
+                                          gate.getThreshold(), gate.getAnalyzed(), discovered.size()), true);
+                return !gate.failed();
+            }
+
+            CodeCriticReport renderer = new CodeCriticReport();
+            renderer.setXslt(xslt);
+            renderer.setBaseDirectory(scm.getWorkingDirectory());
+            if(pages)
+                renderer.setPages(new File(outputDirectory, getReportName()));
+            if(diffBundle) {
+                String name = getReportName();
+                renderer.setDiffBundle(new File(new File(outputDirectory, "diffs"),
+                                                name.substring(0, name.length()-".html".length())+".bundle"));
+            }
+            if(formats!=null)
+                addWriters(renderer, formats, outputDirectory, ruleSetFilter);
+            violations = new ViolationSink(outputDirectory, violationBuffer);
+            Iterator<SourceFile> javaSources = log;
+            if(scm.getRevision()!=null) {
+                /* The sources of a branch that is not checked out are read from the SCM together once the log completes */
+                List<SourceFile> discovered = new ArrayList<SourceFile>();
+                while(log.hasNext())
+                    discovered.add(log.next());
+                log.await();
+                contents.prefetch(discovered);
+                javaSources = discovered.iterator();
+            }
+            analyze(javaSources, session, analyzer, contents, analysisMode, budget, renderer, violations, null);
+            log.await();
+            if(baseline!=null)
+                baseline.finish();
+            if(scm.getJavaSources().isEmpty()) {
+                sendMessage("There are no source files to analyze", true);
+                return true;
+            }
+            sendMessage(String.format("\nAnalysis completed in %d ms, %d rule set applications, %d skipped as not applicable",
+                                      System.currentTimeMillis()-start, ruleSetFilter.getApplied()-applied,
+                                      ruleSetFilter.getSkipped()-skipped), true);
+            if(violations.getRuns()>0)
+                sendMessage(String.format("Spilled %d violations to disk in %d runs", violations.size(), violations.getRuns()), false);
+            if(baseline!=null)
+                violations = removeBaseViolations(baseline, contents, violations, outputDirectory, violationBuffer);
+            if(blame) {
+                long blameStart = System.currentTimeMillis();
+                List<Attribution> attributions = new BlameAttributor(scm, listener).attribute(violations);
+                renderer.addAttributions(attributions);
+                sendMessage(String.format("Attributed %d violating lines in %d ms", attributions.size(),
+                                          System.currentTimeMillis()-blameStart), true);
+            }
+            scm.awaitDiffs();
+            sendMessage("Diffs rendered "+(System.currentTimeMillis()-start)+" ms after analysis started", false);
+            if(cpd)
+                renderer.addDuplications(findDuplications(scm.getJavaSources(), contents, analysisMode, cacheDirectory, cpdMinimumTokens));
+            if(trend)
+                analyzeTrend(renderer, analyzer, budget);
+            long writeStart = System.currentTimeMillis();
+            File report = writeReport(outputDirectory, renderer, violations, analysisMode, rules, minimumPriority);
+            sendMessage("Report written in "+(System.currentTimeMillis()-writeStart)+" ms", false);
+            sendMessage(String.format("Read %d source files, %d bytes", contents.getReads(), contents.getBytesRead()), false);
+            sendMessage("Code Critic report generated "+report.getPath(), true);
+            return true;
+        } catch (IOException e) {
+            throw new CodeCriticException("Unable to read source files", e);
+        } finally {
+            log.stop();
+            if(baseline!=null)
+                baseline.stop();
+            scm.discardDiffs();
+            if(violations!=null)
+                violations.close();
+            if(session!=null)
+                shared.release(session);
+            else if(analyzer!=null)
+                analyzer.close();
+            if(t!=null) {
+                w.stop();
+                t.interrupt();
+            }
+        }
+    }
+
+    private String getReportName() {
+        return scm.getBranch().replace('/', '-')+"-branch-report.html";
+    }
+
+    /*
+     * Write the report in each of the formats as well as HTML, to files named as the HTML report is
+     */
+    private void addWriters(CodeCriticReport renderer,
+                            String formats,
+                            File outputDirectory,
+                            RuleSetFilter ruleSetFilter) throws CodeCriticException {
+        String name = getReportName();
+        String base = name.substring(0, name.length()-".html".length());
+        for(String format : new LinkedHashSet<String>(Arrays.asList(formats.split(",")))) {
+            format = format.trim();
+            if(format.length()==0 || format.equals("html"))
+                continue;
+            if(format.equals("json"))
+                renderer.addWriter(new JsonReport(new File(outputDirectory, base+".json")));
+            else if(format.equals("sarif"))
+                renderer.addWriter(new SarifReport(new File(outputDirectory, base+".sarif"),
+                                                   ruleSetFilter.getAllRules(),
+                                                   scm.getWorkingDirectory()));
+            else
+                throw new CodeCriticException("Unknown report format "+format+", expected html, json or sarif");
+        }
+    }
+
+    /*
+     * Merge the results of the log, diffs and analysis into the report
+     */
+    private File writeReport(File outputDirectory,
+                             CodeCriticReport renderer,
+                             ViolationSink violations,
+                             AnalysisMode analysisMode,
+                             String rules,
+                             String minimumPriority) throws CodeCriticException {
         List<ChangeSet> changeSets = scm.getChangeSets();
         List<SourceFile> javaSources = scm.getJavaSources();
         List<SourceFile> otherSources = scm.getOtherSources();
+        Collections.sort(changeSets);
+        Collections.sort(javaSources);
+        Collections.sort(otherSources);
+        sendMessage("Setting CodeCriticReport branch to "+scm.getBranch(), true);
+        renderer.setContext(new ReportContext(scm.getBranch(),
+                                              scm.getRepository(),
+                                              rules,
+                                              minimumPriority==null?Integer.toString(Rule.LOWEST_PRIORITY):minimumPriority,
+                                              analysisMode,
+                                              outputDirectory,
+                                              changeSets,
+                                              javaSources,
+                                              otherSources));
+        File report = new File(outputDirectory, getReportName());
+        try (Writer writer = new BufferedWriter(new FileWriter(report));
+             ViolationSink.Reader reader = violations.reader()) {
+            renderer.setWriter(writer);
+            renderer.start();
+            while(reader.next()) {
+                renderer.startFileAnalysis(new FileDataSource(new File(reader.getSourceFile().getFile())));
+                renderer.renderFileReport(reader.getReport());
+            }
+            renderer.end();
+            writer.write(PMD.EOL);
+        } catch (IOException e) {
+            throw new CodeCriticException("Unable to write "+report.getPath(), e);
+        } finally {
+            renderer.discard();
+        }
+        return report;
+    }
 
-        if(javaSources.isEmpty()) {
-            sendMessage("There are no source files to analyze", true);
+    /*
+     * Analyze source files, adding the report of each file that is analyzed to the violations if
+     * provided, and recording each report with the gate if provided
+     */
+    private void analyze(Iterator<SourceFile> javaSources,
+                         SharedAnalysis.Session session,
+                         FileAnalyzer analyzer,
+                         SourceContents contents,
+                         AnalysisMode analysisMode,
+                         FileBudget budget,
+                         CodeCriticReport renderer,
+                         ViolationSink violations,
+                         Gate gate) throws IOException, CodeCriticException {
+        while(javaSources.hasNext()) {
+            SourceFile sourceFile = javaSources.next();
+            LineRanges changedLines = analysisMode==AnalysisMode.CHANGED_LINES?sourceFile.getChangedLines():null;
+            if(changedLines!=null && changedLines.isEmpty()) {
+                sendMessage("No lines changed in "+sourceFile+", skipping", false);
+                continue;
+            }
+            File file = new File(sourceFile.getFile());
+            String fileName = file.getCanonicalPath();
+            String exceeded = budget.checkSize(contents.size(sourceFile));
+            if(exceeded!=null) {
+                sendMessage("Not analyzing "+fileName+", "+exceeded, true);
+                if(renderer!=null)
+                    renderer.addSkippedFile(fileName, exceeded);
+                continue;
+            }
+            RuleContext ctx = new RuleContext();
+            Report fileReport = new Report();
+            ctx.setReport(fileReport);
+            ctx.setSourceCodeFilename(fileName);
+            ctx.setSourceCodeFile(file);
+            /* A version already analyzed for another branch or request is not analyzed again */
+            String digest = session==null?null:contents.digest(sourceFile);
+            Report analyzed = session==null?null:shared.getReport(session, fileName, digest);
+            try {
+                if(analyzed!=null) {
+                    fileReport = analyzed;
+                } else if(!analyzer.analyze(sourceFile, contents.get(sourceFile), ctx)) {
+                    sendMessage("No rules apply to "+fileName+", skipping", false);
+                    continue;
+                }
+            } catch (TimeoutException e) {
+                String reason = analyzer.getTimeoutReason();
+                sendMessage("Not analyzing "+fileName+", "+reason, true);
+                if(renderer!=null)
+                    renderer.addSkippedFile(fileName, reason);
+                continue;
+            } catch (ExecutionException e) {
+                Throwable cause = e.getCause();
+                String message = cause.getMessage()==null?cause.getClass().getName():cause.getMessage();
+                sendMessage("Error processing "+fileName+": "+message, false);
+                fileReport.addError(new Report.ProcessingError(message, fileName));
+            } catch (IOException | RuntimeException e) {
+                sendMessage("Error processing "+fileName+": "+e.getMessage(), false);
+                fileReport.addError(new Report.ProcessingError(e.getMessage(), fileName));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new CodeCriticException("Interrupted while analyzing "+fileName, e);
+            }
+            if(session!=null && analyzed==null)
+                shared.addReport(session, fileName, digest, fileReport);
+            Report filtered = changedLines==null?fileReport:filter(fileReport, changedLines);
+            if(violations!=null)
+                violations.add(sourceFile, filtered);
+            if(gate!=null) {
+                gate.record(sourceFile, filtered);
+                if(gate.failed()) {
+                    sendMessage("Gate threshold reached analyzing "+fileName, false);
+                    break;
+                }
+            }
+        }
+        if(Thread.currentThread().isInterrupted())
+            throw new CodeCriticException("Interrupted while analyzing");
+    }
+
+    /*
+     * Remove the violations that are also found in the base version of each file, returning the
+     * violations that remain. The violations are read back a file at a time, and closed once read.
+     */
+    private ViolationSink removeBaseViolations(BaselineStage baseline,
+                                               SourceContents contents,
+                                               ViolationSink violations,
+                                               File outputDirectory,
+                                               int violationBuffer) throws IOException, CodeCriticException {
+        long start = System.currentTimeMillis();
+        Map<SourceFile, List<ViolationFingerprint>> baseViolations = baseline.await();
+        int found = 0;
+        int removed = 0;
+        ViolationSink remaining = new ViolationSink(outputDirectory, violationBuffer);
+        try (ViolationSink.Reader reader = violations.reader()) {
+            while(reader.next()) {
+                SourceFile sourceFile = reader.getSourceFile();
+                List<ViolationFingerprint> base = baseViolations.get(sourceFile);
+                Report fileReport = reader.getReport();
+                found += fileReport.size();
+                if(base==null || base.isEmpty()) {
+                    remaining.add(sourceFile, fileReport);
+                    continue;
+                }
+                String fileName = sourceFile.getFile();
+                Set<ViolationFingerprint> introduced = Collections.newSetFromMap(new IdentityHashMap<ViolationFingerprint, Boolean>());
+                List<ViolationFingerprint> fingerprints;
+                /* An unchanged file has no new violations */
+                if(contents.digest(sourceFile).equals(baseline.getDigest(sourceFile))) {
+                    fingerprints = Collections.emptyList();
+                } else {
+                    fingerprints = ViolationFingerprint.of(fileReport, fileName, contents.get(sourceFile));
+                    introduced.addAll(ViolationFingerprint.unmatched(fingerprints, base));
+                }
+                Report filtered = new Report();
+                int i = 0;
+                for(Iterator<IRuleViolation> iter = fileReport.iterator(); iter.hasNext(); i++) {
+                    IRuleViolation violation = iter.next();
+                    if(!introduced.isEmpty() && introduced.contains(fingerprints.get(i)))
+                        filtered.addRuleViolation(violation);
+                }
+                for(Iterator<Report.ProcessingError> iter = fileReport.errors(); iter.hasNext();) {
+                    filtered.addError(iter.next());
+                }
+                removed += fileReport.size()-introduced.size();
+                remaining.add(sourceFile, filtered);
+            }
+        } catch (IOException | RuntimeException e) {
+            remaining.close();
+            throw e;
+        } finally {
+            violations.close();
+        }
+        sendMessage(String.format("%d of %d violations also found in the merge base not reported, %d base versions analyzed, "+
+                                  "%d from the cache, waited %d ms for the base",
+                                  removed, found, baseline.getAnalyzed(), baseline.getCached(), System.currentTimeMillis()-start), true);
+        return remaining;
+    }
+
+    /*
+     * Add the violations each change set of the branch introduced and fixed to the report
+     */
+    private void analyzeTrend(CodeCriticReport renderer, FileAnalyzer analyzer, FileBudget budget) throws CodeCriticException {
+        long start = System.currentTimeMillis();
+        TrendAnalyzer trendAnalyzer = new TrendAnalyzer(scm, analyzer, budget, listener);
+        List<CommitTrend> trends = trendAnalyzer.analyze(scm.getJavaSources());
+        if(trends==null) {
+            sendMessage("Unable to determine the merge base, not analyzing the violation trend", true);
             return;
         }
+        renderer.addTrends(trends);
+        sendMessage(String.format("Violation trend of %d change sets analyzed in %d ms, %d file versions analyzed",
+                                  trends.size(), System.currentTimeMillis()-start, trendAnalyzer.getAnalyzed()), true);
+    }
 
-        String sourceToAnalyze = sourceFileListToString(javaSources);
-        if(rules==null) {
-            rules = "basic,imports,unusedcode,design,junit,imports,coupling,optimizations,strings,strictexception";
+    /*
+     * Find code in the changed source files that duplicates code in the base or in other changed source files
+     */
+    private List<Duplication> findDuplications(List<SourceFile> javaSources,
+                                               SourceContents contents,
+                                               AnalysisMode analysisMode,
+                                               File cacheDirectory,
+                                               int minimumTokens) throws IOException, CodeCriticException {
+        long start = System.currentTimeMillis();
+        File indexFile = new File(new File(cacheDirectory, "cpd"), Digest.sha1(scm.getRepository())+".index");
+        DuplicationIndex index = new DuplicationIndex(indexFile, minimumTokens, listener);
+        if(!index.update(scm)) {
+            sendMessage("Unable to determine the base, not checking for duplicated code", true);
+            return Collections.emptyList();
         }
-        sendMessage("Setting CodeCriticReport branch to "+scm.getBranch(), true);
-        CodeCriticReport.setBranch(scm.getBranch());
+        try {
+            index.save();
+        } catch (IOException e) {
+            sendMessage("Unable to save duplicated code index, "+e.getMessage(), false);
+        }
+        List<Duplication> duplications = new DuplicationFinder(index, minimumTokens)
+                                             .find(javaSources, contents, scm, analysisMode==AnalysisMode.CHANGED_LINES);
+        sendMessage(String.format("Found %d duplicated blocks of %d or more tokens in %d ms",
+                                  duplications.size(), minimumTokens, System.currentTimeMillis()-start), true);
+        return duplications;
+    }
 
-        Collections.sort(changeSets);
-        Collections.sort(javaSources);
-        Collections.sort(otherSources);
-        CodeCriticReport.setOutputDirectory(outputDirectory);
-        CodeCriticReport.setChangeSetList(changeSets);
-        CodeCriticReport.setJavaSources(javaSources);
-        CodeCriticReport.setOtherSources(otherSources);
-        CodeCriticReport.setRepository(scm.getRepository());
-        CodeCriticReport.setTotalFiles(Integer.toString(javaSources.size()+otherSources.size()));
-        CodeCriticReport.setTotalJavaFiles(Integer.toString(javaSources.size()));
-        File report = new File(outputDirectory, scm.getBranch()+"-branch-report.html");
-
-        List<String> pmdArgs = new ArrayList<String>();
-        pmdArgs.add(sourceToAnalyze);
-        pmdArgs.add(CodeCriticReport.class.getName());
-        pmdArgs.add(rules);
-        pmdArgs.add("-reportfile");
-        pmdArgs.add(report.getPath());
-        if(debug)
-            pmdArgs.add("-debug");
-        if(minimumPriority!=null) {
-            pmdArgs.add("-minimumpriority");
-            pmdArgs.add(minimumPriority);
-            CodeCriticReport.setMinimumPriority(minimumPriority);
-        }
-        CodeCriticReport.setRulesUsed(rules);
-
-        sendMessage("pmd args: " + listToString(pmdArgs), false);
-
-        sendMessage("Running PMD against " + javaSources.size() + " files with the following rules: "+rules, true);
-        WhileWeWaitPrintSomePeriods w = new WhileWeWaitPrintSomePeriods();
-        Thread t = new Thread(w);
-        t.start();
-        PMD.main(pmdArgs.toArray(new String[pmdArgs.size()]));
-        t.interrupt();
-        w.keepRunning = false;
-        sendMessage("\nCode Critic report generated "+report.getPath(), true);
+    /*
+     * Create a report that only contains violations that overlap changed lines
+     */
+    private Report filter(Report fileReport, LineRanges changedLines) {
+        Report filtered = new Report();
+        for(Iterator<IRuleViolation> iter = fileReport.iterator(); iter.hasNext();) {
+            IRuleViolation violation = iter.next();
+            if(changedLines.overlaps(violation.getBeginLine(), Math.max(violation.getBeginLine(), violation.getEndLine())))
+                filtered.addRuleViolation(violation);
+        }
+        for(Iterator<Report.ProcessingError> iter = fileReport.errors(); iter.hasNext();) {
+            filtered.addError(iter.next());
+        }
+        return filtered;
     }
 
     private void sendMessage(String message, boolean info) {
@@ -127,24 +688,4 @@ public class ReportGenerator {
             }
         }
     }
-
-    private String listToString(final List<String> list) {
-        StringBuilder stringBuilder = new StringBuilder();
-        for(String s: list) {
-            if(stringBuilder.length()>0)
-                stringBuilder.append(",");
-            stringBuilder.append(s);
-        }
-        return  stringBuilder.toString();
-    }
-
-    private String sourceFileListToString(final List<SourceFile> list) {
-        StringBuilder stringBuilder = new StringBuilder();
-        for(SourceFile s: list) {
-            if(stringBuilder.length()>0)
-                stringBuilder.append(",");
-            stringBuilder.append(s);
-        }
-        return  stringBuilder.toString();
-    }
 }
@@ -0,0 +1,65 @@
+/*
+ * Copyright to the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.cochise.codecritic;
+
+import net.sourceforge.pmd.Report;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Writes a report in a format of its own alongside the HTML report, from the same violations and
+ * change set model. Violations are written as each file's report is added, so a writer holds nothing
+ * that grows with the number of violations.
+ *
+ * @author Dennis Reedy
+ */
+interface ReportWriter {
+    /**
+     * Start the report
+     *
+     * @param context the configuration of the report
+     * @param attributions the changes that last touched the lines violations begin on
+     *
+     * @throws IOException if the report cannot be started
+     */
+    void start(ReportContext context, List<Attribution> attributions) throws IOException;
+
+    /**
+     * Add the violations of a file
+     *
+     * @param report the report of the file
+     *
+     * @throws IOException if the violations cannot be written
+     */
+    void add(Report report) throws IOException;
+
+    /**
+     * Complete the report, once the reports of all files have been added
+     *
+     * @param skippedFiles the files that were not analyzed, and why
+     * @param duplications duplicated code
+     * @param trends the violations each change set introduced and fixed
+     *
+     * @throws IOException if the report cannot be completed
+     */
+    void end(List<String[]> skippedFiles, List<Duplication> duplications, List<CommitTrend> trends) throws IOException;
+
+    /**
+     * Delete the report, if it was started but is not going to be completed
+     */
+    void discard();
+}
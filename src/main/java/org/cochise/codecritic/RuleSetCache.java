@@ -0,0 +1,265 @@
+/*
+ * Copyright to the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.cochise.codecritic;
+
+import net.sourceforge.pmd.*;
+import net.sourceforge.pmd.util.ResourceLoader;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Caches rule sets in a compact binary form, so that rule sets do not have to be located, parsed and
+ * built from XML on every run. Entries are keyed by the digest of the rule set XML, the PMD version and
+ * the minimum priority, so a changed rule set or PMD upgrade results in a new entry.
+ *
+ * <p>Rule sets that reference other rule sets are not cached, since a change to the referenced rule set
+ * would not change the key.</p>
+ *
+ * @author Dennis Reedy
+ */
+class RuleSetCache {
+    private static final int FORMAT = 1;
+    /* Rule sets bundled with code-critic that PMD does not know the short name of */
+    private static final Map<String, String> BUNDLED = new HashMap<String, String>();
+    static {
+        BUNDLED.put("performance", "rulesets/performance.xml");
+    }
+    private final File directory;
+    private final int minimumPriority;
+    private final ClassLoader classLoader = RuleSetFactory.class.getClassLoader();
+    private final ProgressListener listener;
+
+    RuleSetCache(File directory, int minimumPriority, ProgressListener listener) {
+        this.directory = new File(directory, "rulesets");
+        this.minimumPriority = minimumPriority;
+        this.listener = listener;
+    }
+
+    /**
+     * Load a rule set, from the cache if it has been cached, otherwise from its XML definition,
+     * adding it to the cache
+     *
+     * @param name the name of the rule set, either a short name or a resource
+     * @param ruleSetFactory the factory to use if the rule set must be created from its XML definition
+     *
+     * @return the rule sets for the name
+     *
+     * @throws RuleSetNotFoundException if the rule set cannot be found
+     */
+    RuleSet[] load(String name, RuleSetFactory ruleSetFactory) throws RuleSetNotFoundException {
+        String resource = BUNDLED.containsKey(name)?BUNDLED.get(name):new SimpleRuleSetNameMapper(name).getRuleSets();
+        byte[] content = read(resource);
+        String key = content==null?null:key(content);
+        if(key==null)
+            return ruleSetFactory.createRuleSets(resource).getAllRuleSets();
+        File cached = new File(directory, key+".rules");
+        if(cached.exists()) {
+            try {
+                RuleSet ruleSet = read(cached);
+                debug("Loaded "+name+" from "+cached.getPath());
+                return new RuleSet[]{ruleSet};
+            } catch (IOException | ReflectiveOperationException e) {
+                debug("Unable to load cached "+name+", "+e.getMessage());
+            }
+        }
+        RuleSet[] ruleSets = ruleSetFactory.createRuleSets(resource).getAllRuleSets();
+        if(ruleSets.length==1) {
+            try {
+                write(ruleSets[0], cached);
+                debug("Cached "+name+" as "+cached.getPath());
+            } catch (IOException e) {
+                debug("Unable to cache "+name+", "+e.getMessage());
+            }
+        }
+        return ruleSets;
+    }
+
+    /**
+     * Get a key for the content of rule sets, that changes when a rule set definition changes, so
+     * rules loaded from the definitions can be told apart from rules loaded from changed definitions.
+     * Rule sets referenced by a rule set are only keyed by the PMD version, which the bundled rule sets
+     * change with.
+     *
+     * @param rules the comma separated names of the rule sets
+     *
+     * @return the key for the content of the rule sets
+     */
+    String contentKey(String rules) {
+        StringBuilder builder = new StringBuilder(PMD.VERSION).append(':').append(minimumPriority);
+        for(String name : rules.split(",")) {
+            name = name.trim();
+            if(name.length()==0)
+                continue;
+            builder.append(':').append(name).append('=');
+            String resource = BUNDLED.containsKey(name)?BUNDLED.get(name):new SimpleRuleSetNameMapper(name).getRuleSets();
+            for(String element : resource.split(",")) {
+                byte[] content = readResource(element);
+                builder.append(content==null?"?":key(content)).append(';');
+            }
+        }
+        return Digest.sha1(builder.toString());
+    }
+
+    private byte[] read(String resource) {
+        if(resource.contains(","))
+            return null;
+        byte[] content = readResource(resource);
+        try {
+            return content==null || new String(content, "UTF-8").contains(" ref=")?null:content;
+        } catch (UnsupportedEncodingException e) {
+            return null;
+        }
+    }
+
+    private byte[] readResource(String resource) {
+        try (InputStream in = ResourceLoader.loadResourceAsStream(resource, classLoader)) {
+            if(in==null)
+                return null;
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[8192];
+            int read;
+            while((read = in.read(buffer))!=-1) {
+                out.write(buffer, 0, read);
+            }
+            return out.toByteArray();
+        } catch (IOException | RuleSetNotFoundException e) {
+            return null;
+        }
+    }
+
+    private String key(byte[] content) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-1");
+            digest.update((PMD.VERSION+":"+minimumPriority+":"+FORMAT+":").getBytes("UTF-8"));
+            digest.update(content);
+            StringBuilder builder = new StringBuilder();
+            for(byte b : digest.digest()) {
+                builder.append(String.format("%02x", b));
+            }
+            return builder.toString();
+        } catch (NoSuchAlgorithmException | UnsupportedEncodingException e) {
+            return null;
+        }
+    }
+
+    private void write(RuleSet ruleSet, File cached) throws IOException {
+        if(!directory.exists() && !directory.mkdirs())
+            throw new IOException("Unable to create "+directory.getPath());
+        File temp = File.createTempFile("ruleset", ".tmp", directory);
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp)))) {
+            out.writeInt(FORMAT);
+            writeString(out, ruleSet.getFileName());
+            writeString(out, ruleSet.getName());
+            writeString(out, ruleSet.getDescription());
+            writeString(out, ruleSet.getLanguage()==null?null:ruleSet.getLanguage().getName());
+            writeStrings(out, ruleSet.getIncludePatterns());
+            writeStrings(out, ruleSet.getExcludePatterns());
+            out.writeInt(ruleSet.getRules().size());
+            for(Rule rule : ruleSet.getRules()) {
+                Rule target = rule instanceof AbstractDelegateRule?((AbstractDelegateRule)rule).getRule():rule;
+                writeString(out, target.getClass().getName());
+                writeString(out, rule.getName());
+                writeString(out, rule.getSince());
+                writeString(out, rule.getMessage());
+                writeString(out, rule.getRuleSetName());
+                writeString(out, rule.getExternalInfoUrl());
+                writeString(out, rule.getDescription());
+                out.writeInt(rule.getPriority());
+                out.writeBoolean(rule.usesDFA());
+                out.writeBoolean(rule.usesTypeResolution());
+                out.writeInt(rule.getProperties().size());
+                for(Map.Entry<Object, Object> entry : rule.getProperties().entrySet()) {
+                    writeString(out, (String)entry.getKey());
+                    writeString(out, (String)entry.getValue());
+                }
+            }
+        }
+        Files.move(temp.toPath(), cached.toPath(), StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    private RuleSet read(File cached) throws IOException, ReflectiveOperationException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(cached)))) {
+            if(in.readInt()!=FORMAT)
+                throw new IOException("Unknown format");
+            RuleSet ruleSet = new RuleSet();
+            ruleSet.setFileName(readString(in));
+            ruleSet.setName(readString(in));
+            ruleSet.setDescription(readString(in));
+            String language = readString(in);
+            ruleSet.setLanguage(language==null?null:Language.getByName(language));
+            ruleSet.addIncludePatterns(readStrings(in));
+            ruleSet.addExcludePatterns(readStrings(in));
+            int count = in.readInt();
+            for(int i=0; i<count; i++) {
+                Rule rule = (Rule)classLoader.loadClass(readString(in)).newInstance();
+                rule.setName(readString(in));
+                rule.setSince(readString(in));
+                rule.setMessage(readString(in));
+                rule.setRuleSetName(readString(in));
+                rule.setExternalInfoUrl(readString(in));
+                rule.setDescription(readString(in));
+                rule.setPriority(in.readInt());
+                if(in.readBoolean())
+                    rule.setUsesDFA();
+                if(in.readBoolean())
+                    rule.setUsesTypeResolution();
+                int properties = in.readInt();
+                for(int j=0; j<properties; j++) {
+                    rule.addProperty(readString(in), readString(in));
+                }
+                ruleSet.addRule(rule);
+            }
+            return ruleSet;
+        }
+    }
+
+    private void writeString(DataOutputStream out, String s) throws IOException {
+        out.writeBoolean(s!=null);
+        if(s!=null)
+            out.writeUTF(s);
+    }
+
+    private String readString(DataInputStream in) throws IOException {
+        return in.readBoolean()?in.readUTF():null;
+    }
+
+    private void writeStrings(DataOutputStream out, List<String> strings) throws IOException {
+        out.writeInt(strings.size());
+        for(String s : strings)
+            writeString(out, s);
+    }
+
+    private List<String> readStrings(DataInputStream in) throws IOException {
+        int count = in.readInt();
+        List<String> strings = new ArrayList<String>(count);
+        for(int i=0; i<count; i++)
+            strings.add(readString(in));
+        return strings;
+    }
+
+    private void debug(String message) {
+        if(listener!=null)
+            listener.debug(message);
+    }
+}
@@ -0,0 +1,175 @@
+/*
+ * Copyright to the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.cochise.codecritic;
+
+import net.sourceforge.pmd.*;
+
+import java.io.File;
+import java.util.*;
+
+/**
+ * Decides from cheap facts about a source file (its path, size, declared types and the tokens it
+ * contains) which of the selected rule sets can apply to it, so that rule sets that cannot produce
+ * a violation for the file are not run against its AST.
+ *
+ * <p>Only the rule sets bundled with PMD are filtered, and only on facts that every rule in the
+ * rule set depends on. Rule sets that are not known are always applied.</p>
+ *
+ * @author Dennis Reedy
+ */
+class RuleSetFilter {
+    private static final Map<String, String[]> TRIGGERS = new HashMap<String, String[]>();
+    static {
+        /* JUnit rules only apply to classes that extend TestCase, are named *Test, use @Test or assert */
+        TRIGGERS.put("junit", new String[]{"Test", "assert"});
+        /* Import rules only visit import declarations */
+        TRIGGERS.put("imports", new String[]{"import"});
+        /* Strict exception rules visit catch clauses, throw statements, throws clauses and Error subclasses */
+        TRIGGERS.put("strictexception", new String[]{"catch", "throw", "Error"});
+        /* Performance rules visit loops, regular expressions and collections of boxed primitives */
+        TRIGGERS.put("performance", new String[]{"for", "while", "Pattern", "matches", "replace", "split",
+                                                 "Integer", "Long", "Short", "Byte", "Double", "Float", "Character"});
+    }
+    private final List<String> names = new ArrayList<String>();
+    private final List<RuleSet[]> ruleSets = new ArrayList<RuleSet[]>();
+    private final Map<Integer, RuleSets> selections = new HashMap<Integer, RuleSets>();
+    private final RuleSetFactory ruleSetFactory;
+    private final RuleSetCache ruleSetCache;
+    private int applied;
+    private int skipped;
+
+    RuleSetFilter(String rules, RuleSetFactory ruleSetFactory, RuleSetCache ruleSetCache) throws CodeCriticException {
+        this.ruleSetFactory = ruleSetFactory;
+        this.ruleSetCache = ruleSetCache;
+        for(String name : new LinkedHashSet<String>(Arrays.asList(rules.split(",")))) {
+            name = name.trim();
+            if(name.length()>0)
+                names.add(name);
+        }
+        if(names.size()>Integer.SIZE)
+            throw new CodeCriticException("Too many rule sets selected: "+names.size());
+        load();
+    }
+
+    /**
+     * Load new instances of the rules, discarding the current ones. Rules hold state while a file is
+     * being analyzed, so rules that may still be in use by an abandoned analysis must not be used
+     * for other files.
+     *
+     * @throws CodeCriticException if the rules cannot be loaded
+     */
+    synchronized void reload() throws CodeCriticException {
+        ruleSets.clear();
+        selections.clear();
+        load();
+    }
+
+    private void load() throws CodeCriticException {
+        for(String name : names) {
+            try {
+                ruleSets.add(ruleSetCache.load(name, ruleSetFactory));
+            } catch (RuleSetNotFoundException e) {
+                throw new CodeCriticException("Unable to load rules "+name, e);
+            }
+        }
+    }
+
+    /**
+     * Get the rule sets that apply to a source file
+     *
+     * @param sourceFile the source file
+     * @param content the content of the source file
+     *
+     * @return the rule sets that can produce violations for the source file, may be empty
+     */
+    synchronized RuleSets select(SourceFile sourceFile, String content) {
+        int mask = 0;
+        if(content.trim().length()>0) {
+            boolean test = sourceFile.getFile().replace(File.separatorChar, '/').contains("src/test/");
+            boolean declaresClass = content.contains("class");
+            for(int i=0; i<names.size(); i++) {
+                String[] triggers = TRIGGERS.get(bundledName(names.get(i)));
+                boolean applies;
+                if(triggers==null) {
+                    applies = true;
+                } else if("junit".equals(bundledName(names.get(i)))) {
+                    applies = declaresClass && (test || containsAny(content, triggers));
+                } else {
+                    applies = containsAny(content, triggers);
+                }
+                if(applies) {
+                    mask |= 1<<i;
+                    applied++;
+                } else {
+                    skipped++;
+                }
+            }
+        } else {
+            skipped += names.size();
+        }
+        RuleSets selection = selections.get(mask);
+        if(selection==null) {
+            selection = new RuleSets();
+            for(int i=0; i<names.size(); i++) {
+                if((mask & 1<<i)!=0) {
+                    for(RuleSet ruleSet : ruleSets.get(i))
+                        selection.addRuleSet(ruleSet);
+                }
+            }
+            selections.put(mask, selection);
+        }
+        return selection;
+    }
+
+    /**
+     * Get all the rules that have been loaded
+     *
+     * @return all loaded rules
+     */
+    synchronized Collection<Rule> getAllRules() {
+        List<Rule> rules = new ArrayList<Rule>();
+        for(RuleSet[] sets : ruleSets) {
+            for(RuleSet ruleSet : sets)
+                rules.addAll(ruleSet.getRules());
+        }
+        return rules;
+    }
+
+    synchronized int getApplied() {
+        return applied;
+    }
+
+    synchronized int getSkipped() {
+        return skipped;
+    }
+
+    /*
+     * Get the name of the PMD bundled rule set, or null if the name does not refer to one
+     */
+    private String bundledName(String name) {
+        if(name.startsWith("rulesets/") && name.endsWith(".xml"))
+            name = name.substring("rulesets/".length(), name.length()-".xml".length());
+        return TRIGGERS.containsKey(name)?name:null;
+    }
+
+    private boolean containsAny(String content, String[] tokens) {
+        for(String token : tokens) {
+            if(content.contains(token))
+                return true;
+        }
+        return false;
+    }
+}
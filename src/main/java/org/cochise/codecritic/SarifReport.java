@@ -0,0 +1,217 @@
+/*
+ * Copyright to the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.cochise.codecritic;
+
+import net.sourceforge.pmd.IRuleViolation;
+import net.sourceforge.pmd.PMD;
+import net.sourceforge.pmd.Report;
+import net.sourceforge.pmd.Rule;
+
+import java.io.*;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.util.*;
+
+/**
+ * Writes the violations of the report in the Static Analysis Results Interchange Format (SARIF)
+ * 2.1.0, for code scanning tools. Results are written as each file's report is added. Files are
+ * located relative to the working directory of the SCM, and files that were not analyzed are
+ * reported as notifications of the run.
+ *
+ * @author Dennis Reedy
+ */
+class SarifReport implements ReportWriter {
+    private static final String SCHEMA = "https://json.schemastore.org/sarif-2.1.0.json";
+    private static final String SOURCE_ROOT = "SRCROOT";
+    private final File file;
+    private final Map<String, Rule> rules = new LinkedHashMap<String, Rule>();
+    private final Map<String, Integer> ruleIndex = new HashMap<String, Integer>();
+    private final URI sourceRoot;
+    private JsonWriter json;
+    private boolean completed;
+
+    /**
+     * @param file the file to write the report to
+     * @param rules the rules that were run, described by the report
+     * @param workingDirectory the working directory of the SCM, files are located relative to it,
+     * may be null
+     */
+    SarifReport(File file, Collection<Rule> rules, File workingDirectory) {
+        this.file = file;
+        for(Rule rule : rules) {
+            if(!this.rules.containsKey(rule.getName())) {
+                ruleIndex.put(rule.getName(), this.rules.size());
+                this.rules.put(rule.getName(), rule);
+            }
+        }
+        this.sourceRoot = workingDirectory==null?null:workingDirectory.getAbsoluteFile().toPath().toUri();
+    }
+
+    public void start(ReportContext context, List<Attribution> attributions) throws IOException {
+        json = new JsonWriter(new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file), "UTF-8")));
+        json.beginObject();
+        json.name("$schema").value(SCHEMA);
+        json.name("version").value("2.1.0");
+        json.name("runs").beginArray().beginObject();
+        json.name("tool").beginObject().name("driver").beginObject();
+        json.name("name").value("code-critic");
+        json.name("version").value(PMD.VERSION);
+        json.name("rules").beginArray();
+        for(Rule rule : rules.values()) {
+            json.beginObject();
+            json.name("id").value(rule.getName());
+            json.name("name").value(rule.getName());
+            json.name("shortDescription").beginObject().name("text").value(text(rule.getMessage(), rule.getName())).endObject();
+            if(rule.getDescription()!=null && rule.getDescription().trim().length()>0)
+                json.name("fullDescription").beginObject().name("text").value(rule.getDescription().trim()).endObject();
+            if(rule.getExternalInfoUrl()!=null && rule.getExternalInfoUrl().length()>0)
+                json.name("helpUri").value(rule.getExternalInfoUrl());
+            json.name("defaultConfiguration").beginObject().name("level").value(level(rule.getPriority())).endObject();
+            json.name("properties").beginObject();
+            json.name("ruleSet").value(rule.getRuleSetName());
+            json.name("priority").value(rule.getPriority());
+            json.endObject();
+            json.endObject();
+        }
+        json.endArray();
+        json.endObject().endObject();
+        if(sourceRoot!=null)
+            json.name("originalUriBaseIds").beginObject().name(SOURCE_ROOT).beginObject()
+                .name("uri").value(sourceRoot.toString()).endObject().endObject();
+        URI repository = repository(context.getRepository());
+        if(repository!=null) {
+            json.name("versionControlProvenance").beginArray().beginObject();
+            json.name("repositoryUri").value(repository.toString());
+            json.name("branch").value(context.getBranch());
+            json.endObject().endArray();
+        }
+        json.name("results").beginArray();
+    }
+
+    public void add(Report report) throws IOException {
+        for(Iterator<IRuleViolation> iterator = report.iterator(); iterator.hasNext();) {
+            IRuleViolation violation = iterator.next();
+            Rule rule = violation.getRule();
+            int priority = rule.getPriority();
+            json.beginObject();
+            json.name("ruleId").value(rule.getName());
+            Integer index = ruleIndex.get(rule.getName());
+            if(index!=null)
+                json.name("ruleIndex").value(index);
+            json.name("level").value(level(priority));
+            json.name("message").beginObject().name("text").value(text(violation.getDescription(), rule.getName())).endObject();
+            json.name("locations").beginArray().beginObject().name("physicalLocation").beginObject();
+            writeArtifact(violation.getFilename());
+            json.name("region").beginObject();
+            int beginLine = Math.max(1, violation.getBeginLine());
+            json.name("startLine").value(beginLine);
+            if(violation.getBeginColumn()>0)
+                json.name("startColumn").value(violation.getBeginColumn());
+            json.name("endLine").value(Math.max(beginLine, violation.getEndLine()));
+            /* PMD's end column is the last column of the violation, SARIF's is the column after it */
+            if(violation.getEndColumn()>0 && violation.getBeginColumn()>0)
+                json.name("endColumn").value(violation.getEndColumn()+1);
+            json.endObject();
+            json.endObject().endObject().endArray();
+            json.name("properties").beginObject();
+            json.name("ruleSet").value(rule.getRuleSetName());
+            json.name("priority").value(priority);
+            json.endObject();
+            json.endObject();
+        }
+    }
+
+    public void end(List<String[]> skippedFiles, List<Duplication> duplications, List<CommitTrend> trends) throws IOException {
+        json.endArray();
+        json.name("invocations").beginArray().beginObject();
+        json.name("executionSuccessful").value(true);
+        json.name("toolExecutionNotifications").beginArray();
+        for(String[] skipped : skippedFiles) {
+            json.beginObject();
+            json.name("level").value("warning");
+            json.name("message").beginObject().name("text").value(text(skipped[1], "Not analyzed")).endObject();
+            json.name("locations").beginArray().beginObject().name("physicalLocation").beginObject();
+            writeArtifact(skipped[0]);
+            json.endObject().endObject().endArray();
+            json.endObject();
+        }
+        json.endArray();
+        json.endObject().endArray();
+        json.endObject().endArray();
+        json.endObject();
+        json.close();
+        completed = true;
+    }
+
+    public void discard() {
+        if(json==null || completed)
+            return;
+        try {
+            json.close();
+        } catch (IOException e) {
+            // The report is being discarded
+        }
+        if(!file.delete() && file.exists())
+            file.deleteOnExit();
+    }
+
+    /*
+     * Locate a file relative to the source root if it is in it, otherwise by its absolute URI
+     */
+    private void writeArtifact(String name) throws IOException {
+        File sourceFile = new File(name);
+        URI uri;
+        if(sourceRoot==null) {
+            uri = sourceFile.getAbsoluteFile().toPath().toUri();
+        } else {
+            if(!sourceFile.isAbsolute())
+                sourceFile = new File(new File(sourceRoot), name);
+            uri = sourceRoot.relativize(sourceFile.toPath().toUri());
+        }
+        json.name("artifactLocation").beginObject();
+        json.name("uri").value(uri.toString());
+        if(!uri.isAbsolute())
+            json.name("uriBaseId").value(SOURCE_ROOT);
+        json.endObject();
+    }
+
+    /*
+     * Priorities 1 and 2 are errors, 3 warnings and 4 and 5 notes
+     */
+    private String level(int priority) {
+        if(priority<=2)
+            return "error";
+        return priority==3?"warning":"note";
+    }
+
+    /*
+     * SARIF messages must have text
+     */
+    private String text(String text, String otherwise) {
+        return text==null || text.trim().length()==0?otherwise:text.trim();
+    }
+
+    private URI repository(String repository) {
+        if(repository==null)
+            return null;
+        try {
+            URI uri = new URI(repository);
+            return uri.isAbsolute()?uri:null;
+        } catch (URISyntaxException e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,267 @@
+/*
+ * Copyright to the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.cochise.codecritic;
+
+import net.sourceforge.pmd.IRuleViolation;
+import net.sourceforge.pmd.Report;
+
+import java.util.*;
+
+/**
+ * Analysis state shared by the reports generated in one process, for a batch of branches or for the
+ * requests of a daemon. Rules are loaded once for each configuration of the analysis, and the report of
+ * each analyzed version of a source file is kept, so a version is not analyzed again. Reports are kept
+ * as compact violation records, and once the limit on the number of reports or of violations is
+ * reached the least recently used reports are discarded.
+ *
+ * <p>Rules hold state while a file is analyzed, so reports generated at the same time each use their
+ * own rules and analyzer, taken from those not in use.</p>
+ *
+ * <p>A configuration has a state, that changes when the rule set definitions or the auxiliary
+ * classpath it uses change. Once the state of a configuration changes, the rules, analyzers and
+ * reports of its previous state are discarded.</p>
+ *
+ * @author Dennis Reedy
+ */
+public class SharedAnalysis {
+    public static final int DEFAULT_MAX_REPORTS = 50000;
+    public static final int DEFAULT_MAX_VIOLATIONS = 500000;
+    private final Map<String, Deque<Session>> idle = new HashMap<String, Deque<Session>>();
+    private final Map<String, String> states = new HashMap<String, String>();
+    private final ReportCache reports;
+    private int analyzed;
+    private int reused;
+    private boolean closed;
+
+    public SharedAnalysis() {
+        this(DEFAULT_MAX_REPORTS, DEFAULT_MAX_VIOLATIONS);
+    }
+
+    /**
+     * Create shared analysis state
+     *
+     * @param maxReports the number of file version reports to keep
+     * @param maxViolations the number of violations to keep, across the kept reports
+     */
+    public SharedAnalysis(int maxReports, int maxViolations) {
+        reports = new ReportCache(maxReports, maxViolations);
+    }
+
+    /**
+     * Take rules and an analyzer for a configuration of the analysis that are not in use
+     *
+     * @param configuration identifies the rules and the limits of the analysis
+     * @param state the state of the rule set definitions and auxiliary classpath of the configuration
+     *
+     * @return a session to release once the report is generated, with no analyzer if there was none
+     * available, for the caller to create
+     */
+    synchronized Session acquire(String configuration, String state) {
+        String previous = states.put(configuration, state);
+        if(previous!=null && !previous.equals(state))
+            discard(configuration+"|"+previous);
+        String key = configuration+"|"+state;
+        Deque<Session> sessions = idle.get(key);
+        Session session = sessions==null?null:sessions.poll();
+        return session==null?new Session(configuration, key):session;
+    }
+
+    /*
+     * Close the idle analyzers of a configuration's previous state and drop its reports
+     */
+    private void discard(String key) {
+        Deque<Session> sessions = idle.remove(key);
+        if(sessions!=null) {
+            for(Session session : sessions)
+                session.analyzer.close();
+        }
+        reports.discard(key+":");
+    }
+
+    /**
+     * Return a session, so its rules and analyzer can be used by another report
+     *
+     * @param session the session
+     */
+    synchronized void release(Session session) {
+        if(session.analyzer==null)
+            return;
+        if(closed || !session.key.equals(session.configuration+"|"+states.get(session.configuration))) {
+            session.analyzer.close();
+            return;
+        }
+        Deque<Session> sessions = idle.get(session.key);
+        if(sessions==null) {
+            sessions = new ArrayDeque<Session>();
+            idle.put(session.key, sessions);
+        }
+        sessions.push(session);
+    }
+
+    /**
+     * Get the report of a version of a source file analyzed with the same configuration
+     *
+     * @param session the session of the analysis
+     * @param fileName the name of the source file
+     * @param digest the digest of the content of the version
+     *
+     * @return the report, or null if the version has not been analyzed
+     */
+    synchronized Report getReport(Session session, String fileName, String digest) {
+        CachedReport report = reports.get(session.key+":"+fileName+":"+digest);
+        if(report==null)
+            return null;
+        reused++;
+        return report.toReport();
+    }
+
+    synchronized void addReport(Session session, String fileName, String digest, Report report) {
+        reports.add(session.key+":"+fileName+":"+digest, new CachedReport(report));
+        analyzed++;
+    }
+
+    /**
+     * @return the number of file versions analyzed and kept
+     */
+    public synchronized int getAnalyzed() {
+        return analyzed;
+    }
+
+    /**
+     * @return the number of times a kept report was used rather than analyzing the file version again
+     */
+    public synchronized int getReused() {
+        return reused;
+    }
+
+    /**
+     * @return the number of analyses abandoned when they did not complete in time, whose threads are
+     * still running
+     */
+    public int getAbandoned() {
+        return FileAnalyzer.getAbandoned();
+    }
+
+    /**
+     * Close the analyzers, those in use are closed when they are released
+     */
+    public synchronized void close() {
+        closed = true;
+        for(Deque<Session> sessions : idle.values()) {
+            for(Session session : sessions)
+                session.analyzer.close();
+        }
+        idle.clear();
+    }
+
+    /*
+     * The kept reports in least recently used order, bounded by the number of reports and the number
+     * of violations they hold
+     */
+    private static class ReportCache extends LinkedHashMap<String, CachedReport> {
+        private static final long serialVersionUID = 1L;
+        private final int maxReports;
+        private final int maxViolations;
+        private int violations;
+
+        ReportCache(int maxReports, int maxViolations) {
+            super(16, 0.75f, true);
+            this.maxReports = maxReports;
+            this.maxViolations = maxViolations;
+        }
+
+        void add(String key, CachedReport report) {
+            CachedReport replaced = put(key, report);
+            if(replaced!=null)
+                violations -= replaced.size();
+            violations += report.size();
+            Iterator<CachedReport> eldest = values().iterator();
+            while((size()>maxReports || violations>maxViolations) && eldest.hasNext()) {
+                violations -= eldest.next().size();
+                eldest.remove();
+            }
+        }
+
+        void discard(String prefix) {
+            for(Iterator<Map.Entry<String, CachedReport>> iter = entrySet().iterator(); iter.hasNext();) {
+                Map.Entry<String, CachedReport> entry = iter.next();
+                if(entry.getKey().startsWith(prefix)) {
+                    violations -= entry.getValue().size();
+                    iter.remove();
+                }
+            }
+        }
+    }
+
+    /*
+     * The violations of a report as the records of a codec of its own, so they are dropped with the report
+     */
+    private static class CachedReport {
+        private final ViolationCodec codec = new ViolationCodec();
+        private final int[] records;
+        private final Report.ProcessingError[] errors;
+
+        CachedReport(Report report) {
+            records = new int[report.size()*ViolationCodec.FIELDS];
+            int offset = 0;
+            for(Iterator<IRuleViolation> iter = report.iterator(); iter.hasNext(); offset += ViolationCodec.FIELDS)
+                codec.encode(iter.next(), records, offset);
+            codec.trim();
+            List<Report.ProcessingError> errorList = new ArrayList<Report.ProcessingError>();
+            for(Iterator<Report.ProcessingError> iter = report.errors(); iter.hasNext();)
+                errorList.add(iter.next());
+            errors = errorList.toArray(new Report.ProcessingError[errorList.size()]);
+        }
+
+        int size() {
+            return records.length/ViolationCodec.FIELDS;
+        }
+
+        Report toReport() {
+            Report report = new Report();
+            for(int offset=0; offset<records.length; offset += ViolationCodec.FIELDS)
+                report.addRuleViolation(codec.decode(records, offset));
+            for(Report.ProcessingError error : errors)
+                report.addError(error);
+            return report;
+        }
+    }
+
+    static class Session {
+        private final String configuration;
+        private final String key;
+        private RuleSetFilter ruleSetFilter;
+        private FileAnalyzer analyzer;
+
+        Session(String configuration, String key) {
+            this.configuration = configuration;
+            this.key = key;
+        }
+
+        RuleSetFilter getRuleSetFilter() {
+            return ruleSetFilter;
+        }
+
+        FileAnalyzer getAnalyzer() {
+            return analyzer;
+        }
+
+        void setAnalyzer(RuleSetFilter ruleSetFilter, FileAnalyzer analyzer) {
+            this.ruleSetFilter = ruleSetFilter;
+            this.analyzer = analyzer;
+        }
+    }
+}
@@ -0,0 +1,213 @@
+/*
+ * Copyright to the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.cochise.codecritic;
+
+import org.cochise.codecritic.support.scm.SCM;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.ref.SoftReference;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.StandardOpenOption;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * The content of the changed source files, read from disk once and shared by the stages that need it:
+ * analysis, the filtering of base violations, duplicated code detection and gate ordering.
+ *
+ * <p>Content is softly referenced, so under memory pressure it may be collected and read again rather
+ * than fail the run.</p>
+ *
+ * <p>If the SCM reads the sources of a branch from a revision rather than the working directory, the
+ * content is read from the SCM, preferably for all source files at once with {@link #prefetch}.</p>
+ *
+ * @author Dennis Reedy
+ */
+class SourceContents {
+    private final Charset encoding;
+    private final SCM scm;
+    private final Map<SourceFile, Entry> entries = new HashMap<SourceFile, Entry>();
+    private int reads;
+    private long bytesRead;
+
+    SourceContents(Charset encoding) {
+        this(encoding, null);
+    }
+
+    /**
+     * Create source contents that are read from the SCM if its sources are read from a revision
+     *
+     * @param encoding the encoding of source files in the working directory
+     * @param scm the SCM, may be null
+     */
+    SourceContents(Charset encoding, SCM scm) {
+        this.encoding = encoding;
+        this.scm = scm;
+    }
+
+    /**
+     * Read the content of source files from the SCM in one request, if the SCM reads its sources from a
+     * revision. Otherwise source files are read from the working directory as they are needed.
+     *
+     * @param sourceFiles the source files
+     *
+     * @throws IOException if the source files cannot be read
+     */
+    void prefetch(Collection<SourceFile> sourceFiles) throws IOException {
+        if(getRevision()==null || sourceFiles.isEmpty())
+            return;
+        for(Map.Entry<SourceFile, String> read : readRevision(sourceFiles).entrySet()) {
+            Entry entry = entry(read.getKey());
+            synchronized(entry) {
+                entry.content = new SoftReference<String>(read.getValue());
+                entry.size = read.getValue().getBytes(encoding).length;
+            }
+        }
+    }
+
+    /**
+     * Get the size of a source file, without reading it if it is in the working directory
+     *
+     * @param sourceFile the source file
+     *
+     * @return the size in bytes
+     *
+     * @throws IOException if the source file is read from a revision, and cannot be read
+     */
+    long size(SourceFile sourceFile) throws IOException {
+        Entry entry = entry(sourceFile);
+        synchronized(entry) {
+            if(entry.size<0 && getRevision()!=null)
+                get(sourceFile);
+            if(entry.size<0)
+                entry.size = new File(sourceFile.getFile()).length();
+            return entry.size;
+        }
+    }
+
+    /**
+     * Get the content of a source file, reading it if it has not been read
+     *
+     * @param sourceFile the source file
+     *
+     * @return the content
+     *
+     * @throws IOException if the source file cannot be read
+     */
+    String get(SourceFile sourceFile) throws IOException {
+        Entry entry = entry(sourceFile);
+        synchronized(entry) {
+            String content = entry.content==null?null:entry.content.get();
+            if(content==null) {
+                if(getRevision()==null) {
+                    content = read(new File(sourceFile.getFile()));
+                } else {
+                    content = readRevision(Collections.singleton(sourceFile)).get(sourceFile);
+                    if(content==null)
+                        throw new IOException(sourceFile+" does not exist in "+getRevision());
+                    entry.size = content.getBytes(encoding).length;
+                }
+                entry.content = new SoftReference<String>(content);
+            }
+            return content;
+        }
+    }
+
+    /**
+     * Get the digest of the content of a source file
+     *
+     * @param sourceFile the source file
+     *
+     * @return the SHA-1 digest of the content
+     *
+     * @throws IOException if the source file cannot be read
+     */
+    String digest(SourceFile sourceFile) throws IOException {
+        Entry entry = entry(sourceFile);
+        synchronized(entry) {
+            if(entry.digest==null)
+                entry.digest = Digest.sha1(get(sourceFile));
+            return entry.digest;
+        }
+    }
+
+    synchronized int getReads() {
+        return reads;
+    }
+
+    synchronized long getBytesRead() {
+        return bytesRead;
+    }
+
+    private synchronized Entry entry(SourceFile sourceFile) {
+        Entry entry = entries.get(sourceFile);
+        if(entry==null) {
+            entry = new Entry();
+            entries.put(sourceFile, entry);
+        }
+        return entry;
+    }
+
+    private String getRevision() {
+        return scm==null?null:scm.getRevision();
+    }
+
+    private Map<SourceFile, String> readRevision(Collection<SourceFile> sourceFiles) throws IOException {
+        Map<SourceFile, String> read;
+        try {
+            read = scm.readSources(getRevision(), sourceFiles);
+        } catch (CodeCriticException e) {
+            throw new IOException("Unable to read sources from "+getRevision(), e);
+        }
+        synchronized(this) {
+            for(String content : read.values()) {
+                reads++;
+                bytesRead += content.getBytes(encoding).length;
+            }
+        }
+        return read;
+    }
+
+    private String read(File file) throws IOException {
+        String content;
+        long size;
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            size = channel.size();
+            ByteBuffer buffer = ByteBuffer.allocate((int)size);
+            while(buffer.hasRemaining() && channel.read(buffer)>=0) {
+                /* Read until the buffer is full or the file is shorter than it was */
+            }
+            buffer.flip();
+            content = encoding.decode(buffer).toString();
+        }
+        synchronized(this) {
+            reads++;
+            bytesRead += size;
+        }
+        return content;
+    }
+
+    private static class Entry {
+        SoftReference<String> content;
+        String digest;
+        long size = -1;
+    }
+}
@@ -26,6 +26,7 @@ import java.util.List;
 public class SourceFile implements Comparable<SourceFile> {
     private final String file;
     private final List<ChangeSet> changeSets = new ArrayList<ChangeSet>();
+    private LineRanges changedLines;
 
     public SourceFile(String file) {
         if(file==null)
@@ -45,6 +46,19 @@ public class SourceFile implements Comparable<SourceFile> {
         return changeSets;
     }
 
+    /**
+     * Get the lines that have changed in this file
+     *
+     * @return the changed lines, or null if changed lines have not been computed
+     */
+    public LineRanges getChangedLines() {
+        return changedLines;
+    }
+
+    public void setChangedLines(LineRanges changedLines) {
+        this.changedLines = changedLines;
+    }
+
     @Override
     public boolean equals(Object o) {
         if (this == o)
@@ -0,0 +1,31 @@
+/*
+ * Copyright to the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.cochise.codecritic;
+
+/**
+ * Notified of Java source files as the SCM log discovers them
+ *
+ * @author Dennis Reedy
+ */
+public interface SourceListener {
+    /**
+     * A Java source file has been found in the branch for the first time. The source file may
+     * be associated with further change sets as the log is processed.
+     *
+     * @param sourceFile the source file
+     */
+    void discovered(SourceFile sourceFile);
+}
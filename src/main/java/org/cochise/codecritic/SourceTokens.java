@@ -0,0 +1,151 @@
+/*
+ * Copyright to the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.cochise.codecritic;
+
+import net.sourceforge.pmd.TargetJDK1_4;
+import net.sourceforge.pmd.ast.JavaParserConstants;
+import net.sourceforge.pmd.ast.JavaParserTokenManager;
+import net.sourceforge.pmd.ast.Token;
+import net.sourceforge.pmd.ast.TokenMgrError;
+
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The tokens of a Java source file, as the CPD Java tokenizer sees them: package and import
+ * statements are discarded, and each token is identified by its image. Token images are hashed
+ * with a rolling hash over runs of tokens, and fingerprints are selected from the hashes by
+ * winnowing, so that any run of tokens long enough shared by two sources shares at least one
+ * fingerprint.
+ *
+ * @author Dennis Reedy
+ */
+class SourceTokens {
+    private static final long BASE = 1000003;
+    private final String[] images;
+    private final int[] lines;
+
+    private SourceTokens(String[] images, int[] lines) {
+        this.images = images;
+        this.lines = lines;
+    }
+
+    /**
+     * Tokenize Java source
+     *
+     * @param content the Java source
+     *
+     * @return the tokens, empty if the source cannot be tokenized
+     */
+    static SourceTokens tokenize(String content) {
+        List<String> images = new ArrayList<String>();
+        List<Integer> lines = new ArrayList<Integer>();
+        try {
+            JavaParserTokenManager tokenManager = new TargetJDK1_4().createJavaParserTokenManager(new StringReader(content));
+            boolean discarding = false;
+            for(Token token = tokenManager.getNextToken(); token.kind!=JavaParserConstants.EOF; token = tokenManager.getNextToken()) {
+                if(token.kind==JavaParserConstants.IMPORT || token.kind==JavaParserConstants.PACKAGE) {
+                    discarding = true;
+                    continue;
+                }
+                if(discarding) {
+                    if(token.kind==JavaParserConstants.SEMICOLON)
+                        discarding = false;
+                    continue;
+                }
+                if(token.kind!=JavaParserConstants.SEMICOLON) {
+                    images.add(token.image);
+                    lines.add(token.beginLine);
+                }
+            }
+        } catch (TokenMgrError e) {
+            images.clear();
+            lines.clear();
+        }
+        int[] l = new int[lines.size()];
+        for(int i=0; i<l.length; i++)
+            l[i] = lines.get(i);
+        return new SourceTokens(images.toArray(new String[images.size()]), l);
+    }
+
+    int size() {
+        return images.length;
+    }
+
+    int getLine(int index) {
+        return lines[index];
+    }
+
+    boolean same(int index, SourceTokens other, int otherIndex) {
+        return images[index].equals(other.images[otherIndex]);
+    }
+
+    /**
+     * Compute the rolling hash of each run of tokens
+     *
+     * @param length the number of tokens in a run
+     *
+     * @return the hash of the run starting at each token, empty if there are fewer tokens than the length
+     */
+    long[] hashes(int length) {
+        if(images.length<length)
+            return new long[0];
+        long[] hashes = new long[images.length-length+1];
+        long power = 1;
+        for(int i=1; i<length; i++)
+            power *= BASE;
+        long hash = 0;
+        for(int i=0; i<images.length; i++) {
+            if(i>=length)
+                hash -= images[i-length].hashCode()*power;
+            hash = hash*BASE+images[i].hashCode();
+            if(i>=length-1)
+                hashes[i-length+1] = hash;
+        }
+        return hashes;
+    }
+
+    /**
+     * Select fingerprints from the hashes of runs of tokens; the smallest hash in each window of
+     * hashes, taking the rightmost when there is a tie
+     *
+     * @param hashes the hashes of runs of tokens
+     * @param window the number of hashes in a window
+     *
+     * @return the indexes of the selected hashes, in order
+     */
+    static int[] winnow(long[] hashes, int window) {
+        List<Integer> selected = new ArrayList<Integer>();
+        int last = -1;
+        for(int start=0; start+window<=hashes.length || (start==0 && hashes.length>0); start++) {
+            int end = Math.min(start+window, hashes.length);
+            int min = start;
+            for(int i=start+1; i<end; i++) {
+                if(hashes[i]<=hashes[min])
+                    min = i;
+            }
+            if(min!=last) {
+                selected.add(min);
+                last = min;
+            }
+        }
+        int[] indexes = new int[selected.size()];
+        for(int i=0; i<indexes.length; i++)
+            indexes[i] = selected.get(i);
+        return indexes;
+    }
+}
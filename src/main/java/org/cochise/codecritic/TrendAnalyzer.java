@@ -0,0 +1,157 @@
+/*
+ * Copyright to the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.cochise.codecritic;
+
+import net.sourceforge.pmd.Report;
+import net.sourceforge.pmd.RuleContext;
+import org.cochise.codecritic.support.scm.SCM;
+
+import java.io.File;
+import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Determines the violations each change set of a branch introduced and fixed. The change sets are
+ * walked oldest first from the merge base, and each one only has the Java source files it touched
+ * analyzed, as of the change set. Files a change set did not touch keep the violations of their
+ * previous version, and a version whose content is unchanged is not analyzed again.
+ *
+ * @author Dennis Reedy
+ */
+class TrendAnalyzer {
+    private final SCM scm;
+    private final FileAnalyzer analyzer;
+    private final FileBudget budget;
+    private final ProgressListener listener;
+    private final Map<SourceFile, List<ViolationFingerprint>> violations = new HashMap<SourceFile, List<ViolationFingerprint>>();
+    private final Map<SourceFile, String> digests = new HashMap<SourceFile, String>();
+    private int analyzed;
+
+    TrendAnalyzer(SCM scm, FileAnalyzer analyzer, FileBudget budget, ProgressListener listener) {
+        this.scm = scm;
+        this.analyzer = analyzer;
+        this.budget = budget;
+        this.listener = listener;
+    }
+
+    /**
+     * Determine the violations each change set introduced and fixed
+     *
+     * @param javaSources the Java source files changed in the branch
+     *
+     * @return the trend of each change set, oldest first, or null if the merge base cannot be determined
+     *
+     * @throws CodeCriticException if sources cannot be read or the analysis is interrupted
+     */
+    List<CommitTrend> analyze(List<SourceFile> javaSources) throws CodeCriticException {
+        String mergeBase = scm.getMergeBase();
+        if(mergeBase==null)
+            return null;
+        Map<ChangeSet, List<SourceFile>> touched = new HashMap<ChangeSet, List<SourceFile>>();
+        for(SourceFile sourceFile : javaSources) {
+            for(ChangeSet changeSet : sourceFile.getChangeSets()) {
+                List<SourceFile> files = touched.get(changeSet);
+                if(files==null) {
+                    files = new ArrayList<SourceFile>();
+                    touched.put(changeSet, files);
+                }
+                files.add(sourceFile);
+            }
+        }
+        violations.putAll(analyze(mergeBase, javaSources));
+        List<CommitTrend> trends = new ArrayList<CommitTrend>();
+        for(ChangeSet changeSet : scm.getHistory()) {
+            CommitTrend trend = new CommitTrend(changeSet);
+            trends.add(trend);
+            /* A merge can change any file, the unchanged ones are recognized by their content */
+            List<SourceFile> files = changeSet.isMerge()?javaSources:touched.get(changeSet);
+            if(files==null)
+                continue;
+            for(Map.Entry<SourceFile, List<ViolationFingerprint>> entry : analyze(changeSet.getChangeSet(), files).entrySet()) {
+                List<ViolationFingerprint> before = violations.get(entry.getKey());
+                if(before==null)
+                    before = Collections.emptyList();
+                trend.addIntroduced(ViolationFingerprint.unmatched(entry.getValue(), before));
+                trend.addFixed(ViolationFingerprint.unmatched(before, entry.getValue()));
+                violations.put(entry.getKey(), entry.getValue());
+            }
+        }
+        return trends;
+    }
+
+    /**
+     * Get the number of file versions that were analyzed
+     *
+     * @return the number of analyses run
+     */
+    int getAnalyzed() {
+        return analyzed;
+    }
+
+    /*
+     * Get the violations of source files as of a revision. Files that do not exist at the revision
+     * have no violations, files that cannot be analyzed are omitted so they keep their previous violations.
+     */
+    private Map<SourceFile, List<ViolationFingerprint>> analyze(String revision, List<SourceFile> sourceFiles) throws CodeCriticException {
+        Map<SourceFile, String> contents = scm.readSources(revision, sourceFiles);
+        Map<SourceFile, List<ViolationFingerprint>> results = new HashMap<SourceFile, List<ViolationFingerprint>>();
+        for(SourceFile sourceFile : sourceFiles) {
+            String content = contents.get(sourceFile);
+            if(content==null) {
+                results.put(sourceFile, Collections.<ViolationFingerprint>emptyList());
+                digests.remove(sourceFile);
+                continue;
+            }
+            String digest = Digest.sha1(content);
+            if(digest.equals(digests.get(sourceFile))) {
+                results.put(sourceFile, violations.get(sourceFile));
+                continue;
+            }
+            String exceeded = budget.checkSize(content.length());
+            if(exceeded!=null) {
+                debug("Not analyzing "+sourceFile+" as of "+revision+", "+exceeded);
+                continue;
+            }
+            RuleContext ctx = new RuleContext();
+            Report report = new Report();
+            ctx.setReport(report);
+            ctx.setSourceCodeFilename(sourceFile.getFile());
+            ctx.setSourceCodeFile(new File(sourceFile.getFile()));
+            try {
+                analyzed++;
+                analyzer.analyze(sourceFile, content, ctx);
+            } catch (TimeoutException e) {
+                debug("Not analyzing "+sourceFile+" as of "+revision+", "+analyzer.getTimeoutReason());
+                continue;
+            } catch (ExecutionException | RuntimeException e) {
+                debug("Error processing "+sourceFile+" as of "+revision+": "+e.getMessage());
+                continue;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new CodeCriticException("Interrupted while analyzing "+sourceFile+" as of "+revision, e);
+            }
+            results.put(sourceFile, ViolationFingerprint.of(report, sourceFile.getFile(), content));
+            digests.put(sourceFile, digest);
+        }
+        return results;
+    }
+
+    private void debug(String message) {
+        if(listener!=null)
+            listener.debug(message);
+    }
+}
@@ -0,0 +1,210 @@
+/*
+ * Copyright to the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.cochise.codecritic;
+
+import net.sourceforge.pmd.IRuleViolation;
+import net.sourceforge.pmd.Rule;
+
+import java.util.*;
+
+/**
+ * Encodes violations as records of ints, with the rules and the strings of the violations numbered
+ * in tables held by the codec, and decodes them back. A record is {@link #FIELDS} ints long, written
+ * at an offset of an int array, so records can be kept in large arrays or written to disk.
+ *
+ * @author Dennis Reedy
+ */
+class ViolationCodec {
+    /* The fields of a record */
+    private static final int RULE = 0;
+    private static final int FILE_NAME = 1;
+    private static final int BEGIN_LINE = 2;
+    private static final int END_LINE = 3;
+    private static final int BEGIN_COLUMN = 4;
+    private static final int END_COLUMN = 5;
+    private static final int MESSAGE = 6;
+    private static final int PACKAGE = 7;
+    private static final int CLASS = 8;
+    private static final int METHOD = 9;
+    private static final int VARIABLE = 10;
+    static final int FIELDS = 11;
+    private final ArrayList<Rule> rules = new ArrayList<Rule>();
+    private final ArrayList<String> strings = new ArrayList<String>();
+    private Map<Rule, Integer> ruleIds = new IdentityHashMap<Rule, Integer>();
+    private Map<String, Integer> stringIds = new HashMap<String, Integer>();
+
+    /**
+     * Encode a violation
+     *
+     * @param violation the violation
+     * @param records the array to write the record to
+     * @param offset the offset of the record in the array
+     */
+    void encode(IRuleViolation violation, int[] records, int offset) {
+        if(ruleIds==null)
+            throw new IllegalStateException("The codec has been trimmed");
+        records[offset+RULE] = ruleId(violation.getRule());
+        records[offset+FILE_NAME] = stringId(violation.getFilename());
+        records[offset+BEGIN_LINE] = violation.getBeginLine();
+        records[offset+END_LINE] = violation.getEndLine();
+        records[offset+BEGIN_COLUMN] = violation.getBeginColumn();
+        records[offset+END_COLUMN] = violation.getEndColumn();
+        records[offset+MESSAGE] = stringId(violation.getDescription());
+        records[offset+PACKAGE] = stringId(violation.getPackageName());
+        records[offset+CLASS] = stringId(violation.getClassName());
+        records[offset+METHOD] = stringId(violation.getMethodName());
+        records[offset+VARIABLE] = stringId(violation.getVariableName());
+    }
+
+    /**
+     * Decode a violation
+     *
+     * @param records the array the record is in
+     * @param offset the offset of the record in the array
+     *
+     * @return the violation
+     */
+    IRuleViolation decode(int[] records, int offset) {
+        return new Violation(rules.get(records[offset+RULE]),
+                             string(records[offset+FILE_NAME]),
+                             records[offset+BEGIN_LINE],
+                             records[offset+END_LINE],
+                             records[offset+BEGIN_COLUMN],
+                             records[offset+END_COLUMN],
+                             string(records[offset+MESSAGE]),
+                             string(records[offset+PACKAGE]),
+                             string(records[offset+CLASS]),
+                             string(records[offset+METHOD]),
+                             string(records[offset+VARIABLE]));
+    }
+
+    /**
+     * Release the lookups used to number rules and strings, once no more violations are encoded.
+     * Records can still be decoded.
+     */
+    void trim() {
+        ruleIds = null;
+        stringIds = null;
+        rules.trimToSize();
+        strings.trimToSize();
+    }
+
+    private int ruleId(Rule rule) {
+        Integer id = ruleIds.get(rule);
+        if(id==null) {
+            id = rules.size();
+            rules.add(rule);
+            ruleIds.put(rule, id);
+        }
+        return id;
+    }
+
+    private int stringId(String s) {
+        if(s==null)
+            return -1;
+        Integer id = stringIds.get(s);
+        if(id==null) {
+            id = strings.size();
+            strings.add(s);
+            stringIds.put(s, id);
+        }
+        return id;
+    }
+
+    private String string(int id) {
+        return id<0?null:strings.get(id);
+    }
+
+    /*
+     * A violation read back from a record
+     */
+    static class Violation implements IRuleViolation {
+        private final Rule rule;
+        private final String fileName;
+        private final int beginLine;
+        private final int endLine;
+        private final int beginColumn;
+        private final int endColumn;
+        private final String description;
+        private final String packageName;
+        private final String className;
+        private final String methodName;
+        private final String variableName;
+
+        Violation(Rule rule, String fileName, int beginLine, int endLine, int beginColumn, int endColumn,
+                  String description, String packageName, String className, String methodName, String variableName) {
+            this.rule = rule;
+            this.fileName = fileName;
+            this.beginLine = beginLine;
+            this.endLine = endLine;
+            this.beginColumn = beginColumn;
+            this.endColumn = endColumn;
+            this.description = description;
+            this.packageName = packageName;
+            this.className = className;
+            this.methodName = methodName;
+            this.variableName = variableName;
+        }
+
+        public String getFilename() {
+            return fileName;
+        }
+
+        public int getBeginLine() {
+            return beginLine;
+        }
+
+        public int getBeginColumn() {
+            return beginColumn;
+        }
+
+        public int getEndLine() {
+            return endLine;
+        }
+
+        public int getEndColumn() {
+            return endColumn;
+        }
+
+        public Rule getRule() {
+            return rule;
+        }
+
+        public String getDescription() {
+            return description;
+        }
+
+        public String getPackageName() {
+            return packageName;
+        }
+
+        public String getMethodName() {
+            return methodName;
+        }
+
+        public String getClassName() {
+            return className;
+        }
+
+        public boolean isSuppressed() {
+            return false;
+        }
+
+        public String getVariableName() {
+            return variableName;
+        }
+    }
+}
@@ -0,0 +1,144 @@
+/*
+ * Copyright to the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.cochise.codecritic;
+
+import net.sourceforge.pmd.IRuleViolation;
+import net.sourceforge.pmd.Report;
+
+import java.util.*;
+
+/**
+ * Identifies a violation independently of its line number, by its rule, its message and the text
+ * of the line it begins on, so that the same violation can be recognized in two versions of a file
+ * after lines above it have been added or removed.
+ *
+ * @author Dennis Reedy
+ */
+class ViolationFingerprint {
+    private final String rule;
+    private final String file;
+    private final int line;
+    private final int priority;
+    private final String message;
+    private final String text;
+    private final String key;
+    private final String ruleKey;
+
+    ViolationFingerprint(String rule, String file, int line, int priority, String message, String text) {
+        this.rule = rule;
+        this.file = file;
+        this.line = line;
+        this.priority = priority;
+        this.message = message;
+        this.text = text.trim().replaceAll("\\s+", " ");
+        this.ruleKey = rule+'\u0000'+message;
+        this.key = ruleKey+'\u0000'+this.text;
+    }
+
+    /**
+     * Get the fingerprints of the violations in a report
+     *
+     * @param report the report of the analysis of the content
+     * @param file the name to give the file the violations are in
+     * @param content the content that was analyzed
+     *
+     * @return the fingerprints, in the order of the violations in the report
+     */
+    static List<ViolationFingerprint> of(Report report, String file, String content) {
+        String[] lines = content.split("\r\n|\r|\n", -1);
+        List<ViolationFingerprint> fingerprints = new ArrayList<ViolationFingerprint>();
+        for(Iterator<IRuleViolation> iter = report.iterator(); iter.hasNext();) {
+            IRuleViolation violation = iter.next();
+            int line = violation.getBeginLine();
+            String text = line>0 && line<=lines.length?lines[line-1]:"";
+            fingerprints.add(new ViolationFingerprint(violation.getRule().getName(),
+                                                      file,
+                                                      line,
+                                                      violation.getRule().getPriority(),
+                                                      violation.getDescription(),
+                                                      text));
+        }
+        return fingerprints;
+    }
+
+    /**
+     * Get the violations that are not matched by other violations. Each violation matches at most
+     * one other violation with the same fingerprint, so a violation that is repeated on identical
+     * lines is unmatched as many times as it is repeated more than in the others. Violations left
+     * over are then matched on their rule and message alone, so a violation on a line that was
+     * edited is still recognized.
+     *
+     * @param violations the violations to match
+     * @param others the violations to match them against
+     *
+     * @return the violations without a match, in their original order
+     */
+    static List<ViolationFingerprint> unmatched(List<ViolationFingerprint> violations, List<ViolationFingerprint> others) {
+        List<ViolationFingerprint> unmatched = match(violations, others, false);
+        if(unmatched.isEmpty())
+            return unmatched;
+        return match(unmatched, match(others, violations, false), true);
+    }
+
+    private static List<ViolationFingerprint> match(List<ViolationFingerprint> violations,
+                                                    List<ViolationFingerprint> others,
+                                                    boolean byRule) {
+        Map<String, Integer> counts = new HashMap<String, Integer>();
+        for(ViolationFingerprint other : others) {
+            String key = byRule?other.ruleKey:other.key;
+            Integer count = counts.get(key);
+            counts.put(key, count==null?1:count+1);
+        }
+        List<ViolationFingerprint> unmatched = new ArrayList<ViolationFingerprint>();
+        for(ViolationFingerprint violation : violations) {
+            String key = byRule?violation.ruleKey:violation.key;
+            Integer count = counts.get(key);
+            if(count==null || count==0) {
+                unmatched.add(violation);
+            } else {
+                counts.put(key, count-1);
+            }
+        }
+        return unmatched;
+    }
+
+    String getRule() {
+        return rule;
+    }
+
+    String getFile() {
+        return file;
+    }
+
+    int getLine() {
+        return line;
+    }
+
+    int getPriority() {
+        return priority;
+    }
+
+    String getMessage() {
+        return message;
+    }
+
+    /**
+     * @return the text of the line the violation begins on, with whitespace normalized
+     */
+    String getText() {
+        return text;
+    }
+}
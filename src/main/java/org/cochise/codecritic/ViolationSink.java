@@ -0,0 +1,367 @@
+/*
+ * Copyright to the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.cochise.codecritic;
+
+import net.sourceforge.pmd.IRuleViolation;
+import net.sourceforge.pmd.Report;
+
+import java.io.*;
+import java.util.*;
+
+/**
+ * Holds the violations of the analyzed source files until the report is written, in bounded memory.
+ * Each violation is kept as a compact record of ints, its file and sequence followed by the record
+ * of a {@link ViolationCodec}. Once the buffer of records is full it is sorted by source file and
+ * spilled to a temporary file as a run, and the runs are merged in source file order as the
+ * violations are read back.
+ *
+ * <p>Processing errors, which are rare, are kept in memory.</p>
+ *
+ * @author Dennis Reedy
+ */
+class ViolationSink implements Closeable {
+    /* The fields of a record */
+    private static final int FILE = 0;
+    private static final int SEQUENCE = 1;
+    private static final int VIOLATION = 2;
+    private static final int FIELDS = VIOLATION+ViolationCodec.FIELDS;
+    private static final int INITIAL_RECORDS = 1024;
+    private final File directory;
+    private final int capacity;
+    private int[] buffer = new int[0];
+    private int buffered;
+    /* The file, first record and number of records of each file's violations in the buffer */
+    private final List<int[]> segments = new ArrayList<int[]>();
+    private final List<SourceFile> files = new ArrayList<SourceFile>();
+    private final Map<SourceFile, Integer> fileIds = new HashMap<SourceFile, Integer>();
+    private final List<Integer> fileViolations = new ArrayList<Integer>();
+    private final ViolationCodec codec = new ViolationCodec();
+    private final Map<Integer, List<Report.ProcessingError>> errors = new HashMap<Integer, List<Report.ProcessingError>>();
+    private File runsFile;
+    private DataOutputStream runs;
+    /* The offset and number of records of each run in the runs file */
+    private final List<long[]> runOffsets = new ArrayList<long[]>();
+    private long runsLength;
+    private int sequence;
+
+    /**
+     * @param directory the directory to spill runs to, or null for the default temporary directory
+     * @param capacity the number of violations held in memory
+     */
+    ViolationSink(File directory, int capacity) {
+        this.directory = directory;
+        this.capacity = Math.max(1, capacity);
+    }
+
+    /**
+     * Add the violations and processing errors of a source file, a source file is added once
+     *
+     * @param sourceFile the source file
+     * @param report the report of the source file
+     *
+     * @throws IOException if a run cannot be spilled
+     */
+    void add(SourceFile sourceFile, Report report) throws IOException {
+        Integer file = fileIds.get(sourceFile);
+        if(file==null) {
+            file = files.size();
+            files.add(sourceFile);
+            fileIds.put(sourceFile, file);
+            fileViolations.add(0);
+        }
+        for(Iterator<Report.ProcessingError> iter = report.errors(); iter.hasNext();) {
+            List<Report.ProcessingError> fileErrors = errors.get(file);
+            if(fileErrors==null) {
+                fileErrors = new ArrayList<Report.ProcessingError>();
+                errors.put(file, fileErrors);
+            }
+            fileErrors.add(iter.next());
+        }
+        int start = buffered;
+        int added = 0;
+        for(Iterator<IRuleViolation> iter = report.iterator(); iter.hasNext();) {
+            if(buffered==capacity) {
+                segments.add(new int[]{file, start, buffered-start});
+                spill();
+                start = 0;
+            }
+            IRuleViolation violation = iter.next();
+            if(buffer.length==buffered*FIELDS)
+                buffer = Arrays.copyOf(buffer, Math.min(capacity, Math.max(INITIAL_RECORDS, buffered*2))*FIELDS);
+            int record = buffered*FIELDS;
+            buffer[record+FILE] = file;
+            buffer[record+SEQUENCE] = sequence++;
+            codec.encode(violation, buffer, record+VIOLATION);
+            buffered++;
+            added++;
+        }
+        if(buffered>start)
+            segments.add(new int[]{file, start, buffered-start});
+        fileViolations.set(file, fileViolations.get(file)+added);
+    }
+
+    /**
+     * @return the number of violations added
+     */
+    int size() {
+        return sequence;
+    }
+
+    /**
+     * @return the number of runs spilled to disk
+     */
+    int getRuns() {
+        return runOffsets.size();
+    }
+
+    /**
+     * @return the source files that have violations, in the order they were added
+     */
+    List<SourceFile> getSourceFiles() {
+        List<SourceFile> violating = new ArrayList<SourceFile>();
+        for(int i=0; i<files.size(); i++) {
+            if(fileViolations.get(i)>0)
+                violating.add(files.get(i));
+        }
+        return violating;
+    }
+
+    /**
+     * Read the reports of the source files back, merging the runs spilled to disk with the violations
+     * still in memory. Violations must not be added while the reports are being read.
+     *
+     * @return a reader of the report of each source file that has violations or processing errors,
+     * in source file order
+     *
+     * @throws IOException if the runs cannot be read
+     */
+    Reader reader() throws IOException {
+        if(runs!=null)
+            runs.flush();
+        return new Reader();
+    }
+
+    /**
+     * Delete the runs spilled to disk
+     */
+    public void close() {
+        if(runs==null)
+            return;
+        try {
+            runs.close();
+        } catch (IOException e) {
+            // The runs are being deleted
+        }
+        if(!runsFile.delete() && runsFile.exists())
+            runsFile.deleteOnExit();
+        runs = null;
+    }
+
+    /*
+     * Write the buffer, ordered by source file, to the runs file as a run
+     */
+    private void spill() throws IOException {
+        if(runs==null) {
+            runsFile = directory==null?File.createTempFile("code-critic", ".violations"):
+                                       File.createTempFile("code-critic", ".violations", directory);
+            runs = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(runsFile)));
+        }
+        runOffsets.add(new long[]{runsLength, buffered});
+        for(int[] segment : sortedSegments()) {
+            for(int i=segment[1]*FIELDS; i<(segment[1]+segment[2])*FIELDS; i++)
+                runs.writeInt(buffer[i]);
+        }
+        runsLength += (long)buffered*FIELDS*4;
+        buffered = 0;
+        segments.clear();
+    }
+
+    /*
+     * The segments of the buffer in source file order, a file's segments in the order they were added
+     */
+    private List<int[]> sortedSegments() {
+        List<int[]> sorted = new ArrayList<int[]>(segments);
+        Collections.sort(sorted, new Comparator<int[]>() {
+            public int compare(int[] s1, int[] s2) {
+                return files.get(s1[0]).compareTo(files.get(s2[0]));
+            }
+        });
+        return sorted;
+    }
+
+    /**
+     * Reads the report of each source file, in source file order
+     */
+    class Reader implements Closeable {
+        private final List<SourceFile> ordered = new ArrayList<SourceFile>(files);
+        private final int[] ranks = new int[files.size()];
+        private final PriorityQueue<Run> queue;
+        private final List<Run> opened = new ArrayList<Run>();
+        private int next;
+        private SourceFile sourceFile;
+        private Report report;
+
+        private Reader() throws IOException {
+            Collections.sort(ordered);
+            for(int i=0; i<ordered.size(); i++)
+                ranks[fileIds.get(ordered.get(i))] = i;
+            queue = new PriorityQueue<Run>(runOffsets.size()+1, new Comparator<Run>() {
+                public int compare(Run r1, Run r2) {
+                    int rank1 = ranks[r1.record[FILE]];
+                    int rank2 = ranks[r2.record[FILE]];
+                    if(rank1!=rank2)
+                        return rank1<rank2?-1:1;
+                    return r1.record[SEQUENCE]<r2.record[SEQUENCE]?-1:1;
+                }
+            });
+            try {
+                for(long[] run : runOffsets)
+                    open(new FileRun(run[0], run[1]));
+                open(new MemoryRun());
+            } catch (IOException e) {
+                close();
+                throw e;
+            }
+        }
+
+        /**
+         * Read the report of the next source file
+         *
+         * @return false if there are no more source files
+         *
+         * @throws IOException if the runs cannot be read
+         */
+        boolean next() throws IOException {
+            while(next<ordered.size()) {
+                SourceFile candidate = ordered.get(next++);
+                int file = fileIds.get(candidate);
+                Report fileReport = new Report();
+                boolean found = false;
+                while(!queue.isEmpty() && queue.peek().record[FILE]==file) {
+                    Run run = queue.poll();
+                    fileReport.addRuleViolation(run.violation());
+                    found = true;
+                    if(run.advance())
+                        queue.add(run);
+                }
+                List<Report.ProcessingError> fileErrors = errors.get(file);
+                if(fileErrors!=null) {
+                    for(Report.ProcessingError error : fileErrors)
+                        fileReport.addError(error);
+                }
+                if(found || fileErrors!=null) {
+                    sourceFile = candidate;
+                    report = fileReport;
+                    return true;
+                }
+            }
+            sourceFile = null;
+            report = null;
+            return false;
+        }
+
+        SourceFile getSourceFile() {
+            return sourceFile;
+        }
+
+        Report getReport() {
+            return report;
+        }
+
+        public void close() {
+            for(Run run : opened)
+                run.close();
+            opened.clear();
+            queue.clear();
+        }
+
+        private void open(Run run) throws IOException {
+            opened.add(run);
+            if(run.advance())
+                queue.add(run);
+        }
+    }
+
+    /*
+     * A run of records in source file order, positioned at its current record
+     */
+    private abstract class Run {
+        final int[] record = new int[FIELDS];
+
+        abstract boolean advance() throws IOException;
+
+        void close() {
+        }
+
+        IRuleViolation violation() {
+            return codec.decode(record, VIOLATION);
+        }
+    }
+
+    private class FileRun extends Run {
+        private final DataInputStream in;
+        private long remaining;
+
+        FileRun(long offset, long records) throws IOException {
+            FileInputStream stream = new FileInputStream(runsFile);
+            try {
+                stream.getChannel().position(offset);
+            } catch (IOException e) {
+                stream.close();
+                throw e;
+            }
+            in = new DataInputStream(new BufferedInputStream(stream));
+            remaining = records;
+        }
+
+        boolean advance() throws IOException {
+            if(remaining==0)
+                return false;
+            for(int i=0; i<FIELDS; i++)
+                record[i] = in.readInt();
+            remaining--;
+            return true;
+        }
+
+        @Override
+        void close() {
+            try {
+                in.close();
+            } catch (IOException e) {
+                // Nothing more is read from the run
+            }
+        }
+    }
+
+    private class MemoryRun extends Run {
+        private final Iterator<int[]> sorted = sortedSegments().iterator();
+        private int position;
+        private int end;
+
+        boolean advance() {
+            while(position==end) {
+                if(!sorted.hasNext())
+                    return false;
+                int[] segment = sorted.next();
+                position = segment[1];
+                end = segment[1]+segment[2];
+            }
+            System.arraycopy(buffer, position*FIELDS, record, 0, FIELDS);
+            position++;
+            return true;
+        }
+    }
+}
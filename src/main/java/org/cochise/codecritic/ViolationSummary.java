@@ -0,0 +1,150 @@
+/*
+ * Copyright to the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.cochise.codecritic;
+
+import net.sourceforge.pmd.IRuleViolation;
+
+import java.util.*;
+
+/**
+ * Counts the violations of a report by rule, priority, file and package as the violations are
+ * rendered, so that the summaries of a report do not have to be computed by scanning its violations
+ * again.
+ *
+ * @author Dennis Reedy
+ */
+class ViolationSummary {
+    static final int PRIORITIES = 5;
+    private final Map<String, Count> rules = new LinkedHashMap<String, Count>();
+    private final Map<String, Count> packages = new LinkedHashMap<String, Count>();
+    private final List<Count> files = new ArrayList<Count>();
+    private final int[] priorities = new int[PRIORITIES+1];
+    private Count file;
+    private int violations;
+
+    /**
+     * Count a violation. A new file is counted whenever the file of a violation differs from the file
+     * of the violation before it, as the violations of a file are rendered together.
+     *
+     * @param violation the violation
+     *
+     * @return the count of the file the violation is in
+     */
+    Count add(IRuleViolation violation) {
+        if(file==null || !file.name.equals(violation.getFilename())) {
+            file = new Count(violation.getFilename(), null, 0);
+            files.add(file);
+        }
+        int priority = violation.getRule().getPriority();
+        String ruleName = violation.getRule().getName();
+        Count rule = rules.get(ruleName);
+        if(rule==null) {
+            rule = new Count(ruleName, violation.getRule().getRuleSetName(), priority);
+            rules.put(ruleName, rule);
+        }
+        String packageName = violation.getPackageName()==null?"":violation.getPackageName();
+        Count pkg = packages.get(packageName);
+        if(pkg==null) {
+            pkg = new Count(packageName, null, 0);
+            packages.put(packageName, pkg);
+        }
+        rule.add(priority);
+        pkg.add(priority);
+        file.add(priority);
+        if(priority>0 && priority<=PRIORITIES)
+            priorities[priority]++;
+        violations++;
+        return file;
+    }
+
+    /**
+     * @return the total number of violations
+     */
+    int getViolations() {
+        return violations;
+    }
+
+    /**
+     * @param priority the priority, from 1 to 5
+     *
+     * @return the number of violations of the priority
+     */
+    int getViolations(int priority) {
+        return priorities[priority];
+    }
+
+    /**
+     * @return the number of files with violations
+     */
+    int getFiles() {
+        return files.size();
+    }
+
+    /**
+     * @return the violations of each rule, most violated first
+     */
+    List<Count> getRuleCounts() {
+        return sortByTotal(rules.values());
+    }
+
+    /**
+     * @return the violations in each file, the file with the most violations first
+     */
+    List<Count> getFileCounts() {
+        return sortByTotal(files);
+    }
+
+    /**
+     * @return the violations in each package, the package with the most violations first
+     */
+    List<Count> getPackageCounts() {
+        return sortByTotal(packages.values());
+    }
+
+    private List<Count> sortByTotal(Collection<Count> counts) {
+        List<Count> sorted = new ArrayList<Count>(counts);
+        /* The sort is stable, so counts that are equal stay in the order they were found */
+        Collections.sort(sorted, new Comparator<Count>() {
+            public int compare(Count c1, Count c2) {
+                return c1.total==c2.total?0:(c1.total>c2.total?-1:1);
+            }
+        });
+        return sorted;
+    }
+
+    /**
+     * The number of violations of a rule, in a file or in a package, by priority
+     */
+    static class Count {
+        final String name;
+        final String ruleSet;
+        final int priority;
+        final int[] priorities = new int[PRIORITIES+1];
+        int total;
+
+        Count(String name, String ruleSet, int priority) {
+            this.name = name;
+            this.ruleSet = ruleSet;
+            this.priority = priority;
+        }
+
+        void add(int priority) {
+            total++;
+            if(priority>0 && priority<=PRIORITIES)
+                priorities[priority]++;
+        }
+    }
+}
@@ -18,12 +18,17 @@ package org.cochise.codecritic.cli;
 import org.cochise.codecritic.CodeCriticException;
 import org.cochise.codecritic.ProgressListener;
 import org.cochise.codecritic.ReportGenerator;
+import org.cochise.codecritic.SharedAnalysis;
 import org.cochise.codecritic.plugin.HelpMojo;
 import org.cochise.codecritic.support.scm.SCM;
 import org.cochise.codecritic.support.scm.SCMFactory;
 
 import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
 import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
 
 /**
  * Provides support to run code-critic as a command line application
@@ -31,17 +36,47 @@ import java.util.ArrayList;
  * @author Dennis Reedy
  */
 public class CLI {
+    private final PrintStream out;
+    private final SharedAnalysis shared;
     private SCM scm;
     private ConsoleListener listener;
     private CommandLineParser commandLine;
+
+    public CLI() {
+        this(System.out, null);
+    }
+
+    /**
+     * Create a CLI that prints to the provided stream, used by the daemon to review a request
+     *
+     * @param out where to print output
+     * @param shared the analysis state shared with other reviews, may be null
+     */
+    CLI(PrintStream out, SharedAnalysis shared) {
+        this.out = out;
+        this.shared = shared;
+    }
+
+    /**
+     * Review the project a command line refers to
+     *
+     * @param args the command line
+     *
+     * @return false if the review failed the gate, otherwise true
+     *
+     * @throws CodeCriticException if the review cannot be completed
+     */
+    boolean review(String... args) throws CodeCriticException {
+        return !init(args) || exec();
+    }
     
     private boolean init(String... args) throws CodeCriticException {
         commandLine = new CommandLineParser(args);
         if(commandLine.getHelp()) {
-            System.out.println(new HelpMojo().getHelp());
+            out.println(new HelpMojo().getHelp());
             return false;
         }
-        scm = SCMFactory.getSCM();
+        scm = SCMFactory.getSCM(commandLine.getProjectDir());
         if(scm==null)
             throw new CodeCriticException("Unknown project type");
         listener = new ConsoleListener();        
@@ -52,22 +87,69 @@ public class CLI {
         return true;
     }
     
-    private void exec() throws CodeCriticException {
+    private boolean exec() throws CodeCriticException {
         File workingDirectory = commandLine.getProjectDir();
         scm.initialize(workingDirectory, commandLine.getLogOptions());
-        scm.runLog();
         String reportDir = new File(workingDirectory, "pom.xml").exists()?"target":"build/reports";
         File outputDirectory = new File(workingDirectory, reportDir+File.separator+"code-critic-report");
-        ReportGenerator reportGenerator = new ReportGenerator(scm, listener);
-        reportGenerator.generate(outputDirectory, commandLine.getReportOptions());
+        ReportGenerator reportGenerator = new ReportGenerator(scm, listener, shared);
+        if(commandLine.getBranches()==null)
+            return reportGenerator.generate(outputDirectory, commandLine.getReportOptions());
+        List<String> branches = new ArrayList<String>();
+        for(String branch : commandLine.getBranches().split(",")) {
+            branch = branch.trim();
+            if(branch.contains("*")) {
+                for(String matched : scm.getBranches(branch)) {
+                    if(!branches.contains(matched))
+                        branches.add(matched);
+                }
+            } else if(branch.length()>0 && !branches.contains(branch)) {
+                branches.add(branch);
+            }
+        }
+        if(branches.isEmpty())
+            throw new CodeCriticException("No branches match "+commandLine.getBranches());
+        boolean passed = true;
+        for(Map.Entry<String, Boolean> result : reportGenerator.generate(branches, outputDirectory, commandLine.getReportOptions()).entrySet()) {
+            if(!result.getValue()) {
+                listener.info("Branch "+result.getKey()+" failed the gate");
+                passed = false;
+            }
+        }
+        return passed;
     }
 
     
+    /*
+     * Run the daemon, submit the review to a daemon, or review locally if no daemon is available
+     */
+    private boolean run(String... args) throws CodeCriticException {
+        CommandLineParser parsed = new CommandLineParser(args);
+        try {
+            if(parsed.daemon()) {
+                return new Daemon(parsed.getPort(), parsed.getDaemonWorkers(), parsed.getDaemonQueue(),
+                                  parsed.getDaemonMaxAbandoned()).run();
+            }
+            if(parsed.client() || parsed.stopDaemon()) {
+                Integer status = new DaemonClient(parsed.getPort()).submit(args, out);
+                if(status!=null)
+                    return status==Daemon.PASSED;
+                if(parsed.stopDaemon()) {
+                    out.println("[INFO] No code-critic daemon is listening on port "+parsed.getPort());
+                    return true;
+                }
+                out.println("[INFO] No code-critic daemon is available on port "+parsed.getPort()+", reviewing locally");
+            }
+        } catch (IOException e) {
+            throw new CodeCriticException("Unable to communicate with the code-critic daemon on port "+parsed.getPort(), e);
+        }
+        return review(args);
+    }
+
     public static void main(String... args) throws CodeCriticException {
         CLI cli = new CLI();
-        if(cli.init(args)) {
-            cli.exec();
-        }
+        if(!cli.run(args))
+            System.exit(1);
     }
     
     private class CommandLineParser {
@@ -75,16 +157,87 @@ public class CLI {
         private String rules;
         private String minimumPriority;
         private String branch;
+        private String branches;
         private boolean includeTests;
+        private boolean changedLinesOnly;
+        private boolean newViolationsOnly;
         private String exclude;
+        private String cacheDir;
+        private String maxFileSize;
+        private String fileTimeout;
+        private boolean gate;
+        private String gatePriority;
+        private String gateThreshold;
+        private boolean cpd;
+        private String cpdMinimumTokens;
+        private boolean trend;
+        private boolean blame;
+        private boolean xslt;
+        private boolean pages;
+        private boolean diffBundle;
+        private String formats;
+        private String violationBuffer;
+        private String auxClasspath;
         private boolean help;
         private String projectDir;
+        private boolean daemon;
+        private boolean client;
+        private boolean stopDaemon;
+        private String port;
+        private String daemonWorkers;
+        private String daemonQueue;
+        private String daemonMaxAbandoned;
         
         CommandLineParser(String... args) {
             for(String arg : args) {
                 if("-includeTests".equals(arg)) {
                     includeTests = true;
                 }
+                if("-changedLinesOnly".equals(arg)) {
+                    changedLinesOnly = true;
+                }
+                if("-newViolationsOnly".equals(arg)) {
+                    newViolationsOnly = true;
+                }
+                if("-gate".equals(arg)) {
+                    gate = true;
+                }
+                if(arg.startsWith("-gatePriority")) {
+                    gatePriority = splitArg(arg);
+                }
+                if(arg.startsWith("-gateThreshold")) {
+                    gateThreshold = splitArg(arg);
+                }
+                if("-cpd".equals(arg)) {
+                    cpd = true;
+                }
+                if(arg.startsWith("-cpdMinimumTokens")) {
+                    cpdMinimumTokens = splitArg(arg);
+                }
+                if("-trend".equals(arg)) {
+                    trend = true;
+                }
+                if("-blame".equals(arg)) {
+                    blame = true;
+                }
+                if("-xslt".equals(arg)) {
+                    xslt = true;
+                }
+                if("-pages".equals(arg)) {
+                    pages = true;
+                }
+                if("-diffBundle".equals(arg)) {
+                    diffBundle = true;
+                }
+                if(arg.startsWith("-formats")) {
+                    formats = splitArg(arg);
+                }
+                if(arg.startsWith("-violationBuffer")) {
+                    violationBuffer = splitArg(arg);
+                }
+                if(arg.startsWith("-auxClasspath")) {
+                    auxClasspath = arg.substring(arg.indexOf('=')+1);
+                }
                 if("-help".equals(arg)) {
                     help = true;
                 }
@@ -97,15 +250,47 @@ public class CLI {
                 if(arg.startsWith("-minimumPriority")) {
                     minimumPriority = splitArg(arg);
                 }
-                if(arg.startsWith("-branch")) {
+                if(arg.startsWith("-branches")) {
+                    branches = splitArg(arg);
+                } else if(arg.startsWith("-branch")) {
                     branch = splitArg(arg);
                 }
                 if(arg.startsWith("-exclude")) {
                     exclude = splitArg(arg);
                 }
+                if(arg.startsWith("-cacheDir")) {
+                    cacheDir = splitArg(arg);
+                }
+                if(arg.startsWith("-maxFileSize")) {
+                    maxFileSize = splitArg(arg);
+                }
+                if(arg.startsWith("-fileTimeout")) {
+                    fileTimeout = splitArg(arg);
+                }
                 if(arg.startsWith("-dir")) {
                     projectDir = splitArg(arg);
                 }
+                if("-daemon".equals(arg)) {
+                    daemon = true;
+                }
+                if("-client".equals(arg)) {
+                    client = true;
+                }
+                if(Daemon.STOP.equals(arg)) {
+                    stopDaemon = true;
+                }
+                if(arg.startsWith("-port")) {
+                    port = splitArg(arg);
+                }
+                if(arg.startsWith("-daemonWorkers")) {
+                    daemonWorkers = splitArg(arg);
+                }
+                if(arg.startsWith("-daemonQueue")) {
+                    daemonQueue = splitArg(arg);
+                }
+                if(arg.startsWith("-daemonMaxAbandoned")) {
+                    daemonMaxAbandoned = splitArg(arg);
+                }
             }
         }
 
@@ -113,6 +298,10 @@ public class CLI {
             return help;
         }
 
+        String getBranches() {
+            return branches;
+        }
+
         String[] getLogOptions() {
             ArrayList<String> options = new ArrayList<String>();
             if(branch!=null) {
@@ -138,6 +327,60 @@ public class CLI {
             if(minimumPriority!=null) {
                 options.add("minimumPriority="+minimumPriority);
             }
+            if(changedLinesOnly) {
+                options.add("changedLines");
+            }
+            if(newViolationsOnly) {
+                options.add("newViolations");
+            }
+            if(cacheDir!=null) {
+                options.add("cacheDir="+cacheDir);
+            }
+            if(maxFileSize!=null) {
+                options.add("maxFileSize="+maxFileSize);
+            }
+            if(fileTimeout!=null) {
+                options.add("fileTimeout="+fileTimeout);
+            }
+            if(gate) {
+                options.add("gate");
+            }
+            if(gatePriority!=null) {
+                options.add("gatePriority="+gatePriority);
+            }
+            if(gateThreshold!=null) {
+                options.add("gateThreshold="+gateThreshold);
+            }
+            if(cpd) {
+                options.add("cpd");
+            }
+            if(cpdMinimumTokens!=null) {
+                options.add("cpdMinimumTokens="+cpdMinimumTokens);
+            }
+            if(trend) {
+                options.add("trend");
+            }
+            if(blame) {
+                options.add("blame");
+            }
+            if(xslt) {
+                options.add("xslt");
+            }
+            if(pages) {
+                options.add("pages");
+            }
+            if(diffBundle) {
+                options.add("diffBundle");
+            }
+            if(formats!=null) {
+                options.add("formats="+formats);
+            }
+            if(violationBuffer!=null) {
+                options.add("violationBuffer="+violationBuffer);
+            }
+            if(auxClasspath!=null) {
+                options.add("auxClasspath="+auxClasspath);
+            }
             return options.toArray(new String[options.size()]);
         }
 
@@ -146,6 +389,34 @@ public class CLI {
             return new File(dir);
         }
 
+        boolean daemon() {
+            return daemon;
+        }
+
+        boolean client() {
+            return client;
+        }
+
+        boolean stopDaemon() {
+            return stopDaemon;
+        }
+
+        int getPort() {
+            return port==null?Daemon.DEFAULT_PORT:Integer.parseInt(port);
+        }
+
+        int getDaemonWorkers() {
+            return daemonWorkers==null?Daemon.DEFAULT_WORKERS:Integer.parseInt(daemonWorkers);
+        }
+
+        int getDaemonQueue() {
+            return daemonQueue==null?Daemon.DEFAULT_QUEUE_SIZE:Integer.parseInt(daemonQueue);
+        }
+
+        int getDaemonMaxAbandoned() {
+            return daemonMaxAbandoned==null?Daemon.DEFAULT_MAX_ABANDONED:Integer.parseInt(daemonMaxAbandoned);
+        }
+
         private String splitArg(String arg) {
             String[] parts = arg.split("=");
             return parts[1];
@@ -164,12 +435,12 @@ public class CLI {
         }
 
         public void info(String message) {
-            System.out.println("[INFO] " + message);
+            out.println("[INFO] " + message);
         }
 
         public void debug(String message) {
             if(debug)
-                System.out.println("[DEBUG] "+message);
+                out.println("[DEBUG] "+message);
         }
     }
 }
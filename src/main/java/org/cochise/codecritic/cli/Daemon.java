@@ -0,0 +1,277 @@
+/*
+ * Copyright to the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.cochise.codecritic.cli;
+
+import org.cochise.codecritic.SharedAnalysis;
+
+import java.io.*;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+
+/**
+ * Runs code-critic as a daemon, so that rules, analyzers and the reports of file versions already
+ * analyzed stay warm between reviews. The daemon listens on a port of the loopback address, and a
+ * request is the daemon's {@link DaemonToken}, followed by the command line of a review, one argument
+ * per line, ended by an empty line. Requests without the token are rejected. The output of the review
+ * is written back as it is produced, followed by a line with its exit status.
+ *
+ * <p>A fixed number of reviews run at the same time, each with its own rules and analyzer. Requests
+ * beyond those wait in a bounded queue; when the queue is full the daemon stops accepting connections
+ * for a while, and then turns requests away as busy so their clients review locally.</p>
+ *
+ * <p>PMD does not respond to interruption, so the analysis of a file that does not complete in time is
+ * abandoned with its thread still running. Once the number of those threads reaches a limit, the daemon
+ * stops admitting reviews and exits with a failed status, so that it can be restarted.</p>
+ *
+ * <p>A review cannot prompt for input, so a project that needs a selection to be made fails.</p>
+ *
+ * @author Dennis Reedy
+ */
+class Daemon {
+    static final int DEFAULT_PORT = 7707;
+    static final int DEFAULT_WORKERS = 2;
+    static final int DEFAULT_QUEUE_SIZE = 8;
+    static final int DEFAULT_MAX_ABANDONED = 4;
+    static final String EXIT = "code-critic-exit:";
+    static final String STOP = "-stopDaemon";
+    static final int PASSED = 0;
+    static final int FAILED = 1;
+    static final int BUSY = 2;
+    static final int REJECTED = 3;
+    static final Charset CHARSET = Charset.forName("UTF-8");
+    private static final long ADMIT_TIMEOUT = 30;
+    private final int port;
+    private final int workers;
+    private final int maxAbandoned;
+    private final Semaphore admitted;
+    private final ExecutorService executor;
+    private final SharedAnalysis shared = new SharedAnalysis();
+    private ServerSocket serverSocket;
+    private String token;
+    private volatile boolean stopped;
+    private volatile boolean exhausted;
+
+    /**
+     * Create a daemon
+     *
+     * @param port the port to listen on
+     * @param workers the number of reviews to run at the same time
+     * @param queueSize the number of requests that can wait for a review to complete
+     * @param maxAbandoned the number of abandoned analysis threads still running at which the daemon
+     * stops
+     */
+    Daemon(int port, int workers, int queueSize, int maxAbandoned) {
+        if(workers<1)
+            throw new IllegalArgumentException("workers must be at least 1");
+        if(maxAbandoned<1)
+            throw new IllegalArgumentException("maxAbandoned must be at least 1");
+        this.port = port;
+        this.workers = workers;
+        this.maxAbandoned = maxAbandoned;
+        this.admitted = new Semaphore(workers+Math.max(queueSize, 0));
+        this.executor = Executors.newFixedThreadPool(workers, new ThreadFactory() {
+            private int count;
+
+            public synchronized Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "code-critic-review-"+(++count));
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    /**
+     * Accept requests until the daemon is asked to stop, or too many abandoned analyses are running
+     *
+     * @return false if the daemon stopped because too many abandoned analyses are running
+     *
+     * @throws IOException if the daemon cannot listen on its port
+     */
+    boolean run() throws IOException {
+        System.setIn(new ByteArrayInputStream(new byte[0]));
+        serverSocket = new ServerSocket(port, 50, InetAddress.getLoopbackAddress());
+        try {
+            token = DaemonToken.create(port);
+        } catch (IOException e) {
+            serverSocket.close();
+            throw e;
+        }
+        System.out.println(String.format("[INFO] code-critic daemon listening on port %d, %d reviews at a time, %d queued",
+                                         port, workers, admitted.availablePermits()-workers));
+        try {
+            while(!stopped) {
+                final Socket socket;
+                try {
+                    socket = serverSocket.accept();
+                } catch (SocketException e) {
+                    if(stopped)
+                        break;
+                    throw e;
+                }
+                if(!admit()) {
+                    reply(socket, "[INFO] code-critic daemon is busy", BUSY);
+                    continue;
+                }
+                executor.execute(new Runnable() {
+                    public void run() {
+                        try {
+                            serve(socket);
+                        } finally {
+                            admitted.release();
+                        }
+                    }
+                });
+            }
+        } finally {
+            executor.shutdown();
+            try {
+                executor.awaitTermination(ADMIT_TIMEOUT, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            shared.close();
+            serverSocket.close();
+            DaemonToken.delete(port, token);
+        }
+        System.out.println("[INFO] code-critic daemon stopped");
+        return !exhausted;
+    }
+
+    /*
+     * Wait for room in the queue. Connections are not accepted while waiting, so clients wait in the
+     * backlog of the server socket.
+     */
+    private boolean admit() {
+        try {
+            return admitted.tryAcquire(ADMIT_TIMEOUT, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    private void serve(Socket socket) {
+        try {
+            List<String> args = readRequest(socket);
+            PrintStream out = new PrintStream(socket.getOutputStream(), true, CHARSET.name());
+            int status;
+            if(args.isEmpty() || !DaemonToken.matches(token, args.remove(0))) {
+                System.out.println("[INFO] Rejected a request without the daemon's token");
+                out.println("[ERROR] The code-critic daemon rejected the request, it was not sent with the daemon's token");
+                status = REJECTED;
+            } else if(exhausted) {
+                out.println("[INFO] code-critic daemon is stopping");
+                status = BUSY;
+            } else if(args.contains(STOP)) {
+                out.println("[INFO] Stopping the code-critic daemon");
+                status = PASSED;
+                stop();
+            } else {
+                status = review(args, out);
+                checkAbandoned();
+            }
+            out.println(EXIT+status);
+            out.flush();
+        } catch (IOException e) {
+            System.out.println("[INFO] Unable to serve request, "+e.getMessage());
+        } finally {
+            close(socket);
+        }
+    }
+
+    private int review(List<String> args, PrintStream out) {
+        long start = System.currentTimeMillis();
+        try {
+            boolean passed = new CLI(out, shared).review(args.toArray(new String[args.size()]));
+            return passed?PASSED:FAILED;
+        } catch (Exception e) {
+            out.println("[ERROR] "+(e.getMessage()==null?e.getClass().getName():e.getMessage()));
+            Throwable cause = e.getCause();
+            if(cause!=null && cause.getMessage()!=null)
+                out.println("[ERROR] Caused by "+cause.getMessage());
+            return FAILED;
+        } finally {
+            out.println(String.format("[INFO] Review completed by the daemon in %d ms, %d file versions analyzed, %d reports reused",
+                                      System.currentTimeMillis()-start, shared.getAnalyzed(), shared.getReused()));
+        }
+    }
+
+    /*
+     * Stop admitting reviews once too many abandoned analyses are running, their threads can only be
+     * reclaimed by exiting
+     */
+    private void checkAbandoned() {
+        int running = shared.getAbandoned();
+        if(running<maxAbandoned)
+            return;
+        synchronized(this) {
+            if(exhausted)
+                return;
+            exhausted = true;
+        }
+        System.out.println(String.format("[ERROR] %d abandoned analyses are still running, the limit is %d, "+
+                                         "the code-critic daemon is stopping so it can be restarted",
+                                         running, maxAbandoned));
+        stop();
+    }
+
+    private List<String> readRequest(Socket socket) throws IOException {
+        socket.setSoTimeout((int)TimeUnit.SECONDS.toMillis(ADMIT_TIMEOUT));
+        BufferedReader reader = new BufferedReader(new InputStreamReader(socket.getInputStream(), CHARSET));
+        List<String> args = new ArrayList<String>();
+        String line;
+        while((line = reader.readLine())!=null && line.length()>0) {
+            args.add(line);
+        }
+        socket.setSoTimeout(0);
+        return args;
+    }
+
+    private void reply(Socket socket, String message, int status) {
+        try {
+            PrintStream out = new PrintStream(socket.getOutputStream(), true, CHARSET.name());
+            out.println(message);
+            out.println(EXIT+status);
+        } catch (IOException e) {
+            System.out.println("[INFO] Unable to reply to request, "+e.getMessage());
+        } finally {
+            close(socket);
+        }
+    }
+
+    private void stop() {
+        stopped = true;
+        try {
+            serverSocket.close();
+        } catch (IOException e) {
+            System.out.println("[INFO] Unable to close the daemon socket, "+e.getMessage());
+        }
+    }
+
+    private void close(Socket socket) {
+        try {
+            socket.close();
+        } catch (IOException e) {
+            System.out.println("[INFO] Unable to close request, "+e.getMessage());
+        }
+    }
+}
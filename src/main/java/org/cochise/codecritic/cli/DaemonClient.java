@@ -0,0 +1,95 @@
+/*
+ * Copyright to the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.cochise.codecritic.cli;
+
+import java.io.*;
+import java.net.ConnectException;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Submits the command line of a review to a code-critic {@link Daemon}, printing the output of the
+ * review as the daemon produces it.
+ *
+ * @author Dennis Reedy
+ */
+class DaemonClient {
+    private final int port;
+
+    DaemonClient(int port) {
+        this.port = port;
+    }
+
+    /**
+     * Submit a review to the daemon
+     *
+     * @param args the command line of the review. The project directory is resolved here, since the
+     * daemon does not run in the directory of the client.
+     * @param out where to print the output of the review
+     *
+     * @return the exit status of the review, or null if no daemon is listening, the daemon is busy or
+     * the daemon's token cannot be read
+     *
+     * @throws IOException if the request cannot be sent or its output cannot be read
+     */
+    Integer submit(String[] args, PrintStream out) throws IOException {
+        List<String> request = new ArrayList<String>();
+        String dir = System.getProperty("user.dir");
+        for(String arg : args) {
+            if("-client".equals(arg) || arg.startsWith("-port"))
+                continue;
+            if(arg.startsWith("-dir"))
+                dir = arg.substring(arg.indexOf('=')+1);
+            else if(arg.length()>0)
+                request.add(arg);
+        }
+        request.add("-dir="+new File(dir).getAbsolutePath());
+        String token = DaemonToken.read(port);
+        if(token==null)
+            return null;
+        Socket socket;
+        try {
+            socket = new Socket(InetAddress.getLoopbackAddress(), port);
+        } catch (ConnectException e) {
+            return null;
+        }
+        try {
+            Writer writer = new BufferedWriter(new OutputStreamWriter(socket.getOutputStream(), Daemon.CHARSET));
+            writer.write(token);
+            writer.write('\n');
+            for(String arg : request) {
+                writer.write(arg);
+                writer.write('\n');
+            }
+            writer.write('\n');
+            writer.flush();
+            BufferedReader reader = new BufferedReader(new InputStreamReader(socket.getInputStream(), Daemon.CHARSET));
+            String line;
+            while((line = reader.readLine())!=null) {
+                if(line.startsWith(Daemon.EXIT)) {
+                    int status = Integer.parseInt(line.substring(Daemon.EXIT.length()));
+                    return status==Daemon.BUSY || status==Daemon.REJECTED?null:status;
+                }
+                out.println(line);
+            }
+            throw new IOException("The code-critic daemon closed the connection before the review completed");
+        } finally {
+            socket.close();
+        }
+    }
+}
@@ -0,0 +1,119 @@
+/*
+ * Copyright to the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.cochise.codecritic.cli;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.PosixFilePermission;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.EnumSet;
+
+/**
+ * The secret a {@link Daemon} requires with each request, so that only the user that started the
+ * daemon can submit reviews to it or stop it. The token is created when the daemon starts, in a file
+ * in the user's home directory that only the user can read or write, one for each port.
+ *
+ * @author Dennis Reedy
+ */
+class DaemonToken {
+    private static final int TOKEN_BYTES = 32;
+
+    private DaemonToken() {
+    }
+
+    static File file(int port) {
+        return new File(new File(System.getProperty("user.home"), ".code-critic"), "daemon-"+port);
+    }
+
+    /**
+     * Create a new token for a daemon, replacing the token of a daemon that previously listened on the port
+     *
+     * @param port the port the daemon listens on
+     *
+     * @return the token
+     *
+     * @throws IOException if the token file cannot be written
+     */
+    static String create(int port) throws IOException {
+        byte[] bytes = new byte[TOKEN_BYTES];
+        new SecureRandom().nextBytes(bytes);
+        StringBuilder builder = new StringBuilder();
+        for(byte b : bytes)
+            builder.append(String.format("%02x", b));
+        String token = builder.toString();
+        File file = file(port);
+        File directory = file.getParentFile();
+        if(!directory.exists() && !directory.mkdirs())
+            throw new IOException("Unable to create "+directory.getPath());
+        Path path = file.toPath();
+        Files.deleteIfExists(path);
+        try {
+            Files.createFile(path, PosixFilePermissions.asFileAttribute(EnumSet.of(PosixFilePermission.OWNER_READ,
+                                                                                  PosixFilePermission.OWNER_WRITE)));
+        } catch (UnsupportedOperationException e) {
+            Files.createFile(path);
+            if(!(file.setReadable(false, false) && file.setReadable(true, true) &&
+                 file.setWritable(false, false) && file.setWritable(true, true))) {
+                Files.delete(path);
+                throw new IOException("Unable to restrict access to "+file.getPath());
+            }
+        }
+        Files.write(path, token.getBytes(Daemon.CHARSET));
+        return token;
+    }
+
+    /**
+     * Read the token of the daemon listening on a port
+     *
+     * @param port the port
+     *
+     * @return the token, or null if there is no token for the port or it cannot be read
+     */
+    static String read(int port) {
+        try {
+            return new String(Files.readAllBytes(file(port).toPath()), Daemon.CHARSET).trim();
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Delete the token of a daemon, if it has not been replaced by the token of another daemon
+     *
+     * @param port the port the daemon listened on
+     * @param token the token of the daemon
+     */
+    static void delete(int port, String token) {
+        if(matches(token, read(port)) && !file(port).delete())
+            file(port).deleteOnExit();
+    }
+
+    /**
+     * Compare a token with the token sent with a request, in time that does not depend on where they differ
+     *
+     * @param token the token
+     * @param sent the token sent with the request, may be null
+     *
+     * @return true if the tokens are the same
+     */
+    static boolean matches(String token, String sent) {
+        return sent!=null && MessageDigest.isEqual(token.getBytes(Daemon.CHARSET), sent.getBytes(Daemon.CHARSET));
+    }
+}
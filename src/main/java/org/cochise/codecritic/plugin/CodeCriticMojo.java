@@ -15,6 +15,7 @@
  */
 package org.cochise.codecritic.plugin;
 
+import org.apache.maven.artifact.DependencyResolutionRequiredException;
 import org.apache.maven.plugin.AbstractMojo;
 import org.apache.maven.plugin.MojoExecutionException;
 import org.apache.maven.plugin.MojoFailureException;
@@ -25,6 +26,9 @@ import org.cochise.codecritic.support.scm.SCMFactory;
 
 import java.io.File;
 import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
 
 /**
  * Provides maven plugin support.
@@ -35,6 +39,8 @@ import java.util.ArrayList;
  *
  * @requiresProject true
  *
+ * @requiresDependencyResolution compile
+ *
  * @author Dennis Reedy
  */
 @SuppressWarnings("PMD.LocalVariableCouldBeFinal")
@@ -90,6 +96,157 @@ public class CodeCriticMojo extends AbstractMojo {
      */
     private String minimumPriority;
 
+    /**
+     * Only report violations on lines that have changed in the branch
+     *
+     * @parameter expression="${changedLinesOnly}"
+     * @optional
+     * default-value="false"
+     */
+    private boolean changedLinesOnly;
+
+    /**
+     * Only report violations that are not also found in the merge base version of each file
+     *
+     * @parameter expression="${newViolationsOnly}"
+     * @optional
+     * default-value="false"
+     */
+    private boolean newViolationsOnly;
+
+    /**
+     * Directory used to cache compiled rule sets between runs
+     *
+     * @parameter expression="${cacheDir}"
+     * @optional
+     */
+    private String cacheDir;
+
+    /**
+     * Files larger than this size in bytes are not analyzed, 0 for no limit
+     *
+     * @parameter expression="${maxFileSize}"
+     * @optional
+     * default-value="0"
+     */
+    private String maxFileSize;
+
+    /**
+     * Time in seconds allowed to analyze a single file, 0 for no limit
+     *
+     * @parameter expression="${fileTimeout}"
+     * @optional
+     * default-value="60"
+     */
+    private String fileTimeout;
+
+    /**
+     * Fail the build if the branch introduces high priority violations, without generating a report
+     *
+     * @parameter expression="${gate}" default-value="false"
+     * @optional
+     */
+    private boolean gate;
+
+    /**
+     * Violations of this priority or higher count against the gate
+     *
+     * @parameter expression="${gatePriority}" default-value="2"
+     * @optional
+     */
+    private String gatePriority;
+
+    /**
+     * The number of violations that fails the gate
+     *
+     * @parameter expression="${gateThreshold}" default-value="1"
+     * @optional
+     */
+    private String gateThreshold;
+
+    /**
+     * Check the branch's changed Java files for code duplicated from the base or each other
+     *
+     * @parameter expression="${cpd}"
+     * @optional
+     * default-value="false"
+     */
+    private boolean cpd;
+
+    /**
+     * The minimum number of tokens in a duplicated block of code
+     *
+     * @parameter expression="${cpdMinimumTokens}"
+     * @optional
+     * default-value="100"
+     */
+    private String cpdMinimumTokens;
+
+    /**
+     * Report the violations each change set of the branch introduced and fixed
+     *
+     * @parameter expression="${trend}"
+     * @optional
+     * default-value="false"
+     */
+    private boolean trend;
+
+    /**
+     * Attribute each violation to the change set and developer that last touched its line
+     *
+     * @parameter expression="${blame}"
+     * @optional
+     * default-value="false"
+     */
+    private boolean blame;
+
+    /**
+     * Render the report through the XSLT stylesheet rather than writing the HTML directly
+     *
+     * @parameter expression="${xslt}"
+     * @optional
+     * default-value="false"
+     */
+    private boolean xslt;
+
+    /**
+     * Write the report as an index page, with the violations of each package on a page of its own
+     *
+     * @parameter expression="${pages}"
+     * @optional
+     * default-value="false"
+     */
+    private boolean pages;
+
+    /**
+     * Write the diffs of the change sets to a single bundle, with a viewer page, rather than to a file
+     * for each change set
+     *
+     * @parameter expression="${diffBundle}"
+     * @optional
+     * default-value="false"
+     */
+    private boolean diffBundle;
+
+    /**
+     * A comma separated list of the formats to write the report in, html, json and sarif. The HTML
+     * report is always written.
+     *
+     * @parameter expression="${formats}"
+     * @optional
+     * default-value="html"
+     */
+    private String formats;
+
+    /**
+     * The number of violations held in memory before they are spilled to disk
+     *
+     * @parameter expression="${violationBuffer}"
+     * @optional
+     * default-value="100000"
+     */
+    private String violationBuffer;
+
     /**
      * The maven project.
      *
@@ -99,6 +256,15 @@ public class CodeCriticMojo extends AbstractMojo {
      */
     private MavenProject project;
 
+    /**
+     * The projects in the reactor, whose compile classpath is used for type resolution
+     *
+     * @parameter expression="${reactorProjects}"
+     * @required
+     * @readonly
+     */
+    private List<MavenProject> reactorProjects;
+
     @SuppressWarnings("unchecked")
     public void execute() throws MojoExecutionException, MojoFailureException {
         if(!project.isExecutionRoot()) {
@@ -111,15 +277,17 @@ public class CodeCriticMojo extends AbstractMojo {
             throw new MojoExecutionException("Unknown project type");
         Listener listener = new Listener();
         scm.registerProgressListener(listener);
+        boolean passed;
         try {
             scm.initialize(project.getBasedir(), getLogOptions());
-            scm.runLog();
             File outputDirectory = new File(project.getBasedir(), "target"+File.separator+"code-critic-report");
             ReportGenerator reportGenerator = new ReportGenerator(scm, listener);
-            reportGenerator.generate(outputDirectory, getReportOptions());
+            passed = reportGenerator.generate(outputDirectory, getReportOptions());
         } catch (CodeCriticException e) {
             throw new MojoExecutionException(e.getMessage());
         }
+        if(!passed)
+            throw new MojoFailureException("Branch introduces violations of priority "+gatePriority+" or higher");
     }
 
     private String[] getLogOptions() {
@@ -147,9 +315,85 @@ public class CodeCriticMojo extends AbstractMojo {
         if(minimumPriority!=null) {
             options.add("minimumPriority="+minimumPriority);
         }
+        if(changedLinesOnly) {
+            options.add("changedLines");
+        }
+        if(newViolationsOnly) {
+            options.add("newViolations");
+        }
+        if(cacheDir!=null) {
+            options.add("cacheDir="+cacheDir);
+        }
+        if(maxFileSize!=null) {
+            options.add("maxFileSize="+maxFileSize);
+        }
+        if(fileTimeout!=null) {
+            options.add("fileTimeout="+fileTimeout);
+        }
+        if(gate) {
+            options.add("gate");
+        }
+        if(gatePriority!=null) {
+            options.add("gatePriority="+gatePriority);
+        }
+        if(gateThreshold!=null) {
+            options.add("gateThreshold="+gateThreshold);
+        }
+        if(cpd) {
+            options.add("cpd");
+        }
+        if(cpdMinimumTokens!=null) {
+            options.add("cpdMinimumTokens="+cpdMinimumTokens);
+        }
+        if(trend) {
+            options.add("trend");
+        }
+        if(blame) {
+            options.add("blame");
+        }
+        if(xslt) {
+            options.add("xslt");
+        }
+        if(pages) {
+            options.add("pages");
+        }
+        if(diffBundle) {
+            options.add("diffBundle");
+        }
+        if(formats!=null) {
+            options.add("formats="+formats);
+        }
+        if(violationBuffer!=null) {
+            options.add("violationBuffer="+violationBuffer);
+        }
+        options.add("auxClasspath="+getAuxClasspath());
         return options.toArray(new String[options.size()]);
     }
 
+    /*
+     * The compile classpath of the reactor. Projects whose dependencies have not been resolved
+     * contribute their output directory.
+     */
+    @SuppressWarnings("unchecked")
+    private String getAuxClasspath() {
+        Set<String> elements = new LinkedHashSet<String>();
+        for(MavenProject reactorProject : reactorProjects) {
+            try {
+                elements.addAll(reactorProject.getCompileClasspathElements());
+            } catch (DependencyResolutionRequiredException e) {
+                getLog().debug("Dependencies of "+reactorProject.getId()+" are not resolved, using its output directory");
+                elements.add(reactorProject.getBuild().getOutputDirectory());
+            }
+        }
+        StringBuilder classpath = new StringBuilder();
+        for(String element : elements) {
+            if(classpath.length()>0)
+                classpath.append(File.pathSeparator);
+            classpath.append(element);
+        }
+        return classpath.toString();
+    }
+
     private class Listener implements ProgressListener {
 
         public void info(String message) {
@@ -59,6 +59,21 @@ public class HelpMojo extends AbstractMojo {
         builder.append("code-critic:review\n");
         builder.append("  Creates a report for source code rule violations for branch\n");
         builder.append("  and produces a table of changeset information.\n");
+        builder.append("  The compile classpath of the reactor is used to resolve types for rules that\n");
+        builder.append("  use type resolution. Its jars are indexed once in cacheDir.\n");
+        builder.append("  From the command line, -branches=<branches> reviews a comma separated list of\n");
+        builder.append("  branches, or of patterns such as feature/*, in one run, writing a report for\n");
+        builder.append("  each branch. The branches do not have to be checked out, and a file version\n");
+        builder.append("  changed by more than one branch is analyzed once.\n");
+        builder.append("  From the command line, -daemon runs code-critic as a daemon on the loopback\n");
+        builder.append("  address (-port=<port>, default 7707), keeping rules and analyzed file versions\n");
+        builder.append("  warm. -daemonWorkers=<n> reviews run at the same time (default 2), and up to\n");
+        builder.append("  -daemonQueue=<n> more wait (default 8). -client submits a review to the daemon,\n");
+        builder.append("  reviewing locally if no daemon is available, and -stopDaemon stops it.\n");
+        builder.append("  Only the user that started the daemon can use it: requests must carry the\n");
+        builder.append("  token the daemon writes to ~/.code-critic/daemon-<port>, readable by that user only.\n");
+        builder.append("  Analyses that time out keep running; once -daemonMaxAbandoned=<n> of them are\n");
+        builder.append("  (default 4), the daemon stops and exits with a failed status to be restarted.\n");
         builder.append("\n");
         builder.append("  Available parameters:\n");
         builder.append("\n");
@@ -80,10 +95,86 @@ public class HelpMojo extends AbstractMojo {
         builder.append("\n");
         builder.append("    rules (default: basic,imports,unusedcode,design,strictexception)\n");
         builder.append("      The set of rules to use.\n");
+        builder.append("      The bundled performance rule set finds allocation, boxing, string concatenation,\n");
+        builder.append("      locking, regular expression compilation and stream creation on hot paths.\n");
         builder.append("\n");
         builder.append("    minimumPriority (default: 5)\n");
         builder.append("      Set the minimum rule priority threshold for all Rules which are loaded from RuleSets.\n");
         builder.append("\n");
+        builder.append("    changedLinesOnly (default: false)\n");
+        builder.append("      Only report violations on lines that have changed in the branch. Files with no\n");
+        builder.append("      added or modified lines are not analyzed.\n");
+        builder.append("\n");
+        builder.append("    newViolationsOnly (default: false)\n");
+        builder.append("      Only report violations that are not also found in the merge base version of\n");
+        builder.append("      each file. Base results are cached in cacheDir. Not done in gate mode.\n");
+        builder.append("\n");
+        builder.append("    cacheDir (default: ~/.code-critic)\n");
+        builder.append("      Directory used to cache compiled rule sets between runs.\n");
+        builder.append("\n");
+        builder.append("    maxFileSize (default: 0)\n");
+        builder.append("      Files larger than this size in bytes are not analyzed, and are listed in the\n");
+        builder.append("      report. 0 for no limit.\n");
+        builder.append("\n");
+        builder.append("    fileTimeout (default: 60)\n");
+        builder.append("      Time in seconds allowed to analyze a single file. Files that take longer are\n");
+        builder.append("      abandoned, and are listed in the report. 0 for no limit.\n");
+        builder.append("\n");
+        builder.append("    gate (default: false)\n");
+        builder.append("      Fail the build if the branch introduces high priority violations. Files most\n");
+        builder.append("      likely to have violations are analyzed first, analysis stops once the\n");
+        builder.append("      threshold is reached, and no report is generated.\n");
+        builder.append("\n");
+        builder.append("    gatePriority (default: 2)\n");
+        builder.append("      Violations of this priority or higher count against the gate.\n");
+        builder.append("\n");
+        builder.append("    gateThreshold (default: 1)\n");
+        builder.append("      The number of violations that fails the gate.\n");
+        builder.append("\n");
+        builder.append("    cpd (default: false)\n");
+        builder.append("      Check the branch's changed Java files for code duplicated from the base or\n");
+        builder.append("      from each other. An index of the base is kept in cacheDir and updated as the\n");
+        builder.append("      base changes. Not done in gate mode.\n");
+        builder.append("\n");
+        builder.append("    cpdMinimumTokens (default: 100)\n");
+        builder.append("      The minimum number of tokens in a duplicated block of code.\n");
+        builder.append("\n");
+        builder.append("    trend (default: false)\n");
+        builder.append("      Report the violations each change set of the branch introduced and fixed,\n");
+        builder.append("      analyzing only the Java files each change set touched. Not done in gate\n");
+        builder.append("      mode.\n");
+        builder.append("\n");
+        builder.append("    blame (default: false)\n");
+        builder.append("      Attribute each violation to the change set and developer that last touched\n");
+        builder.append("      its line. Each file with violations is blamed once. Not done in gate mode.\n");
+        builder.append("\n");
+        builder.append("    xslt (default: false)\n");
+        builder.append("      Render the report through the code-critic-nicerhtml.xsl stylesheet rather\n");
+        builder.append("      than writing the HTML directly. A code-critic-nicerhtml.xsl in the project\n");
+        builder.append("      base directory overrides the bundled stylesheet, and is always used.\n");
+        builder.append("\n");
+        builder.append("    pages (default: false)\n");
+        builder.append("      Write the report as an index page, with the violations of each package on a\n");
+        builder.append("      page of its own. Change sets, source files and the files with violations are\n");
+        builder.append("      paged through and filtered in the browser, from a data file written beside the\n");
+        builder.append("      index. Not used when the report is rendered through the stylesheet.\n");
+        builder.append("\n");
+        builder.append("    diffBundle (default: false)\n");
+        builder.append("      Write the diffs of the change sets to a single compressed bundle in the diffs\n");
+        builder.append("      directory, rather than to a file for each change set. Change sets link to a\n");
+        builder.append("      viewer page that fetches only the diff being viewed from the bundle, so the\n");
+        builder.append("      report must be opened from a web server.\n");
+        builder.append("\n");
+        builder.append("    formats (default: html)\n");
+        builder.append("      A comma separated list of the formats to write the report in, html, json and\n");
+        builder.append("      sarif. The JSON and SARIF reports are written beside the HTML report, which is\n");
+        builder.append("      always written, as the violations are rendered.\n");
+        builder.append("\n");
+        builder.append("    violationBuffer (default: 100000)\n");
+        builder.append("      The number of violations held in memory until the report is written. Once\n");
+        builder.append("      the buffer is full its violations are sorted and spilled to a file in the\n");
+        builder.append("      report directory, and merged back as the report is written.\n");
+        builder.append("\n");
         builder.append("code-critic:help\n");
         builder.append("  Display help information for the code-critic plugin.\n");
         return builder.toString();
@@ -0,0 +1,88 @@
+/*
+ * Copyright to the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.cochise.codecritic.rules.basic;
+
+import net.sourceforge.pmd.AbstractJavaRule;
+import net.sourceforge.pmd.ast.ASTBlock;
+import net.sourceforge.pmd.ast.ASTEmptyStatement;
+import net.sourceforge.pmd.ast.Node;
+import net.sourceforge.pmd.ast.SimpleNode;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Base class for the basic rules that replace the XPath rules bundled with PMD. Rules register the
+ * nodes they are interested in with the rule chain, and are expected to inspect only the visited node
+ * and its surroundings, without visiting the children of the node.
+ *
+ * @author Dennis Reedy
+ */
+abstract class BasicRule extends AbstractJavaRule {
+
+    BasicRule(String... nodeNames) {
+        for(String nodeName : nodeNames)
+            addRuleChainVisit(nodeName);
+    }
+
+    /*
+     * Report a violation the same way an XPath rule does, with the message formatted
+     */
+    void report(Object data, SimpleNode node) {
+        addViolation(data, node, getMessage());
+    }
+
+    static <T> List<T> children(Node node, Class<T> type) {
+        List<T> children = new ArrayList<T>();
+        for(int i=0; i<node.jjtGetNumChildren(); i++) {
+            Node child = node.jjtGetChild(i);
+            if(type.isInstance(child))
+                children.add(type.cast(child));
+        }
+        return children;
+    }
+
+    static <T> T firstChild(Node node, Class<T> type) {
+        for(int i=0; i<node.jjtGetNumChildren(); i++) {
+            Node child = node.jjtGetChild(i);
+            if(type.isInstance(child))
+                return type.cast(child);
+        }
+        return null;
+    }
+
+    static <T> void descendants(Node node, Class<T> type, List<T> results) {
+        for(int i=0; i<node.jjtGetNumChildren(); i++) {
+            Node child = node.jjtGetChild(i);
+            if(type.isInstance(child))
+                results.add(type.cast(child));
+            descendants(child, type, results);
+        }
+    }
+
+    /*
+     * A statement is empty if it is a ; or an empty block
+     */
+    static boolean isEmptyStatement(Node statement) {
+        if(firstChild(statement, ASTEmptyStatement.class)!=null)
+            return true;
+        for(ASTBlock block : children(statement, ASTBlock.class)) {
+            if(block.jjtGetNumChildren()==0)
+                return true;
+        }
+        return false;
+    }
+}
@@ -0,0 +1,57 @@
+/*
+ * Copyright to the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.cochise.codecritic.rules.basic;
+
+import net.sourceforge.pmd.ast.*;
+
+import java.util.List;
+
+/**
+ * Finds if statements without an else that are the only statement of an enclosing if statement
+ * without an else.
+ *
+ * @author Dennis Reedy
+ */
+public class CollapsibleIfStatements extends BasicRule {
+
+    public CollapsibleIfStatements() {
+        super("IfStatement");
+    }
+
+    @Override
+    public Object visit(ASTIfStatement node, Object data) {
+        if(node.hasElse())
+            return data;
+        for(ASTStatement statement : children(node, ASTStatement.class)) {
+            check(statement, data);
+            for(ASTBlock block : children(statement, ASTBlock.class)) {
+                List<ASTBlockStatement> blockStatements = children(block, ASTBlockStatement.class);
+                if(blockStatements.size()!=1)
+                    continue;
+                for(ASTStatement nested : children(blockStatements.get(0), ASTStatement.class))
+                    check(nested, data);
+            }
+        }
+        return data;
+    }
+
+    private void check(ASTStatement statement, Object data) {
+        for(ASTIfStatement ifStatement : children(statement, ASTIfStatement.class)) {
+            if(!ifStatement.hasElse())
+                report(data, ifStatement);
+        }
+    }
+}
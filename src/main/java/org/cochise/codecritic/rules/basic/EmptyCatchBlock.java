@@ -0,0 +1,77 @@
+/*
+ * Copyright to the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.cochise.codecritic.rules.basic;
+
+import net.sourceforge.pmd.PropertyDescriptor;
+import net.sourceforge.pmd.ast.*;
+import net.sourceforge.pmd.properties.BooleanProperty;
+
+import java.util.Map;
+
+/**
+ * Finds catch blocks that are empty, other than those catching {@code InterruptedException} or
+ * {@code CloneNotSupportedException}. Empty blocks with a comment are allowed if the
+ * {@code allowCommentedBlocks} property is true.
+ *
+ * @author Dennis Reedy
+ */
+public class EmptyCatchBlock extends BasicRule {
+    private static final PropertyDescriptor ALLOW_COMMENTED_BLOCKS =
+        new BooleanProperty("allowCommentedBlocks", "Empty blocks containing comments will be skipped", false, 1.0f);
+    private static final Map<String, PropertyDescriptor> PROPERTIES = asFixedMap(ALLOW_COMMENTED_BLOCKS);
+
+    public EmptyCatchBlock() {
+        super("CatchStatement");
+    }
+
+    @Override
+    protected Map<String, PropertyDescriptor> propertiesByName() {
+        return PROPERTIES;
+    }
+
+    @Override
+    public Object visit(ASTCatchStatement node, Object data) {
+        boolean uncommented = false;
+        for(ASTBlock block : children(node, ASTBlock.class)) {
+            if(!children(block, ASTBlockStatement.class).isEmpty())
+                return data;
+            if(!block.containsComment())
+                uncommented = true;
+        }
+        if(getBooleanProperty(ALLOW_COMMENTED_BLOCKS) && !uncommented)
+            return data;
+        if(catchesReportable(node))
+            report(data, node);
+        return data;
+    }
+
+    private boolean catchesReportable(ASTCatchStatement node) {
+        for(ASTFormalParameter parameter : children(node, ASTFormalParameter.class)) {
+            for(ASTType type : children(parameter, ASTType.class)) {
+                for(ASTReferenceType referenceType : children(type, ASTReferenceType.class)) {
+                    for(ASTClassOrInterfaceType classType : children(referenceType, ASTClassOrInterfaceType.class)) {
+                        String image = classType.getImage();
+                        if(image!=null &&
+                           !image.equals("InterruptedException") &&
+                           !image.equals("CloneNotSupportedException"))
+                            return true;
+                    }
+                }
+            }
+        }
+        return false;
+    }
+}
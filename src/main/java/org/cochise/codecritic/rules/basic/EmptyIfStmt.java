@@ -0,0 +1,40 @@
+/*
+ * Copyright to the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.cochise.codecritic.rules.basic;
+
+import net.sourceforge.pmd.ast.ASTIfStatement;
+import net.sourceforge.pmd.ast.ASTStatement;
+
+/**
+ * Finds if statements whose then or else statement is empty.
+ *
+ * @author Dennis Reedy
+ */
+public class EmptyIfStmt extends BasicRule {
+
+    public EmptyIfStmt() {
+        super("IfStatement");
+    }
+
+    @Override
+    public Object visit(ASTIfStatement node, Object data) {
+        for(ASTStatement statement : children(node, ASTStatement.class)) {
+            if(isEmptyStatement(statement))
+                report(data, statement);
+        }
+        return data;
+    }
+}
@@ -0,0 +1,39 @@
+/*
+ * Copyright to the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.cochise.codecritic.rules.basic;
+
+import net.sourceforge.pmd.ast.ASTBlock;
+import net.sourceforge.pmd.ast.ASTSynchronizedStatement;
+
+/**
+ * Finds synchronized statements with an empty block.
+ *
+ * @author Dennis Reedy
+ */
+public class EmptySynchronizedBlock extends BasicRule {
+
+    public EmptySynchronizedBlock() {
+        super("SynchronizedStatement");
+    }
+
+    @Override
+    public Object visit(ASTSynchronizedStatement node, Object data) {
+        ASTBlock block = firstChild(node, ASTBlock.class);
+        if(block!=null && block.jjtGetNumChildren()==0)
+            report(data, block);
+        return data;
+    }
+}
@@ -0,0 +1,112 @@
+/*
+ * Copyright to the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.cochise.codecritic.rules.basic;
+
+import net.sourceforge.pmd.ast.*;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Finds conditional expressions where a variable is dereferenced before the same variable is
+ * compared with null, for example {@code a.equals(b) && a != null}.
+ *
+ * @author Dennis Reedy
+ */
+public class MisplacedNullCheck extends BasicRule {
+
+    public MisplacedNullCheck() {
+        super("Expression");
+    }
+
+    @Override
+    public Object visit(ASTExpression node, Object data) {
+        for(int i=0; i<node.jjtGetNumChildren(); i++) {
+            Node child = node.jjtGetChild(i);
+            if(!(child instanceof ASTConditionalOrExpression || child instanceof ASTConditionalAndExpression))
+                continue;
+            List<ASTPrimaryExpression> primaryExpressions = new ArrayList<ASTPrimaryExpression>();
+            descendants(child, ASTPrimaryExpression.class, primaryExpressions);
+            for(ASTPrimaryExpression primaryExpression : primaryExpressions) {
+                for(ASTPrimaryPrefix prefix : children(primaryExpression, ASTPrimaryPrefix.class)) {
+                    for(ASTName name : children(prefix, ASTName.class)) {
+                        String checked = nullCheckedName(name);
+                        if(checked!=null && name.getImage()!=null && name.getImage().startsWith(checked+"."))
+                            report(data, name);
+                    }
+                }
+            }
+        }
+        return data;
+    }
+
+    /*
+     * Get the first name, in source order, compared with null by an equality expression that follows
+     * one of the primary expressions enclosing the name
+     */
+    private String nullCheckedName(ASTName name) {
+        ASTName first = null;
+        for(Node ancestor = name.jjtGetParent(); ancestor!=null; ancestor = ancestor.jjtGetParent()) {
+            if(!(ancestor instanceof ASTPrimaryExpression))
+                continue;
+            Node parent = ancestor.jjtGetParent();
+            if(parent==null)
+                continue;
+            int index = indexOf(parent, ancestor);
+            for(int i=index+1; i<parent.jjtGetNumChildren(); i++) {
+                Node sibling = parent.jjtGetChild(i);
+                if(!(sibling instanceof ASTEqualityExpression) || !comparesWithNull(sibling))
+                    continue;
+                for(ASTPrimaryExpression operand : children(sibling, ASTPrimaryExpression.class)) {
+                    if(firstChild(operand, ASTPrimarySuffix.class)!=null)
+                        continue;
+                    for(ASTPrimaryPrefix prefix : children(operand, ASTPrimaryPrefix.class)) {
+                        for(ASTName candidate : children(prefix, ASTName.class)) {
+                            if(first==null || precedes(candidate, first))
+                                first = candidate;
+                        }
+                    }
+                }
+            }
+        }
+        return first==null?null:first.getImage();
+    }
+
+    private boolean comparesWithNull(Node equality) {
+        for(ASTPrimaryExpression operand : children(equality, ASTPrimaryExpression.class)) {
+            for(ASTPrimaryPrefix prefix : children(operand, ASTPrimaryPrefix.class)) {
+                for(ASTLiteral literal : children(prefix, ASTLiteral.class)) {
+                    if(firstChild(literal, ASTNullLiteral.class)!=null)
+                        return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    private int indexOf(Node parent, Node child) {
+        for(int i=0; i<parent.jjtGetNumChildren(); i++) {
+            if(parent.jjtGetChild(i)==child)
+                return i;
+        }
+        return -1;
+    }
+
+    private boolean precedes(SimpleNode n1, SimpleNode n2) {
+        return n1.getBeginLine()<n2.getBeginLine() ||
+               (n1.getBeginLine()==n2.getBeginLine() && n1.getBeginColumn()<n2.getBeginColumn());
+    }
+}
@@ -0,0 +1,44 @@
+/*
+ * Copyright to the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.cochise.codecritic.rules.basic;
+
+import net.sourceforge.pmd.ast.ASTFinallyStatement;
+import net.sourceforge.pmd.ast.ASTReturnStatement;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Finds return statements within a finally block. A return within nested finally blocks is reported
+ * for each of the finally blocks, as the XPath rule did.
+ *
+ * @author Dennis Reedy
+ */
+public class ReturnFromFinallyBlock extends BasicRule {
+
+    public ReturnFromFinallyBlock() {
+        super("FinallyStatement");
+    }
+
+    @Override
+    public Object visit(ASTFinallyStatement node, Object data) {
+        List<ASTReturnStatement> returns = new ArrayList<ASTReturnStatement>();
+        descendants(node, ASTReturnStatement.class, returns);
+        for(ASTReturnStatement returnStatement : returns)
+            report(data, returnStatement);
+        return data;
+    }
+}
@@ -0,0 +1,46 @@
+/*
+ * Copyright to the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.cochise.codecritic.rules.basic;
+
+import net.sourceforge.pmd.ast.*;
+
+/**
+ * Finds if statements whose condition is a boolean literal.
+ *
+ * @author Dennis Reedy
+ */
+public class UnconditionalIfStatement extends BasicRule {
+
+    public UnconditionalIfStatement() {
+        super("IfStatement");
+    }
+
+    @Override
+    public Object visit(ASTIfStatement node, Object data) {
+        for(ASTExpression expression : children(node, ASTExpression.class)) {
+            ASTPrimaryExpression primaryExpression = firstChild(expression, ASTPrimaryExpression.class);
+            if(primaryExpression==null || children(expression, ASTPrimaryExpression.class).size()!=1)
+                continue;
+            for(ASTPrimaryPrefix prefix : children(primaryExpression, ASTPrimaryPrefix.class)) {
+                for(ASTLiteral literal : children(prefix, ASTLiteral.class)) {
+                    for(ASTBooleanLiteral booleanLiteral : children(literal, ASTBooleanLiteral.class))
+                        report(data, booleanLiteral);
+                }
+            }
+        }
+        return data;
+    }
+}
@@ -0,0 +1,40 @@
+/*
+ * Copyright to the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.cochise.codecritic.rules.performance;
+
+import net.sourceforge.pmd.ast.ASTAllocationExpression;
+import net.sourceforge.pmd.ast.SimpleNode;
+
+/**
+ * Finds objects and arrays allocated once per iteration of a loop. Allocations that are thrown or
+ * returned leave the loop, and are not reported.
+ *
+ * @author Dennis Reedy
+ */
+public class AllocationInLoop extends PerformanceRule {
+
+    public AllocationInLoop() {
+        super("AllocationExpression");
+    }
+
+    @Override
+    public Object visit(ASTAllocationExpression node, Object data) {
+        SimpleNode loop = loop(node);
+        if(loop!=null && !exitsLoop(node, loop))
+            report(data, node);
+        return data;
+    }
+}
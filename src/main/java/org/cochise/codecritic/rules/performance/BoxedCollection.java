@@ -0,0 +1,81 @@
+/*
+ * Copyright to the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.cochise.codecritic.rules.performance;
+
+import net.sourceforge.pmd.ast.*;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Finds fields and local variables declared as collections or maps of boxed primitives, where every
+ * element is a separate object that has to be boxed when added and unboxed when read.
+ *
+ * @author Dennis Reedy
+ */
+public class BoxedCollection extends PerformanceRule {
+    private static final Set<String> COLLECTIONS = new HashSet<String>(Arrays.asList(
+        "Collection", "List", "ArrayList", "LinkedList", "Set", "HashSet", "LinkedHashSet", "TreeSet",
+        "SortedSet", "NavigableSet", "Queue", "Deque", "ArrayDeque", "PriorityQueue", "Map", "HashMap",
+        "LinkedHashMap", "TreeMap", "SortedMap", "NavigableMap", "ConcurrentMap", "ConcurrentHashMap",
+        "ConcurrentSkipListMap", "ConcurrentSkipListSet", "CopyOnWriteArrayList", "BlockingQueue",
+        "ArrayBlockingQueue", "LinkedBlockingQueue"));
+    private static final Set<String> BOXED = new HashSet<String>(Arrays.asList(
+        "Integer", "Long", "Short", "Byte", "Double", "Float", "Character"));
+
+    public BoxedCollection() {
+        super("FieldDeclaration", "LocalVariableDeclaration");
+    }
+
+    @Override
+    public Object visit(ASTFieldDeclaration node, Object data) {
+        check(node, data);
+        return data;
+    }
+
+    @Override
+    public Object visit(ASTLocalVariableDeclaration node, Object data) {
+        check(node, data);
+        return data;
+    }
+
+    private void check(SimpleNode declaration, Object data) {
+        ASTType type = firstChild(declaration, ASTType.class);
+        ASTReferenceType referenceType = type==null?null:firstChild(type, ASTReferenceType.class);
+        ASTClassOrInterfaceType classType = referenceType==null?null:firstChild(referenceType, ASTClassOrInterfaceType.class);
+        if(classType==null || !COLLECTIONS.contains(simpleName(classType.getImage())))
+            return;
+        ASTTypeArguments typeArguments = firstChild(classType, ASTTypeArguments.class);
+        if(typeArguments==null)
+            return;
+        for(int i=0; i<typeArguments.jjtGetNumChildren(); i++) {
+            Node typeArgument = typeArguments.jjtGetChild(i);
+            ASTReferenceType argumentType = firstChild(typeArgument, ASTReferenceType.class);
+            ASTClassOrInterfaceType argument = argumentType==null?null:firstChild(argumentType, ASTClassOrInterfaceType.class);
+            if(argument!=null && argument.jjtGetNumChildren()==0 && BOXED.contains(simpleName(argument.getImage()))) {
+                report(data, classType, simpleName(argument.getImage()));
+                return;
+            }
+        }
+    }
+
+    private static String simpleName(String image) {
+        if(image==null)
+            return null;
+        return image.startsWith("java.")?image.substring(image.lastIndexOf('.')+1):image;
+    }
+}
@@ -0,0 +1,163 @@
+/*
+ * Copyright to the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.cochise.codecritic.rules.performance;
+
+import net.sourceforge.pmd.AbstractJavaRule;
+import net.sourceforge.pmd.ast.*;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Base class for the performance rules. Like the basic rules, rules register the nodes they are
+ * interested in with the rule chain and inspect only the visited node and its surroundings.
+ *
+ * @author Dennis Reedy
+ */
+abstract class PerformanceRule extends AbstractJavaRule {
+
+    PerformanceRule(String... nodeNames) {
+        for(String nodeName : nodeNames)
+            addRuleChainVisit(nodeName);
+    }
+
+    void report(Object data, SimpleNode node) {
+        addViolation(data, node, getMessage());
+    }
+
+    void report(Object data, SimpleNode node, String arg) {
+        addViolation(data, node, arg);
+    }
+
+    static <T> T firstChild(Node node, Class<T> type) {
+        for(int i=0; i<node.jjtGetNumChildren(); i++) {
+            Node child = node.jjtGetChild(i);
+            if(type.isInstance(child))
+                return type.cast(child);
+        }
+        return null;
+    }
+
+    /*
+     * Get the loop whose body, condition or update contains the node, or null if the node is not
+     * run once per iteration of a loop in the same method. Nodes in a for loop initializer or the
+     * expression of a foreach loop are only run once, and the search stops at the enclosing method,
+     * constructor, initializer or class body, so code in an anonymous class is not in the loop.
+     */
+    static SimpleNode loop(SimpleNode node) {
+        Node child = node;
+        Node parent = node.jjtGetParent();
+        while(parent!=null) {
+            if(parent instanceof ASTClassOrInterfaceBodyDeclaration ||
+               parent instanceof ASTClassOrInterfaceBody ||
+               parent instanceof ASTEnumBody)
+                return null;
+            if(parent instanceof ASTWhileStatement || parent instanceof ASTDoStatement)
+                return (SimpleNode)parent;
+            if(parent instanceof ASTForStatement) {
+                boolean foreach = firstChild(parent, ASTType.class)!=null;
+                if(child instanceof ASTStatement ||
+                   child instanceof ASTForUpdate ||
+                   (child instanceof ASTExpression && !foreach))
+                    return (SimpleNode)parent;
+            }
+            child = parent;
+            parent = parent.jjtGetParent();
+        }
+        return null;
+    }
+
+    /*
+     * Whether the node is part of a throw or return statement inside the provided loop, and is so
+     * run at most once for the loop
+     */
+    static boolean exitsLoop(SimpleNode node, SimpleNode loop) {
+        for(Node parent = node.jjtGetParent(); parent!=null && parent!=loop; parent = parent.jjtGetParent()) {
+            if(parent instanceof ASTThrowStatement || parent instanceof ASTReturnStatement)
+                return true;
+        }
+        return false;
+    }
+
+    static boolean isDescendant(Node node, Node ancestor) {
+        for(Node parent = node; parent!=null; parent = parent.jjtGetParent()) {
+            if(parent==ancestor)
+                return true;
+        }
+        return false;
+    }
+
+    /*
+     * Get the method invocations of a primary expression. A method is either named by the prefix
+     * (as in "pattern.matcher(s)", qualified by "pattern") or by a suffix (as in "get().matcher(s)",
+     * with no qualifier), and is followed by a suffix holding its arguments.
+     */
+    static List<Invocation> invocations(ASTPrimaryExpression expression) {
+        List<Invocation> invocations = new ArrayList<Invocation>();
+        for(int i=0; i<expression.jjtGetNumChildren()-1; i++) {
+            SimpleNode node = (SimpleNode)expression.jjtGetChild(i);
+            ASTArguments arguments = firstChild(expression.jjtGetChild(i+1), ASTArguments.class);
+            if(arguments==null)
+                continue;
+            if(node instanceof ASTPrimaryPrefix) {
+                ASTName name = firstChild(node, ASTName.class);
+                if(name==null || name.getImage()==null)
+                    continue;
+                String image = name.getImage();
+                int dot = image.lastIndexOf('.');
+                invocations.add(new Invocation(dot==-1?null:image.substring(0, dot),
+                                               image.substring(dot+1),
+                                               arguments));
+            } else if(node instanceof ASTPrimarySuffix && node.getImage()!=null) {
+                invocations.add(new Invocation(null, node.getImage(), arguments));
+            }
+        }
+        return invocations;
+    }
+
+    static class Invocation {
+        final String qualifier;
+        final String method;
+        final ASTArguments arguments;
+
+        Invocation(String qualifier, String method, ASTArguments arguments) {
+            this.qualifier = qualifier;
+            this.method = method;
+            this.arguments = arguments;
+        }
+
+        int getArgumentCount() {
+            return arguments.getArgumentCount();
+        }
+
+        /*
+         * Get the string literal passed as an argument, or null if the argument is not a string literal
+         */
+        String getStringLiteral(int index) {
+            ASTArgumentList list = firstChild(arguments, ASTArgumentList.class);
+            if(list==null || index>=list.jjtGetNumChildren())
+                return null;
+            Node expression = list.jjtGetChild(index);
+            if(expression.jjtGetNumChildren()!=1)
+                return null;
+            Node primary = expression.jjtGetChild(0);
+            if(!(primary instanceof ASTPrimaryExpression) || primary.jjtGetNumChildren()!=1)
+                return null;
+            ASTLiteral literal = firstChild(primary.jjtGetChild(0), ASTLiteral.class);
+            return literal!=null && literal.isStringLiteral()?literal.getImage():null;
+        }
+    }
+}
@@ -0,0 +1,102 @@
+/*
+ * Copyright to the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.cochise.codecritic.rules.performance;
+
+import net.sourceforge.pmd.ast.*;
+
+/**
+ * Finds constant regular expressions that are compiled every time a method or constructor runs,
+ * either with {@code Pattern.compile} and {@code Pattern.matches}, or through the {@code String}
+ * methods {@code matches}, {@code replaceAll}, {@code replaceFirst} and {@code split}. A constant
+ * pattern can be compiled once into a static field. Single characters passed to {@code split} are
+ * not compiled by the JDK, and are not reported.
+ *
+ * @author Dennis Reedy
+ */
+public class RegexCompiledPerCall extends PerformanceRule {
+
+    public RegexCompiledPerCall() {
+        super("PrimaryExpression");
+    }
+
+    @Override
+    public Object visit(ASTPrimaryExpression node, Object data) {
+        for(Invocation invocation : invocations(node)) {
+            String regex = regex(invocation);
+            if(regex!=null && inMethod(node)) {
+                report(data, node, regex);
+                return data;
+            }
+        }
+        return data;
+    }
+
+    /*
+     * Get the constant regular expression compiled by the invocation, or null if it does not compile one
+     */
+    private String regex(Invocation invocation) {
+        int count = invocation.getArgumentCount();
+        if("Pattern".equals(invocation.qualifier) || "java.util.regex.Pattern".equals(invocation.qualifier)) {
+            if(("compile".equals(invocation.method) && (count==1 || count==2)) ||
+               ("matches".equals(invocation.method) && count==2))
+                return invocation.getStringLiteral(0);
+            return null;
+        }
+        if(("matches".equals(invocation.method) && count==1) ||
+           (("replaceAll".equals(invocation.method) || "replaceFirst".equals(invocation.method)) && count==2))
+            return invocation.getStringLiteral(0);
+        if("split".equals(invocation.method) && (count==1 || count==2)) {
+            String regex = invocation.getStringLiteral(0);
+            return regex==null || isFastSplit(unescape(regex.substring(1, regex.length()-1)))?null:regex;
+        }
+        return null;
+    }
+
+    /*
+     * Whether String.split handles the expression without compiling it: a single character that is
+     * not a regular expression meta character, or a backslash followed by a character that is not a
+     * letter or digit
+     */
+    private static boolean isFastSplit(String regex) {
+        if(regex.length()==1)
+            return ".$|()[{^?*+\\".indexOf(regex.charAt(0))==-1;
+        return regex.length()==2 && regex.charAt(0)=='\\' && !Character.isLetterOrDigit(regex.charAt(1));
+    }
+
+    private static String unescape(String literal) {
+        StringBuilder builder = new StringBuilder();
+        for(int i=0; i<literal.length(); i++) {
+            char c = literal.charAt(i);
+            if(c=='\\' && i<literal.length()-1)
+                c = literal.charAt(++i);
+            builder.append(c);
+        }
+        return builder.toString();
+    }
+
+    /*
+     * Whether the node is run by a method or constructor, rather than once by a field or initializer
+     */
+    private static boolean inMethod(Node node) {
+        for(Node parent = node.jjtGetParent(); parent!=null; parent = parent.jjtGetParent()) {
+            if(parent instanceof ASTMethodDeclaration || parent instanceof ASTConstructorDeclaration)
+                return true;
+            if(parent instanceof ASTFieldDeclaration || parent instanceof ASTInitializer)
+                return false;
+        }
+        return false;
+    }
+}
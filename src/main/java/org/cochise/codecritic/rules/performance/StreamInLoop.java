@@ -0,0 +1,52 @@
+/*
+ * Copyright to the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.cochise.codecritic.rules.performance;
+
+import net.sourceforge.pmd.ast.ASTPrimaryExpression;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Finds streams created once per iteration of a loop, each of which allocates a pipeline of stages
+ * before any element is processed.
+ *
+ * @author Dennis Reedy
+ */
+public class StreamInLoop extends PerformanceRule {
+    private static final Set<String> FACTORIES = new HashSet<String>(Arrays.asList(
+        "Stream.of", "Stream.generate", "Stream.iterate", "Arrays.stream", "StreamSupport.stream",
+        "IntStream.of", "IntStream.range", "IntStream.rangeClosed", "LongStream.of", "LongStream.range",
+        "LongStream.rangeClosed", "DoubleStream.of"));
+
+    public StreamInLoop() {
+        super("PrimaryExpression");
+    }
+
+    @Override
+    public Object visit(ASTPrimaryExpression node, Object data) {
+        for(Invocation invocation : invocations(node)) {
+            boolean stream = invocation.getArgumentCount()==0 &&
+                             ("stream".equals(invocation.method) || "parallelStream".equals(invocation.method));
+            if((stream || FACTORIES.contains(invocation.qualifier+"."+invocation.method)) && loop(node)!=null) {
+                report(data, node);
+                return data;
+            }
+        }
+        return data;
+    }
+}
@@ -0,0 +1,76 @@
+/*
+ * Copyright to the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.cochise.codecritic.rules.performance;
+
+import net.sourceforge.pmd.ast.*;
+import net.sourceforge.pmd.symboltable.NameDeclaration;
+import net.sourceforge.pmd.symboltable.VariableNameDeclaration;
+
+/**
+ * Finds strings declared outside a loop that are appended to with {@code +=} or {@code s = s + ...}
+ * inside the loop, copying the whole string on every iteration.
+ *
+ * @author Dennis Reedy
+ */
+public class StringConcatenationInLoop extends PerformanceRule {
+
+    public StringConcatenationInLoop() {
+        super("StatementExpression");
+    }
+
+    @Override
+    public Object visit(ASTStatementExpression node, Object data) {
+        ASTAssignmentOperator operator = firstChild(node, ASTAssignmentOperator.class);
+        if(operator==null)
+            return data;
+        ASTName target = name(firstChild(node, ASTPrimaryExpression.class));
+        if(target==null)
+            return data;
+        if("=".equals(operator.getImage())) {
+            ASTExpression expression = firstChild(node, ASTExpression.class);
+            ASTAdditiveExpression addition = expression==null?null:firstChild(expression, ASTAdditiveExpression.class);
+            if(addition==null || !addition.hasImageEqualTo("+"))
+                return data;
+            ASTName first = name(firstChild(addition, ASTPrimaryExpression.class));
+            if(first==null || !first.hasImageEqualTo(target.getImage()))
+                return data;
+        } else if(!"+=".equals(operator.getImage())) {
+            return data;
+        }
+        SimpleNode loop = loop(node);
+        if(loop==null)
+            return data;
+        NameDeclaration declaration = target.getNameDeclaration();
+        if(declaration instanceof VariableNameDeclaration) {
+            VariableNameDeclaration variable = (VariableNameDeclaration)declaration;
+            if(!variable.isArray() &&
+               "String".equals(variable.getTypeImage()) &&
+               !isDescendant(variable.getDeclaratorId(), loop))
+                report(data, node);
+        }
+        return data;
+    }
+
+    /*
+     * Get the name a primary expression consists of, or null if it is not a plain variable name
+     */
+    private static ASTName name(ASTPrimaryExpression expression) {
+        if(expression==null || expression.jjtGetNumChildren()!=1)
+            return null;
+        ASTName name = firstChild(expression.jjtGetChild(0), ASTName.class);
+        return name!=null && name.getImage()!=null && name.getImage().indexOf('.')==-1?name:null;
+    }
+}
@@ -0,0 +1,37 @@
+/*
+ * Copyright to the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.cochise.codecritic.rules.performance;
+
+import net.sourceforge.pmd.ast.ASTSynchronizedStatement;
+
+/**
+ * Finds synchronized blocks that acquire their lock once per iteration of a loop.
+ *
+ * @author Dennis Reedy
+ */
+public class SynchronizedInLoop extends PerformanceRule {
+
+    public SynchronizedInLoop() {
+        super("SynchronizedStatement");
+    }
+
+    @Override
+    public Object visit(ASTSynchronizedStatement node, Object data) {
+        if(loop(node)!=null)
+            report(data, node);
+        return data;
+    }
+}
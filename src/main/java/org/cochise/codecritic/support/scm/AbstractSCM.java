@@ -19,7 +19,14 @@ import org.cochise.codecritic.*;
 
 import java.io.File;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.StringTokenizer;
+import java.util.concurrent.*;
+import java.util.regex.Pattern;
 
 /**
  * Provides basic support for a {@link SCM}
@@ -27,6 +34,7 @@ import java.util.List;
  * @author Dennis Reedy
  */
 public abstract class AbstractSCM implements SCM {
+    private static final int DIFF_QUEUE_SIZE = 64;
     /**
      * Additional directories to exclude     
      */
@@ -44,15 +52,38 @@ public abstract class AbstractSCM implements SCM {
      */
     private String repository;
     private File workingDirectory;
+    /**
+     * The revision sources are read from, null for the working directory
+     */
+    private String revision;
     private final List<ChangeSet> changeSets = new ArrayList<ChangeSet>();
+    private final List<ChangeSet> history = new ArrayList<ChangeSet>();
     private final List<SourceFile> javaSources = new ArrayList<SourceFile>();
     private final List<SourceFile> nonJavaSources = new ArrayList<SourceFile>();
     private final List<ProgressListener> listeners = new ArrayList<ProgressListener>();
+    private final List<SourceListener> sourceListeners = new ArrayList<SourceListener>();
+    private Map<String, LineRanges> changedLines;
+    private final List<PendingDiff> pendingDiffs = new ArrayList<PendingDiff>();
+    private ExecutorService diffExecutor;
 
     public List<ChangeSet> getChangeSets() {
         return changeSets;
     }
 
+    public List<ChangeSet> getHistory() {
+        return history;
+    }
+
+    /**
+     * Add a change set found by the log. The log lists change sets newest first.
+     *
+     * @param changeSet the change set
+     */
+    protected void addChangeSet(ChangeSet changeSet) {
+        changeSets.add(changeSet);
+        history.add(0, changeSet);
+    }
+
     public List<SourceFile> getJavaSources() {
         return javaSources;
     }
@@ -110,11 +141,61 @@ public abstract class AbstractSCM implements SCM {
         }
     }
 
+    /**
+     * Initialize this SCM for a branch of the repository of another SCM, with the same options and
+     * progress listeners. The sources of the branch are read from the tip of the branch.
+     *
+     * @param scm the SCM to share the configuration of
+     * @param branch the branch
+     */
+    protected void initialize(AbstractSCM scm, String branch) {
+        this.workingDirectory = scm.workingDirectory;
+        this.exclude = scm.exclude;
+        this.includeTests = scm.includeTests;
+        this.repository = scm.repository;
+        this.branch = branch;
+        this.revision = branch;
+        this.listeners.addAll(scm.listeners);
+    }
+
+    public String getRevision() {
+        return revision;
+    }
+
+    /**
+     * Select the branches whose names match a pattern
+     *
+     * @param pattern the pattern, in which '*' matches any sequence of characters
+     * @param branches the branches to select from
+     *
+     * @return the matching branches, sorted
+     */
+    protected List<String> match(String pattern, Collection<String> branches) {
+        StringBuilder regex = new StringBuilder();
+        for(String part : pattern.split("\\*", -1)) {
+            if(regex.length()>0)
+                regex.append(".*");
+            regex.append(Pattern.quote(part));
+        }
+        List<String> matched = new ArrayList<String>();
+        for(String branch : branches) {
+            if(branch.matches(regex.toString()))
+                matched.add(branch);
+        }
+        Collections.sort(matched);
+        return matched;
+    }
+
     public void registerProgressListener(ProgressListener progressListener) {
         if(!listeners.contains(progressListener))
             listeners.add(progressListener);
     }
 
+    public void registerSourceListener(SourceListener sourceListener) {
+        if(!sourceListeners.contains(sourceListener))
+            sourceListeners.add(sourceListener);
+    }
+
     protected void sendInfoMessage(String message) {
         for(ProgressListener listener : listeners) {
             listener.info(message);
@@ -132,17 +213,172 @@ public abstract class AbstractSCM implements SCM {
             sendDebugMessage("Excluding "+sourceFile);
             return;
         }
-        if(!sourceFileList.contains(sourceFile)) {
-            sourceFile.addChangeSet(changeSet);
-            sourceFileList.add(sourceFile);
-        } else {
-            int ndx = sourceFileList.indexOf(sourceFile);
-            SourceFile sFile = sourceFileList.get(ndx);
-            sFile.addChangeSet(changeSet);
-            sourceFileList.set(ndx, sFile);
+        boolean discovered = false;
+        synchronized(javaSources) {
+            if(!sourceFileList.contains(sourceFile)) {
+                sourceFile.addChangeSet(changeSet);
+                if(sourceFileList==javaSources) {
+                    if(changedLines!=null)
+                        sourceFile.setChangedLines(getChangedLines(sourceFile));
+                    discovered = true;
+                }
+                sourceFileList.add(sourceFile);
+            } else {
+                int ndx = sourceFileList.indexOf(sourceFile);
+                SourceFile sFile = sourceFileList.get(ndx);
+                sFile.addChangeSet(changeSet);
+                sourceFileList.set(ndx, sFile);
+            }
+        }
+        /* Not notified holding the lock, a listener may block until the source file is analyzed */
+        if(discovered) {
+            for(SourceListener listener : sourceListeners)
+                listener.discovered(sourceFile);
+        }
+    }
+
+    /**
+     * Render the diff of a change set while the log continues to be processed. If the diffs already
+     * waiting to be rendered fill the queue, the diff is rendered by the caller.
+     *
+     * @param changeSet the change set
+     * @param diff renders the diff as html
+     */
+    protected void renderDiff(ChangeSet changeSet, Callable<String> diff) {
+        ExecutorService executor;
+        synchronized(pendingDiffs) {
+            if(diffExecutor==null) {
+                int threads = Runtime.getRuntime().availableProcessors();
+                diffExecutor = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS,
+                                                      new ArrayBlockingQueue<Runnable>(DIFF_QUEUE_SIZE),
+                                                      new ThreadFactory() {
+                                                          public Thread newThread(Runnable runnable) {
+                                                              Thread thread = new Thread(runnable, "code-critic-diff");
+                                                              thread.setDaemon(true);
+                                                              return thread;
+                                                          }
+                                                      },
+                                                      new ThreadPoolExecutor.CallerRunsPolicy());
+            }
+            executor = diffExecutor;
+        }
+        Future<String> future = executor.submit(diff);
+        synchronized(pendingDiffs) {
+            pendingDiffs.add(new PendingDiff(changeSet, future));
         }
     }
 
+    public void awaitDiffs() throws CodeCriticException {
+        List<PendingDiff> pending;
+        synchronized(pendingDiffs) {
+            pending = new ArrayList<PendingDiff>(pendingDiffs);
+            pendingDiffs.clear();
+        }
+        try {
+            /* In the order they were started, a later diff of the same change set replaces an earlier one */
+            for(PendingDiff p : pending)
+                p.changeSet.setDiff(p.diff.get());
+        } catch (ExecutionException e) {
+            throw new CodeCriticException("Unable to render diff", e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CodeCriticException("Interrupted while rendering diffs", e);
+        } finally {
+            shutdownDiffs();
+        }
+    }
+
+    public void discardDiffs() {
+        synchronized(pendingDiffs) {
+            for(PendingDiff p : pendingDiffs)
+                p.diff.cancel(true);
+            pendingDiffs.clear();
+        }
+        shutdownDiffs();
+    }
+
+    private void shutdownDiffs() {
+        synchronized(pendingDiffs) {
+            if(diffExecutor!=null) {
+                diffExecutor.shutdownNow();
+                diffExecutor = null;
+            }
+        }
+    }
+
+    /**
+     * Set the changed lines of each Java source from the output of a unified diff
+     * (created with no context lines) of the branch.
+     *
+     * @param diff the unified diff output
+     */
+    protected void processChangedLines(String diff) {
+        Map<String, LineRanges> changed = new HashMap<String, LineRanges>();
+        LineRanges changedLines = null;
+        StringTokenizer st = new StringTokenizer(diff, "\n");
+        while(st.hasMoreTokens()) {
+            String line = st.nextToken();
+            if(line.startsWith("+++ ")) {
+                String file = line.substring("+++ ".length());
+                int ndx = file.indexOf("\t");
+                if(ndx!=-1)
+                    file = file.substring(0, ndx);
+                file = file.trim();
+                if(file.startsWith("b/"))
+                    file = file.substring(2);
+                changedLines = new LineRanges();
+                changed.put(resolve(file), changedLines);
+            }
+            if(line.startsWith("@@") && changedLines!=null) {
+                /* Hunk header is of the form @@ -a,b +c,d @@ */
+                String[] parts = line.split(" ");
+                if(parts.length<3 || !parts[2].startsWith("+"))
+                    continue;
+                String[] range = parts[2].substring(1).split(",");
+                int begin = Integer.parseInt(range[0]);
+                int count = range.length>1?Integer.parseInt(range[1]):1;
+                if(count==0) {
+                    /* Lines were only removed, mark the lines on either side of the removal */
+                    changedLines.add(Math.max(begin, 1), begin+1);
+                } else {
+                    changedLines.add(begin, begin+count-1);
+                }
+            }
+        }
+        synchronized(javaSources) {
+            this.changedLines = changed;
+            for(SourceFile sourceFile : javaSources) {
+                sourceFile.setChangedLines(getChangedLines(sourceFile));
+                sendDebugMessage("Changed lines "+sourceFile+": "+sourceFile.getChangedLines());
+            }
+        }
+    }
+
+    private LineRanges getChangedLines(SourceFile sourceFile) {
+        LineRanges lineRanges = changedLines.get(resolve(sourceFile.getFile()));
+        return lineRanges==null?new LineRanges():lineRanges;
+    }
+
+    /**
+     * Get the path of a source file relative to the working directory, with '/' as the separator
+     *
+     * @param sourceFile the source file
+     *
+     * @return the relative path
+     */
+    protected String relativePath(SourceFile sourceFile) {
+        String file = sourceFile.getFile();
+        String root = workingDirectory.getAbsolutePath()+File.separator;
+        if(file.startsWith(root))
+            file = file.substring(root.length());
+        return file.replace(File.separatorChar, '/');
+    }
+
+    private String resolve(String file) {
+        File f = new File(file);
+        return f.isAbsolute()?f.getPath():new File(workingDirectory, file).getAbsolutePath();
+    }
+
     protected boolean excluded(final String file) {
         boolean exclude = false;
         if(this.exclude==null) {
@@ -189,4 +425,14 @@ public abstract class AbstractSCM implements SCM {
         builder.append("\n");
         return builder.toString();
     }
+
+    private static class PendingDiff {
+        final ChangeSet changeSet;
+        final Future<String> diff;
+
+        PendingDiff(ChangeSet changeSet, Future<String> diff) {
+            this.changeSet = changeSet;
+            this.diff = diff;
+        }
+    }
 }
@@ -15,13 +15,17 @@
  */
 package org.cochise.codecritic.support.scm;
 
+import org.cochise.codecritic.Blame;
 import org.cochise.codecritic.ChangeSet;
 import org.cochise.codecritic.CodeCriticException;
 import org.cochise.codecritic.ProgressListener;
 import org.cochise.codecritic.SourceFile;
+import org.cochise.codecritic.SourceListener;
 
 import java.io.File;
+import java.util.Collection;
 import java.util.List;
+import java.util.Map;
 
 /**
  * Defines the basic semantics of a SCM.
@@ -31,10 +35,143 @@ import java.util.List;
 public interface SCM {
     void initialize(File workingDirectory, String... options) throws CodeCriticException;
     void registerProgressListener(ProgressListener progressListener);
+
+    /**
+     * Register a listener to be notified of Java source files as the log discovers them. The
+     * listener is notified on the thread running the log.
+     *
+     * @param sourceListener the listener
+     */
+    void registerSourceListener(SourceListener sourceListener);
     void runLog() throws CodeCriticException;
+
+    /**
+     * Wait for the diffs of the change sets found by the log to be rendered, and set them on their
+     * change sets. Diffs are rendered while the log is processed and after it completes.
+     *
+     * @throws CodeCriticException if a diff cannot be rendered
+     */
+    void awaitDiffs() throws CodeCriticException;
+
+    /**
+     * Discard the diffs of the change sets found by the log, abandoning those not yet rendered
+     */
+    void discardDiffs();
+
+    /**
+     * Compute the lines that have changed for each Java source file in the branch. Java source files
+     * the log discovers afterwards are also given their changed lines.
+     *
+     * @return true if changed lines were computed, false if the SCM cannot determine them
+     * for the current configuration
+     *
+     * @throws CodeCriticException if the diff cannot be obtained
+     */
+    boolean computeChangedLines() throws CodeCriticException;
+
+    /**
+     * Get the Java sources of the base the branch is compared with.
+     *
+     * @return the path of each Java source, relative to the root of the repository, mapped to the
+     * SCM's identifier of the source's content; or null if the SCM cannot determine the base for
+     * the current configuration
+     *
+     * @throws CodeCriticException if the sources cannot be obtained
+     */
+    Map<String, String> getBaseJavaSources() throws CodeCriticException;
+
+    /**
+     * Read the content of Java sources of the base the branch is compared with.
+     *
+     * @param sources the path of each source to read mapped to its content identifier, as returned
+     * by {@link #getBaseJavaSources()}
+     *
+     * @return the path of each source mapped to its content, sources that cannot be read are omitted
+     *
+     * @throws CodeCriticException if the sources cannot be read
+     */
+    Map<String, String> readBaseSources(Map<String, String> sources) throws CodeCriticException;
+
+    /**
+     * Get the revision the branch diverged from, the common ancestor of the branch and the base it
+     * is compared with.
+     *
+     * @return the revision, or null if the SCM cannot determine it for the current configuration
+     *
+     * @throws CodeCriticException if the revision cannot be obtained
+     */
+    String getMergeBase() throws CodeCriticException;
+
+    /**
+     * Read the content of Java source files as of a revision.
+     *
+     * @param revision the revision
+     * @param sourceFiles the source files to read
+     *
+     * @return each source file mapped to its content, source files that do not exist at the revision
+     * are omitted
+     *
+     * @throws CodeCriticException if the source files cannot be read
+     */
+    Map<SourceFile, String> readSources(String revision, Collection<SourceFile> sourceFiles) throws CodeCriticException;
+
+    /**
+     * Get the revision that last changed each line of a source file, with a single blame of the file
+     *
+     * @param sourceFile the source file
+     *
+     * @return the blame of the source file
+     *
+     * @throws CodeCriticException if the source file cannot be blamed
+     */
+    Blame blame(SourceFile sourceFile) throws CodeCriticException;
+    /**
+     * Get the branches of the repository whose names match a pattern
+     *
+     * @param pattern the pattern, in which '*' matches any sequence of characters
+     *
+     * @return the names of the matching branches, sorted
+     *
+     * @throws CodeCriticException if the branches cannot be listed
+     */
+    List<String> getBranches(String pattern) throws CodeCriticException;
+
+    /**
+     * Create an SCM for another branch of the same repository, sharing the configuration this SCM was
+     * initialized with. The branch does not have to be checked out, its sources are read from the tip
+     * of the branch rather than the working directory.
+     *
+     * @param branch the branch
+     *
+     * @return an SCM for the branch, ready to run its log
+     *
+     * @throws CodeCriticException if the SCM cannot be created
+     */
+    SCM forBranch(String branch) throws CodeCriticException;
+
+    /**
+     * Get the revision the sources of the branch are read from
+     *
+     * @return the revision, or null if the sources are read from the working directory
+     */
+    String getRevision();
     List<ChangeSet> getChangeSets();
+
+    /**
+     * Get the change sets found by the log, oldest first
+     *
+     * @return the change sets in the order they were made
+     */
+    List<ChangeSet> getHistory();
     List<SourceFile> getJavaSources();
     List<SourceFile> getOtherSources();
     String getBranch();
     String getRepository();
+
+    /**
+     * Get the working directory of the repository, the directory the SCM was initialized with
+     *
+     * @return the working directory
+     */
+    File getWorkingDirectory();
 }
\ No newline at end of file
@@ -29,11 +29,22 @@ public final class SCMFactory {
     private SCMFactory() {}
 
     public static SCM getSCM() {
-        File hgFile = new File(System.getProperty("user.dir"), ".hg");
+        return getSCM(new File(System.getProperty("user.dir")));
+    }
+
+    /**
+     * Get the {@link SCM} for a project directory
+     *
+     * @param directory the project directory
+     *
+     * @return the SCM, or null if the directory is not a mercurial or git project
+     */
+    public static SCM getSCM(File directory) {
+        File hgFile = new File(directory, ".hg");
         if(hgFile.exists()) {
             return new Hg();
         }
-        File gitFile = new File(System.getProperty("user.dir"), ".git");
+        File gitFile = new File(directory, ".git");
         if(gitFile.exists()) {
             return new Git();
         }
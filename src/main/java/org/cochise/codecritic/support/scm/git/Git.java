@@ -17,14 +17,14 @@ package org.cochise.codecritic.support.scm.git;
 
 import org.cochise.codecritic.*;
 import org.cochise.codecritic.support.scm.AbstractSCM;
+import org.cochise.codecritic.support.scm.SCM;
 import org.fusesource.jansi.HtmlAnsiOutputStream;
 
 import java.io.*;
+import java.nio.charset.Charset;
 import java.nio.file.Files;
-import java.util.ArrayList;
-import java.util.List;
-import java.util.Scanner;
-import java.util.StringTokenizer;
+import java.util.*;
+import java.util.concurrent.Callable;
 import java.util.concurrent.atomic.AtomicInteger;
 
 /**
@@ -33,10 +33,9 @@ import java.util.concurrent.atomic.AtomicInteger;
  * @author Dennis Reedy
  */
 public class Git extends AbstractSCM {
-    private final StringBuilder logCommandBuilder = new StringBuilder();
+    private String logCommand;
     private Config config;
-    private WhileWeWaitPrintSomePeriods waiter;
-    private Thread waiterThread;
+    private boolean renderingDiffs;
 
 
     @Override
@@ -75,10 +74,10 @@ public class Git extends AbstractSCM {
             }
 
             if(gitLogCommand==null || gitLogCommand.length()==0) {
-                logCommandBuilder.append("git log ").append(since).append("..");
+                logCommand = "git log "+since+"..";
                 config.fromBranch = since;
             } else {
-                logCommandBuilder.append(gitLogCommand);
+                logCommand = gitLogCommand;
             }
         } else {
             throw new CodeCriticException("This is not a git project, code-critic will now exit.");
@@ -133,21 +132,46 @@ public class Git extends AbstractSCM {
             throw new CodeCriticException("Unable to obtain current branch", e);
         }
         branches.remove(currentBranch);
+        /* Reviewing other branches from the only configured branch, it is the base */
+        if(branches.isEmpty() && currentBranch!=null)
+            branches.add(currentBranch);
         setBranch(currentBranch);
         return new Config(origins, branches, currentBranch);
     }
 
+    public List<String> getBranches(String pattern) throws CodeCriticException {
+        String forEachRef = "git for-each-ref --format=%(refname:short) refs/heads/";
+        sendDebugMessage(forEachRef);
+        List<String> branches = new ArrayList<String>();
+        for(String branch : ExecHelper.doExec(forEachRef, null, getWorkingDirectory()).split("\n")) {
+            if(branch.trim().length()>0)
+                branches.add(branch.trim());
+        }
+        return match(pattern, branches);
+    }
+
+    public SCM forBranch(String branch) throws CodeCriticException {
+        if(config==null)
+            throw new CodeCriticException("The git SCM has not been initialized");
+        Git git = new Git();
+        git.initialize(this, branch);
+        git.config = config;
+        git.logCommand = logCommand;
+        return git;
+    }
+
     public void runLog() throws CodeCriticException {
         String branch = getBranch();
-        logCommandBuilder.append(branch);
-        logCommandBuilder.append(" --name-only");
+        String logCommand = this.logCommand+branch+" --name-only";
         sendInfoMessage("Using branch " + branch);
         sendInfoMessage("Using repository " + getRepository());
-        sendInfoMessage("Using log command \""+logCommandBuilder.toString()+"\"");
+        sendInfoMessage("Using log command \""+logCommand+"\"");
 
-        sendDebugMessage(logCommandBuilder.toString());
-        String output = ExecHelper.doExec(logCommandBuilder.toString(), null, getWorkingDirectory());
+        sendDebugMessage(logCommand);
+        String output = ExecHelper.doExec(logCommand, null, getWorkingDirectory());
         sendDebugMessage(output);
+        /* The files of a branch that is not checked out are looked for in the branch, not the working directory */
+        Set<String> files = getRevision()==null?null:listFiles(getRevision());
 
         boolean processFiles = false;
         boolean processDescription = false;
@@ -159,7 +183,7 @@ public class Git extends AbstractSCM {
             if(line.startsWith("commit")) {
                 processFiles = false;
                 if(changeSet!=null) {
-                    getChangeSets().add(changeSet);
+                    addChangeSet(changeSet);
                 }
                 String changeSetString = line.substring("commit".length()).trim();
                 changeSet = new ChangeSet(number.incrementAndGet(), getRepository()+"commit/", changeSetString);
@@ -189,7 +213,7 @@ public class Git extends AbstractSCM {
             if(processFiles) {
                 String file = line.trim();
                 File f = new File(getWorkingDirectory(), file);
-                if(!f.exists())
+                if(files==null?!f.exists():!files.contains(file))
                     continue;
                 SourceFile sourceFile = new SourceFile(new File(getWorkingDirectory(), file).getAbsolutePath());
                 if(file.endsWith(".java")) {
@@ -218,10 +242,8 @@ public class Git extends AbstractSCM {
                 processDescription = true;
             }
         }
-        if(waiterThread!=null) {
-            waiter.stop();
-            waiterThread.interrupt();
-            System.out.println();
+        if(changeSet!=null) {
+            addChangeSet(changeSet);
         }
         if(getJavaSources().isEmpty()) {
             sendInfoMessage("There are no files to analyze.");
@@ -233,46 +255,202 @@ public class Git extends AbstractSCM {
         sendDebugMessage(debugReport("Other files changed ", getOtherSources()));
     }
 
+    public boolean computeChangedLines() throws CodeCriticException {
+        if(config.fromBranch==null) {
+            sendInfoMessage("Changed lines cannot be determined when using a custom git log command");
+            return false;
+        }
+        String diff = String.format("git diff -U0 --no-color %s...%s", config.fromBranch, getBranch());
+        sendDebugMessage(diff);
+        processChangedLines(ExecHelper.doExec(diff, null, getWorkingDirectory()));
+        return true;
+    }
+
+    public Map<String, String> getBaseJavaSources() throws CodeCriticException {
+        if(config.fromBranch==null) {
+            sendInfoMessage("The base cannot be determined when using a custom git log command");
+            return null;
+        }
+        String lsTree = String.format("git ls-tree -r -z --full-tree %s", config.fromBranch);
+        sendDebugMessage(lsTree);
+        Map<String, String> sources = new HashMap<String, String>();
+        /* Each entry is of the form <mode> blob <object>\t<path> */
+        for(String entry : ExecHelper.doExec(lsTree, null, getWorkingDirectory()).split("\u0000")) {
+            int ndx = entry.indexOf('\t');
+            if(ndx==-1)
+                continue;
+            String[] parts = entry.substring(0, ndx).trim().split(" ");
+            String path = entry.substring(ndx+1);
+            if(parts.length==3 && "blob".equals(parts[1]) && path.endsWith(".java") && !excluded(path))
+                sources.put(path, parts[2]);
+        }
+        return sources;
+    }
+
+    public Map<String, String> readBaseSources(Map<String, String> sources) throws CodeCriticException {
+        return readObjects(sources);
+    }
+
+    public String getMergeBase() throws CodeCriticException {
+        if(config.fromBranch==null) {
+            sendInfoMessage("The merge base cannot be determined when using a custom git log command");
+            return null;
+        }
+        String mergeBase = String.format("git merge-base %s %s", config.fromBranch, getBranch());
+        sendDebugMessage(mergeBase);
+        String revision = ExecHelper.doExec(mergeBase, null, getWorkingDirectory()).trim();
+        return revision.matches("[0-9a-f]{40}")?revision:null;
+    }
+
+    public Map<SourceFile, String> readSources(String revision, Collection<SourceFile> sourceFiles) throws CodeCriticException {
+        Map<String, String> objects = new HashMap<String, String>();
+        Map<String, SourceFile> paths = new HashMap<String, SourceFile>();
+        for(SourceFile sourceFile : sourceFiles) {
+            String path = relativePath(sourceFile);
+            objects.put(path, revision+":"+path);
+            paths.put(path, sourceFile);
+        }
+        Map<SourceFile, String> contents = new HashMap<SourceFile, String>();
+        for(Map.Entry<String, String> entry : readObjects(objects).entrySet())
+            contents.put(paths.get(entry.getKey()), entry.getValue());
+        return contents;
+    }
+
+    public Blame blame(SourceFile sourceFile) throws CodeCriticException {
+        List<String> command = new ArrayList<String>(Arrays.asList("git", "blame", "--incremental"));
+        if(getRevision()!=null)
+            command.add(getRevision());
+        command.addAll(Arrays.asList("--", relativePath(sourceFile)));
+        sendDebugMessage(command.toString());
+        String output = ExecHelper.doExec(command, getWorkingDirectory());
+        /* Each group of lines starts <revision> <source line> <line> <count>, followed by headers, the
+         * author only the first time a revision is seen, and ends with the filename header */
+        Blame blame = new Blame();
+        String revision = null;
+        for(String line : output.split("\n")) {
+            String[] parts = line.split(" ");
+            if(parts.length==4 && parts[0].matches("[0-9a-f]{40}")) {
+                revision = parts[0];
+                blame.add(revision, Integer.parseInt(parts[2]), Integer.parseInt(parts[3]));
+            } else if(revision!=null && line.startsWith("author ")) {
+                blame.setAuthor(revision, line.substring("author ".length()));
+            }
+        }
+        return blame;
+    }
+
+    /*
+     * Read objects with a single git cat-file process, returning the content of each object mapped
+     * to its key. Objects that do not exist are omitted.
+     */
+    private Map<String, String> readObjects(Map<String, String> objects) throws CodeCriticException {
+        Map<String, String> contents = new HashMap<String, String>();
+        if(objects.isEmpty())
+            return contents;
+        final List<Map.Entry<String, String>> entries = new ArrayList<Map.Entry<String, String>>(objects.entrySet());
+        try {
+            final Process process = new ProcessBuilder("git", "cat-file", "--batch")
+                                        .directory(getWorkingDirectory())
+                                        .redirectError(ProcessBuilder.Redirect.INHERIT)
+                                        .start();
+            /* Write the requests on another thread, so that a full output pipe cannot block us */
+            Thread requests = new Thread(new Runnable() {
+                public void run() {
+                    try (Writer writer = new BufferedWriter(new OutputStreamWriter(process.getOutputStream(), "UTF-8"))) {
+                        for(Map.Entry<String, String> entry : entries)
+                            writer.write(entry.getValue()+"\n");
+                    } catch (IOException e) {
+                        sendDebugMessage("Unable to request base sources, "+e.getMessage());
+                    }
+                }
+            });
+            requests.start();
+            try (DataInputStream in = new DataInputStream(new BufferedInputStream(process.getInputStream()))) {
+                for(Map.Entry<String, String> entry : entries) {
+                    /* Each response is <object> blob <size>\n<content>\n, or <object> missing\n */
+                    String line = readLine(in);
+                    String[] header = line.split(" ");
+                    if(line.endsWith(" missing") || header.length!=3)
+                        continue;
+                    byte[] content = new byte[Integer.parseInt(header[2])];
+                    in.readFully(content);
+                    in.read();
+                    contents.put(entry.getKey(), new String(content, Charset.defaultCharset()));
+                }
+            }
+            requests.join();
+            process.waitFor();
+        } catch (IOException | InterruptedException | NumberFormatException e) {
+            throw new CodeCriticException("Unable to read base sources", e);
+        }
+        return contents;
+    }
+
+    /*
+     * Get the path of each file in a revision, relative to the root of the repository
+     */
+    private Set<String> listFiles(String revision) throws CodeCriticException {
+        List<String> command = Arrays.asList("git", "ls-tree", "-r", "-z", "--name-only", "--full-tree", revision);
+        sendDebugMessage(command.toString());
+        return new HashSet<String>(Arrays.asList(ExecHelper.doExec(command, getWorkingDirectory()).split("\u0000")));
+    }
+
+    private String readLine(InputStream in) throws IOException {
+        ByteArrayOutputStream line = new ByteArrayOutputStream();
+        int b;
+        while((b = in.read())!=-1 && b!='\n')
+            line.write(b);
+        if(b==-1 && line.size()==0)
+            throw new EOFException("Unexpected end of git cat-file output");
+        return new String(line.toByteArray(), "UTF-8");
+    }
+
     @Override
     protected void processSourceFile(SourceFile sourceFile, ChangeSet changeSet, List<SourceFile> sourceFileList) {
         if(!getRepository().startsWith("http")) {
-            if(waiter==null) {
+            if(!renderingDiffs) {
                 sendInfoMessage("Generate diff files for non-http repository");
-                waiter = new WhileWeWaitPrintSomePeriods();
-                waiterThread = new Thread(waiter);
-                waiterThread.start();
+                renderingDiffs = true;
             }
-            String diff;
+            final String diff;
             if(sourceFile==null) {
                 diff = String.format("git diff --color %s %s", config.fromBranch, changeSet.getChangeSet());
             } else {
                 diff = String.format("git diff --color %s %s -- %s",
                                config.fromBranch, changeSet.getChangeSet(), sourceFile.getFile());
             }
-            String result = ExecHelper.doExec(diff, null, getWorkingDirectory());
-            if (result.length() == 0) {
-                result = "<span style=\"color: gray;\">no changes detected</span>";
-            }
-            String[] lines = result.split("\n");
-            StringBuilder html = new StringBuilder();
-            html.append("<html>\n").append("<body>\n").append("<p style=\"font-family: monospace\">");
-            try {
-                for (String line : lines) {
-                    String s = colorize(line.replace(" ", "nbsp;"));
-                    s = s.replace("<span style=\"color: red;\">", "<span style=\"color: red; background-color: #ffcccc;\">");
-                    s = s.replace("<span style=\"color: green;\">", "<span style=\"color: green; background-color: #c6ebd9;\">");
-                    html.append(s.replace("nbsp;", "&nbsp;")).append("<br>\n");
+            renderDiff(changeSet, new Callable<String>() {
+                public String call() {
+                    return renderDiff(diff);
                 }
-            } catch (IOException e) {
-                e.printStackTrace();
-            }
-            html.append("</p>\n").append("</body>\n").append("</html>");
-            changeSet.setDiff(html.toString());
+            });
         }
         if(sourceFile!=null)
             super.processSourceFile(sourceFile, changeSet, sourceFileList);
     }
 
+    private String renderDiff(String diff) {
+        String result = ExecHelper.doExec(diff, null, getWorkingDirectory());
+        if (result.length() == 0) {
+            result = "<span style=\"color: gray;\">no changes detected</span>";
+        }
+        String[] lines = result.split("\n");
+        StringBuilder html = new StringBuilder();
+        html.append("<html>\n").append("<body>\n").append("<p style=\"font-family: monospace\">");
+        try {
+            for (String line : lines) {
+                String s = colorize(line.replace(" ", "nbsp;"));
+                s = s.replace("<span style=\"color: red;\">", "<span style=\"color: red; background-color: #ffcccc;\">");
+                s = s.replace("<span style=\"color: green;\">", "<span style=\"color: green; background-color: #c6ebd9;\">");
+                html.append(s.replace("nbsp;", "&nbsp;")).append("<br>\n");
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        html.append("</p>\n").append("</body>\n").append("</html>");
+        return html.toString();
+    }
+
     private String colorize(String text) throws IOException {
         ByteArrayOutputStream os = new ByteArrayOutputStream();
         HtmlAnsiOutputStream hos = new HtmlAnsiOutputStream(os);
@@ -330,6 +508,8 @@ public class Git extends AbstractSCM {
                 System.out.println(request+"\n");
                 System.out.print("Selection: ");
                 String input = br.readLine();
+                if(input==null)
+                    throw new CodeCriticException("No selection made, code-critic will now exit.");
                 try {
                     int choice = Integer.parseInt(input);
                     if(choice<=size) {
@@ -351,7 +531,10 @@ public class Git extends AbstractSCM {
     private String currentBranch(File dir) throws IOException {
         File head = new File(dir, "HEAD");
         List<String> lines = Files.readAllLines(head.toPath());
-        String ref = lines.get(0);
+        String ref = lines.get(0).trim();
+        /* Branch names may contain '/' */
+        if(ref.startsWith("ref: refs/heads/"))
+            return ref.substring("ref: refs/heads/".length());
         int ndx = ref.lastIndexOf("/");
         return ref.substring(ndx+1).trim();
     }
@@ -17,13 +17,17 @@ package org.cochise.codecritic.support.scm.hg;
 
 import org.cochise.codecritic.*;
 import org.cochise.codecritic.support.scm.AbstractSCM;
+import org.cochise.codecritic.support.scm.SCM;
 import org.cochise.codecritic.ExecHelper;
 
 import java.io.File;
 import java.io.FileReader;
 import java.io.IOException;
-import java.util.Scanner;
-import java.util.StringTokenizer;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.util.*;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 /**
  * Provides {@link org.cochise.codecritic.support.scm.SCM} support for Mercurial.
@@ -31,20 +35,20 @@ import java.util.StringTokenizer;
  * @author Dennis Reedy
  */
 public class Hg extends AbstractSCM {
-    private final StringBuilder logCommandBuilder = new StringBuilder();    
+    private String logCommand;
 
     public void initialize(File workingDirectory, String... options) throws CodeCriticException {
         super.initialize(workingDirectory, options);
         String hg = System.getProperty("hg");
-        File hgFile = new File(System.getProperty("user.dir"), ".hg");
+        File hgFile = new File(workingDirectory, ".hg");
         if(hgFile.exists()) {
             if(hg ==null || hg.length()==0) {
-                logCommandBuilder.append("hg log -v");
+                logCommand = "hg log -v";
             } else {
                 if(!hg.startsWith("hg") || !hg.contains("log") || !hg.contains("-v")) {
                     throw new CodeCriticException("The provided hg command must start with hg log and run verbosely (use \"-v\")");
                 }
-                logCommandBuilder.append(hg);
+                logCommand = hg;
             }
         } else {
             throw new CodeCriticException("This is not a mercurial project, code-critic will now exit.");
@@ -73,6 +77,25 @@ public class Hg extends AbstractSCM {
         setRepository(repository);
     }
     
+    public List<String> getBranches(String pattern) throws CodeCriticException {
+        sendDebugMessage("hg branches -q");
+        List<String> branches = new ArrayList<String>();
+        for(String branch : ExecHelper.doExec("hg branches -q", null, getWorkingDirectory()).split("\n")) {
+            if(branch.trim().length()>0)
+                branches.add(branch.trim());
+        }
+        return match(pattern, branches);
+    }
+
+    public SCM forBranch(String branch) throws CodeCriticException {
+        if(logCommand==null)
+            throw new CodeCriticException("The mercurial SCM has not been initialized");
+        Hg hg = new Hg();
+        hg.initialize(this, branch);
+        hg.logCommand = logCommand;
+        return hg;
+    }
+
     public void runLog() throws CodeCriticException {
         String branch = getBranch();
         if(branch==null)
@@ -80,12 +103,20 @@ public class Hg extends AbstractSCM {
         setBranch(branch);
         sendInfoMessage("Using branch " + branch);
         sendInfoMessage("Using repository " + getRepository());
+        String logCommand = this.logCommand;
         if(!"default".equals(branch))
-            logCommandBuilder.append(" -b ").append(branch);
+            logCommand = logCommand+" -b "+branch;
 
-        sendDebugMessage(logCommandBuilder.toString());
-        String output = ExecHelper.doExec(logCommandBuilder.toString(), null, getWorkingDirectory());
+        sendDebugMessage(logCommand);
+        String output = ExecHelper.doExec(logCommand, null, getWorkingDirectory());
         sendDebugMessage(output);
+        /* The files of a branch that is not checked out are looked for in the branch, not the working directory */
+        Set<String> manifest = null;
+        if(getRevision()!=null) {
+            List<String> command = Arrays.asList("hg", "manifest", "-r", getRevision());
+            sendDebugMessage(command.toString());
+            manifest = new HashSet<String>(Arrays.asList(ExecHelper.doExec(command, getWorkingDirectory()).split("\n")));
+        }
 
         boolean processDescription = false;
         ChangeSet changeSet = null;
@@ -129,7 +160,7 @@ public class Hg extends AbstractSCM {
                     if(file.length()==0)
                         continue;
                     File f = new File(getWorkingDirectory(), file);
-                    if(!f.exists())
+                    if(manifest==null?!f.exists():!manifest.contains(file))
                         continue;
                     if(!includeTests() && file.contains("src"+ File.separator+"test")) {
                         continue;
@@ -146,7 +177,7 @@ public class Hg extends AbstractSCM {
                 processDescription = false;
                 if(changeSet!=null) {
                     changeSet.setMessage(line);
-                    getChangeSets().add(changeSet);
+                    addChangeSet(changeSet);
                 }
                 changeSet = null;
             }
@@ -163,4 +194,128 @@ public class Hg extends AbstractSCM {
         sendDebugMessage(debugReport("Java sources changed ", getJavaSources()));
         sendDebugMessage(debugReport("Other files changed ", getOtherSources()));
     }
+
+    public boolean computeChangedLines() throws CodeCriticException {
+        String branch = getBranch();
+        if("default".equals(branch)) {
+            sendInfoMessage("Changed lines cannot be determined for the default branch");
+            return false;
+        }
+        String diff = String.format("hg diff -U 0 -r ancestor(default,%s) -r %s", branch, branch);
+        sendDebugMessage(diff);
+        processChangedLines(ExecHelper.doExec(diff, null, getWorkingDirectory()));
+        return true;
+    }
+
+    public Map<String, String> getBaseJavaSources() throws CodeCriticException {
+        String branch = getBranch();
+        if("default".equals(branch)) {
+            sendInfoMessage("The base cannot be determined for the default branch");
+            return null;
+        }
+        String manifest = String.format("hg manifest --debug -r ancestor(default,%s)", branch);
+        sendDebugMessage(manifest);
+        Map<String, String> sources = new HashMap<String, String>();
+        StringTokenizer st = new StringTokenizer(ExecHelper.doExec(manifest, null, getWorkingDirectory()), "\n");
+        while(st.hasMoreTokens()) {
+            /* Each line is of the form <40 character nodeid> <permissions> <flag> <path> */
+            String line = st.nextToken();
+            if(line.length()<=47)
+                continue;
+            String path = line.substring(47);
+            if(path.endsWith(".java") && !excluded(path))
+                sources.put(path, line.substring(0, 40));
+        }
+        return sources;
+    }
+
+    public Map<String, String> readBaseSources(Map<String, String> sources) throws CodeCriticException {
+        return cat("ancestor(default,"+getBranch()+")", sources.keySet());
+    }
+
+    public String getMergeBase() throws CodeCriticException {
+        String branch = getBranch();
+        if("default".equals(branch)) {
+            sendInfoMessage("The merge base cannot be determined for the default branch");
+            return null;
+        }
+        String log = String.format("hg log -r ancestor(default,%s) --template {node}", branch);
+        sendDebugMessage(log);
+        String revision = ExecHelper.doExec(log, null, getWorkingDirectory()).trim();
+        return revision.matches("[0-9a-f]{40}")?revision:null;
+    }
+
+    public Map<SourceFile, String> readSources(String revision, Collection<SourceFile> sourceFiles) throws CodeCriticException {
+        Map<String, SourceFile> paths = new HashMap<String, SourceFile>();
+        for(SourceFile sourceFile : sourceFiles)
+            paths.put(relativePath(sourceFile), sourceFile);
+        Map<SourceFile, String> contents = new HashMap<SourceFile, String>();
+        for(Map.Entry<String, String> entry : cat(revision, paths.keySet()).entrySet())
+            contents.put(paths.get(entry.getKey()), entry.getValue());
+        return contents;
+    }
+
+    public Blame blame(SourceFile sourceFile) throws CodeCriticException {
+        List<String> command = new ArrayList<String>(Arrays.asList("hg", "annotate", "-u", "-c"));
+        if(getRevision()!=null)
+            command.addAll(Arrays.asList("-r", getRevision()));
+        command.add(relativePath(sourceFile));
+        sendDebugMessage(command.toString());
+        String output = ExecHelper.doExec(command, getWorkingDirectory());
+        /* Each line is annotated as <user> <changeset>: <line> */
+        Pattern annotation = Pattern.compile("^\\s*(.*?)\\s+([0-9a-f]{12}\\+?):");
+        Blame blame = new Blame();
+        int lineNumber = 0;
+        for(String line : output.split("\n")) {
+            lineNumber++;
+            Matcher matcher = annotation.matcher(line);
+            if(matcher.find()) {
+                String revision = matcher.group(2);
+                blame.add(revision, lineNumber, 1);
+                blame.setAuthor(revision, matcher.group(1));
+            }
+        }
+        return blame;
+    }
+
+    /*
+     * Read files as of a revision with a single hg cat, returning the content of each file mapped to
+     * its path. Files that do not exist at the revision are omitted.
+     */
+    private Map<String, String> cat(String revision, Collection<String> paths) throws CodeCriticException {
+        Map<String, String> contents = new HashMap<String, String>();
+        if(paths.isEmpty())
+            return contents;
+        File directory = null;
+        try {
+            directory = Files.createTempDirectory("code-critic").toFile();
+            List<String> command = new ArrayList<String>();
+            command.addAll(Arrays.asList("hg", "cat", "-r", revision,
+                                         "-o", directory.getPath()+File.separator+"%p"));
+            command.addAll(paths);
+            sendDebugMessage(command.toString());
+            ExecHelper.doExec(command, getWorkingDirectory());
+            for(String path : paths) {
+                File file = new File(directory, path);
+                if(file.exists())
+                    contents.put(path, new String(Files.readAllBytes(file.toPath()), Charset.defaultCharset()));
+            }
+        } catch (IOException e) {
+            throw new CodeCriticException("Unable to read sources as of "+revision, e);
+        } finally {
+            if(directory!=null)
+                delete(directory);
+        }
+        return contents;
+    }
+
+    private void delete(File file) {
+        File[] files = file.listFiles();
+        if(files!=null) {
+            for(File f : files)
+                delete(f);
+        }
+        if(!file.delete())
+            sendDebugMessage("Unable to delete "+file.getPath());
+    }
 }
@@ -4,8 +4,10 @@
 
     <xsl:decimal-format decimal-separator="." grouping-separator=","/>
 
-    <!-- keys for violations list -->
-    <xsl:key name="violations" match="violation" use="@rule"/>
+    <!-- keys for attributions list -->
+    <xsl:key name="attributions" match="attribution" use="concat(@file, ':', @line)"/>
+    <!-- whether violations are attributed, tested once rather than for each violation -->
+    <xsl:variable name="attributed" select="boolean(/pmd/attribution)"/>
 
     <!-- XSL for Code Critic report. Author : Fabien Bancharel. -->
     <!-- Inspired by Checkstyle -->
@@ -118,6 +120,9 @@
                     <li><a href="#ChangeSets">ChangeSet listing</a></li>
                     <li><a href="#Java_Sources">Java source files and associated ChangeSets</a></li>
                     <li><a href="#Other_Sources">Other source files and associated ChangeSets</a></li>
+                    <li><a href="#Skipped_Sources">Java source files not analyzed</a></li>
+                    <li><a href="#Duplicated_Code">Duplicated code</a></li>
+                    <li><a href="#Violation_Trend">Violation trend by ChangeSet</a></li>
                     <li><a href="#PMD_Rules_Violated">PMD Rules Violated</a></li>
                     <li><a href="#File_Violations">File Violations</a></li>
                 </ul>
@@ -140,6 +145,18 @@
                 <xsl:apply-templates select="." mode="other-sourcefiles"/>
                 <hr size="1" width="100%" align="left"/>
 
+                <!-- Skipped sourcefiles part -->
+                <xsl:apply-templates select="." mode="skipped-sourcefiles"/>
+                <hr size="1" width="100%" align="left"/>
+
+                <!-- Duplicated code part -->
+                <xsl:apply-templates select="." mode="duplications"/>
+                <hr size="1" width="100%" align="left"/>
+
+                <!-- Violation trend part -->
+                <xsl:apply-templates select="." mode="trend"/>
+                <hr size="1" width="100%" align="left"/>
+
                 <!-- Rules part -->
                 <xsl:apply-templates select="." mode="rulelist"/>
                 <hr size="1" width="100%" align="left"/>
@@ -168,15 +185,11 @@
                 <th style="width:8%">Severity</th>
             </tr>
 
-            <xsl:for-each select="file/violation[@rule and generate-id(.) = generate-id(key('violations', @rule))]">
-                <!-- Sort by number of violations -->
-                <xsl:sort data-type="number" order="descending"
-                          select="count(key('violations', @rule))"/>
-
-                <xsl:variable name="currentRule" select="@rule"/>
+            <!-- Rules are counted as the report is written, most violated first -->
+            <xsl:for-each select="summary/rule-count">
+                <xsl:variable name="currentRule" select="@name"/>
                 <xsl:variable name="currentSeverity" select="@priority"/>
-                <xsl:variable name="violationCount"
-                              select="count(../../file/violation[@rule=$currentRule])"/>
+                <xsl:variable name="violationCount" select="@violations"/>
 
                 <tr>
                     <xsl:call-template name="alternated-row"/>
@@ -224,12 +237,8 @@
                 </th>
             </tr>
 
-            <xsl:for-each select="file">
-                <!-- Sort by number of violations -->
-                <xsl:sort data-type="number" order="descending"
-                          select="count(violation)"/>
-
-                <xsl:variable name="currentSource" select="@name"/>
+            <!-- Files are counted as the report is written, the file with the most violations first -->
+            <xsl:for-each select="summary/file-count">
 
                 <tr>
                     <xsl:call-template name="alternated-row"/>
@@ -240,19 +249,19 @@
                         </a>
                     </td>
                     <td>
-                        <xsl:value-of select="count(violation[@priority = 5])"/>
+                        <xsl:value-of select="@p5"/>
                     </td>
                     <td>
-                        <xsl:value-of select="count(violation[@priority = 4])"/>
+                        <xsl:value-of select="@p4"/>
                     </td>
                     <td>
-                        <xsl:value-of select="count(violation[@priority = 3])"/>
+                        <xsl:value-of select="@p3"/>
                     </td>
                     <td>
-                        <xsl:value-of select="count(violation[@priority = 2])"/>
+                        <xsl:value-of select="@p2"/>
                     </td>
                     <td>
-                        <xsl:value-of select="count(violation[@priority = 1])"/>
+                        <xsl:value-of select="@p1"/>
                     </td>
                 </tr>
 
@@ -273,7 +282,11 @@
                 <th style="width:60px;">Violation</th>
                 <th>Error Description</th>
                 <th style="width:40px;">Line</th>
+                <xsl:if test="$attributed">
+                    <th>Last Changed By</th>
+                </xsl:if>
             </tr>
+            <xsl:variable name="fileName" select="@name"/>
             <xsl:for-each select="violation">
                 <xsl:variable name="currentSeverity" select="@priority"/>
                 <tr>
@@ -289,11 +302,11 @@
                         <xsl:choose>
                             <xsl:when test="@externalInfoUrl">
                                 <a href="{@externalInfoUrl}">
-                                    <xsl:value-of select="." disable-output-escaping="yes"/>
+                                    <xsl:value-of select="."/>
                                 </a>
                             </xsl:when>
                             <xsl:otherwise>
-                                <xsl:value-of select="." disable-output-escaping="yes"/>
+                                <xsl:value-of select="."/>
                             </xsl:otherwise>
                         </xsl:choose>
                     </td>
@@ -301,6 +314,21 @@
                         <xsl:value-of select="@beginline"/> -
                         <xsl:value-of select="@endline"/>
                     </td>
+                    <xsl:if test="$attributed">
+                        <td>
+                            <xsl:for-each select="key('attributions', concat($fileName, ':', @beginline))">
+                                <xsl:value-of select="@developer"/>
+                                <xsl:choose>
+                                    <xsl:when test="@number">
+                                        (<a href="{@link}">ChangeSet <xsl:value-of select="@number"/></a>)
+                                    </xsl:when>
+                                    <xsl:otherwise>
+                                        (<xsl:value-of select="substring(@changeset, 1, 12)"/>, before the branch)
+                                    </xsl:otherwise>
+                                </xsl:choose>
+                            </xsl:for-each>
+                        </td>
+                    </xsl:if>
                 </tr>
             </xsl:for-each>
         </table>
@@ -408,6 +436,109 @@
         <a href="#top">Back to top</a>
     </xsl:template>
 
+    <xsl:template match="pmd" mode="skipped-sourcefiles">
+        <a name="Skipped_Sources"/>
+        <h3>Java Files Not Analyzed<a href="#" onclick="openTable('skipped-sourcefiles'); return false;" class="white"> #</a></h3>
+        <table border="0" cellpadding="5" cellspacing="2" width="100%" id="skipped-sourcefiles">
+            <tr>
+                <th>Source File</th>
+                <th>Reason</th>
+            </tr>
+            <xsl:for-each select="skipped-sourcefile">
+                <tr>
+                    <xsl:call-template name="alternated-row"/>
+                    <td>
+                        <xsl:value-of select="@name"/>
+                    </td>
+                    <td>
+                        <xsl:value-of select="@reason"/>
+                    </td>
+                </tr>
+            </xsl:for-each>
+        </table>
+        <a href="#top">Back to top</a>
+    </xsl:template>
+
+    <xsl:template match="pmd" mode="duplications">
+        <a name="Duplicated_Code"/>
+        <h3>Duplicated Code<a href="#" onclick="openTable('duplications'); return false;" class="white"> #</a></h3>
+        <table border="0" cellpadding="5" cellspacing="2" width="100%" id="duplications">
+            <tr>
+                <th>Source File</th>
+                <th>Lines</th>
+                <th>Tokens</th>
+                <th>Duplicated In</th>
+            </tr>
+            <xsl:for-each select="duplication">
+                <tr>
+                    <xsl:call-template name="alternated-row"/>
+                    <td>
+                        <xsl:value-of select="occurrence[1]/@file"/>
+                    </td>
+                    <td>
+                        <xsl:value-of select="occurrence[1]/@beginline"/> - <xsl:value-of select="occurrence[1]/@endline"/>
+                    </td>
+                    <td>
+                        <xsl:value-of select="@tokens"/>
+                    </td>
+                    <td>
+                        <xsl:for-each select="occurrence[position()>1]">
+                            <xsl:value-of select="@file"/> (<xsl:value-of select="@beginline"/> - <xsl:value-of select="@endline"/>)<xsl:if test="@base='true'"> in base</xsl:if><br/>
+                        </xsl:for-each>
+                    </td>
+                </tr>
+            </xsl:for-each>
+        </table>
+        <a href="#top">Back to top</a>
+    </xsl:template>
+
+    <xsl:template match="pmd" mode="trend">
+        <a name="Violation_Trend"/>
+        <h3>Violation Trend<a href="#" onclick="openTable('trend'); return false;" class="white"> #</a></h3>
+        <table border="0" cellpadding="5" cellspacing="2" width="100%" id="trend">
+            <tr>
+                <th>ChangeSet</th>
+                <th>Developer</th>
+                <th>When</th>
+                <th>Introduced</th>
+                <th>Fixed</th>
+                <th style="width:50%">Violations</th>
+            </tr>
+            <xsl:for-each select="commit-trend">
+                <tr>
+                    <xsl:call-template name="alternated-row"/>
+                    <td>
+                        <a href="{@link}"><xsl:value-of select="@number"/></a>
+                    </td>
+                    <td>
+                        <xsl:value-of select="@developer"/>
+                    </td>
+                    <td>
+                        <xsl:value-of select="@when"/>
+                    </td>
+                    <td>
+                        <xsl:value-of select="@introduced"/>
+                    </td>
+                    <td>
+                        <xsl:value-of select="@fixed"/>
+                    </td>
+                    <td>
+                        <xsl:for-each select="introduced|fixed">
+                            <div class="p{@priority}">
+                                <xsl:choose>
+                                    <xsl:when test="name()='introduced'">+ </xsl:when>
+                                    <xsl:otherwise>- </xsl:otherwise>
+                                </xsl:choose>
+                                <xsl:value-of select="@rule"/>: <xsl:value-of select="@file"/> (<xsl:value-of select="@line"/>) <xsl:value-of select="."/>
+                            </div>
+                        </xsl:for-each>
+                    </td>
+                </tr>
+            </xsl:for-each>
+        </table>
+        <a href="#top">Back to top</a>
+    </xsl:template>
+
     <xsl:template match="pmd" mode="summary">
 
         <h3>Report Summary</h3>
@@ -440,13 +571,31 @@
             </tr>
             <tr>
                 <xsl:call-template name="alternated-row"/>
+                <td>Analysis Mode</td>
+                <td><xsl:value-of select="//pmd/@analysisMode"/></td>
+            </tr>
+            <tr>
                 <td>Total number of modified files</td>
                 <td><xsl:value-of select="//pmd/@totalFiles"/></td>
             </tr>
             <tr>
+                <xsl:call-template name="alternated-row"/>
                 <td>Total number of Java files</td>
                 <td><xsl:value-of select="//pmd/@totalJavaFiles"/></td>
             </tr>
+            <tr>
+                <td>Java files not analyzed</td>
+                <td><xsl:value-of select="summary/@skipped"/></td>
+            </tr>
+            <tr>
+                <xsl:call-template name="alternated-row"/>
+                <td>Duplicated blocks of code</td>
+                <td><xsl:value-of select="summary/@duplications"/></td>
+            </tr>
+            <tr>
+                <td>Violations introduced and fixed by ChangeSets</td>
+                <td><xsl:value-of select="summary/@introduced"/> introduced, <xsl:value-of select="summary/@fixed"/> fixed</td>
+            </tr>
         </table>
         <br></br>
         <!--** Process root node 'pmd',  for mode 'summary' : number of files, number of violations by severity -->
@@ -474,25 +623,25 @@
             <tr>
                 <xsl:call-template name="alternated-row"/>
                 <td>
-                    <xsl:value-of select="count(//file)"/>
+                    <xsl:value-of select="summary/@files"/>
                 </td>
                 <td>
-                    <xsl:value-of select="count(//violation)"/>
+                    <xsl:value-of select="summary/@violations"/>
                 </td>
                 <td>
-                    <xsl:value-of select="count(//violation[@priority = 1])"/>
+                    <xsl:value-of select="summary/priority-count[@priority = 1]/@violations"/>
                 </td>
                 <td>
-                    <xsl:value-of select="count(//violation[@priority = 2])"/>
+                    <xsl:value-of select="summary/priority-count[@priority = 2]/@violations"/>
                 </td>
                 <td>
-                    <xsl:value-of select="count(//violation[@priority = 3])"/>
+                    <xsl:value-of select="summary/priority-count[@priority = 3]/@violations"/>
                 </td>
                 <td>
-                    <xsl:value-of select="count(//violation[@priority = 4])"/>
+                    <xsl:value-of select="summary/priority-count[@priority = 4]/@violations"/>
                 </td>
                 <td>
-                    <xsl:value-of select="count(//violation[@priority = 5])"/>
+                    <xsl:value-of select="summary/priority-count[@priority = 5]/@violations"/>
                 </td>
             </tr>
         </table>
@@ -0,0 +1,208 @@
+/*
+ * Copyright to the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/*
+ * Pages through the tables of a paged Code Critic report. The rows of each table are declared by
+ * data.js, and only the rows of the page being viewed are built.
+ */
+var pageSize = 50;
+
+function text(value) {
+    return document.createTextNode(value === null || value === undefined ? "" : String(value));
+}
+
+function link(href, content) {
+    var a = document.createElement("a");
+    a.href = href;
+    a.appendChild(text(content));
+    return a;
+}
+
+function cell(row, content) {
+    var td = document.createElement("td");
+    if (content instanceof Array) {
+        for (var i = 0; i < content.length; i++) {
+            if (i > 0)
+                td.appendChild(document.createElement("br"));
+            td.appendChild(content[i]);
+        }
+    } else {
+        td.appendChild(content && content.nodeType ? content : text(content));
+    }
+    row.appendChild(td);
+}
+
+/* Headings are text, or a priority that is shown in the color of the priority */
+function heading(row, title) {
+    var th = document.createElement("th");
+    if (typeof title === "number") {
+        var div = document.createElement("div");
+        div.className = "p" + title;
+        div.appendChild(text(title));
+        th.appendChild(div);
+    } else {
+        th.appendChild(text(title));
+    }
+    row.appendChild(th);
+}
+
+function pagedTable(id, headings, rows, render) {
+    var container = document.getElementById(id);
+    var filter = document.createElement("input");
+    filter.type = "text";
+    filter.size = 40;
+    var previous = document.createElement("button");
+    previous.appendChild(text("Previous"));
+    var next = document.createElement("button");
+    next.appendChild(text("Next"));
+    var status = document.createElement("span");
+    var controls = document.createElement("div");
+    controls.appendChild(text("Filter "));
+    controls.appendChild(filter);
+    controls.appendChild(text(" "));
+    controls.appendChild(previous);
+    controls.appendChild(next);
+    controls.appendChild(text(" "));
+    controls.appendChild(status);
+    var table = document.createElement("table");
+    table.className = "log";
+    table.border = "0";
+    table.cellPadding = "5";
+    table.cellSpacing = "2";
+    table.width = "100%";
+    container.appendChild(controls);
+    container.appendChild(table);
+    var shown = rows;
+    var page = 0;
+
+    function show() {
+        while (table.firstChild)
+            table.removeChild(table.firstChild);
+        var row = document.createElement("tr");
+        for (var i = 0; i < headings.length; i++)
+            heading(row, headings[i]);
+        table.appendChild(row);
+        var pages = Math.max(1, Math.ceil(shown.length / pageSize));
+        page = Math.max(0, Math.min(page, pages - 1));
+        var end = Math.min(shown.length, (page + 1) * pageSize);
+        for (var r = page * pageSize; r < end; r++) {
+            row = document.createElement("tr");
+            row.className = r % 2 === 0 ? "a" : "b";
+            render(row, shown[r]);
+            table.appendChild(row);
+        }
+        while (status.firstChild)
+            status.removeChild(status.firstChild);
+        status.appendChild(text("Page " + (page + 1) + " of " + pages + ", " + shown.length + " of " + rows.length + " rows"));
+        previous.disabled = page === 0;
+        next.disabled = page >= pages - 1;
+    }
+
+    previous.onclick = function () {
+        page--;
+        show();
+        return false;
+    };
+    next.onclick = function () {
+        page++;
+        show();
+        return false;
+    };
+    filter.onkeyup = function () {
+        var value = filter.value.toLowerCase();
+        shown = [];
+        for (var i = 0; i < rows.length; i++) {
+            if (String(rows[i]).toLowerCase().indexOf(value) >= 0)
+                shown.push(rows[i]);
+        }
+        page = 0;
+        show();
+    };
+    show();
+}
+
+function sourceFiles(id, sources) {
+    pagedTable(id, ["Source File", "ChangeSet Links"], sources, function (row, source) {
+        var links = [];
+        for (var i = 0; i < source[1].length; i++) {
+            var changeSet = source[1][i];
+            links.push(link(changeSet[2], changeSet[0] + ":" + changeSet[1]));
+        }
+        cell(row, source[0]);
+        cell(row, links);
+    });
+}
+
+/* The priorities of a package or file, from 5 to 1, that start at the index of priority 1 */
+function priorities(row, counts, first) {
+    for (var i = first + 4; i >= first; i--)
+        cell(row, counts[i]);
+}
+
+function renderPages(data, pages) {
+    pagedTable("changesets", ["ChangeSet", "Message", "Developer", "When", "ChangeSet Link"], data.changeSets,
+        function (row, changeSet) {
+            cell(row, changeSet[0]);
+            cell(row, changeSet[2]);
+            cell(row, changeSet[4] ? link("mailto:" + changeSet[4], changeSet[3]) : changeSet[3]);
+            cell(row, changeSet[5]);
+            cell(row, link(changeSet[6], changeSet[1]));
+        });
+    sourceFiles("java-sourcefiles", data.javaSources);
+    sourceFiles("other-sourcefiles", data.otherSources);
+    pagedTable("skipped-sourcefiles", ["Source File", "Reason"], data.skippedFiles, function (row, skipped) {
+        cell(row, skipped[0]);
+        cell(row, skipped[1]);
+    });
+    pagedTable("duplications", ["Source File", "Lines", "Tokens", "Duplicated In"], data.duplications,
+        function (row, duplication) {
+            var others = [];
+            for (var i = 0; i < duplication[4].length; i++) {
+                var other = duplication[4][i];
+                others.push(text(other[0] + " (" + other[1] + " - " + other[2] + ")" + (other[3] ? " in base" : "")));
+            }
+            cell(row, duplication[0]);
+            cell(row, duplication[1] + " - " + duplication[2]);
+            cell(row, duplication[3]);
+            cell(row, others);
+        });
+    pagedTable("trend", ["ChangeSet", "Developer", "When", "Introduced", "Fixed", "Violations"], data.trends,
+        function (row, trend) {
+            var td = document.createElement("td");
+            for (var i = 0; i < trend[6].length; i++) {
+                var violation = trend[6][i];
+                var div = document.createElement("div");
+                div.className = "p" + violation[1];
+                div.appendChild(text(violation[0] + " " + violation[2] + ": " + violation[3] + " (" + violation[4] + ") " + violation[5]));
+                td.appendChild(div);
+            }
+            cell(row, link(trend[1], trend[0]));
+            cell(row, trend[2]);
+            cell(row, trend[3]);
+            cell(row, trend[4]);
+            cell(row, trend[5]);
+            row.appendChild(td);
+        });
+    pagedTable("packagelist", ["Package", "Violations", 5, 4, 3, 2, 1], data.packages, function (row, pkg) {
+        cell(row, link(pages + "package-" + pkg[1] + ".html", pkg[0]));
+        cell(row, pkg[2]);
+        priorities(row, pkg, 3);
+    });
+    pagedTable("filelist", ["File", 5, 4, 3, 2, 1], data.files, function (row, file) {
+        cell(row, link(pages + "package-" + file[1] + ".html#f-" + file[2], file[0]));
+        priorities(row, file, 4);
+    });
+}
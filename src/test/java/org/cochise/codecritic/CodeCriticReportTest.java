@@ -0,0 +1,105 @@
+/*
+ * Copyright to the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.cochise.codecritic;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.StringWriter;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks that a report lists the change sets and source files of a branch, and writes their diffs,
+ * when the branch has no violations, and that a stylesheet in the project's base directory overrides the
+ * bundled one.
+ *
+ * @author Dennis Reedy
+ */
+public class CodeCriticReportTest {
+    @Rule
+    public final TemporaryFolder outputDirectory = new TemporaryFolder();
+
+    @Test
+    public void cleanBranchThroughStylesheet() throws Exception {
+        checkCleanBranch(true);
+    }
+
+    @Test
+    public void cleanBranch() throws Exception {
+        checkCleanBranch(false);
+    }
+
+    @Test
+    public void stylesheetOverriddenInBaseDirectory() throws Exception {
+        File baseDirectory = outputDirectory.newFolder("project");
+        File override = new File(baseDirectory, "code-critic-nicerhtml.xsl");
+        writeStylesheet(override, "first");
+        assertEquals("first", render(false, baseDirectory));
+        writeStylesheet(override, "second");
+        assertTrue(override.setLastModified(override.lastModified()+2000));
+        assertEquals("second", render(false, baseDirectory));
+        /* A project without an override still uses the stylesheet on the classpath */
+        assertTrue(render(false, outputDirectory.newFolder("other")).contains("Change the answer"));
+    }
+
+    private void checkCleanBranch(boolean xslt) throws Exception {
+        String html = render(xslt, null);
+        assertTrue(html.contains("Change the answer"));
+        assertTrue(html.contains("Answer.java"));
+        assertTrue(html.contains("README.md"));
+        File diff = new File(new File(outputDirectory.getRoot(), "diffs"), "5b8bf5633c0a6490215589f449099fde841b4410.html");
+        assertTrue(diff.exists());
+        assertTrue(new String(Files.readAllBytes(diff.toPath()), Charset.forName("UTF-8")).contains("diff"));
+        /* Only the diffs are left beside the report, the XML the stylesheet transforms is deleted */
+        assertEquals(Arrays.asList("diffs"), Arrays.asList(outputDirectory.getRoot().list()));
+    }
+
+    private String render(boolean xslt, File baseDirectory) throws Exception {
+        ChangeSet changeSet = new ChangeSet(1, "", "5b8bf5633c0a6490215589f449099fde841b4410");
+        changeSet.setMessage("Change the answer");
+        changeSet.setDeveloper("developer");
+        changeSet.setDate("2014-01-01");
+        changeSet.setDiff("<html><body>diff</body></html>");
+        SourceFile javaSource = new SourceFile("/project/src/main/java/x/Answer.java");
+        javaSource.getChangeSets().add(changeSet);
+        SourceFile otherSource = new SourceFile("/project/README.md");
+        otherSource.getChangeSets().add(changeSet);
+        CodeCriticReport report = new CodeCriticReport();
+        report.setXslt(xslt);
+        report.setBaseDirectory(baseDirectory);
+        report.setContext(new ReportContext("feature", "origin", "basic", "5", AnalysisMode.FULL,
+                                            outputDirectory.getRoot(), Arrays.asList(changeSet),
+                                            Arrays.asList(javaSource), Arrays.asList(otherSource)));
+        StringWriter writer = new StringWriter();
+        report.setWriter(writer);
+        report.start();
+        report.end();
+        return writer.toString();
+    }
+
+    private static void writeStylesheet(File file, String text) throws Exception {
+        String xsl = "<xsl:stylesheet version=\"1.0\" xmlns:xsl=\"http://www.w3.org/1999/XSL/Transform\">"+
+                     "<xsl:output method=\"text\"/><xsl:template match=\"/\">"+text+"</xsl:template></xsl:stylesheet>";
+        Files.write(file.toPath(), xsl.getBytes(Charset.forName("UTF-8")));
+    }
+}
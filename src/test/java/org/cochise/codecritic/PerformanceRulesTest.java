@@ -0,0 +1,143 @@
+/*
+ * Copyright to the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.cochise.codecritic;
+
+import net.sourceforge.pmd.*;
+import org.junit.BeforeClass;
+import org.junit.ClassRule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.*;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Runs the bundled performance rule set, loaded the way a report loads {@code rules=performance},
+ * against a fixture for each rule. The lines of a fixture marked {@code // violation} are the lines
+ * the rule is expected to report.
+ *
+ * @author Dennis Reedy
+ */
+public class PerformanceRulesTest {
+    @ClassRule
+    public static final TemporaryFolder cacheDirectory = new TemporaryFolder();
+    private static RuleSet[] parsed;
+    private static RuleSet[] cached;
+
+    @BeforeClass
+    public static void loadRules() throws Exception {
+        RuleSetCache ruleSetCache = new RuleSetCache(cacheDirectory.getRoot(), Rule.LOWEST_PRIORITY, new ProgressListener() {
+            public void info(String message) {
+            }
+
+            public void debug(String message) {
+            }
+        });
+        RuleSetFactory ruleSetFactory = new RuleSetFactory();
+        ruleSetFactory.setMinimumPriority(Rule.LOWEST_PRIORITY);
+        /* The first load parses the XML definition and caches it, the second loads the cached rules */
+        parsed = ruleSetCache.load("performance", ruleSetFactory);
+        cached = ruleSetCache.load("performance", ruleSetFactory);
+        assertEquals(1, parsed.length);
+        assertEquals(6, parsed[0].getRules().size());
+        assertEquals(6, cached[0].getRules().size());
+    }
+
+    @Test
+    public void allocationInLoop() throws Exception {
+        check("AllocationInLoop");
+    }
+
+    @Test
+    public void boxedCollection() throws Exception {
+        check("BoxedCollection");
+    }
+
+    @Test
+    public void stringConcatenationInLoop() throws Exception {
+        check("StringConcatenationInLoop");
+    }
+
+    @Test
+    public void synchronizedInLoop() throws Exception {
+        check("SynchronizedInLoop");
+    }
+
+    @Test
+    public void regexCompiledPerCall() throws Exception {
+        check("RegexCompiledPerCall");
+    }
+
+    @Test
+    public void streamInLoop() throws Exception {
+        check("StreamInLoop");
+    }
+
+    /*
+     * Check that the rule reports the marked lines of its fixture, with the parsed and the cached rules
+     */
+    private void check(String ruleName) throws Exception {
+        String fixture = read("/fixtures/performance/"+ruleName+".java");
+        List<Integer> expected = new ArrayList<Integer>();
+        String[] lines = fixture.split("\n");
+        for(int i=0; i<lines.length; i++) {
+            if(lines[i].contains("// violation"))
+                expected.add(i+1);
+        }
+        assertTrue(ruleName+" fixture has no violations marked", !expected.isEmpty());
+        assertEquals("parsed "+ruleName, expected, analyze(parsed, ruleName, fixture));
+        assertEquals("cached "+ruleName, expected, analyze(cached, ruleName, fixture));
+    }
+
+    private List<Integer> analyze(RuleSet[] ruleSets, String ruleName, String fixture) throws PMDException {
+        RuleSets performance = new RuleSets();
+        for(RuleSet ruleSet : ruleSets)
+            performance.addRuleSet(ruleSet);
+        RuleContext ctx = new RuleContext();
+        Report report = new Report();
+        ctx.setReport(report);
+        ctx.setSourceCodeFilename(ruleName+".java");
+        performance.start(ctx);
+        new PMD().processFile(new StringReader(fixture), performance, ctx, SourceType.JAVA_17);
+        performance.end(ctx);
+        assertTrue(ruleName+" processing errors", !report.errors().hasNext());
+        List<Integer> lines = new ArrayList<Integer>();
+        for(Iterator<IRuleViolation> iter = report.iterator(); iter.hasNext();) {
+            IRuleViolation violation = iter.next();
+            if(violation.getRule().getName().equals(ruleName))
+                lines.add(violation.getBeginLine());
+        }
+        return lines;
+    }
+
+    private String read(String resource) throws IOException {
+        InputStream in = getClass().getResourceAsStream(resource);
+        assertTrue("Missing "+resource, in!=null);
+        StringBuilder builder = new StringBuilder();
+        try (Reader reader = new InputStreamReader(in, "UTF-8")) {
+            char[] buffer = new char[4096];
+            int read;
+            while((read = reader.read(buffer))!=-1)
+                builder.append(buffer, 0, read);
+        }
+        return builder.toString();
+    }
+}
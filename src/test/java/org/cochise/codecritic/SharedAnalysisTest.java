@@ -0,0 +1,87 @@
+/*
+ * Copyright to the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.cochise.codecritic;
+
+import net.sourceforge.pmd.Report;
+import net.sourceforge.pmd.Rule;
+import org.junit.Test;
+
+import static org.cochise.codecritic.TestReports.*;
+import static org.junit.Assert.*;
+
+/**
+ * Checks that reports kept by the shared analysis come back unchanged, and that the least recently
+ * used reports are discarded once the violations kept exceed the limit.
+ *
+ * @author Dennis Reedy
+ */
+public class SharedAnalysisTest {
+    private final Rule first = rule("First");
+    private final Rule second = rule("Second");
+
+    @Test
+    public void roundTripsReports() {
+        SharedAnalysis shared = new SharedAnalysis();
+        SharedAnalysis.Session session = shared.acquire("basic", "1");
+        Report report = report("/src/A.java", 6, first, second);
+        report.addError(new Report.ProcessingError("Unable to parse", "/src/A.java"));
+        shared.addReport(session, "/src/A.java", "a1", report);
+        shared.addReport(session, "/src/B.java", "b1", report("/src/B.java", 0, first));
+
+        Report kept = shared.getReport(session, "/src/A.java", "a1");
+        assertEquals(violations(report), violations(kept));
+        assertEquals(errors(report), errors(kept));
+        assertEquals(0, shared.getReport(session, "/src/B.java", "b1").size());
+        assertNull(shared.getReport(session, "/src/A.java", "a2"));
+        assertEquals(2, shared.getAnalyzed());
+        assertEquals(2, shared.getReused());
+    }
+
+    @Test
+    public void discardsLeastRecentlyUsedReportsOverViolationLimit() {
+        SharedAnalysis shared = new SharedAnalysis(100, 10);
+        SharedAnalysis.Session session = shared.acquire("basic", "1");
+        shared.addReport(session, "/src/A.java", "a", report("/src/A.java", 6, first));
+        shared.addReport(session, "/src/B.java", "b", report("/src/B.java", 4, second));
+        assertNotNull(shared.getReport(session, "/src/A.java", "a"));
+        assertNotNull(shared.getReport(session, "/src/B.java", "b"));
+
+        /* A was used before B, so A is discarded once C takes the violations over the limit */
+        shared.addReport(session, "/src/C.java", "c", report("/src/C.java", 1, first));
+        assertNull(shared.getReport(session, "/src/A.java", "a"));
+        assertNotNull(shared.getReport(session, "/src/B.java", "b"));
+        assertNotNull(shared.getReport(session, "/src/C.java", "c"));
+
+        /* Reports without violations are only bound by the number of reports */
+        for(int i=0; i<50; i++)
+            shared.addReport(session, "/src/Clean"+i+".java", "clean", report("/src/Clean"+i+".java", 0, first));
+        assertNotNull(shared.getReport(session, "/src/B.java", "b"));
+
+        /* A report with more violations than the limit is not kept */
+        shared.addReport(session, "/src/D.java", "d", report("/src/D.java", 11, first));
+        assertNull(shared.getReport(session, "/src/D.java", "d"));
+    }
+
+    @Test
+    public void discardsReportsOfPreviousState() {
+        SharedAnalysis shared = new SharedAnalysis();
+        SharedAnalysis.Session session = shared.acquire("basic", "1");
+        shared.addReport(session, "/src/A.java", "a", report("/src/A.java", 2, first));
+        SharedAnalysis.Session changed = shared.acquire("basic", "2");
+        assertNull(shared.getReport(changed, "/src/A.java", "a"));
+        assertNull(shared.getReport(shared.acquire("basic", "1"), "/src/A.java", "a"));
+    }
+}
@@ -0,0 +1,79 @@
+/*
+ * Copyright to the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.cochise.codecritic;
+
+import net.sourceforge.pmd.IRuleViolation;
+import net.sourceforge.pmd.Report;
+import net.sourceforge.pmd.Rule;
+import net.sourceforge.pmd.rules.XPathRule;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Builds reports for tests, and describes their violations and processing errors so reports can be
+ * compared.
+ *
+ * @author Dennis Reedy
+ */
+final class TestReports {
+
+    private TestReports() {
+    }
+
+    static Rule rule(String name) {
+        Rule rule = new XPathRule();
+        rule.setName(name);
+        return rule;
+    }
+
+    /*
+     * A report with violations on distinct lines, alternating between the rules, with the names of
+     * some of them missing as they are for violations outside a method
+     */
+    static Report report(String fileName, int count, Rule... rules) {
+        Report report = new Report();
+        for(int i=0; i<count; i++) {
+            report.addRuleViolation(new ViolationCodec.Violation(rules[i%rules.length], fileName, 10*(count-i), 10*(count-i)+1,
+                                                                i+1, i+5, "Violation "+i+" in "+fileName, "org.example",
+                                                                "Example", i%2==0?"method"+i:null, i%3==0?null:"v"+i));
+        }
+        return report;
+    }
+
+    static List<String> violations(Report report) {
+        List<String> violations = new ArrayList<String>();
+        for(Iterator<IRuleViolation> iter = report.iterator(); iter.hasNext();) {
+            IRuleViolation violation = iter.next();
+            violations.add(violation.getRule().getName()+":"+violation.getFilename()+":"+
+                           violation.getBeginLine()+"-"+violation.getEndLine()+":"+
+                           violation.getBeginColumn()+"-"+violation.getEndColumn()+":"+
+                           violation.getDescription()+":"+violation.getPackageName()+":"+violation.getClassName()+":"+
+                           violation.getMethodName()+":"+violation.getVariableName());
+        }
+        return violations;
+    }
+
+    static List<String> errors(Report report) {
+        List<String> errors = new ArrayList<String>();
+        for(Iterator<Report.ProcessingError> iter = report.errors(); iter.hasNext();) {
+            Report.ProcessingError error = iter.next();
+            errors.add(error.getFile()+":"+error.getMsg());
+        }
+        return errors;
+    }
+}
@@ -0,0 +1,96 @@
+/*
+ * Copyright to the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.cochise.codecritic;
+
+import net.sourceforge.pmd.Report;
+import net.sourceforge.pmd.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.util.*;
+
+import static org.cochise.codecritic.TestReports.*;
+import static org.junit.Assert.*;
+
+/**
+ * Checks that violations spilled to disk in runs are merged back into the report of each source file.
+ *
+ * @author Dennis Reedy
+ */
+public class ViolationSinkTest {
+    @org.junit.Rule
+    public final TemporaryFolder directory = new TemporaryFolder();
+
+    @Test
+    public void mergesSpilledRuns() throws Exception {
+        Rule first = rule("First");
+        Rule second = rule("Second");
+        Map<SourceFile, Report> reports = new LinkedHashMap<SourceFile, Report>();
+        /* Added out of order, with the violations of a file split across runs */
+        reports.put(new SourceFile("/src/D.java"), report("/src/D.java", 4, first, second));
+        reports.put(new SourceFile("/src/A.java"), report("/src/A.java", 2, second, first));
+        reports.put(new SourceFile("/src/C.java"), report("/src/C.java", 0, first, second));
+        reports.put(new SourceFile("/src/B.java"), report("/src/B.java", 7, first, second));
+        reports.put(new SourceFile("/src/E.java"), report("/src/E.java", 1, first, second));
+        reports.get(new SourceFile("/src/A.java")).addError(new Report.ProcessingError("Unable to parse", "/src/A.java"));
+        reports.get(new SourceFile("/src/C.java")).addError(new Report.ProcessingError("Timed out", "/src/C.java"));
+
+        File spillDirectory = directory.newFolder("spill");
+        ViolationSink sink = new ViolationSink(spillDirectory, 3);
+        try {
+            for(Map.Entry<SourceFile, Report> entry : reports.entrySet())
+                sink.add(entry.getKey(), entry.getValue());
+            assertEquals(14, sink.size());
+            assertEquals(4, sink.getRuns());
+            assertEquals(1, spillDirectory.list().length);
+
+            List<String> order = new ArrayList<String>();
+            try (ViolationSink.Reader reader = sink.reader()) {
+                while(reader.next()) {
+                    SourceFile sourceFile = reader.getSourceFile();
+                    order.add(sourceFile.getFile());
+                    Report expected = reports.get(sourceFile);
+                    assertEquals(sourceFile.getFile(), violations(expected), violations(reader.getReport()));
+                    assertEquals(sourceFile.getFile(), errors(expected), errors(reader.getReport()));
+                }
+            }
+            assertEquals(Arrays.asList("/src/A.java", "/src/B.java", "/src/C.java", "/src/D.java", "/src/E.java"), order);
+        } finally {
+            sink.close();
+        }
+        assertEquals(0, spillDirectory.list().length);
+    }
+
+    @Test
+    public void keepsViolationsInMemoryWithinCapacity() throws Exception {
+        File spillDirectory = directory.newFolder("spill");
+        ViolationSink sink = new ViolationSink(spillDirectory, 100);
+        try {
+            Report report = report("/src/A.java", 5, rule("First"), rule("Second"));
+            sink.add(new SourceFile("/src/A.java"), report);
+            assertEquals(0, sink.getRuns());
+            assertEquals(0, spillDirectory.list().length);
+            try (ViolationSink.Reader reader = sink.reader()) {
+                assertTrue(reader.next());
+                assertEquals(violations(report), violations(reader.getReport()));
+                assertFalse(reader.next());
+            }
+        } finally {
+            sink.close();
+        }
+    }
+}
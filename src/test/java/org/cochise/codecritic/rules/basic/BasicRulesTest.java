@@ -0,0 +1,161 @@
+/*
+ * Copyright to the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.cochise.codecritic.rules.basic;
+
+import net.sourceforge.pmd.*;
+import org.junit.Test;
+
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks the basic rules against a fixture for each rule, for the expected violations and for the
+ * same violations as the XPath rules bundled with PMD that they replace.
+ *
+ * @author Dennis Reedy
+ */
+public class BasicRulesTest {
+
+    @Test
+    public void emptyCatchBlock() throws Exception {
+        check("EmptyCatchBlock", null, 8, 15, 43, 45);
+    }
+
+    @Test
+    public void emptyCatchBlockAllowingCommentedBlocks() throws Exception {
+        check("EmptyCatchBlock", "true", 8, 43);
+    }
+
+    @Test
+    public void emptyIfStmt() throws Exception {
+        check("EmptyIfStmt", null, 6, 8, 11, 16);
+    }
+
+    @Test
+    public void emptyWhileStmt() throws Exception {
+        check("EmptyWhileStmt", null, 6, 8);
+    }
+
+    @Test
+    public void emptyTryBlock() throws Exception {
+        check("EmptyTryBlock", null, 6, 10);
+    }
+
+    @Test
+    public void emptyFinallyBlock() throws Exception {
+        check("EmptyFinallyBlock", null, 8, 14);
+    }
+
+    @Test
+    public void emptySwitchStatements() throws Exception {
+        check("EmptySwitchStatements", null, 6, 13);
+    }
+
+    @Test
+    public void returnFromFinallyBlock() throws Exception {
+        check("ReturnFromFinallyBlock", null, 9, 18, 20, 20, 31);
+    }
+
+    @Test
+    public void emptySynchronizedBlock() throws Exception {
+        check("EmptySynchronizedBlock", null, 6, 11);
+    }
+
+    @Test
+    public void emptyStaticInitializer() throws Exception {
+        check("EmptyStaticInitializer", null, 4, 15);
+    }
+
+    @Test
+    public void emptyInitializer() throws Exception {
+        check("EmptyInitializer", null, 4, 7, 15);
+    }
+
+    @Test
+    public void unconditionalIfStatement() throws Exception {
+        check("UnconditionalIfStatement", null, 6, 9);
+    }
+
+    @Test
+    public void collapsibleIfStatements() throws Exception {
+        check("CollapsibleIfStatements", null, 7, 12, 35, 36);
+    }
+
+    @Test
+    public void misplacedNullCheck() throws Exception {
+        check("MisplacedNullCheck", null, 6, 16);
+    }
+
+    /*
+     * Check the violations of a rule in its fixture, and that the XPath rule finds the same violations
+     */
+    private void check(String ruleName, String allowCommentedBlocks, int... expectedLines) throws Exception {
+        URL rules = getClass().getResource("/rulesets/basic.xml");
+        URL xpathRules = new URL("jar:"+PMD.class.getProtectionDomain().getCodeSource().getLocation()+"!/rulesets/basic.xml");
+        List<String> violations = analyze(rules, ruleName, allowCommentedBlocks);
+        List<String> xpathViolations = analyze(xpathRules, ruleName, allowCommentedBlocks);
+        List<String> expected = new ArrayList<String>();
+        List<String> found = new ArrayList<String>();
+        for(int line : expectedLines)
+            expected.add(String.valueOf(line));
+        for(String violation : violations)
+            found.add(violation.substring(0, violation.indexOf(':')));
+        assertEquals(expected, found);
+        assertEquals(xpathViolations, violations);
+    }
+
+    private List<String> analyze(URL rules, String ruleName, String allowCommentedBlocks) throws Exception {
+        RuleSet ruleSet;
+        try (InputStream in = rules.openStream()) {
+            ruleSet = new RuleSetFactory().createRuleSet(in);
+        }
+        Rule rule = ruleSet.getRuleByName(ruleName);
+        if(allowCommentedBlocks!=null)
+            rule.addProperty("allowCommentedBlocks", allowCommentedBlocks);
+        boolean xpath = rules.getProtocol().equals("jar");
+        assertEquals(ruleName+" from "+rules, !xpath, rule.getClass().getPackage()==EmptyCatchBlock.class.getPackage());
+        RuleSet single = new RuleSet();
+        single.addRule(rule);
+        RuleSets ruleSets = new RuleSets(single);
+        RuleContext ctx = new RuleContext();
+        Report report = new Report();
+        ctx.setReport(report);
+        ctx.setSourceCodeFilename(ruleName+".java");
+        String fixture = "/fixtures/basic/"+ruleName+".java";
+        InputStream source = getClass().getResourceAsStream(fixture);
+        assertTrue("Missing "+fixture, source!=null);
+        try (Reader reader = new InputStreamReader(source, "UTF-8")) {
+            ruleSets.start(ctx);
+            new PMD().processFile(reader, ruleSets, ctx, SourceType.JAVA_17);
+            ruleSets.end(ctx);
+        }
+        List<String> violations = new ArrayList<String>();
+        for(Iterator<IRuleViolation> iter = report.iterator(); iter.hasNext();) {
+            IRuleViolation violation = iter.next();
+            violations.add(violation.getBeginLine()+":"+violation.getBeginColumn()+":"+violation.getDescription());
+        }
+        assertTrue(ruleName+" processing errors", !report.errors().hasNext());
+        return violations;
+    }
+}
@@ -0,0 +1,42 @@
+package fixtures.basic;
+
+public class CollapsibleIfStatements {
+
+    void check(int a) {
+        if(a>1) {
+            if(a>2) {
+                a++;
+            }
+        }
+        if(a>3)
+            if(a>4)
+                a++;
+        if(a>5) {
+            if(a>6) {
+                a++;
+            } else {
+                a--;
+            }
+        }
+        if(a>7) {
+            if(a>8) {
+                a++;
+            }
+        } else {
+            a--;
+        }
+        if(a>9) {
+            a++;
+            if(a>10) {
+                a++;
+            }
+        }
+        if(a>11) {
+            if(a>12) {
+                if(a>13) {
+                    a++;
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,52 @@
+package fixtures.basic;
+
+public class EmptyCatchBlock {
+
+    void empty() {
+        try {
+            run();
+        } catch (Exception e) {
+        }
+    }
+
+    void commented() {
+        try {
+            run();
+        } catch (RuntimeException e) {
+            // ignored
+        }
+    }
+
+    void allowed() throws Exception {
+        try {
+            Thread.sleep(10);
+        } catch (InterruptedException e) {
+        }
+        try {
+            clone();
+        } catch (CloneNotSupportedException e) {
+        }
+    }
+
+    void handled() {
+        try {
+            run();
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+    }
+
+    void nested() {
+        try {
+            try {
+                run();
+            } catch (IllegalStateException e) {
+            }
+        } catch (Exception e) {
+            /* ignored */
+        }
+    }
+
+    void run() {
+    }
+}
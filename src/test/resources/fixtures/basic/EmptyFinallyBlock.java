@@ -0,0 +1,23 @@
+package fixtures.basic;
+
+public class EmptyFinallyBlock {
+
+    void run() {
+        try {
+            run();
+        } finally {
+        }
+        try {
+            run();
+        } catch (RuntimeException e) {
+            e.printStackTrace();
+        } finally {
+            // nothing
+        }
+        try {
+            run();
+        } finally {
+            run();
+        }
+    }
+}
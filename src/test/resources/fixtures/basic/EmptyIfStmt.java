@@ -0,0 +1,20 @@
+package fixtures.basic;
+
+public class EmptyIfStmt {
+
+    void check(int a) {
+        if(a>1) {
+        }
+        if(a>2);
+        if(a>3) {
+            a++;
+        } else {
+        }
+        if(a>4) {
+            a--;
+        }
+        if(a>5) {
+            // commented
+        }
+    }
+}
@@ -0,0 +1,19 @@
+package fixtures.basic;
+
+public class EmptyInitializer {
+    {
+    }
+
+    static {
+    }
+
+    {
+        System.out.println();
+    }
+
+    static class Inner {
+        {
+            // nothing
+        }
+    }
+}
@@ -0,0 +1,19 @@
+package fixtures.basic;
+
+public class EmptyStaticInitializer {
+    static {
+    }
+
+    static {
+        System.out.println();
+    }
+
+    {
+    }
+
+    static class Inner {
+        static {
+            // nothing
+        }
+    }
+}
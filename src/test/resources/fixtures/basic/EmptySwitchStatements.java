@@ -0,0 +1,18 @@
+package fixtures.basic;
+
+public class EmptySwitchStatements {
+
+    int choose(int a) {
+        switch(a) {
+        }
+        switch(a) {
+            case 1:
+                return 1;
+            default:
+        }
+        switch(a) {
+            // nothing
+        }
+        return a;
+    }
+}
@@ -0,0 +1,15 @@
+package fixtures.basic;
+
+public class EmptySynchronizedBlock {
+
+    void lock() {
+        synchronized(this) {
+        }
+        synchronized(this) {
+            lock();
+        }
+        synchronized(getClass()) {
+            // waiting
+        }
+    }
+}
@@ -0,0 +1,20 @@
+package fixtures.basic;
+
+public class EmptyTryBlock {
+
+    void run() {
+        try {
+        } catch (RuntimeException e) {
+            e.printStackTrace();
+        }
+        try {
+        } finally {
+            run();
+        }
+        try {
+            run();
+        } finally {
+            run();
+        }
+    }
+}
@@ -0,0 +1,15 @@
+package fixtures.basic;
+
+public class EmptyWhileStmt {
+
+    void loop(int a) {
+        while(a>1) {
+        }
+        while(a-->2);
+        while(a>3) {
+            a--;
+        }
+        do {
+        } while(a>4);
+    }
+}
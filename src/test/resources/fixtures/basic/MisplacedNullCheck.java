@@ -0,0 +1,18 @@
+package fixtures.basic;
+
+public class MisplacedNullCheck {
+
+    boolean check(String a, String b) {
+        if(a.equals(b) && a!=null)
+            return true;
+        if(a.length()>0 || a==null)
+            return false;
+        if(a!=null && a.equals(b))
+            return true;
+        if(a==null || a.length()==0)
+            return false;
+        if(b.equals(a) && a!=null)
+            return true;
+        return a.trim().isEmpty() && a!=null && b!=null;
+    }
+}
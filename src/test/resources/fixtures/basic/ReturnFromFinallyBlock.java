@@ -0,0 +1,44 @@
+package fixtures.basic;
+
+public class ReturnFromFinallyBlock {
+
+    int returns() {
+        try {
+            return 1;
+        } finally {
+            return 2;
+        }
+    }
+
+    int nested() {
+        try {
+            return 1;
+        } finally {
+            try {
+                return 2;
+            } finally {
+                return 3;
+            }
+        }
+    }
+
+    int inner() {
+        try {
+            return 1;
+        } finally {
+            new Runnable() {
+                public void run() {
+                    return;
+                }
+            }.run();
+        }
+    }
+
+    int none() {
+        try {
+            return 1;
+        } finally {
+            System.out.println();
+        }
+    }
+}
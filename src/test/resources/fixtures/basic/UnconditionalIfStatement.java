@@ -0,0 +1,24 @@
+package fixtures.basic;
+
+public class UnconditionalIfStatement {
+
+    void check(boolean b) {
+        if(true) {
+            check(b);
+        }
+        if(false) {
+            check(b);
+        } else {
+            check(!b);
+        }
+        if(b) {
+            check(b);
+        }
+        if(!true) {
+            check(b);
+        }
+        if((false)) {
+            check(b);
+        }
+    }
+}
@@ -0,0 +1,42 @@
+package fixtures.performance;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class AllocationInLoop {
+
+    List<StringBuilder> build(List<String> names) {
+        List<StringBuilder> builders = new ArrayList<StringBuilder>();
+        for(String name : names) {
+            builders.add(new StringBuilder(name));                      // violation
+        }
+        for(int i=0, n=new int[4].length; i<n; i++) {                    // initializer, runs once
+            int[] counts = new int[i];                                   // violation
+        }
+        for(String name : new ArrayList<String>(names)) {                // foreach expression, runs once
+            if(name.isEmpty())
+                throw new IllegalArgumentException("Empty name");        // thrown, leaves the loop
+            if(name.length()>10)
+                return new ArrayList<StringBuilder>();                   // returned, leaves the loop
+        }
+        for(int i=0; i<new ArrayList<String>(names).size(); i++) {       // violation, condition
+            names.get(i);
+        }
+        int i = 0;
+        while(i++<names.size()) {
+            Object lock = new Object();                                  // violation
+        }
+        do {
+            names.add(String.valueOf(new char[]{'a'}));                  // violation
+        } while(names.size()<10);
+        for(final String name : names) {
+            Runnable runnable = new Runnable() {                         // violation
+                public void run() {
+                    System.out.println(new StringBuilder(name));        // runs when the runnable runs
+                }
+            };
+            runnable.run();
+        }
+        return builders;
+    }
+}
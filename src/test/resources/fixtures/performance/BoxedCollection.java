@@ -0,0 +1,24 @@
+package fixtures.performance;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+public class BoxedCollection {
+    private final Map<Long, Double> prices = new HashMap<Long, Double>();    // violation
+    private final Map<String, String> names = new HashMap<String, String>();
+    private final java.util.Set<Character> letters = null;                   // violation
+    private final List<List<Integer>> rows = null;
+
+    int sum() {
+        List<Integer> values = new ArrayList<Integer>();                      // violation
+        List<String> labels = new ArrayList<String>();
+        List raw = new ArrayList();
+        Map<String, Boolean> flags = null;
+        int sum = 0;
+        for(Integer value : values)
+            sum += value;
+        return sum;
+    }
+}
@@ -0,0 +1,23 @@
+package fixtures.performance;
+
+import java.util.regex.Pattern;
+
+public class RegexCompiledPerCall {
+    private static final Pattern COMMA = Pattern.compile(",\\s*");         // compiled once
+
+    String[] parse(String line) {
+        Pattern pattern = Pattern.compile("\\d+");                       // violation
+        boolean matches = Pattern.matches("[a-z]+", line);               // violation
+        boolean word = line.matches("\\w+");                             // violation
+        String trimmed = line.replaceAll("\\s+", " ");                   // violation
+        String first = line.replaceFirst("^#", "");                      // violation
+        String[] fields = line.split(",");                               // single character
+        String[] dotted = line.split("\\.");                             // escaped character
+        String[] tabs = line.split("\t");                                // single character
+        String[] dots = line.split(".");                                 // violation, meta character
+        String[] words = line.split("\\s+");                             // violation
+        String[] pairs = line.split("::", 2);                            // violation
+        String replaced = line.replace(",", ";");                        // not a regular expression
+        return COMMA.split(line);
+    }
+}
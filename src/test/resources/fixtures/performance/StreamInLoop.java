@@ -0,0 +1,26 @@
+package fixtures.performance;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+public class StreamInLoop {
+
+    long count(List<List<String>> groups, int[] values) {
+        long count = groups.stream().count();
+        for(List<String> group : groups) {
+            count += group.stream().count();                             // violation
+            count += group.parallelStream().count();                     // violation
+            count += Stream.of(group).count();                           // violation
+        }
+        for(int i=0; i<values.length; i++) {
+            count += Arrays.stream(values).sum();                        // violation
+            count += IntStream.range(0, i).sum();                        // violation
+        }
+        for(List<String> group : groups) {
+            count += group.size();
+        }
+        return count;
+    }
+}
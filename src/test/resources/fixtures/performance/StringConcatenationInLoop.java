@@ -0,0 +1,28 @@
+package fixtures.performance;
+
+import java.util.List;
+
+public class StringConcatenationInLoop {
+    private String joined = "";
+
+    String join(List<String> parts) {
+        String s = "";
+        for(String part : parts) {
+            s += part;                                                   // violation
+            s = s + ",";                                                 // violation
+            s = "," + s;
+            String local = "";
+            local += part;                                               // declared in the loop
+        }
+        int count = 0;
+        for(String part : parts) {
+            count += part.length();                                      // not a String
+        }
+        s += "end";                                                      // outside a loop
+        int i = 0;
+        while(i++<parts.size()) {
+            joined += parts.get(i);                                      // violation, field
+        }
+        return s;
+    }
+}
@@ -0,0 +1,29 @@
+package fixtures.performance;
+
+import java.util.List;
+
+public class SynchronizedInLoop {
+    private final Object lock = new Object();
+    private int count;
+
+    void add(List<String> items) {
+        for(String item : items) {
+            synchronized(lock) {                                         // violation
+                count++;
+            }
+        }
+        synchronized(lock) {
+            for(String item : items)
+                count++;
+        }
+        for(final String item : items) {
+            new Thread() {
+                public void run() {
+                    synchronized(lock) {                                 // runs in the thread
+                        count++;
+                    }
+                }
+            }.start();
+        }
+    }
+}